@@ -0,0 +1,98 @@
+package org.immregistries.vfa.connect;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.immregistries.vfa.connect.model.Event;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.SoftwareResult;
+import org.immregistries.vfa.connect.model.TestCase;
+import org.immregistries.vfa.connect.model.TestEvent;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole queries through each connector against {@link ForecastSimulator} on localhost, many threads
+ * sharing one connector. Sample time gives the latency percentiles with the simulated engine
+ * latency added, throughput shows how many queries the connector keeps in flight.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.SampleTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(16)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ConnectorLoadBenchmark
+{
+
+  private static final int[] EVENT_IDS = {
+      // HepB, DTaP, Hib, Polio
+      8, 20, 49, 10};
+
+  @Param({"IIS", "ICE", "SWP", "LSVF", "MES_VACCINE"})
+  public String service;
+
+  /**
+   * Median simulated engine latency in milliseconds, 0 for none.
+   */
+  @Param({"0", "20"})
+  public int latencyMillis;
+
+  private ForecastSimulator simulator;
+  private ConnectorInterface connector;
+  private TestCase testCase;
+
+  @Setup
+  public void setUp() throws Exception {
+    simulator = new ForecastSimulator();
+    if (latencyMillis > 0) {
+      simulator.setLatency(ForecastSimulator.logNormalLatency(latencyMillis, 0.5));
+    }
+    simulator.start();
+    connector = ConnectFactory.createConnecter(simulator.createSoftware(Service.valueOf(service)),
+        VaccineGroup.getForecastItemList());
+
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(2018, Calendar.JANUARY, 2);
+    testCase = new TestCase();
+    testCase.setTestCaseNumber("LOAD");
+    testCase.setPatientDob(calendar.getTime());
+    testCase.setPatientSex("F");
+    List<TestEvent> testEventList = new ArrayList<TestEvent>();
+    calendar.add(Calendar.MONTH, 2);
+    for (int eventId : EVENT_IDS) {
+      TestEvent testEvent = new TestEvent();
+      testEvent.setEvent(Event.getEvent(eventId));
+      testEvent.setEventDate(calendar.getTime());
+      testEventList.add(testEvent);
+    }
+    testCase.setTestEventList(testEventList);
+    calendar.add(Calendar.MONTH, 2);
+    testCase.setEvalDate(calendar.getTime());
+  }
+
+  @TearDown
+  public void tearDown() {
+    simulator.stop();
+  }
+
+  @Benchmark
+  public Object queryForForecast() throws Exception {
+    return connector.queryForForecast(testCase, new SoftwareResult());
+  }
+}
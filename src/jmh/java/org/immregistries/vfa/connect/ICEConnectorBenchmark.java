@@ -0,0 +1,66 @@
+package org.immregistries.vfa.connect;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.SoftwareResult;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading the ICE_example.xml VMR, both from a String and from the bytes as they come off the wire.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ICEConnectorBenchmark
+{
+
+  private ICEConnector connector;
+  private byte[] vmrBytes;
+  private String vmr;
+
+  @Setup
+  public void setUp() throws Exception {
+    Software software = new Software();
+    software.setServiceUrl("http://localhost/opencds-decision-support-service/evaluate");
+    connector = new ICEConnector(software, VaccineGroup.getForecastItemList());
+    InputStream in = ICEConnectorBenchmark.class.getResourceAsStream("ICE_example.xml");
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int count;
+      while ((count = in.read(buffer)) != -1) {
+        out.write(buffer, 0, count);
+      }
+      vmrBytes = out.toByteArray();
+    } finally {
+      in.close();
+    }
+    vmr = new String(vmrBytes, "UTF-8");
+  }
+
+  @Benchmark
+  public Object readVMRString() throws Exception {
+    return connector.readVMR(vmr, new SoftwareResult());
+  }
+
+  @Benchmark
+  public Object readVMRStream() throws Exception {
+    return connector.readVMR(new ByteArrayInputStream(vmrBytes), null, new SoftwareResult());
+  }
+}
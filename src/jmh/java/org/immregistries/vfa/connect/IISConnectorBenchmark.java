@@ -0,0 +1,171 @@
+package org.immregistries.vfa.connect;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.immregistries.vfa.connect.model.ForecastActual;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.ServiceOption;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.SoftwareResult;
+import org.immregistries.vfa.connect.model.SoftwareSetting;
+import org.immregistries.vfa.connect.model.TestCase;
+import org.immregistries.vfa.connect.model.TestEvent;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+import org.immregistries.vfa.connect.util.FakePatient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading and building IIS messages. Each operation works through every RSP message kept in
+ * TestIISConnector, so the numbers are for the whole set of registries and not one message.
+ * queryForForecast runs the whole query with the responses replayed from a response store, so it
+ * measures everything but the network.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class IISConnectorBenchmark
+{
+
+  private IISConnector connector;
+  private List<String> rspList = new ArrayList<String>();
+  private List<TestCase> testCaseList = new ArrayList<TestCase>();
+  private List<FakePatient> fakePatientList = new ArrayList<FakePatient>();
+  // test cases that have events and forecasts, so the replayed query is answered on the first try
+  private List<TestCase> replayTestCaseList = new ArrayList<TestCase>();
+  private File storeFile;
+  private ResponseStore responseStore;
+
+  @Setup
+  public void setUp() throws Exception {
+    Software software = new Software();
+    software.setServiceUrl("http://localhost/iis-kernel/soap");
+    software.setService(Service.IIS);
+    software.setServiceUserid("Mercy");
+    software.setServicePassword("password1234");
+    software.setServiceFacilityid("Mercy Healthcare");
+    ServiceOption serviceOption = new ServiceOption();
+    serviceOption.setOptionName(RetryPolicy.OPTION_MAX_ATTEMPTS);
+    SoftwareSetting softwareSetting = new SoftwareSetting();
+    softwareSetting.setServiceOption(serviceOption);
+    softwareSetting.setOptionValue("1");
+    software.setSoftwareSettingList(new ArrayList<SoftwareSetting>());
+    software.getSoftwareSettingList().add(softwareSetting);
+    connector = new IISConnector(software, VaccineGroup.getForecastItemList());
+    storeFile = File.createTempFile("iis-benchmark", ".store");
+    storeFile.delete();
+    ResponseStore recordStore = new ResponseStore(storeFile, ResponseStore.Mode.RECORD);
+    for (Field field : TestIISConnector.class.getDeclaredFields()) {
+      if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class) {
+        field.setAccessible(true);
+        String rsp = (String) field.get(null);
+        if (rsp != null && rsp.startsWith("MSH|")) {
+          TestCase testCase = IISConnector.recreateTestCase(rsp);
+          rspList.add(rsp);
+          testCaseList.add(testCase);
+          // the RSP doesn't carry a date of birth, the VXU needs one
+          if (testCase.getPatientDob() == null) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.clear();
+            calendar.set(2000, Calendar.JANUARY, 1);
+            testCase.setPatientDob(calendar.getTime());
+          }
+          fakePatientList.add(new FakePatient(testCase, "BENCH" + rspList.size()));
+          List<ForecastActual> forecastActualList = new ArrayList<ForecastActual>();
+          connector.readRSP(forecastActualList, testCase, new SoftwareResult(), rsp);
+          if (testCase.getTestEventList().size() > 0 && forecastActualList.size() > 0) {
+            replayTestCaseList.add(testCase);
+            recordStore.put(IISConnector.createRequestKey(software, testCase, "VXU"),
+                createResponse(software, "MSH|^~\\&|||||||ACK^V04^ACK|1|P|2.5.1\rMSA|AA|1\r"));
+            recordStore.put(IISConnector.createRequestKey(software, testCase, "QBP"),
+                createResponse(software, rsp));
+          }
+        }
+      }
+    }
+    recordStore.close();
+    if (rspList.isEmpty()) {
+      throw new IllegalStateException("No RSP messages found in TestIISConnector");
+    }
+    responseStore = new ResponseStore(storeFile, ResponseStore.Mode.REPLAY);
+    HttpTransport.setResponseStore(responseStore);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    HttpTransport.setResponseStore(null);
+    responseStore.close();
+    storeFile.delete();
+  }
+
+  private static HttpTransport.Response createResponse(Software software, String hl7)
+      throws Exception {
+    String body = "<Envelope><Body><submitSingleMessageResponse><return>"
+        + hl7.replace("&", "&amp;") + "</return></submitSingleMessageResponse></Body></Envelope>";
+    return new HttpTransport.Response(software.getServiceUrl(), 200, "text/xml; charset=utf-8",
+        body.getBytes("UTF-8"));
+  }
+
+  @Benchmark
+  public void queryForForecast(Blackhole blackhole) throws Exception {
+    for (TestCase testCase : replayTestCaseList) {
+      for (TestEvent testEvent : testCase.getTestEventList()) {
+        testEvent.setEvaluationActualList(null);
+      }
+      blackhole.consume(connector.queryForForecast(testCase, new SoftwareResult()));
+    }
+  }
+
+  @Benchmark
+  public void readRSP(Blackhole blackhole) throws Exception {
+    for (int i = 0; i < rspList.size(); i++) {
+      TestCase testCase = testCaseList.get(i);
+      // readRSP adds evaluations to the test events, clear them so they don't pile up
+      for (TestEvent testEvent : testCase.getTestEventList()) {
+        testEvent.setEvaluationActualList(null);
+      }
+      List<ForecastActual> forecastActualList = new ArrayList<ForecastActual>();
+      connector.readRSP(forecastActualList, testCase, new SoftwareResult(), rspList.get(i));
+      blackhole.consume(forecastActualList);
+    }
+  }
+
+  @Benchmark
+  public void recreateTestCase(Blackhole blackhole) throws Exception {
+    for (String rsp : rspList) {
+      blackhole.consume(IISConnector.recreateTestCase(rsp));
+    }
+  }
+
+  @Benchmark
+  public void buildVXU(Blackhole blackhole) {
+    for (int i = 0; i < testCaseList.size(); i++) {
+      blackhole.consume(connector.buildVXU(testCaseList.get(i), fakePatientList.get(i)));
+    }
+  }
+
+  @Benchmark
+  public void buildQBP(Blackhole blackhole) {
+    for (FakePatient fakePatient : fakePatientList) {
+      blackhole.consume(connector.buildQBP(fakePatient));
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package org.immregistries.vfa.connect;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.SoftwareResult;
+import org.immregistries.vfa.connect.model.TestCase;
+import org.immregistries.vfa.connect.model.TestEvent;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing the "Forecasting ..." lines of a TCH forecaster text response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LSVFConnectorBenchmark
+{
+
+  private static final String[] FAMILIES = {"Hib", "HepB", "DTaP", "Td", "Tdap", "IPV", "HepA", "MMR",
+      "Varicella", "Influenza IIV", "MCV4", "HPV", "Rotavirus", "PCV13", "Zoster", "PPSV", "Covid"};
+  private static final String[] STATUSES = {"due", "overdue", "due later", "complete", "finished"};
+
+  private LSVFConnector connector;
+  private TestCase testCase;
+  private String response;
+
+  @Setup
+  public void setUp() {
+    connector = new LSVFConnector(new Software(), VaccineGroup.getForecastItemList());
+    testCase = new TestCase();
+    testCase.setTestEventList(new ArrayList<TestEvent>());
+    StringBuilder sb = new StringBuilder();
+    sb.append("TCH Forecaster\n\n");
+    for (int i = 0; i < FAMILIES.length; i++) {
+      int month = i % 12 + 1;
+      sb.append("Forecasting ").append(FAMILIES[i]).append(" status ")
+          .append(STATUSES[i % STATUSES.length]).append(" dose ").append(i % 4 + 1)
+          .append(" due ").append(date(month, 1, 2019)).append(" valid ").append(date(month, 1, 2019))
+          .append(" overdue ").append(date(month, 15, 2019)).append(" finished ")
+          .append(date(month, 1, 2059)).append('\n');
+    }
+    sb.append("\n");
+    response = sb.toString();
+  }
+
+  private static String date(int month, int day, int year) {
+    return (month < 10 ? "0" : "") + month + "/" + (day < 10 ? "0" : "") + day + "/" + year;
+  }
+
+  @Benchmark
+  public Object readResponse() throws Exception {
+    return connector.readResponse(response, testCase, new SoftwareResult(), null);
+  }
+}
@@ -0,0 +1,117 @@
+package org.immregistries.vfa.connect;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.immregistries.vfa.connect.model.Event;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.SoftwareResult;
+import org.immregistries.vfa.connect.model.TestCase;
+import org.immregistries.vfa.connect.model.TestEvent;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Forecasts from the in-process {@link SyntheticConnector}, so what is measured is the connector
+ * plumbing, the executor hand off and batching, not an engine or the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SyntheticConnectorBenchmark
+{
+
+  private static final int BATCH_SIZE = 100;
+
+  /**
+   * Rounds of busy work for each forecast, 0 for none.
+   */
+  @Param({"0", "10000"})
+  public int workIterations;
+
+  private SyntheticConnector connector;
+  private List<TestCase> testCaseList;
+
+  @Setup
+  public void setUp() {
+    Software software = new Software();
+    software.setService(Service.SYNTHETIC);
+    connector = new SyntheticConnector(software, VaccineGroup.getForecastItemList());
+    connector.setWorkIterations(workIterations);
+
+    testCaseList = new ArrayList<TestCase>();
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      Calendar calendar = Calendar.getInstance();
+      calendar.clear();
+      calendar.set(2018, Calendar.JANUARY, 2);
+      calendar.add(Calendar.DAY_OF_MONTH, i);
+      TestCase testCase = new TestCase();
+      testCase.setTestCaseNumber("SYN" + i);
+      testCase.setPatientDob(calendar.getTime());
+      testCase.setPatientSex(i % 2 == 0 ? "F" : "M");
+      List<TestEvent> testEventList = new ArrayList<TestEvent>();
+      for (int dose = 0; dose < i % 4; dose++) {
+        calendar.add(Calendar.MONTH, 2);
+        for (int eventId : new int[] {8, 20, 49, 10}) {
+          TestEvent testEvent = new TestEvent();
+          testEvent.setEvent(Event.getEvent(eventId));
+          testEvent.setEventDate(calendar.getTime());
+          testEventList.add(testEvent);
+        }
+      }
+      testCase.setTestEventList(testEventList);
+      calendar.add(Calendar.MONTH, 1);
+      testCase.setEvalDate(calendar.getTime());
+      testCaseList.add(testCase);
+    }
+  }
+
+  @Benchmark
+  public Object queryForForecast() throws Exception {
+    TestCase testCase = testCaseList.get(BATCH_SIZE - 1);
+    Object result = connector.queryForForecast(testCase, new SoftwareResult());
+    clearEvaluations(testCase);
+    return result;
+  }
+
+  @Benchmark
+  public Object queryForForecastBatch() throws Exception {
+    List<SoftwareResult> softwareResultList = new ArrayList<SoftwareResult>();
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      softwareResultList.add(new SoftwareResult());
+    }
+    Object result = connector.queryForForecastBatch(testCaseList, softwareResultList);
+    for (TestCase testCase : testCaseList) {
+      clearEvaluations(testCase);
+    }
+    return result;
+  }
+
+  /**
+   * Evaluations are added to the test events, drop them so they don't pile up across calls.
+   */
+  private static void clearEvaluations(TestCase testCase) {
+    for (TestEvent testEvent : testCase.getTestEventList()) {
+      synchronized (testEvent) {
+        testEvent.setEvaluationActualList(null);
+      }
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package org.immregistries.vfa.connect.util;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * TimePeriod parsing, interning and date arithmetic and AgeUtil.getAge, over the kind of intervals and ages
+ * the test cases use, from birth out to past the five year point where getAge changes loops.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DateUtilBenchmark
+{
+
+  private static final String[] TIME_PERIODS = {"6 weeks", "2 months", "4 months less 4 days",
+      "6 months", "12 months", "15 months plus 10 days", "4 years", "3 years 2 months", "11 years",
+      "1 year - 4 days", "28 days", "65 years"};
+
+  private TimePeriod[] timePeriods;
+  private Date dateOfBirth;
+  private Date[] eventDates;
+
+  @Setup
+  public void setUp() {
+    timePeriods = new TimePeriod[TIME_PERIODS.length];
+    for (int i = 0; i < TIME_PERIODS.length; i++) {
+      timePeriods[i] = new TimePeriod(TIME_PERIODS[i]);
+    }
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(2010, Calendar.MARCH, 15);
+    dateOfBirth = calendar.getTime();
+    eventDates = new Date[64];
+    for (int i = 0; i < eventDates.length; i++) {
+      eventDates[i] = calendar.getTime();
+      calendar.add(Calendar.DAY_OF_MONTH, 61);
+    }
+  }
+
+  @Benchmark
+  public void parseTimePeriod(Blackhole blackhole) {
+    for (String timePeriodString : TIME_PERIODS) {
+      blackhole.consume(new TimePeriod(timePeriodString));
+    }
+  }
+
+  @Benchmark
+  public void timePeriodValueOf(Blackhole blackhole) {
+    for (String timePeriodString : TIME_PERIODS) {
+      blackhole.consume(TimePeriod.valueOf(timePeriodString));
+    }
+  }
+
+  @Benchmark
+  public void timePeriodDateFrom(Blackhole blackhole) {
+    for (TimePeriod timePeriod : timePeriods) {
+      blackhole.consume(timePeriod.getDateFrom(dateOfBirth));
+    }
+  }
+
+  @Benchmark
+  public void timePeriodDateBefore(Blackhole blackhole) {
+    for (TimePeriod timePeriod : timePeriods) {
+      blackhole.consume(timePeriod.getDateBefore(dateOfBirth));
+    }
+  }
+
+  @Benchmark
+  public void getAge(Blackhole blackhole) {
+    for (Date eventDate : eventDates) {
+      blackhole.consume(AgeUtil.getAge(dateOfBirth, eventDate));
+    }
+  }
+}
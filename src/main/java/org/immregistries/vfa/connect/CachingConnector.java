@@ -0,0 +1,401 @@
+package org.immregistries.vfa.connect;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.immregistries.vfa.connect.model.EvaluationActual;
+import org.immregistries.vfa.connect.model.ForecastActual;
+import org.immregistries.vfa.connect.model.ForecastEngineIssue;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.SoftwareResult;
+import org.immregistries.vfa.connect.model.SoftwareResultStatus;
+import org.immregistries.vfa.connect.model.SoftwareSetting;
+import org.immregistries.vfa.connect.model.TestCase;
+import org.immregistries.vfa.connect.model.TestCaseSetting;
+import org.immregistries.vfa.connect.model.TestEvent;
+
+/**
+ * Wraps another connector and remembers what it returned. Test cases that would send the same
+ * request to the same software, the same birth date, sex, evaluation date, events and settings,
+ * are answered from the cache instead of going back to the forecast engine. Only results with a
+ * status of OK are kept. Each caller gets its own copy of the forecasts, evaluations and issues so
+ * nothing kept in the cache can be changed from outside.
+ * <p>
+ * The cache holds at most maxEntries results, dropping the least recently used when full, and a
+ * result is not used once it is older than the time to live.
+ */
+public class CachingConnector implements ConnectorInterface {
+
+  public static final int DEFAULT_MAX_ENTRIES = 1000;
+  public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 12L * 60 * 60 * 1000;
+
+  private static final Comparator<TestEvent> TEST_EVENT_ORDER = new Comparator<TestEvent>() {
+    public int compare(TestEvent te1, TestEvent te2) {
+      return getEventKey(te1).compareTo(getEventKey(te2));
+    }
+  };
+
+  private final ConnectorInterface connector;
+  private final Software software;
+  private final int maxEntries;
+  private final long timeToLiveMillis;
+  private final Map<String, Entry> cache;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  private static class Entry {
+    private long created;
+    private Date runDate;
+    private String logText;
+    private List<ForecastActual> forecastActualList;
+    private List<List<EvaluationActual>> evaluationActualLists;
+    private List<ForecastEngineIssue> issueList;
+  }
+
+  public CachingConnector(ConnectorInterface connector, Software software) {
+    this(connector, software, DEFAULT_MAX_ENTRIES, DEFAULT_TIME_TO_LIVE_MILLIS);
+  }
+
+  public CachingConnector(ConnectorInterface connector, Software software, final int maxEntries,
+      long timeToLiveMillis) {
+    this.connector = connector;
+    this.software = software;
+    this.maxEntries = maxEntries;
+    this.timeToLiveMillis = timeToLiveMillis;
+    this.cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        if (size() > CachingConnector.this.maxEntries) {
+          evictionCount.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  public ConnectorInterface getConnector() {
+    return connector;
+  }
+
+  public List<ForecastActual> queryForForecast(TestCase testCase, SoftwareResult softwareResult)
+      throws Exception {
+    return ConnectorExecutor.await(queryForForecastAsync(testCase, softwareResult));
+  }
+
+  public CompletableFuture<List<ForecastActual>> queryForForecastAsync(final TestCase testCase,
+      final SoftwareResult softwareResult) {
+    final String key = createFingerprint(software, testCase);
+    Entry entry = get(key);
+    if (entry != null) {
+      hitCount.incrementAndGet();
+      return CompletableFuture.completedFuture(restore(entry, testCase, softwareResult));
+    }
+    missCount.incrementAndGet();
+    // the connector may add to the event list, remember the events that were sent
+    final List<TestEvent> testEventList = getSortedTestEventList(testCase);
+    return connector.queryForForecastAsync(testCase, softwareResult)
+        .thenApply(new Function<List<ForecastActual>, List<ForecastActual>>() {
+          public List<ForecastActual> apply(List<ForecastActual> forecastActualList) {
+            if (softwareResult.getSoftwareResultStatus() == SoftwareResultStatus.OK) {
+              put(key, store(forecastActualList, testEventList, softwareResult));
+            }
+            return forecastActualList;
+          }
+        });
+  }
+
+  public void setLogText(boolean logText) {
+    connector.setLogText(logText);
+  }
+
+  public boolean isLogText() {
+    return connector.isLogText();
+  }
+
+  /**
+   * Forgets the result for this test case, if one is kept. Returns true if there was one.
+   */
+  public boolean invalidate(TestCase testCase) {
+    String key = createFingerprint(software, testCase);
+    synchronized (cache) {
+      return cache.remove(key) != null;
+    }
+  }
+
+  /**
+   * Forgets every result, the statistics are kept.
+   */
+  public void invalidateAll() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+  public int size() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /**
+   * Fraction of queries answered from the cache, 0 before any query.
+   */
+  public double getHitRatio() {
+    long hits = hitCount.get();
+    long total = hits + missCount.get();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private Entry get(String key) {
+    synchronized (cache) {
+      Entry entry = cache.get(key);
+      if (entry != null && currentTimeMillis() - entry.created >= timeToLiveMillis) {
+        cache.remove(key);
+        evictionCount.incrementAndGet();
+        return null;
+      }
+      return entry;
+    }
+  }
+
+  private void put(String key, Entry entry) {
+    synchronized (cache) {
+      cache.put(key, entry);
+    }
+  }
+
+  private Entry store(List<ForecastActual> forecastActualList, List<TestEvent> testEventList,
+      SoftwareResult softwareResult) {
+    Entry entry = new Entry();
+    entry.created = currentTimeMillis();
+    entry.runDate = softwareResult.getRunDate();
+    entry.logText = softwareResult.getLogText();
+    entry.forecastActualList = new ArrayList<ForecastActual>(forecastActualList.size());
+    for (ForecastActual forecastActual : forecastActualList) {
+      entry.forecastActualList.add(copy(forecastActual, null, null));
+    }
+    entry.evaluationActualLists = new ArrayList<List<EvaluationActual>>(testEventList.size());
+    for (TestEvent testEvent : testEventList) {
+      List<EvaluationActual> evaluationActualList = null;
+      if (testEvent.getEvaluationActualList() != null) {
+        evaluationActualList =
+            new ArrayList<EvaluationActual>(testEvent.getEvaluationActualList().size());
+        for (EvaluationActual evaluationActual : testEvent.getEvaluationActualList()) {
+          evaluationActualList.add(copy(evaluationActual, null, null));
+        }
+      }
+      entry.evaluationActualLists.add(evaluationActualList);
+    }
+    entry.issueList = new ArrayList<ForecastEngineIssue>(softwareResult.getIssueList().size());
+    for (ForecastEngineIssue issue : softwareResult.getIssueList()) {
+      entry.issueList.add(copy(issue));
+    }
+    return entry;
+  }
+
+  private List<ForecastActual> restore(Entry entry, TestCase testCase,
+      SoftwareResult softwareResult) {
+    softwareResult.setSoftwareResultStatus(SoftwareResultStatus.OK);
+    softwareResult.setRunDate(entry.runDate);
+    if (isLogText()) {
+      String logText = "Returned from cache, first retrieved " + entry.runDate;
+      // null when cached before log text was turned on
+      if (entry.logText != null) {
+        logText += "\n\n" + entry.logText;
+      }
+      softwareResult.setLogText(logText);
+    }
+    for (ForecastEngineIssue issue : entry.issueList) {
+      softwareResult.getIssueList().add(copy(issue));
+    }
+    List<TestEvent> testEventList = getSortedTestEventList(testCase);
+    for (int i = 0; i < testEventList.size() && i < entry.evaluationActualLists.size(); i++) {
+      List<EvaluationActual> cachedList = entry.evaluationActualLists.get(i);
+      if (cachedList == null) {
+        continue;
+      }
+      TestEvent testEvent = testEventList.get(i);
+      List<EvaluationActual> evaluationActualList = new ArrayList<EvaluationActual>();
+      for (EvaluationActual evaluationActual : cachedList) {
+        evaluationActualList.add(copy(evaluationActual, testEvent, softwareResult));
+      }
+      testEvent.setEvaluationActualList(evaluationActualList);
+    }
+    List<ForecastActual> forecastActualList =
+        new ArrayList<ForecastActual>(entry.forecastActualList.size());
+    for (ForecastActual forecastActual : entry.forecastActualList) {
+      ForecastActual copy = copy(forecastActual, testCase, softwareResult);
+      forecastActualList.add(copy);
+    }
+    return forecastActualList;
+  }
+
+  private static ForecastActual copy(ForecastActual forecastActual, TestCase testCase,
+      SoftwareResult softwareResult) {
+    ForecastActual copy = new ForecastActual();
+    copy.setTestCase(testCase);
+    copy.setSoftwareResult(softwareResult);
+    copy.setVaccineGroup(forecastActual.getVaccineGroup());
+    copy.setVaccineCvx(forecastActual.getVaccineCvx());
+    copy.setScheduleName(forecastActual.getScheduleName());
+    copy.setExplanationHtml(forecastActual.getExplanationHtml());
+    copy.setDoseNumber(forecastActual.getDoseNumber());
+    copy.setValidDate(copy(forecastActual.getValidDate()));
+    copy.setDueDate(copy(forecastActual.getDueDate()));
+    copy.setOverdueDate(copy(forecastActual.getOverdueDate()));
+    copy.setFinishedDate(copy(forecastActual.getFinishedDate()));
+    copy.setValidDateString(forecastActual.getValidDateString());
+    copy.setDueDateString(forecastActual.getDueDateString());
+    copy.setOverdueDateString(forecastActual.getOverdueDateString());
+    copy.setFinishedDateString(forecastActual.getFinishedDateString());
+    copy.setAdmin(forecastActual.getAdmin());
+    copy.setForecastReason(forecastActual.getForecastReason());
+    return copy;
+  }
+
+  private static EvaluationActual copy(EvaluationActual evaluationActual, TestEvent testEvent,
+      SoftwareResult softwareResult) {
+    EvaluationActual copy = new EvaluationActual();
+    copy.setTestEvent(testEvent);
+    copy.setSoftwareResult(softwareResult);
+    copy.setEvaluation(evaluationActual.getEvaluation());
+    copy.setEvaluationReason(evaluationActual.getEvaluationReason());
+    copy.setEvaluationReasonCode(evaluationActual.getEvaluationReasonCode());
+    copy.setVaccineGroup(evaluationActual.getVaccineGroup());
+    copy.setVaccineCvx(evaluationActual.getVaccineCvx());
+    copy.setSeriesUsedCode(evaluationActual.getSeriesUsedCode());
+    copy.setSeriesUsedText(evaluationActual.getSeriesUsedText());
+    copy.setReasonCode(evaluationActual.getReasonCode());
+    copy.setReasonText(evaluationActual.getReasonText());
+    copy.setDoseNumber(evaluationActual.getDoseNumber());
+    copy.setDoseValid(evaluationActual.getDoseValid());
+    return copy;
+  }
+
+  private static ForecastEngineIssue copy(ForecastEngineIssue issue) {
+    return new ForecastEngineIssue(issue.getIssueType(), issue.getIssueLevel(),
+        issue.getDescription(), issue.getPath());
+  }
+
+  private static Date copy(Date date) {
+    return date == null ? null : new Date(date.getTime());
+  }
+
+  /**
+   * A key that is the same for two test cases exactly when the software would be sent the same
+   * request. Names, labels and test case numbers are left out, the patient is made up for each
+   * query anyway. The order of events and settings doesn't matter.
+   */
+  public static String createFingerprint(Software software, TestCase testCase) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("software|").append(software.getSoftwareId());
+    sb.append('|').append(software.getService() == null ? "" : software.getService().getLabel());
+    sb.append('|').append(software.getServiceUrl());
+    sb.append('|').append(software.getServiceUserid());
+    sb.append('|').append(software.getServicePassword());
+    sb.append('|').append(software.getServiceFacilityid());
+    sb.append('\n');
+    List<String> settingList = new ArrayList<String>();
+    if (software.getSoftwareSettingList() != null) {
+      for (SoftwareSetting softwareSetting : software.getSoftwareSettingList()) {
+        if (softwareSetting.getServiceOption() != null) {
+          settingList.add("softwareSetting|" + softwareSetting.getServiceOption().getOptionName()
+              + "|" + softwareSetting.getOptionValue());
+        }
+      }
+    }
+    if (testCase.getTestCaseSettingList() != null) {
+      for (TestCaseSetting testCaseSetting : testCase.getTestCaseSettingList()) {
+        if (testCaseSetting.getServiceOption() != null) {
+          settingList.add("testCaseSetting|" + testCaseSetting.getServiceOption().getOptionName()
+              + "|" + testCaseSetting.getOptionValue());
+        }
+      }
+    }
+    Collections.sort(settingList);
+    for (String setting : settingList) {
+      sb.append(setting).append('\n');
+    }
+    sb.append("patient|").append(getTime(testCase.getPatientDob()));
+    sb.append('|').append(testCase.getPatientSex());
+    sb.append('|').append(getTime(testCase.getEvalDate()));
+    sb.append('\n');
+    for (TestEvent testEvent : getSortedTestEventList(testCase)) {
+      sb.append("event|").append(getEventKey(testEvent)).append('\n');
+    }
+    return sha256(sb.toString());
+  }
+
+  private static List<TestEvent> getSortedTestEventList(TestCase testCase) {
+    if (testCase.getTestEventList() == null) {
+      return Collections.emptyList();
+    }
+    List<TestEvent> testEventList = new ArrayList<TestEvent>(testCase.getTestEventList());
+    Collections.sort(testEventList, TEST_EVENT_ORDER);
+    return testEventList;
+  }
+
+  private static String getEventKey(TestEvent testEvent) {
+    StringBuilder sb = new StringBuilder();
+    // fixed width so the key sorts by date first
+    sb.append(String.format("%020d", getTime(testEvent.getEventDate())));
+    if (testEvent.getEvent() != null) {
+      sb.append('|').append(testEvent.getEvent().getEventTypeCode());
+      sb.append('|').append(testEvent.getEvent().getEventId());
+      sb.append('|').append(testEvent.getEvent().getVaccineCvx());
+      sb.append('|').append(testEvent.getEvent().getVaccineMvx());
+    }
+    sb.append('|').append(testEvent.getConditionCode());
+    return sb.toString();
+  }
+
+  private static long getTime(Date date) {
+    return date == null ? 0 : date.getTime();
+  }
+
+  private static String sha256(String s) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
+      StringBuilder sb = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+        sb.append(Character.forDigit(b & 0xF, 16));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException nsae) {
+      // every Java platform has SHA-256
+      throw new IllegalStateException(nsae);
+    }
+  }
+}
@@ -1,12 +1,33 @@
 package org.immregistries.vfa.connect;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.immregistries.vfa.connect.model.Service;
 import org.immregistries.vfa.connect.model.Software;
 import org.immregistries.vfa.connect.model.VaccineGroup;
 
 public class ConnectFactory {
 
+  private static final List<ConnectorMetricsListener> metricsListenerList =
+      new CopyOnWriteArrayList<ConnectorMetricsListener>();
+  private static final List<ConnectorMetricsListener> metricsListenerView =
+      Collections.unmodifiableList(metricsListenerList);
+
+  /**
+   * Register a listener to be told the timings of every query made by any connector.
+   */
+  public static void addMetricsListener(ConnectorMetricsListener listener) {
+    metricsListenerList.add(listener);
+  }
+
+  public static void removeMetricsListener(ConnectorMetricsListener listener) {
+    metricsListenerList.remove(listener);
+  }
+
+  public static List<ConnectorMetricsListener> getMetricsListenerList() {
+    return metricsListenerView;
+  }
 
   public static ConnectorInterface createConnecter(Software software) throws Exception {
     return createConnecter(software, VaccineGroup.getForecastItemList());
@@ -39,6 +60,9 @@ public class ConnectFactory {
     if (software.getService() == Service.MES_VACCINE) {
       return new MesVaccinsConnector(software, forecastItemList);
     }
+    if (software.getService() == Service.SYNTHETIC) {
+      return new SyntheticConnector(software, forecastItemList);
+    }
     return null;
   }
 
@@ -0,0 +1,489 @@
+package org.immregistries.vfa.connect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.immregistries.vfa.connect.model.Service;
+
+/**
+ * Shared executors used by the connectors to run their asynchronous queries. Waits between
+ * retries are scheduled rather than parking a thread, and short steps such as parsing run on a
+ * small shared pool sized to the processors.
+ * <p>
+ * Most connectors block on the socket while a request is out, so the network calls run on a
+ * separate pool of blocking threads, {@link #DEFAULT_BLOCKING_THREADS} unless changed with
+ * {@link #setBlockingThreads}. That is the most requests that can be in flight at once, the rest
+ * queue until a thread is free. On Java 21 and later {@link #setVirtualThreads} moves those tasks
+ * to a virtual thread each instead, so tens of thousands can wait at once. How many run at once
+ * against one service can be capped with {@link #setMaxConcurrency}.
+ * <p>
+ * A blocking thread that waits in {@link #await}, for example a connector that only has a
+ * blocking queryForForecast and wraps one of the connectors here, lends its place in the pool to
+ * another thread until it is done waiting. Otherwise enough of those waiting at once would hold
+ * every thread while the work they wait on sits in the queue.
+ */
+public class ConnectorExecutor {
+
+  public static final int DEFAULT_BLOCKING_THREADS = 64;
+
+  private static volatile ScheduledExecutorService executor = null;
+  private static volatile ThreadPoolExecutor threadPool = null;
+  private static volatile ExecutorService blockingExecutor = null;
+  private static int blockingThreads = DEFAULT_BLOCKING_THREADS;
+  private static final Map<Service, ConcurrencyLimit> concurrencyMap =
+      new ConcurrentHashMap<Service, ConcurrencyLimit>();
+  private static final ThreadLocal<ThreadPoolExecutor> currentThreadPool =
+      new ThreadLocal<ThreadPoolExecutor>();
+
+  public static ScheduledExecutorService getExecutor() {
+    ScheduledExecutorService e = executor;
+    if (e == null) {
+      synchronized (ConnectorExecutor.class) {
+        if (executor == null) {
+          executor = createDefaultExecutor();
+        }
+        e = executor;
+      }
+    }
+    return e;
+  }
+
+  /**
+   * Replace the executor used by all connectors, for example with one sized and managed by the
+   * calling application. The previous executor is not shut down.
+   */
+  public static synchronized void setExecutor(ScheduledExecutorService executor) {
+    ConnectorExecutor.executor = executor;
+  }
+
+  private static ThreadPoolExecutor getThreadPool() {
+    ThreadPoolExecutor e = threadPool;
+    if (e == null) {
+      synchronized (ConnectorExecutor.class) {
+        if (threadPool == null) {
+          threadPool = createThreadPool(blockingThreads);
+        }
+        e = threadPool;
+      }
+    }
+    return e;
+  }
+
+  public static synchronized int getBlockingThreads() {
+    return blockingThreads;
+  }
+
+  /**
+   * How many platform threads run blocking network calls when virtual threads are off, which is
+   * also how many requests can be waiting on a response at once. Idle threads are let go after a
+   * minute. Tasks already handed to the previous pool finish there.
+   */
+  public static synchronized void setBlockingThreads(int blockingThreads) {
+    if (blockingThreads < 1) {
+      throw new IllegalArgumentException(
+          "Blocking threads must be at least 1, not " + blockingThreads);
+    }
+    ConnectorExecutor.blockingThreads = blockingThreads;
+    ThreadPoolExecutor previous = threadPool;
+    threadPool = null;
+    if (previous != null) {
+      previous.shutdown();
+    }
+  }
+
+  /**
+   * Run the blocking part of each query on a new virtual thread instead of on the blocking
+   * thread pool. Returns false, and leaves things as they were, when the runtime has no virtual
+   * threads. Turning it off shuts down the virtual thread executor once its tasks have finished.
+   */
+  public static synchronized boolean setVirtualThreads(boolean virtualThreads) {
+    if (!virtualThreads) {
+      ExecutorService previous = blockingExecutor;
+      blockingExecutor = null;
+      if (previous != null) {
+        previous.shutdown();
+      }
+      return true;
+    }
+    if (blockingExecutor != null) {
+      return true;
+    }
+    ExecutorService virtualExecutor = createVirtualThreadExecutor();
+    if (virtualExecutor == null) {
+      return false;
+    }
+    blockingExecutor = virtualExecutor;
+    return true;
+  }
+
+  public static boolean isVirtualThreads() {
+    return blockingExecutor != null;
+  }
+
+  /**
+   * Executors.newVirtualThreadPerTaskExecutor, looked up at run time since the connectors are
+   * built for Java 8. Null when it isn't there.
+   */
+  private static ExecutorService createVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  public static int getMaxConcurrency(Service service) {
+    ConcurrencyLimit limit = concurrencyMap.get(service);
+    return limit == null ? 0 : limit.maxConcurrency;
+  }
+
+  /**
+   * Limit how many blocking tasks for the service run at once, 0 for no limit. Tasks over the
+   * limit are queued and handed to a thread when a running task finishes, so no thread waits for
+   * a turn. Tasks already queued or running keep the limit they started with.
+   */
+  public static void setMaxConcurrency(Service service, int maxConcurrency) {
+    if (maxConcurrency <= 0) {
+      concurrencyMap.remove(service);
+    } else {
+      concurrencyMap.put(service, new ConcurrencyLimit(maxConcurrency));
+    }
+  }
+
+  /**
+   * The tasks for one service over its limit, started in the order they were queued.
+   */
+  private static class ConcurrencyLimit {
+    private final int maxConcurrency;
+    private final AtomicInteger running = new AtomicInteger();
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<Runnable>();
+
+    private ConcurrencyLimit(int maxConcurrency) {
+      this.maxConcurrency = maxConcurrency;
+    }
+
+    private void execute(Runnable task) {
+      waiting.add(task);
+      startWaiting();
+    }
+
+    private void startWaiting() {
+      while (!waiting.isEmpty()) {
+        int now = running.get();
+        if (now >= maxConcurrency) {
+          // the task running now starts the next one when it finishes
+          return;
+        }
+        if (!running.compareAndSet(now, now + 1)) {
+          continue;
+        }
+        final Runnable task = waiting.poll();
+        if (task == null) {
+          running.decrementAndGet();
+          continue;
+        }
+        try {
+          executeUnlimited(new Runnable() {
+            public void run() {
+              try {
+                task.run();
+              } finally {
+                running.decrementAndGet();
+                startWaiting();
+              }
+            }
+          });
+        } catch (RuntimeException re) {
+          running.decrementAndGet();
+          throw re;
+        }
+      }
+    }
+  }
+
+  private static ThreadPoolExecutor createThreadPool(int threads) {
+    final AtomicInteger threadCount = new AtomicInteger();
+    ThreadPoolExecutor e = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread thread =
+                new Thread(r, "forecast-connector-io-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        }) {
+      @Override
+      protected void beforeExecute(Thread t, Runnable r) {
+        currentThreadPool.set(this);
+      }
+
+      @Override
+      protected void afterExecute(Runnable r, Throwable t) {
+        currentThreadPool.remove();
+      }
+    };
+    e.allowCoreThreadTimeOut(true);
+    return e;
+  }
+
+  /**
+   * Grow or shrink the pool by the change, starting a thread for queued tasks when it grows.
+   * Threads over a smaller size finish their task and are then let go.
+   */
+  private static void resize(ThreadPoolExecutor pool, int change) {
+    synchronized (pool) {
+      int threads = pool.getCorePoolSize() + change;
+      if (change > 0) {
+        pool.setMaximumPoolSize(threads);
+        pool.setCorePoolSize(threads);
+      } else {
+        pool.setCorePoolSize(threads);
+        pool.setMaximumPoolSize(threads);
+      }
+    }
+  }
+
+  private static ScheduledExecutorService createDefaultExecutor() {
+    final AtomicInteger threadCount = new AtomicInteger();
+    ScheduledThreadPoolExecutor e = new ScheduledThreadPoolExecutor(
+        Math.max(2, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "forecast-connector-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    e.setRemoveOnCancelPolicy(true);
+    return e;
+  }
+
+  /**
+   * Run the callable on the shared executor.
+   */
+  public static <T> CompletableFuture<T> supply(Callable<T> callable) {
+    return schedule(null, callable, 0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Run a callable that blocks, on a virtual thread when those are turned on and otherwise on the
+   * blocking thread pool.
+   */
+  public static <T> CompletableFuture<T> supplyBlocking(Callable<T> callable) {
+    final CompletableFuture<T> future = new CompletableFuture<T>();
+    try {
+      executeBlocking(null, complete(future, callable));
+    } catch (Throwable t) {
+      future.completeExceptionally(t);
+    }
+    return future;
+  }
+
+  /**
+   * Run a callable that blocks while it talks to the service, on a virtual thread when those are
+   * turned on and within the concurrency limit of the service.
+   */
+  public static <T> CompletableFuture<T> supply(Service service, Callable<T> callable) {
+    return schedule(service, callable, 0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Run the callable on the shared executor once the delay has passed. No thread is held while
+   * waiting.
+   */
+  public static <T> CompletableFuture<T> schedule(final Callable<T> callable, long delay,
+      TimeUnit unit) {
+    return schedule(null, callable, delay, unit);
+  }
+
+  /**
+   * Run the callable the same way as supply with a service, once the delay has passed.
+   */
+  public static <T> CompletableFuture<T> schedule(Service service, final Callable<T> callable,
+      long delay, TimeUnit unit) {
+    final CompletableFuture<T> future = new CompletableFuture<T>();
+    try {
+      execute(service, complete(future, callable), unit.toMillis(delay));
+    } catch (Throwable t) {
+      future.completeExceptionally(t);
+    }
+    return future;
+  }
+
+  private static <T> Runnable complete(final CompletableFuture<T> future,
+      final Callable<T> callable) {
+    return new Runnable() {
+      public void run() {
+        if (future.isDone()) {
+          return;
+        }
+        try {
+          future.complete(callable.call());
+        } catch (Throwable t) {
+          future.completeExceptionally(t);
+        }
+      }
+    };
+  }
+
+  /**
+   * Run the task once the delay in milliseconds has passed. With a service it runs as a blocking
+   * task for that service, otherwise on the shared executor.
+   */
+  public static void execute(final Service service, final Runnable task, long delayMillis) {
+    if (service == null) {
+      if (delayMillis <= 0) {
+        getExecutor().execute(task);
+      } else {
+        getExecutor().schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+      }
+    } else if (delayMillis <= 0) {
+      executeBlocking(service, task);
+    } else {
+      getExecutor().schedule(new Runnable() {
+        public void run() {
+          executeBlocking(service, task);
+        }
+      }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private static void executeBlocking(Service service, Runnable task) {
+    ConcurrencyLimit limit = service == null ? null : concurrencyMap.get(service);
+    if (limit == null) {
+      executeUnlimited(task);
+    } else {
+      limit.execute(task);
+    }
+  }
+
+  private static void executeUnlimited(Runnable task) {
+    ExecutorService e = blockingExecutor;
+    if (e != null) {
+      try {
+        e.execute(task);
+        return;
+      } catch (RejectedExecutionException ree) {
+        // virtual threads were just turned off
+      }
+    }
+    while (true) {
+      ThreadPoolExecutor pool = getThreadPool();
+      try {
+        pool.execute(task);
+        return;
+      } catch (RejectedExecutionException ree) {
+        if (pool == threadPool) {
+          throw ree;
+        }
+        // the pool was just resized
+      }
+    }
+  }
+
+  /**
+   * Run the callable in the current thread, returning its result or failure as a completed future.
+   * Used for parsing steps chained after a network call.
+   */
+  public static <T> CompletableFuture<T> call(Callable<T> callable) {
+    CompletableFuture<T> future = new CompletableFuture<T>();
+    try {
+      future.complete(callable.call());
+    } catch (Throwable t) {
+      future.completeExceptionally(t);
+    }
+    return future;
+  }
+
+  /**
+   * Block until the future is done, rethrowing the original exception if it failed. This is how
+   * the blocking queryForForecast methods are implemented on top of the asynchronous ones. When
+   * called on a thread of the blocking thread pool the pool runs one more thread while this one
+   * waits.
+   */
+  public static <T> T await(CompletableFuture<T> future) throws Exception {
+    ThreadPoolExecutor pool = currentThreadPool.get();
+    if (pool == null || future.isDone()) {
+      return get(future);
+    }
+    resize(pool, 1);
+    try {
+      return get(future);
+    } finally {
+      resize(pool, -1);
+    }
+  }
+
+  private static <T> T get(CompletableFuture<T> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException ee) {
+      Throwable cause = unwrap(ee);
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw ee;
+    }
+  }
+
+  /**
+   * Wait for every future to finish and return their results in order. If any failed, the first
+   * failure is thrown after all have finished.
+   */
+  public static <T> List<T> awaitAll(List<CompletableFuture<T>> futureList) throws Exception {
+    List<T> resultList = new ArrayList<T>();
+    Exception failure = null;
+    for (CompletableFuture<T> future : futureList) {
+      try {
+        resultList.add(await(future));
+      } catch (Exception e) {
+        if (failure == null) {
+          failure = e;
+        }
+        resultList.add(null);
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    return resultList;
+  }
+
+  /**
+   * Strip the wrappers CompletableFuture adds around the exception actually thrown.
+   */
+  public static Throwable unwrap(Throwable t) {
+    while ((t instanceof CompletionException || t instanceof ExecutionException)
+        && t.getCause() != null) {
+      t = t.getCause();
+    }
+    return t;
+  }
+
+  /**
+   * Rethrow a failure from inside a completion stage so the caller of await sees it unchanged.
+   */
+  public static CompletionException fail(Exception e) {
+    return new CompletionException(e);
+  }
+}
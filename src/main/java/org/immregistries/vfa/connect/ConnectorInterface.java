@@ -1,10 +1,18 @@
 package org.immregistries.vfa.connect;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.immregistries.vfa.connect.model.ForecastActual;
 import org.immregistries.vfa.connect.model.SoftwareResult;
 import org.immregistries.vfa.connect.model.TestCase;
 
+/**
+ * Implementations are reentrant, one connector may be shared and queried from any number of
+ * threads at once. Everything that belongs to a single query is kept in that call, only
+ * configuration like the software and the code mappings is kept on the connector. Settings such
+ * as setLogText apply to queries started after they are changed.
+ */
 public interface ConnectorInterface {
   /**
    * Given a test case, query the software to receive back a list of Forecast Actual results. 
@@ -12,6 +20,33 @@ public interface ConnectorInterface {
    * @return
    */
   public List<ForecastActual> queryForForecast(TestCase testCase, SoftwareResult softwareResult) throws Exception;
+
+  /**
+   * Same as queryForForecast but returns immediately. The future fails with the same exception
+   * queryForForecast would have thrown. By default queryForForecast is run on a blocking thread of
+   * the {@link ConnectorExecutor}, the connectors in this package override it so that network
+   * calls and any waits between retries are run there without blocking the calling thread.
+   */
+  public default CompletableFuture<List<ForecastActual>> queryForForecastAsync(
+      final TestCase testCase, final SoftwareResult softwareResult) {
+    return ConnectorExecutor.supplyBlocking(() -> queryForForecast(testCase, softwareResult));
+  }
+
+  /**
+   * Query for a list of test cases at once, returning the forecasts in the same order as the test
+   * cases. Each test case is paired with the software result at the same position. Connectors
+   * that can send several patients in one request override this, otherwise the single queries
+   * are run in parallel. If any query fails the first failure is thrown once all have finished.
+   */
+  public default List<List<ForecastActual>> queryForForecastBatch(List<TestCase> testCaseList,
+      List<SoftwareResult> softwareResultList) throws Exception {
+    List<CompletableFuture<List<ForecastActual>>> futureList =
+        new ArrayList<CompletableFuture<List<ForecastActual>>>();
+    for (int i = 0; i < testCaseList.size(); i++) {
+      futureList.add(queryForForecastAsync(testCaseList.get(i), softwareResultList.get(i)));
+    }
+    return ConnectorExecutor.awaitAll(futureList);
+  }
   
   public void setLogText(boolean logText);
   
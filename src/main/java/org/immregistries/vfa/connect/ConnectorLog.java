@@ -0,0 +1,178 @@
+package org.immregistries.vfa.connect;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import org.immregistries.vfa.connect.model.SoftwareResult;
+
+/**
+ * The log text of one query. When log text is off every query shares one instance that has no
+ * writer, so nothing is allocated. Callers check the writer for null before building a line, so
+ * long messages are only put together when they will be kept.
+ * <p>
+ * When it is on the text is kept up to a maximum size. Past that only the start and the end are
+ * kept, with a line saying how much was left out between them, so a long run with log text on
+ * doesn't fill the heap with whole request and response transcripts.
+ */
+public class ConnectorLog {
+
+  private static final ConnectorLog DISABLED = new ConnectorLog();
+
+  private static volatile int defaultMaxChars = 256 * 1024;
+
+  public static int getDefaultMaxChars() {
+    return defaultMaxChars;
+  }
+
+  /**
+   * Maximum characters of log text kept for queries started after this is set.
+   */
+  public static void setDefaultMaxChars(int defaultMaxChars) {
+    ConnectorLog.defaultMaxChars = defaultMaxChars;
+  }
+
+  public static ConnectorLog create(boolean logText) {
+    return logText ? new ConnectorLog(defaultMaxChars) : DISABLED;
+  }
+
+  private final BoundedWriter writer;
+  private final PrintWriter out;
+
+  private ConnectorLog() {
+    writer = null;
+    out = null;
+  }
+
+  public ConnectorLog(int maxChars) {
+    writer = new BoundedWriter(maxChars);
+    out = new PrintWriter(writer);
+  }
+
+  public boolean isEnabled() {
+    return out != null;
+  }
+
+  /**
+   * The writer to log to, or null when log text is off.
+   */
+  public PrintWriter getWriter() {
+    return out;
+  }
+
+  /**
+   * The text logged so far, or null when log text is off.
+   */
+  public String getText() {
+    if (out == null) {
+      return null;
+    }
+    out.flush();
+    return writer.toString();
+  }
+
+  /**
+   * Closes the log and gives its text to the result. Does nothing when log text is off.
+   */
+  public void finish(SoftwareResult softwareResult) {
+    if (out != null) {
+      out.close();
+      softwareResult.setLogText(writer.toString());
+    }
+  }
+
+  /**
+   * Keeps the first half of the maximum as it is written and the last half in a ring buffer,
+   * which is only created once the first half is full.
+   */
+  private static class BoundedWriter extends Writer {
+    private static final char[] NO_TAIL = new char[0];
+
+    private final int headLimit;
+    private final int tailLimit;
+    private final StringBuilder head;
+    private char[] tail = NO_TAIL;
+    private int tailPos = 0;
+    private long tailCount = 0;
+
+    private BoundedWriter(int maxChars) {
+      headLimit = maxChars / 2;
+      tailLimit = maxChars - headLimit;
+      head = new StringBuilder(Math.min(headLimit, 1024));
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      int n = Math.min(len, headLimit - head.length());
+      if (n > 0) {
+        head.append(cbuf, off, n);
+        off += n;
+        len -= n;
+      }
+      if (len == 0 || tailLimit == 0) {
+        return;
+      }
+      if (tail == NO_TAIL) {
+        tail = new char[tailLimit];
+      }
+      tailCount += len;
+      if (len > tail.length) {
+        off += len - tail.length;
+        len = tail.length;
+      }
+      int first = Math.min(len, tail.length - tailPos);
+      System.arraycopy(cbuf, off, tail, tailPos, first);
+      System.arraycopy(cbuf, off + first, tail, 0, len - first);
+      tailPos = (tailPos + len) % tail.length;
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+      int n = Math.min(len, headLimit - head.length());
+      if (n > 0) {
+        head.append(str, off, off + n);
+        off += n;
+        len -= n;
+      }
+      if (len == 0 || tailLimit == 0) {
+        return;
+      }
+      if (tail == NO_TAIL) {
+        tail = new char[tailLimit];
+      }
+      tailCount += len;
+      if (len > tail.length) {
+        off += len - tail.length;
+        len = tail.length;
+      }
+      int first = Math.min(len, tail.length - tailPos);
+      str.getChars(off, off + first, tail, tailPos);
+      str.getChars(off + first, off + len, tail, 0);
+      tailPos = (tailPos + len) % tail.length;
+    }
+
+    @Override
+    public void flush() {
+      // nothing buffered
+    }
+
+    @Override
+    public void close() {
+      // the text stays readable
+    }
+
+    @Override
+    public String toString() {
+      synchronized (lock) {
+        if (tailCount <= tail.length) {
+          return new StringBuilder(head.length() + (int) tailCount).append(head)
+              .append(tail, 0, (int) tailCount).toString();
+        }
+        StringBuilder sb = new StringBuilder(head.length() + tail.length + 64);
+        sb.append(head);
+        sb.append("\n[... ").append(tailCount - tail.length).append(" characters left out ...]\n");
+        sb.append(tail, tailPos, tail.length - tailPos);
+        sb.append(tail, 0, tailPos);
+        return sb.toString();
+      }
+    }
+  }
+}
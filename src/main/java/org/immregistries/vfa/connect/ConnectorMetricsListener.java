@@ -0,0 +1,58 @@
+package org.immregistries.vfa.connect;
+
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.Software;
+
+/**
+ * Told how long each phase of every query took. Listeners are registered with
+ * {@link ConnectFactory#addMetricsListener} and are called from whichever thread ran the phase,
+ * often many at once, so they must be thread safe and quick. A listener that throws is ignored.
+ */
+public interface ConnectorMetricsListener {
+
+  public enum Phase {
+                     /**
+                      * Building the request from the test case.
+                      */
+                     BUILD_REQUEST,
+                     /**
+                      * Waiting for a connection to the endpoint and opening it, close to nothing
+                      * when a kept alive connection is reused.
+                      */
+                     CONNECT,
+                     /**
+                      * Writing the request body. A streamed request is built while it is sent.
+                      */
+                     SEND,
+                     /**
+                      * From the end of the request until the response status arrives, the time
+                      * the engine spent on it.
+                      */
+                     FIRST_BYTE,
+                     /**
+                      * Reading the response body. A streamed response is parsed while it is
+                      * received.
+                      */
+                     RECEIVE,
+                     /**
+                      * The whole exchange, for connectors whose SOAP client can't be split into
+                      * connect, send and receive.
+                      */
+                     EXCHANGE,
+                     /**
+                      * Reading the forecasts out of the response.
+                      */
+                     PARSE,
+                     /**
+                      * Waiting before asking again, for IIS while the VXU is processed.
+                      */
+                     RETRY_WAIT
+  }
+
+  public void phaseTimed(Service service, Software software, Phase phase, long nanos);
+
+  /**
+   * Called once at the end of each query with the time from start to finish.
+   */
+  public void queryFinished(Service service, Software software, long nanos, boolean success);
+}
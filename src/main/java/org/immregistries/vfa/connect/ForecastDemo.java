@@ -1,6 +1,5 @@
 package org.immregistries.vfa.connect;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -11,9 +10,9 @@ import org.immregistries.vfa.connect.model.SoftwareResult;
 import org.immregistries.vfa.connect.model.TestCase;
 import org.immregistries.vfa.connect.model.TestEvent;
 import org.immregistries.vfa.connect.model.VaccineGroup;
+import org.immregistries.vfa.connect.util.DateCodec;
 
 public class ForecastDemo {
-  private static SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
 
   public static void main(String[] args) throws Exception {
     String serviceUrl = "http://tchforecasttester.org/fv/forecast";
@@ -24,9 +23,9 @@ public class ForecastDemo {
     // patientDob=04/01/2006 patientSex=F vaccine08=04/01/2006
 
     TestCase testCase = new TestCase();
-    testCase.setEvalDate(sdf.parse("07/12/2011"));
+    testCase.setEvalDate(DateCodec.parseUsDate("07/12/2011"));
     testCase.setPatientSex("F");
-    testCase.setPatientDob(sdf.parse("04/01/2006"));
+    testCase.setPatientDob(DateCodec.parseUsDate("04/01/2006"));
     List<TestEvent> testEventList = new ArrayList<TestEvent>();
     testCase.setTestEventList(testEventList);
 
@@ -40,14 +39,14 @@ public class ForecastDemo {
         } else if (key.equals("serviceUrl")) {
           serviceUrl = value;
         } else if (key.equals("evalDate")) {
-          testCase.setEvalDate(sdf.parse(value));
+          testCase.setEvalDate(DateCodec.parseUsDate(value));
         } else if (key.equals("patientDob")) {
-          testCase.setPatientDob(sdf.parse(value));
+          testCase.setPatientDob(DateCodec.parseUsDate(value));
         } else if (key.equals("patientSex")) {
           testCase.setPatientSex(value);
         } else if (key.startsWith("vaccine")) {
           int vaccineId = Integer.parseInt(key.substring("vaccine".length()));
-          testEventList.add(new TestEvent(vaccineId, sdf.parse(value)));
+          testEventList.add(new TestEvent(vaccineId, DateCodec.parseUsDate(value)));
         }
       }
     }
@@ -95,7 +94,7 @@ public class ForecastDemo {
     if (date == null) {
       return left("", length);
     }
-    return left(sdf.format(date), length);
+    return left(DateCodec.formatUsDate(date), length);
   }
 
   private static String left(String text, int length) {
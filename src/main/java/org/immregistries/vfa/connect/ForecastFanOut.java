@@ -0,0 +1,347 @@
+package org.immregistries.vfa.connect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.immregistries.vfa.connect.model.ForecastActual;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.SoftwareResult;
+import org.immregistries.vfa.connect.model.SoftwareResultStatus;
+import org.immregistries.vfa.connect.model.TestCase;
+import org.immregistries.vfa.connect.model.TestEvent;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+
+/**
+ * Forecasts one test case with several engines at once so the results can be compared. Every
+ * engine is queried at the same time, so the whole run takes as long as the slowest engine rather
+ * than all of them added together. Each engine has a deadline. An engine that has not answered by
+ * then is reported as timed out and the results from the others are still returned.
+ * <p>
+ * Each engine is given its own copy of the test case, so the evaluations it adds to the test
+ * events are kept apart from those of the other engines. When an engine times out its query is
+ * cancelled and the result holds fresh copies, since the engine may still be writing to the ones
+ * it was given. The deadlines are kept by a timer thread of their own, so they fire on time
+ * however busy the connector threads are.
+ */
+public class ForecastFanOut {
+
+  public static final long DEFAULT_DEADLINE_MILLIS = 60 * 1000;
+
+  public enum Status {
+                      OK,
+                      FAILED,
+                      TIMED_OUT
+  }
+
+  /**
+   * What one engine returned.
+   */
+  public static class EngineResult {
+    private final Software software;
+    private final TestCase testCase;
+    private final SoftwareResult softwareResult;
+    private final Status status;
+    private final List<ForecastActual> forecastActualList;
+    private final Throwable failure;
+    private final long elapsedMillis;
+
+    EngineResult(Software software, TestCase testCase, SoftwareResult softwareResult,
+        Status status, List<ForecastActual> forecastActualList, Throwable failure,
+        long elapsedMillis) {
+      this.software = software;
+      this.testCase = testCase;
+      this.softwareResult = softwareResult;
+      this.status = status;
+      this.forecastActualList = forecastActualList;
+      this.failure = failure;
+      this.elapsedMillis = elapsedMillis;
+    }
+
+    public Software getSoftware() {
+      return software;
+    }
+
+    /**
+     * The copy of the test case sent to this engine, holding its evaluations.
+     */
+    public TestCase getTestCase() {
+      return testCase;
+    }
+
+    public SoftwareResult getSoftwareResult() {
+      return softwareResult;
+    }
+
+    public Status getStatus() {
+      return status;
+    }
+
+    public boolean isOk() {
+      return status == Status.OK;
+    }
+
+    /**
+     * The forecasts, or an empty list if the engine failed or timed out.
+     */
+    public List<ForecastActual> getForecastActualList() {
+      return forecastActualList;
+    }
+
+    public Throwable getFailure() {
+      return failure;
+    }
+
+    public long getElapsedMillis() {
+      return elapsedMillis;
+    }
+  }
+
+  /**
+   * The results of every engine in a run, in the order the software was given.
+   */
+  public static class Result {
+    private final TestCase testCase;
+    private final List<EngineResult> engineResultList;
+    private final Map<Software, EngineResult> engineResultMap;
+    private final long elapsedMillis;
+
+    Result(TestCase testCase, List<EngineResult> engineResultList, long elapsedMillis) {
+      this.testCase = testCase;
+      this.engineResultList = Collections.unmodifiableList(engineResultList);
+      Map<Software, EngineResult> map = new IdentityHashMap<Software, EngineResult>();
+      for (EngineResult engineResult : engineResultList) {
+        map.put(engineResult.getSoftware(), engineResult);
+      }
+      this.engineResultMap = Collections.unmodifiableMap(map);
+      this.elapsedMillis = elapsedMillis;
+    }
+
+    public TestCase getTestCase() {
+      return testCase;
+    }
+
+    public List<EngineResult> getEngineResultList() {
+      return engineResultList;
+    }
+
+    /**
+     * Keyed by the Software objects that were passed in. Software with no id compare as equal, so
+     * the map goes by identity.
+     */
+    public Map<Software, EngineResult> getEngineResultMap() {
+      return engineResultMap;
+    }
+
+    public EngineResult getEngineResult(Software software) {
+      return engineResultMap.get(software);
+    }
+
+    /**
+     * The forecasts from the engine, or null if it was not part of the run.
+     */
+    public List<ForecastActual> getForecastActualList(Software software) {
+      EngineResult engineResult = engineResultMap.get(software);
+      return engineResult == null ? null : engineResult.getForecastActualList();
+    }
+
+    /**
+     * True if every engine returned forecasts.
+     */
+    public boolean isComplete() {
+      for (EngineResult engineResult : engineResultList) {
+        if (!engineResult.isOk()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    public List<EngineResult> getEngineResultList(Status status) {
+      List<EngineResult> list = new ArrayList<EngineResult>();
+      for (EngineResult engineResult : engineResultList) {
+        if (engineResult.getStatus() == status) {
+          list.add(engineResult);
+        }
+      }
+      return list;
+    }
+
+    public long getElapsedMillis() {
+      return elapsedMillis;
+    }
+  }
+
+  private final List<VaccineGroup> forecastItemList;
+  private final Map<Software, Long> deadlineMap =
+      Collections.synchronizedMap(new IdentityHashMap<Software, Long>());
+  private volatile long defaultDeadlineMillis = DEFAULT_DEADLINE_MILLIS;
+  private volatile boolean logText = false;
+
+  public ForecastFanOut() {
+    this(VaccineGroup.getForecastItemList());
+  }
+
+  public ForecastFanOut(List<VaccineGroup> forecastItemList) {
+    this.forecastItemList = forecastItemList;
+  }
+
+  public long getDefaultDeadlineMillis() {
+    return defaultDeadlineMillis;
+  }
+
+  public void setDefaultDeadlineMillis(long defaultDeadlineMillis) {
+    this.defaultDeadlineMillis = defaultDeadlineMillis;
+  }
+
+  /**
+   * Give one engine a deadline other than the default.
+   */
+  public void setDeadlineMillis(Software software, long deadlineMillis) {
+    deadlineMap.put(software, deadlineMillis);
+  }
+
+  public long getDeadlineMillis(Software software) {
+    Long deadlineMillis = deadlineMap.get(software);
+    return deadlineMillis == null ? defaultDeadlineMillis : deadlineMillis;
+  }
+
+  public boolean isLogText() {
+    return logText;
+  }
+
+  public void setLogText(boolean logText) {
+    this.logText = logText;
+  }
+
+  /**
+   * Query every engine and wait until each has answered or reached its deadline.
+   */
+  public Result run(TestCase testCase, List<Software> softwareList) throws Exception {
+    return ConnectorExecutor.await(runAsync(testCase, softwareList));
+  }
+
+  /**
+   * Same as run but returns immediately. The future always completes normally, failures and
+   * timeouts are reported in the result.
+   */
+  public CompletableFuture<Result> runAsync(final TestCase testCase, List<Software> softwareList) {
+    final long start = System.currentTimeMillis();
+    final List<CompletableFuture<EngineResult>> futureList =
+        new ArrayList<CompletableFuture<EngineResult>>(softwareList.size());
+    for (Software software : softwareList) {
+      futureList.add(query(software, testCase));
+    }
+    return CompletableFuture.allOf(futureList.toArray(new CompletableFuture<?>[0]))
+        .thenApply(v -> {
+          List<EngineResult> engineResultList = new ArrayList<EngineResult>(futureList.size());
+          for (CompletableFuture<EngineResult> future : futureList) {
+            engineResultList.add(future.join());
+          }
+          return new Result(testCase, engineResultList, System.currentTimeMillis() - start);
+        });
+  }
+
+  private CompletableFuture<EngineResult> query(final Software software,
+      final TestCase testCase) {
+    final long start = System.currentTimeMillis();
+    final TestCase engineTestCase = copy(testCase);
+    final SoftwareResult softwareResult = new SoftwareResult();
+    softwareResult.setSoftware(software);
+    softwareResult.setTestCase(engineTestCase);
+    softwareResult.setRunDate(new Date());
+    final CompletableFuture<EngineResult> engineFuture = new CompletableFuture<EngineResult>();
+
+    final CompletableFuture<List<ForecastActual>> queryFuture;
+    try {
+      ConnectorInterface connector = ConnectFactory.createConnecter(software, forecastItemList);
+      if (connector == null) {
+        throw new Exception("No connector for service " + software.getService());
+      }
+      connector.setLogText(logText);
+      queryFuture = connector.queryForForecastAsync(engineTestCase, softwareResult);
+    } catch (Exception e) {
+      softwareResult.setSoftwareResultStatus(SoftwareResultStatus.PROBLEM);
+      engineFuture.complete(new EngineResult(software, engineTestCase, softwareResult,
+          Status.FAILED, Collections.<ForecastActual> emptyList(), e,
+          System.currentTimeMillis() - start));
+      return engineFuture;
+    }
+
+    final long deadlineMillis = getDeadlineMillis(software);
+    final ScheduledFuture<?> timer = DeadlineTimer.EXECUTOR.schedule(new Runnable() {
+      public void run() {
+        if (engineFuture.isDone()) {
+          return;
+        }
+        SoftwareResult timedOutResult = new SoftwareResult();
+        timedOutResult.setSoftware(software);
+        timedOutResult.setRunDate(softwareResult.getRunDate());
+        timedOutResult.setSoftwareResultStatus(SoftwareResultStatus.PROBLEM);
+        TestCase timedOutTestCase = copy(testCase);
+        timedOutResult.setTestCase(timedOutTestCase);
+        if (engineFuture.complete(new EngineResult(software, timedOutTestCase, timedOutResult,
+            Status.TIMED_OUT, Collections.<ForecastActual> emptyList(), null,
+            System.currentTimeMillis() - start))) {
+          queryFuture.cancel(true);
+        }
+      }
+    }, deadlineMillis, TimeUnit.MILLISECONDS);
+    queryFuture.whenComplete((list, failure) -> {
+      timer.cancel(false);
+      if (failure == null) {
+        engineFuture.complete(new EngineResult(software, engineTestCase, softwareResult,
+            Status.OK, list, null, System.currentTimeMillis() - start));
+      } else {
+        engineFuture.complete(new EngineResult(software, engineTestCase, softwareResult,
+            Status.FAILED, Collections.<ForecastActual> emptyList(),
+            ConnectorExecutor.unwrap(failure), System.currentTimeMillis() - start));
+      }
+    });
+    return engineFuture;
+  }
+
+  private static class DeadlineTimer {
+    private static final ScheduledThreadPoolExecutor EXECUTOR = createExecutor();
+
+    private static ScheduledThreadPoolExecutor createExecutor() {
+      ScheduledThreadPoolExecutor e = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "forecast-fan-out-deadline");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      e.setRemoveOnCancelPolicy(true);
+      return e;
+    }
+  }
+
+  /**
+   * A copy of the test case with its own test events, keeping the settings and conditions the
+   * engines read.
+   */
+  private static TestCase copy(TestCase testCase) {
+    TestCase copy = new TestCase(testCase);
+    copy.setTestCaseId(testCase.getTestCaseId());
+    copy.setTestCaseSettingList(testCase.getTestCaseSettingList());
+    if (testCase.getTestEventList() != null) {
+      for (int i = 0; i < testCase.getTestEventList().size(); i++) {
+        TestEvent testEvent = testCase.getTestEventList().get(i);
+        TestEvent testEventCopy = copy.getTestEventList().get(i);
+        testEventCopy.setTestEventId(testEvent.getTestEventId());
+        testEventCopy.setCondition(testEvent.getCondition());
+        testEventCopy.setConditionCode(testEvent.getConditionCode());
+        testEventCopy.setScreenId(testEvent.getScreenId());
+      }
+    }
+    return copy;
+  }
+}
@@ -0,0 +1,140 @@
+package org.immregistries.vfa.connect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.util.LatencyHistogram;
+
+/**
+ * Keeps a {@link LatencyHistogram} of every phase and of whole queries for each engine, so
+ * p50/p95/p99 can be read at any time while queries are running. Engines are told apart by the
+ * software label, or by service and url when there is no label.
+ */
+public class HistogramMetricsListener implements ConnectorMetricsListener {
+
+  /**
+   * The histograms of one engine.
+   */
+  public static class EngineMetrics {
+    private final String engineName;
+    private final Map<Phase, LatencyHistogram> phaseMap;
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final LongAdder failureCount = new LongAdder();
+    private final long startNanos = System.nanoTime();
+
+    EngineMetrics(String engineName) {
+      this.engineName = engineName;
+      Map<Phase, LatencyHistogram> map = new EnumMap<Phase, LatencyHistogram>(Phase.class);
+      for (Phase phase : Phase.values()) {
+        map.put(phase, new LatencyHistogram());
+      }
+      phaseMap = Collections.unmodifiableMap(map);
+    }
+
+    public String getEngineName() {
+      return engineName;
+    }
+
+    public LatencyHistogram getHistogram(Phase phase) {
+      return phaseMap.get(phase);
+    }
+
+    /**
+     * Whole queries, from start to finish, whether they succeeded or not.
+     */
+    public LatencyHistogram getTotal() {
+      return total;
+    }
+
+    public long getFailureCount() {
+      return failureCount.sum();
+    }
+
+    /**
+     * Queries finished per second since the first query to this engine started.
+     */
+    public double getThroughput() {
+      double seconds = (System.nanoTime() - startNanos) / 1e9;
+      return seconds <= 0 ? 0 : total.getCount() / seconds;
+    }
+  }
+
+  private final ConcurrentMap<String, EngineMetrics> engineMetricsMap =
+      new ConcurrentHashMap<String, EngineMetrics>();
+
+  public void phaseTimed(Service service, Software software, Phase phase, long nanos) {
+    getEngineMetrics(service, software).getHistogram(phase).record(nanos);
+  }
+
+  public void queryFinished(Service service, Software software, long nanos, boolean success) {
+    EngineMetrics engineMetrics = getEngineMetrics(service, software);
+    engineMetrics.total.record(nanos);
+    if (!success) {
+      engineMetrics.failureCount.increment();
+    }
+  }
+
+  public EngineMetrics getEngineMetrics(Service service, Software software) {
+    String engineName = getEngineName(service, software);
+    EngineMetrics engineMetrics = engineMetricsMap.get(engineName);
+    if (engineMetrics == null) {
+      engineMetricsMap.putIfAbsent(engineName, new EngineMetrics(engineName));
+      engineMetrics = engineMetricsMap.get(engineName);
+    }
+    return engineMetrics;
+  }
+
+  public List<EngineMetrics> getEngineMetricsList() {
+    List<EngineMetrics> list = new ArrayList<EngineMetrics>(engineMetricsMap.values());
+    Collections.sort(list, (a, b) -> a.getEngineName().compareTo(b.getEngineName()));
+    return list;
+  }
+
+  public static String getEngineName(Service service, Software software) {
+    if (software != null && software.getLabel() != null && software.getLabel().length() > 0) {
+      return software.getLabel();
+    }
+    String name = service == null ? "Unknown" : service.getLabel();
+    if (software != null && software.getServiceUrl() != null) {
+      name += " " + software.getServiceUrl();
+    }
+    return name;
+  }
+
+  /**
+   * A table of count, p50, p95, p99 and max in milliseconds for each engine and phase that has
+   * been timed.
+   */
+  public String getReport() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("%-40s %-14s %8s %10s %10s %10s %10s%n", "Engine", "Phase", "Count",
+        "p50 ms", "p95 ms", "p99 ms", "max ms"));
+    for (EngineMetrics engineMetrics : getEngineMetricsList()) {
+      appendLine(sb, engineMetrics.getEngineName(), "TOTAL", engineMetrics.getTotal());
+      for (Phase phase : Phase.values()) {
+        appendLine(sb, engineMetrics.getEngineName(), phase.name(), engineMetrics.getHistogram(phase));
+      }
+      sb.append(String.format("%-40s %-14s %8d failed, %.1f queries/s%n",
+          engineMetrics.getEngineName(), "", engineMetrics.getFailureCount(),
+          engineMetrics.getThroughput()));
+    }
+    return sb.toString();
+  }
+
+  private static void appendLine(StringBuilder sb, String engineName, String phase,
+      LatencyHistogram histogram) {
+    if (histogram.getCount() == 0) {
+      return;
+    }
+    sb.append(String.format("%-40s %-14s %8d %10.2f %10.2f %10.2f %10.2f%n", engineName, phase,
+        histogram.getCount(), histogram.getPercentile(50) / 1e6, histogram.getPercentile(95) / 1e6,
+        histogram.getPercentile(99) / 1e6, histogram.getMax() / 1e6));
+  }
+}
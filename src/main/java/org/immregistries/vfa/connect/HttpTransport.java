@@ -0,0 +1,544 @@
+package org.immregistries.vfa.connect;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.immregistries.vfa.connect.ConnectorMetricsListener.Phase;
+
+/**
+ * HTTP transport shared by the connectors. There is one transport per endpoint (protocol, host
+ * and port) which applies connect and read timeouts and limits the number of connections open to
+ * that endpoint at once.
+ *
+ * Connections are reused through the keep-alive cache of HttpURLConnection: every response body
+ * is read to the end and closed, never disconnected, so the socket and its TLS session go back to
+ * the cache for the next request to the same endpoint. The cache closes sockets that have been
+ * idle longer than the keep-alive timeout.
+ *
+ * When a {@link ResponseStore} is set every response is recorded to it, or in replay mode read
+ * from it instead of from the network.
+ *
+ * Requests sent for a query that is being timed report the connect, send, first byte and receive
+ * phases to its {@link QueryMetrics}. Connect includes waiting for one of the endpoint's
+ * connections. The bytes sent and received are counted for it too. Replayed responses report no
+ * phases.
+ */
+public class HttpTransport {
+
+  public static final String CONTENT_TYPE = "Content-Type";
+
+  private static final int CHUNK_SIZE = 8192;
+
+  private static volatile int defaultConnectTimeout = 15 * 1000;
+  private static volatile int defaultReadTimeout = 120 * 1000;
+  private static volatile int defaultMaxConnections = 20;
+
+  private static final Map<String, HttpTransport> transportMap =
+      new ConcurrentHashMap<String, HttpTransport>();
+
+  private static volatile ResponseStore responseStore = null;
+
+  public static ResponseStore getResponseStore() {
+    return responseStore;
+  }
+
+  /**
+   * Records responses to the store or replays them from it, depending on its mode, for every
+   * endpoint. Null goes back to only using the network.
+   */
+  public static void setResponseStore(ResponseStore responseStore) {
+    HttpTransport.responseStore = responseStore;
+  }
+
+  public static int getDefaultConnectTimeout() {
+    return defaultConnectTimeout;
+  }
+
+  /**
+   * Connect timeout in milliseconds for endpoints used after this is set.
+   */
+  public static void setDefaultConnectTimeout(int defaultConnectTimeout) {
+    HttpTransport.defaultConnectTimeout = defaultConnectTimeout;
+  }
+
+  public static int getDefaultReadTimeout() {
+    return defaultReadTimeout;
+  }
+
+  /**
+   * Read timeout in milliseconds for endpoints used after this is set.
+   */
+  public static void setDefaultReadTimeout(int defaultReadTimeout) {
+    HttpTransport.defaultReadTimeout = defaultReadTimeout;
+  }
+
+  public static int getDefaultMaxConnections() {
+    return defaultMaxConnections;
+  }
+
+  /**
+   * Connection limit for endpoints used after this is set. See setMaxConnections.
+   */
+  public static void setDefaultMaxConnections(int defaultMaxConnections) {
+    HttpTransport.defaultMaxConnections = defaultMaxConnections;
+  }
+
+  /**
+   * Returns the transport for the endpoint the url points to, creating it on first use.
+   */
+  public static HttpTransport getTransport(String url) throws IOException {
+    String endpoint = getEndpoint(new URL(url));
+    HttpTransport transport = transportMap.get(endpoint);
+    if (transport == null) {
+      transportMap.putIfAbsent(endpoint, new HttpTransport(endpoint));
+      transport = transportMap.get(endpoint);
+    }
+    return transport;
+  }
+
+  private static String getEndpoint(URL url) {
+    int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+    return url.getProtocol().toLowerCase() + "://" + url.getHost().toLowerCase() + ":" + port;
+  }
+
+  private String endpoint;
+  private volatile int connectTimeout = defaultConnectTimeout;
+  private volatile int readTimeout = defaultReadTimeout;
+  private volatile int maxConnections = defaultMaxConnections;
+  private Semaphore connectionPermits = new Semaphore(defaultMaxConnections);
+  // permits to drop as connections are released, after the limit was lowered while they were busy
+  private final AtomicInteger permitsOwed = new AtomicInteger();
+
+  private HttpTransport(String endpoint) {
+    this.endpoint = endpoint;
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  public int getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  public void setConnectTimeout(int connectTimeout) {
+    this.connectTimeout = connectTimeout;
+  }
+
+  public int getReadTimeout() {
+    return readTimeout;
+  }
+
+  public void setReadTimeout(int readTimeout) {
+    this.readTimeout = readTimeout;
+  }
+
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  /**
+   * Limits how many requests can be open to the endpoint at once. This does not change how many
+   * idle connections the keep-alive cache holds on to, which is the http.maxConnections system
+   * property (5 by default) and is read once when the JVM first uses HTTP. When the limit is set
+   * higher than that, set http.maxConnections to match at startup, for example
+   * -Dhttp.maxConnections=20, or the connections above it are closed after each request instead
+   * of being reused.
+   * <p>
+   * Lowering the limit doesn't wait for busy connections. Those over the new limit are let go as
+   * their requests finish.
+   */
+  public synchronized void setMaxConnections(int maxConnections) {
+    int change = maxConnections - this.maxConnections;
+    while (change > 0) {
+      int owed = permitsOwed.get();
+      if (owed == 0) {
+        connectionPermits.release(change);
+        break;
+      }
+      int paid = Math.min(owed, change);
+      if (permitsOwed.compareAndSet(owed, owed - paid)) {
+        change -= paid;
+      }
+    }
+    while (change < 0 && connectionPermits.tryAcquire()) {
+      change++;
+    }
+    if (change < 0) {
+      permitsOwed.addAndGet(-change);
+    }
+    this.maxConnections = maxConnections;
+  }
+
+  public Response get(String url, Map<String, String> headers) throws IOException {
+    return send("GET", url, headers, null, null);
+  }
+
+  public Response post(String url, Map<String, String> headers, String body) throws IOException {
+    return send("POST", url, headers, body.getBytes("UTF-8"), null);
+  }
+
+  /**
+   * Same as post but a response store finds the response by the request key given instead of by
+   * the body. Used when the body changes every time the same question is asked, for example
+   * because it carries message ids or timestamps.
+   */
+  public Response post(String url, Map<String, String> headers, String body, String requestKey)
+      throws IOException {
+    return send("POST", url, headers, body.getBytes("UTF-8"), requestKey);
+  }
+
+  /**
+   * Writes a request body straight to the connection.
+   */
+  public interface RequestWriter {
+    public void write(OutputStream out) throws Exception;
+  }
+
+  /**
+   * Reads the body of a successful response straight from the connection.
+   */
+  public interface ResponseReader<T> {
+    public T read(InputStream in) throws Exception;
+  }
+
+  /**
+   * Posts a body of unknown length with chunked transfer encoding and hands the response body to
+   * the reader as it arrives, so neither is held in memory here. Whatever the reader leaves unread
+   * is drained so the connection can be reused. An error status fails the same way
+   * Response.checkStatus does. While a response store is set both are held in memory so they can
+   * be recorded or replayed.
+   */
+  public <T> T post(String url, Map<String, String> headers, RequestWriter requestWriter,
+      ResponseReader<T> responseReader) throws Exception {
+    return post(url, headers, requestWriter, responseReader, null);
+  }
+
+  /**
+   * Same as the streaming post but a response store finds the response by the request key given
+   * instead of by the body.
+   */
+  public <T> T post(String url, Map<String, String> headers, RequestWriter requestWriter,
+      ResponseReader<T> responseReader, String requestKey) throws Exception {
+    if (responseStore != null) {
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      requestWriter.write(body);
+      Response response = send("POST", url, headers, body.toByteArray(), requestKey).checkStatus();
+      return responseReader.read(new ByteArrayInputStream(response.getBodyBytes()));
+    }
+    QueryMetrics metrics = QueryMetrics.current();
+    long phaseStart = metrics.begin();
+    acquireConnection();
+    try {
+      HttpURLConnection urlConn = openConnection("POST", url, headers);
+      urlConn.setDoOutput(true);
+      urlConn.setChunkedStreamingMode(CHUNK_SIZE);
+      urlConn.connect();
+      phaseStart = metrics.end(Phase.CONNECT, phaseStart);
+      CountingOutputStream out = new CountingOutputStream(urlConn.getOutputStream());
+      try {
+        requestWriter.write(out);
+      } finally {
+        out.close();
+      }
+      phaseStart = metrics.end(Phase.SEND, phaseStart);
+      int status = urlConn.getResponseCode();
+      phaseStart = metrics.end(Phase.FIRST_BYTE, phaseStart);
+      if (status >= 400) {
+        readFully(urlConn.getErrorStream());
+        throw new IOException("Server returned HTTP response code: " + status + " for URL: " + url);
+      }
+      CountingInputStream in = new CountingInputStream(urlConn.getInputStream());
+      try {
+        return responseReader.read(in);
+      } finally {
+        drain(in);
+        metrics.end(Phase.RECEIVE, phaseStart);
+        metrics.addBytes(out.count, in.count);
+      }
+    } finally {
+      releaseConnection();
+    }
+  }
+
+  private void acquireConnection() throws IOException {
+    try {
+      connectionPermits.acquire();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for a connection to " + endpoint, ie);
+    }
+  }
+
+  private void releaseConnection() {
+    int owed;
+    while ((owed = permitsOwed.get()) > 0) {
+      if (permitsOwed.compareAndSet(owed, owed - 1)) {
+        return;
+      }
+    }
+    connectionPermits.release();
+  }
+
+  private HttpURLConnection openConnection(String method, String url, Map<String, String> headers)
+      throws IOException {
+    HttpURLConnection urlConn = (HttpURLConnection) new URL(url).openConnection();
+    urlConn.setConnectTimeout(connectTimeout);
+    urlConn.setReadTimeout(readTimeout);
+    urlConn.setUseCaches(false);
+    urlConn.setDoInput(true);
+    urlConn.setRequestMethod(method);
+    if (headers != null) {
+      for (Map.Entry<String, String> header : headers.entrySet()) {
+        urlConn.setRequestProperty(header.getKey(), header.getValue());
+      }
+    }
+    return urlConn;
+  }
+
+  private Response send(String method, String url, Map<String, String> headers, byte[] body,
+      String requestKey) throws IOException {
+    ResponseStore store = responseStore;
+    if (store != null && requestKey == null) {
+      requestKey = createRequestKey(method, url, body);
+    }
+    if (store != null && store.getMode() == ResponseStore.Mode.REPLAY) {
+      Response response = store.get(requestKey);
+      if (response == null) {
+        throw new IOException(
+            "No recorded response for " + method + " " + url + " in " + store.getFile());
+      }
+      return response;
+    }
+    Response response = send(method, url, headers, body);
+    if (store != null) {
+      store.put(requestKey, response);
+    }
+    return response;
+  }
+
+  private static String createRequestKey(String method, String url, byte[] body) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(method).append(' ').append(url).append('\n');
+    if (body != null) {
+      sb.append(new String(body, StandardCharsets.UTF_8));
+    }
+    return sb.toString();
+  }
+
+  private Response send(String method, String url, Map<String, String> headers, byte[] body)
+      throws IOException {
+    QueryMetrics metrics = QueryMetrics.current();
+    long phaseStart = metrics.begin();
+    acquireConnection();
+    try {
+      HttpURLConnection urlConn = openConnection(method, url, headers);
+      if (body != null) {
+        urlConn.setDoOutput(true);
+        urlConn.setFixedLengthStreamingMode(body.length);
+      }
+      urlConn.connect();
+      phaseStart = metrics.end(Phase.CONNECT, phaseStart);
+      if (body != null) {
+        OutputStream out = urlConn.getOutputStream();
+        try {
+          out.write(body);
+        } finally {
+          out.close();
+        }
+        phaseStart = metrics.end(Phase.SEND, phaseStart);
+      }
+      int status = urlConn.getResponseCode();
+      phaseStart = metrics.end(Phase.FIRST_BYTE, phaseStart);
+      InputStream in = status >= 400 ? urlConn.getErrorStream() : urlConn.getInputStream();
+      byte[] bodyBytes = readFully(in);
+      metrics.end(Phase.RECEIVE, phaseStart);
+      metrics.addBytes(body == null ? 0 : body.length, bodyBytes.length);
+      return new Response(url, status, urlConn.getContentType(), bodyBytes);
+    } finally {
+      releaseConnection();
+    }
+  }
+
+  /**
+   * Reads the stream to the end and closes it, which hands the connection back to the keep-alive
+   * cache.
+   */
+  private static byte[] readFully(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    if (in == null) {
+      return out.toByteArray();
+    }
+    try {
+      byte[] buffer = new byte[8192];
+      int count;
+      while ((count = in.read(buffer)) != -1) {
+        out.write(buffer, 0, count);
+      }
+    } finally {
+      in.close();
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Reads and discards the rest of the stream, then closes it. A failure here only means the
+   * connection won't be reused.
+   */
+  private static void drain(InputStream in) {
+    try {
+      try {
+        byte[] buffer = new byte[8192];
+        while (in.read(buffer) != -1) {
+          // discard
+        }
+      } finally {
+        in.close();
+      }
+    } catch (IOException ioe) {
+      // connection is closed instead of reused
+    }
+  }
+
+  private static class CountingOutputStream extends FilterOutputStream {
+    private long count = 0;
+
+    private CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+  }
+
+  private static class CountingInputStream extends FilterInputStream {
+    private long count = 0;
+
+    private CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = in.read();
+      if (b != -1) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = in.read(b, off, len);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = in.skip(n);
+      count += skipped;
+      return skipped;
+    }
+  }
+
+  public static Map<String, String> headers(String... namesAndValues) {
+    Map<String, String> headers = new LinkedHashMap<String, String>();
+    for (int i = 0; i + 1 < namesAndValues.length; i += 2) {
+      headers.put(namesAndValues[i], namesAndValues[i + 1]);
+    }
+    return headers;
+  }
+
+  public static class Response {
+    private String url;
+    private int status;
+    private String contentType;
+    private byte[] bodyBytes;
+
+    public Response(String url, int status, String contentType, byte[] bodyBytes) {
+      this.url = url;
+      this.status = status;
+      this.contentType = contentType;
+      this.bodyBytes = bodyBytes;
+    }
+
+    public String getUrl() {
+      return url;
+    }
+
+    public int getStatus() {
+      return status;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    public boolean isOk() {
+      return status < 400;
+    }
+
+    public byte[] getBodyBytes() {
+      return bodyBytes;
+    }
+
+    /**
+     * Body decoded with the charset given in the content type, or UTF-8 if none was given.
+     */
+    public String getBody() {
+      String charset = "UTF-8";
+      if (contentType != null) {
+        int pos = contentType.toLowerCase().indexOf("charset=");
+        if (pos != -1) {
+          charset = contentType.substring(pos + 8).trim();
+          int end = charset.indexOf(';');
+          if (end != -1) {
+            charset = charset.substring(0, end).trim();
+          }
+          charset = charset.replace("\"", "");
+        }
+      }
+      try {
+        return new String(bodyBytes, charset);
+      } catch (UnsupportedEncodingException uee) {
+        return new String(bodyBytes);
+      }
+    }
+
+    /**
+     * Fails the same way HttpURLConnection.getInputStream does when the server returned an error
+     * status.
+     */
+    public Response checkStatus() throws IOException {
+      if (!isOk()) {
+        throw new IOException("Server returned HTTP response code: " + status + " for URL: " + url);
+      }
+      return this;
+    }
+  }
+}
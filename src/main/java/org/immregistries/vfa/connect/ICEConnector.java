@@ -1,51 +1,55 @@
 package org.immregistries.vfa.connect;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
-import java.io.DataOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLConnection;
+import java.io.Writer;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
-import org.apache.axis.encoding.Base64;
+import org.immregistries.vfa.connect.jfr.ConnectorEvents;
+import org.immregistries.vfa.connect.jfr.VmrParseEvent;
 import org.immregistries.vfa.connect.model.Admin;
+import org.immregistries.vfa.connect.model.Evaluation;
+import org.immregistries.vfa.connect.model.EvaluationActual;
 import org.immregistries.vfa.connect.model.ForecastActual;
+import org.immregistries.vfa.connect.model.Service;
 import org.immregistries.vfa.connect.model.Software;
 import org.immregistries.vfa.connect.model.SoftwareResult;
 import org.immregistries.vfa.connect.model.SoftwareResultStatus;
 import org.immregistries.vfa.connect.model.TestCase;
 import org.immregistries.vfa.connect.model.TestEvent;
 import org.immregistries.vfa.connect.model.VaccineGroup;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import org.immregistries.vfa.connect.util.DateCodec;
 
 public class ICEConnector implements ConnectorInterface
 {
 
-  private static final String LOG_PARSE_ID_END = "\"/>";
-  private static final String LOG_PARSE_ID_START = "<id root=\"";
-
   private static final String BASE64_ENCODED_PAYLOAD_TAG_START = "<base64EncodedPayload>";
   private static final String BASE64_ENCODED_PAYLOAD_TAG_END = "</base64EncodedPayload>";
 
-  private Map<String, VaccineGroup[]> familyMapping = new HashMap<String, VaccineGroup[]>();
+  private static final String SUBSTANCE_ADMINISTRATION_ID_ROOT = "2.16.840.1.113883.3.795.12.100.10";
+  private static final int FIRST_SUBSTANCE_ADMINISTRATION_ID = 230;
+
+  private final VaccineGroupMapping vaccineGroupMapping;
 
   private Software software = null;
 
@@ -61,44 +65,7 @@ public class ICEConnector implements ConnectorInterface
 
   public ICEConnector(Software software, List<VaccineGroup> forecastItemList) {
     this.software = software;
-
-    // 100 Hep B Vaccine Group
-    addForcastItem(forecastItemList, "100", new int[] { VaccineGroup.ID_HEPB });
-    // 810 Hep A Vaccine Group
-    addForcastItem(forecastItemList, "810", new int[] { VaccineGroup.ID_HEPA });
-    // 200_107 DTaP NOS Vaccine Group
-    addForcastItem(forecastItemList, "107", new int[] { VaccineGroup.ID_DTAP, VaccineGroup.ID_DTAP_TDAP_TD });
-    // 200_09 TD Vaccine Group
-    addForcastItem(forecastItemList, "09",
-        new int[] { VaccineGroup.ID_TD_ONLY, VaccineGroup.ID_DTAP_TDAP_TD, VaccineGroup.ID_TDAP_TD });
-    // 200_115 DTP Vaccine Group
-    addForcastItem(forecastItemList, "115",
-        new int[] { VaccineGroup.ID_TDAP_ONLY, VaccineGroup.ID_DTAP_TDAP_TD, VaccineGroup.ID_TDAP_TD });
-    // 200 DTP Vaccine Group
-    addForcastItem(forecastItemList, "200", new int[] { VaccineGroup.ID_DTAP_TDAP_TD });
-    // 300 Hib Vaccine Group
-    addForcastItem(forecastItemList, "300", new int[] { VaccineGroup.ID_HIB });
-    // 400 Polio Vaccine Group
-    addForcastItem(forecastItemList, "400", new int[] { VaccineGroup.ID_POLIO });
-    // 500 MMR Vaccine Group
-    addForcastItem(forecastItemList, "500", new int[] { VaccineGroup.ID_MMR });
-    // 600 Varicella Vaccine Group
-    addForcastItem(forecastItemList, "600", new int[] { VaccineGroup.ID_VAR });
-    // 700 Pneumococcal Conjugate Vaccine Group
-    addForcastItem(forecastItemList, "700", new int[] { VaccineGroup.ID_PCV, VaccineGroup.ID_PNEUMO });
-    // 720 Pneumococcal Polysaccharid Vaccine Group
-    addForcastItem(forecastItemList, "720", new int[] { VaccineGroup.ID_PPSV });
-    // 800 Influenza
-    addForcastItem(forecastItemList, "800", new int[] { VaccineGroup.ID_INFLUENZA });
-    // 820 Rotavirus Vaccine Group
-    addForcastItem(forecastItemList, "820", new int[] { VaccineGroup.ID_ROTA });
-    // 830 Meningococcal Vaccine Group
-    addForcastItem(forecastItemList, "830", new int[] { VaccineGroup.ID_MENING });
-    // 840 Human Papillomavirus Vaccine Group
-    addForcastItem(forecastItemList, "840", new int[] { VaccineGroup.ID_HPV });
-    // 890 H1N1 Influenza
-    addForcastItem(forecastItemList, "890", new int[] { VaccineGroup.ID_NOVEL_H1N1 });
-
+    this.vaccineGroupMapping = VaccineGroupMapping.getMapping(forecastItemList);
   }
 
   private static int[] supportedItems = new int[] { VaccineGroup.ID_NOVEL_H1N1,
@@ -110,283 +77,444 @@ public class ICEConnector implements ConnectorInterface
       VaccineGroup.ID_RUBELLA_ONLY, VaccineGroup.ID_ANTHRAX, VaccineGroup.ID_SMALLPOX_SHOT_OR_READING,
       VaccineGroup.ID_TYPHOID };
 
-  private void addForcastItem(List<VaccineGroup> forecastItemList, String familyName, int[] forecastItemIds) {
-    VaccineGroup[] forecastItems = new VaccineGroup[forecastItemIds.length];
-    for (int i = 0; i < forecastItemIds.length; i++) {
-      forecastItems[i] = VaccineGroup.getForecastItem(forecastItemIds[i]);
+  public List<ForecastActual> queryForForecast(TestCase testCase, SoftwareResult softwareResult) throws Exception {
+    return ConnectorExecutor.await(queryForForecastAsync(testCase, softwareResult));
+  }
+
+  public CompletableFuture<List<ForecastActual>> queryForForecastAsync(final TestCase testCase,
+      final SoftwareResult softwareResult) {
+
+    final ConnectorLog log = ConnectorLog.create(logText);
+    final PrintWriter logOut = log.getWriter();
+
+    if (logOut != null) {
+      logOut.println("ICE");
+      logOut.println();
+      logOut.println("Current time " + new Date());
+      logOut.println("Connecting to " + software.getServiceUrl());
+      logOut.println();
     }
-    familyMapping.put(familyName, forecastItems);
-    return;
+    final QueryMetrics metrics = QueryMetrics.start(software, testCase);
+    return ConnectorExecutor.supply(software.getService(),
+        () -> metrics.send(() -> sendRequest(testCase, softwareResult, logOut)))
+        .handle((list, failure) -> {
+          metrics.finish(failure == null);
+          try {
+            if (failure == null) {
+              return list;
+            }
+            Throwable e = ConnectorExecutor.unwrap(failure);
+            softwareResult.setSoftwareResultStatus(SoftwareResultStatus.PROBLEM);
+            if (logOut != null) {
+              logOut.println("Unable to get forecast results");
+              e.printStackTrace(logOut);
+            } else {
+              e.printStackTrace();
+            }
+            throw ConnectorExecutor.fail(new Exception("Unable to get forecast results", e));
+          } finally {
+            log.finish(softwareResult);
+          }
+        });
   }
 
-  private StringWriter sw;
-  private PrintWriter logOut;
+  /**
+   * The request is written and the response read straight from the connection. The VMR goes
+   * through the Base64 encoder into the request body, and the payload of the response goes through
+   * the Base64 decoder into the VMR reader, so neither is ever held as a whole.
+   */
+  private List<ForecastActual> sendRequest(final TestCase testCase, final SoftwareResult softwareResult,
+      final PrintWriter logOut) throws Exception {
+    return HttpTransport.getTransport(software.getServiceUrl()).post(software.getServiceUrl(),
+        HttpTransport.headers(HttpTransport.CONTENT_TYPE, "text/xml; charset=\"utf-8\"", "SoapAction",
+            "http://www.omg.org/spec/CDSS/201105/dssWsdl:operation:evaluateAtSpecifiedTime"),
+        out -> writeRequest(testCase, out), in -> readResponse(in, testCase, softwareResult, logOut));
+  }
 
-  public List<ForecastActual> queryForForecast(TestCase testCase, SoftwareResult softwareResult) throws Exception {
+  private void writeRequest(TestCase testCase, OutputStream out) throws IOException {
+    String envelope = makeRequest(testCase);
+    int payloadPos = envelope.indexOf(BASE64_ENCODED_PAYLOAD_TAG_END);
+    Writer envelopeOut = new OutputStreamWriter(out, "UTF-8");
+    envelopeOut.write(envelope, 0, payloadPos);
+    envelopeOut.flush();
+    PrintWriter vmrOut = new PrintWriter(new OutputStreamWriter(
+        Base64.getEncoder().wrap(new NonClosingOutputStream(out)), "UTF-8"));
+    writeVMR(testCase, vmrOut);
+    vmrOut.close();
+    if (vmrOut.checkError()) {
+      throw new IOException("Unable to write VMR to request");
+    }
+    envelopeOut.write(envelope, payloadPos, envelope.length() - payloadPos);
+    envelopeOut.flush();
+  }
 
-    sw = new StringWriter();
-    logOut = logText ? new PrintWriter(sw) : null;
+  private List<ForecastActual> readResponse(InputStream in, TestCase testCase, SoftwareResult softwareResult,
+      PrintWriter logOut) throws Exception {
     List<ForecastActual> list = new ArrayList<ForecastActual>();
-
-    try {
+    PayloadInputStream payloadIn = new PayloadInputStream(new BufferedInputStream(in), logOut != null);
+    if (!payloadIn.isFound()) {
       if (logOut != null) {
-        logOut.println("ICE");
-        logOut.println();
-        logOut.println("Current time " + new Date());
-        logOut.println("Connecting to " + software.getServiceUrl());
-        logOut.println();
+        logOut.println("Unable to read results, couldn't find base 64 contents");
+        logOut.println(payloadIn.getSkipped());
       }
-      URLConnection urlConn;
-      URL url = new URL(software.getServiceUrl());
-      urlConn = url.openConnection();
-      urlConn.setDoInput(true);
-      urlConn.setDoOutput(true);
-      urlConn.setUseCaches(true);
-      ((HttpURLConnection) urlConn).setRequestMethod("POST");
-      urlConn.setRequestProperty("Content-Type", "text/xml; charset=\"utf-8\"");
-      urlConn.setRequestProperty("SoapAction",
-          "http://www.omg.org/spec/CDSS/201105/dssWsdl:operation:evaluateAtSpecifiedTime");
-
-      DataOutputStream printout = new DataOutputStream(urlConn.getOutputStream());
-      printout.writeBytes(makeRequest(testCase));
-      printout.flush();
-      printout.close();
-
-      InputStreamReader input = null;
-      input = new InputStreamReader(urlConn.getInputStream());
-      BufferedReader in = new BufferedReader(input);
-      StringBuilder sb = new StringBuilder();
-      String line;
-      while ((line = in.readLine()) != null) {
-        sb.append(line);
+    } else {
+      InputStream vmrIn = Base64.getMimeDecoder().wrap(payloadIn);
+      if (logOut != null) {
+        byte[] vmr = readAll(vmrIn);
+        logOut.print(new String(vmr, "UTF-8"));
+        vmrIn = new ByteArrayInputStream(vmr);
       }
-      input.close();
-      line = sb.toString();
-
-      int posStart = line.indexOf(BASE64_ENCODED_PAYLOAD_TAG_START);
-      int posEnd = line.indexOf(BASE64_ENCODED_PAYLOAD_TAG_END);
-      if (posStart == -1 || posEnd == -1 || posEnd < posStart) {
-        if (logOut != null) {
-          logOut.println("Unable to read results, couldn't find base 64 contents");
-          logOut.println(line);
-        }
-      } else {
-        line = line.substring(posStart + BASE64_ENCODED_PAYLOAD_TAG_START.length(), posEnd);
-        line = new String(Base64.decode(line));
-        if (logOut != null) {
-          logOut.print(line);
-        }
-        list = readVMR(line, softwareResult);
-        for (int forecastItemId : notSupportedItems) {
-          boolean found = false;
-          for (ForecastActual forecastActual : list) {
-            if (forecastActual.getVaccineGroup().getVaccineGroupId() == forecastItemId) {
-              found = true;
-              break;
-            }
+      list = readVMR(vmrIn, testCase, softwareResult);
+      for (int forecastItemId : notSupportedItems) {
+        boolean found = false;
+        for (ForecastActual forecastActual : list) {
+          if (forecastActual.getVaccineGroup().getVaccineGroupId() == forecastItemId) {
+            found = true;
+            break;
           }
-          if (!found) {
-            VaccineGroup forecastItem = VaccineGroup.getForecastItem(forecastItemId);
-            if (forecastItem != null) {
-              ForecastActual forecastActual = new ForecastActual();
-              forecastActual.setSoftwareResult(softwareResult);
-              forecastActual.setAdmin(Admin.NO_RESULTS);
-              forecastActual.setDoseNumber("NS");
-              forecastActual.setVaccineGroup(forecastItem);
-              if (logOut != null) {
-                logOut.println("ICE Forecaster does not support " + forecastItem.getLabel() + ". No results returned.");
-              }
-              list.add(forecastActual);
+        }
+        if (!found) {
+          VaccineGroup forecastItem = VaccineGroup.getForecastItem(forecastItemId);
+          if (forecastItem != null) {
+            ForecastActual forecastActual = new ForecastActual();
+            forecastActual.setSoftwareResult(softwareResult);
+            forecastActual.setAdmin(Admin.NO_RESULTS);
+            forecastActual.setDoseNumber("NS");
+            forecastActual.setVaccineGroup(forecastItem);
+            if (logOut != null) {
+              logOut.println("ICE Forecaster does not support " + forecastItem.getLabel() + ". No results returned.");
             }
+            list.add(forecastActual);
           }
         }
-        for (int forecastItemId : supportedItems) {
-          boolean found = false;
-          for (ForecastActual forecastActual : list) {
-            if (forecastActual.getVaccineGroup().getVaccineGroupId() == forecastItemId) {
-              found = true;
-              break;
-            }
+      }
+      for (int forecastItemId : supportedItems) {
+        boolean found = false;
+        for (ForecastActual forecastActual : list) {
+          if (forecastActual.getVaccineGroup().getVaccineGroupId() == forecastItemId) {
+            found = true;
+            break;
           }
-          if (!found) {
-            VaccineGroup forecastItem = VaccineGroup.getForecastItem(forecastItemId);
-            if (forecastItem != null) {
-              ForecastActual forecastActual = new ForecastActual();
-              forecastActual.setSoftwareResult(softwareResult);
-              forecastActual.setAdmin(Admin.NO_RESULTS);
-              forecastActual.setVaccineGroup(forecastItem);
-              if (logOut != null) {
-                logOut.println("ICE Forecaster did not return results " + forecastItem.getLabel()
-                    + ". Results assumed to be complete. ");
-              }
-              list.add(forecastActual);
+        }
+        if (!found) {
+          VaccineGroup forecastItem = VaccineGroup.getForecastItem(forecastItemId);
+          if (forecastItem != null) {
+            ForecastActual forecastActual = new ForecastActual();
+            forecastActual.setSoftwareResult(softwareResult);
+            forecastActual.setAdmin(Admin.NO_RESULTS);
+            forecastActual.setVaccineGroup(forecastItem);
+            if (logOut != null) {
+              logOut.println("ICE Forecaster did not return results " + forecastItem.getLabel()
+                  + ". Results assumed to be complete. ");
             }
+            list.add(forecastActual);
           }
         }
       }
-    } catch (Exception e) {
-      softwareResult.setSoftwareResultStatus(SoftwareResultStatus.PROBLEM);
-      if (logOut != null) {
-        logOut.println("Unable to get forecast results");
-        e.printStackTrace(logOut);
-      } else {
-        e.printStackTrace();
-      }
-      throw new Exception("Unable to get forecast results", e);
-    } finally {
-      if (logOut != null) {
-        logOut.close();
-        softwareResult.setLogText(sw.toString());
-      }
     }
     return list;
   }
 
-  private Map<String, String> xmlLogMap = new HashMap<String, String>();
-
-  protected List<ForecastActual> readVMR(String s, SoftwareResult softwareResult) throws Exception {
-
-    {
-      BufferedReader in = new BufferedReader(new StringReader(s));
-      String line;
-      StringBuilder sb = null;
-      String id = null;
-      while ((line = in.readLine()) != null) {
-        if (line.indexOf("<substanceAdministrationProposal>") != -1) {
-          sb = new StringBuilder();
-        } else if (line.indexOf("</substanceAdministrationProposal>") != -1) {
-          if (id != null) {
-            xmlLogMap.put(id, sb.toString());
-          }
-          sb = null;
-          id = null;
-        } else if (sb != null) {
-          int pos = line.indexOf(LOG_PARSE_ID_START);
-          if (id == null && pos != -1) {
-            int endPos = line.indexOf(LOG_PARSE_ID_END);
-            if (endPos != -1) {
-              id = line.substring(pos + LOG_PARSE_ID_START.length(), endPos);
-            }
-          } else {
-            if (line.indexOf("<templateId") == -1) {
-              sb.append(line.trim());
-              sb.append("\n");
-            }
+  /**
+   * Gives the text of the base64EncodedPayload element while it is read from the response. Everything
+   * before the start tag is skipped, and kept only if asked so it can be logged when there is no
+   * payload.
+   */
+  private static class PayloadInputStream extends InputStream
+  {
+    private InputStream in;
+    private ByteArrayOutputStream skipped = null;
+    private boolean found = false;
+    private boolean ended = false;
+
+    private PayloadInputStream(InputStream in, boolean keepSkipped) throws IOException {
+      this.in = in;
+      if (keepSkipped) {
+        skipped = new ByteArrayOutputStream();
+      }
+      byte[] tag = BASE64_ENCODED_PAYLOAD_TAG_START.getBytes("UTF-8");
+      int matched = 0;
+      int b;
+      while ((b = in.read()) != -1) {
+        if (skipped != null) {
+          skipped.write(b);
+        }
+        if (b == tag[matched]) {
+          matched++;
+          if (matched == tag.length) {
+            found = true;
+            break;
           }
+        } else {
+          matched = b == tag[0] ? 1 : 0;
         }
-
       }
-      in.close();
     }
 
-    InputStream in = new ByteArrayInputStream(s.getBytes());
-    List<ForecastActual> forecastActualList = new ArrayList<ForecastActual>();
-    DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-    DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-    Document doc = dBuilder.parse(in);
-    doc.getDocumentElement().normalize();
-    NodeList nList = doc.getElementsByTagName("ns5:cdsOutput");
-    if (nList.getLength() == 0) {
-      nList = doc.getElementsByTagName("ns4:cdsOutput");
+    public boolean isFound() {
+      return found;
     }
-    for (int i = 0; i < nList.getLength(); i++) {
-      Node nNode = nList.item(i);
-      if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-        Element eElement = (Element) nNode;
-        readVmrOutput(forecastActualList, eElement, softwareResult);
+
+    public String getSkipped() throws IOException {
+      return skipped == null ? "" : skipped.toString("UTF-8");
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!found || ended) {
+        return -1;
       }
+      int b = in.read();
+      if (b == -1 || b == '<') {
+        ended = true;
+        return -1;
+      }
+      return b;
     }
-    return forecastActualList;
-  }
 
-  private void readVmrOutput(List<ForecastActual> forecastActualList, Element pElement, SoftwareResult softwareResult) {
-    NodeList nList = pElement.getElementsByTagName("vmrOutput");
-    for (int i = 0; i < nList.getLength(); i++) {
-      Node nNode = nList.item(i);
-      if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-        Element eElement = (Element) nNode;
-        readPatient(forecastActualList, eElement, softwareResult);
+    @Override
+    public int read(byte[] buffer, int off, int len) throws IOException {
+      if (!found || ended) {
+        return -1;
+      }
+      int count = in.read(buffer, off, len);
+      if (count == -1) {
+        ended = true;
+        return -1;
       }
+      for (int i = off; i < off + count; i++) {
+        if (buffer[i] == '<') {
+          ended = true;
+          return i == off ? -1 : i - off;
+        }
+      }
+      return count;
     }
   }
 
-  private void readPatient(List<ForecastActual> forecastActualList, Element pElement, SoftwareResult softwareResult) {
-    NodeList nList = pElement.getElementsByTagName("patient");
-    for (int i = 0; i < nList.getLength(); i++) {
-      Node nNode = nList.item(i);
-      if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-        Element eElement = (Element) nNode;
-        readClinicalStatements(forecastActualList, eElement, softwareResult);
-      }
+  /**
+   * Lets the Base64 encoder be closed to write its final block without closing the request.
+   */
+  private static class NonClosingOutputStream extends FilterOutputStream
+  {
+    private NonClosingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
     }
   }
 
-  private void readClinicalStatements(List<ForecastActual> forecastActualList, Element pElement,
-      SoftwareResult softwareResult) {
-    NodeList nList = pElement.getElementsByTagName("clinicalStatements");
-    for (int i = 0; i < nList.getLength(); i++) {
-      Node nNode = nList.item(i);
-      if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-        Element eElement = (Element) nNode;
-        readSubstanceAdministrationProposals(forecastActualList, eElement, softwareResult);
-      }
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int count;
+    while ((count = in.read(buffer)) != -1) {
+      out.write(buffer, 0, count);
     }
+    return out.toByteArray();
   }
 
-  private void readSubstanceAdministrationProposals(List<ForecastActual> forecastActualList, Element pElement,
-      SoftwareResult softwareResult) {
-    NodeList nList = pElement.getElementsByTagName("substanceAdministrationProposals");
-    for (int i = 0; i < nList.getLength(); i++) {
-      Node nNode = nList.item(i);
-      if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-        Element eElement = (Element) nNode;
-        readSubstanceAdministrationProposal(forecastActualList, eElement, softwareResult);
+  private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+  private static XMLInputFactory createXmlInputFactory() {
+    XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+    xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    return xmlInputFactory;
+  }
+
+  protected List<ForecastActual> readVMR(String s, SoftwareResult softwareResult) throws Exception {
+    return readVMR(new StringReader(s), null, softwareResult);
+  }
+
+  /**
+   * Reads the VMR output in a single pass. Each substanceAdministrationProposal is collected until
+   * its end tag and then turned into forecasts, so no more than one proposal is held at a time. The
+   * XML of the proposal is kept as its explanation. If the test case is given, the evaluations
+   * returned for the substanceAdministrationEvents are added to its test events.
+   */
+  protected List<ForecastActual> readVMR(Reader reader, TestCase testCase, SoftwareResult softwareResult)
+      throws Exception {
+    return readVMR(XML_INPUT_FACTORY.createXMLStreamReader(reader), testCase, softwareResult);
+  }
+
+  protected List<ForecastActual> readVMR(InputStream in, TestCase testCase, SoftwareResult softwareResult)
+      throws Exception {
+    return readVMR(XML_INPUT_FACTORY.createXMLStreamReader(in), testCase, softwareResult);
+  }
+
+  private List<ForecastActual> readVMR(XMLStreamReader xml, TestCase testCase, SoftwareResult softwareResult)
+      throws Exception {
+    VmrParseEvent parseEvent = ConnectorEvents.isAvailable() ? VmrParseEvent.beginIfEnabled() : null;
+    List<ForecastActual> forecastActualList = new ArrayList<ForecastActual>();
+    int proposalCount = 0;
+    int administrationCount = 0;
+    long vmrLength = 0;
+    try {
+      while (xml.hasNext()) {
+        int eventType = xml.next();
+        if (eventType == XMLStreamConstants.END_ELEMENT && parseEvent != null) {
+          // the location is lost at the end of the document, so it is kept from the last end tag
+          vmrLength = xml.getLocation().getCharacterOffset();
+        } else if (eventType == XMLStreamConstants.START_ELEMENT) {
+          String name = xml.getLocalName();
+          if (name.equals("substanceAdministrationProposal")) {
+            proposalCount++;
+            processSubstanceAdministrationProposal(forecastActualList, readProposal(xml), softwareResult);
+          } else if (name.equals("substanceAdministrationEvent")) {
+            administrationCount++;
+            readSubstanceAdministrationEvent(xml, testCase, softwareResult);
+          }
+        }
+      }
+      if (parseEvent != null) {
+        parseEvent.finish(software, testCase, vmrLength, proposalCount,
+            administrationCount, forecastActualList.size());
       }
+    } finally {
+      xml.close();
     }
+    return forecastActualList;
   }
 
-  private void readSubstanceAdministrationProposal(List<ForecastActual> forecastActualList, Element pElement,
-      SoftwareResult softwareResult) {
-    NodeList nList = pElement.getElementsByTagName("substanceAdministrationProposal");
-    for (int i = 0; i < nList.getLength(); i++) {
-      Node nNode = nList.item(i);
-      if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-        Element eElement = (Element) nNode;
-        processSubstanceAdministrationProposal(forecastActualList, eElement, softwareResult);
+  private static class Proposal
+  {
+    private String substanceCode = null;
+    private Date earliestDate = null;
+    private Date recommendDate = null;
+    private Date overdueDate = null;
+    private boolean validTimeRead = false;
+    private boolean proposedTimeRead = false;
+    private List<RelatedStatement> relatedStatementList = new ArrayList<RelatedStatement>();
+    private String xmlLog = null;
+  }
+
+  private static class RelatedStatement
+  {
+    private String observationValue = null;
+    private String interpretationCode = null;
+  }
+
+  /**
+   * Reads from the start tag of a substanceAdministrationProposal to its end tag.
+   */
+  private static Proposal readProposal(XMLStreamReader xml) throws XMLStreamException {
+    Proposal proposal = new Proposal();
+    XmlLogWriter xmlLog = new XmlLogWriter();
+    List<RelatedStatement> openStatementList = new ArrayList<RelatedStatement>();
+    int substanceDepth = 0;
+    int observationResultDepth = 0;
+    int observationValueDepth = 0;
+    int depth = 1;
+    while (depth > 0) {
+      int event = xml.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+        String name = xml.getLocalName();
+        xmlLog.startElement(xml);
+        if (name.equals("substance")) {
+          substanceDepth++;
+        } else if (name.equals("substanceCode")) {
+          if (substanceDepth > 0 && proposal.substanceCode == null) {
+            proposal.substanceCode = attribute(xml, "code");
+          }
+        } else if (name.equals("validAdministrationTimeInterval")) {
+          if (!proposal.validTimeRead) {
+            proposal.validTimeRead = true;
+            proposal.earliestDate = parseDate(xml.getAttributeValue(null, "low"));
+          }
+        } else if (name.equals("proposedAdministrationTimeInterval")) {
+          if (!proposal.proposedTimeRead) {
+            proposal.proposedTimeRead = true;
+            proposal.recommendDate = parseDate(xml.getAttributeValue(null, "low"));
+            proposal.overdueDate = parseDate(xml.getAttributeValue(null, "high"));
+          }
+        } else if (name.equals("relatedClinicalStatement")) {
+          RelatedStatement relatedStatement = new RelatedStatement();
+          proposal.relatedStatementList.add(relatedStatement);
+          openStatementList.add(relatedStatement);
+        } else if (name.equals("observationResult")) {
+          observationResultDepth++;
+        } else if (name.equals("observationValue")) {
+          observationValueDepth++;
+        } else if (name.equals("concept")) {
+          if (observationResultDepth > 0 && observationValueDepth > 0) {
+            for (RelatedStatement relatedStatement : openStatementList) {
+              if (relatedStatement.observationValue == null) {
+                relatedStatement.observationValue = attribute(xml, "code");
+              }
+            }
+          }
+        } else if (name.equals("interpretation")) {
+          if (observationResultDepth > 0) {
+            for (RelatedStatement relatedStatement : openStatementList) {
+              if (relatedStatement.interpretationCode == null) {
+                relatedStatement.interpretationCode = attribute(xml, "code");
+              }
+            }
+          }
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+        if (depth == 0) {
+          break;
+        }
+        String name = xml.getLocalName();
+        xmlLog.endElement(xml);
+        if (name.equals("substance")) {
+          substanceDepth--;
+        } else if (name.equals("relatedClinicalStatement")) {
+          openStatementList.remove(openStatementList.size() - 1);
+        } else if (name.equals("observationResult")) {
+          observationResultDepth--;
+        } else if (name.equals("observationValue")) {
+          observationValueDepth--;
+        }
+      } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+        xmlLog.characters(xml);
       }
     }
+    proposal.xmlLog = xmlLog.toString();
+    return proposal;
   }
 
-  private void processSubstanceAdministrationProposal(List<ForecastActual> forecastActualList, Element pElement,
+  private void processSubstanceAdministrationProposal(List<ForecastActual> forecastActualList, Proposal proposal,
       SoftwareResult softwareResult) {
-    SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
-    String substanceCode = readSubstanceCode(pElement);
-    VaccineGroup[] forecastItems = familyMapping.get(substanceCode);
-    if (forecastItems != null && forecastItems.length > 0) {
-      Date earliestDate = readValidTimeLow(pElement);
-      Date recommendDate = readProposedTimeLow(pElement);
-      Date overdueDate = readProposedTimeHigh(pElement);
-      String id = readId(pElement);
-      NodeList nList = pElement.getElementsByTagName("relatedClinicalStatement");
-      for (int i = 0; i < nList.getLength(); i++) {
+    String substanceCode = proposal.substanceCode == null ? "" : proposal.substanceCode;
+    List<VaccineGroup> forecastItems = vaccineGroupMapping.getVaccineGroups(Service.ICE, substanceCode);
+    if (forecastItems != null && forecastItems.size() > 0) {
+      Date earliestDate = proposal.earliestDate;
+      Date recommendDate = proposal.recommendDate;
+      Date overdueDate = proposal.overdueDate;
+      String explanationHtml = "<pre>" + fix(proposal.xmlLog) + "</pre>";
+      for (RelatedStatement relatedStatement : proposal.relatedStatementList) {
         StringBuilder sb = new StringBuilder();
-        Node nNode = nList.item(i);
-        if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-          Element eElement = (Element) nNode;
-          String recommendationValue = readObservationValue(eElement);
-          sb.append("Found forecast results for " + forecastItems[0].getLabel() + "\n");
+        {
+          String recommendationValue = relatedStatement.observationValue == null ? ""
+              : relatedStatement.observationValue;
+          sb.append("Found forecast results for " + forecastItems.get(0).getLabel() + "\n");
           sb.append(" + RecommendationValue = " + recommendationValue + "\n");
-          RecommendationReason recommendationReason = readInterpretation(eElement);
+          RecommendationReason recommendationReason = relatedStatement.interpretationCode == null
+              ? RecommendationReason.NOT_SPECIFIED : RecommendationReason.valueOf(relatedStatement.interpretationCode);
           sb.append(" + RecommendationReason = " + recommendationReason + "\n");
           if (recommendDate != null) {
-            sb.append(" + Recommended Date = " + sdf.format(recommendDate) + "\n");
+            sb.append(" + Recommended Date = " + DateCodec.formatUsDate(recommendDate) + "\n");
           }
           if (earliestDate != null)
           {
-            sb.append(" + Earliest Date = " + sdf.format(earliestDate) + "\n");
+            sb.append(" + Earliest Date = " + DateCodec.formatUsDate(earliestDate) + "\n");
           }
           if (overdueDate != null) {
-            sb.append(" + Overdue Date = " + sdf.format(overdueDate) + "\n");
+            sb.append(" + Overdue Date = " + DateCodec.formatUsDate(overdueDate) + "\n");
           }
           for (VaccineGroup forecastItem : forecastItems) {
             ForecastActual forecastActual = new ForecastActual();
@@ -459,10 +587,7 @@ public class ICEConnector implements ConnectorInterface
               sb.append(" + Patient is wrong gender to receive this vaccination, marking as complete\n");
               break;
             }
-            String xmlLog = null;
-            if (id != null) {
-              xmlLog = xmlLogMap.get(id);
-            }
+            forecastActual.setExplanationHtml(explanationHtml);
             forecastActualList.add(forecastActual);
           }
         }
@@ -475,172 +600,207 @@ public class ICEConnector implements ConnectorInterface
     ABOVE_AGE_MAY_COMPLETE, COMPLETE, COMPLETE_HIGH_RISK, DISEASE_DOCUMENTED, DUE_IN_FUTURE, DUE_NOW, HIGH_RISK, IGNORE, NOT_SPECIFIED, OUTSIDE_FLU_SEASON, PROOF_OF_IMMUNITY, TOO_OLD, TOO_OLD_HIGH_RISK, WRONG_GENDER, TOO_OLD_TO_INITIATE
   };
 
-  private static String readObservationValue(Element pElement) {
-    NodeList nList = pElement.getElementsByTagName("observationResult");
-    for (int i = 0; i < nList.getLength(); i++) {
-      Node nNode = nList.item(i);
-      if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-        Element eElement = (Element) nNode;
-        NodeList cList = eElement.getElementsByTagName("observationValue");
-        for (int j = 0; j < cList.getLength(); j++) {
-          Node cNode = cList.item(j);
-          if (cNode.getNodeType() == Node.ELEMENT_NODE) {
-            Element cElement = (Element) cNode;
-            NodeList gList = cElement.getElementsByTagName("concept");
-            for (int k = 0; k < gList.getLength(); k++) {
-              Node gNode = gList.item(k);
-              if (gNode.getNodeType() == Node.ELEMENT_NODE) {
-                Element gElement = (Element) gNode;
-                return gElement.getAttribute("code");
-              }
+  /**
+   * Reads from the start tag of a substanceAdministrationEvent to its end tag. Each evaluated dose
+   * inside it is added as an evaluation to the test event the id was created for.
+   */
+  private void readSubstanceAdministrationEvent(XMLStreamReader xml, TestCase testCase,
+      SoftwareResult softwareResult) throws XMLStreamException {
+    TestEvent testEvent = null;
+    EvaluationActual evaluationActual = null;
+    int substanceDepth = 0;
+    int observationResultDepth = 0;
+    int depth = 1;
+    while (depth > 0) {
+      int event = xml.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+        String name = xml.getLocalName();
+        if (name.equals("substance")) {
+          substanceDepth++;
+        } else if (name.equals("observationResult")) {
+          observationResultDepth++;
+        }
+        if (depth == 2 && name.equals("id")) {
+          testEvent = findTestEvent(testCase, xml.getAttributeValue(null, "root"),
+              xml.getAttributeValue(null, "extension"));
+        } else if (name.equals("substanceAdministrationEvent")) {
+          if (testEvent != null) {
+            evaluationActual = new EvaluationActual();
+            evaluationActual.setSoftwareResult(softwareResult);
+            evaluationActual.getSoftwareResult().setSoftware(software);
+            evaluationActual.setTestEvent(testEvent);
+          }
+        } else if (evaluationActual != null) {
+          if (name.equals("substanceCode")) {
+            if (substanceDepth > 0 && evaluationActual.getVaccineCvx().equals("")) {
+              evaluationActual.setVaccineCvx(attribute(xml, "code"));
+              evaluationActual.setSeriesUsedCode(attribute(xml, "code"));
+              evaluationActual.setSeriesUsedText(attribute(xml, "displayName"));
+            }
+          } else if (name.equals("doseNumber")) {
+            evaluationActual.setDoseNumber(attribute(xml, "value"));
+          } else if (name.equals("isValid")) {
+            boolean isValid = attribute(xml, "value").equals("true");
+            evaluationActual.setDoseValid(isValid ? "Y" : "N");
+            evaluationActual.setEvaluation(isValid ? Evaluation.VALID : Evaluation.NOT_VALID);
+          } else if (name.equals("observationFocus")) {
+            List<VaccineGroup> forecastItems =
+                vaccineGroupMapping.getVaccineGroups(Service.ICE, attribute(xml, "code"));
+            if (observationResultDepth > 0 && forecastItems != null && forecastItems.size() > 0) {
+              evaluationActual.setVaccineGroup(forecastItems.get(0));
+            }
+          } else if (name.equals("interpretation")) {
+            if (observationResultDepth > 0 && evaluationActual.getReasonCode().equals("")) {
+              evaluationActual.setReasonCode(attribute(xml, "code"));
+              evaluationActual.setReasonText(attribute(xml, "displayName"));
+            }
+          }
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+        String name = xml.getLocalName();
+        if (name.equals("substanceAdministrationEvent")) {
+          if (depth > 0 && evaluationActual != null) {
+            if (testEvent.getEvaluationActualList() == null) {
+              testEvent.setEvaluationActualList(new ArrayList<EvaluationActual>());
             }
+            testEvent.getEvaluationActualList().add(evaluationActual);
+            evaluationActual = null;
           }
+        } else if (name.equals("substance")) {
+          substanceDepth--;
+        } else if (name.equals("observationResult")) {
+          observationResultDepth--;
         }
       }
     }
-    return "";
   }
 
-  private static RecommendationReason readInterpretation(Element pElement) {
-    NodeList nList = pElement.getElementsByTagName("observationResult");
-    for (int i = 0; i < nList.getLength(); i++) {
-      Node nNode = nList.item(i);
-      if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-        Element eElement = (Element) nNode;
-        NodeList cList = eElement.getElementsByTagName("interpretation");
-        for (int j = 0; j < cList.getLength(); j++) {
-          Node cNode = cList.item(j);
-          if (cNode.getNodeType() == Node.ELEMENT_NODE) {
-            Element cElement = (Element) cNode;
-            String code = cElement.getAttribute("code");
-            return RecommendationReason.valueOf(code);
-          }
-        }
+  private static TestEvent findTestEvent(TestCase testCase, String root, String extension) {
+    if (testCase == null || testCase.getTestEventList() == null
+        || !SUBSTANCE_ADMINISTRATION_ID_ROOT.equals(root) || extension == null) {
+      return null;
+    }
+    try {
+      int pos = FIRST_SUBSTANCE_ADMINISTRATION_ID - Integer.parseInt(extension);
+      if (pos >= 0 && pos < testCase.getTestEventList().size()) {
+        return testCase.getTestEventList().get(pos);
       }
+    } catch (NumberFormatException nfe) {
+      // not one of ours
     }
-    return RecommendationReason.NOT_SPECIFIED;
+    return null;
   }
 
-  private static String readSubstanceCode(Element pElement) {
-    NodeList nList = pElement.getElementsByTagName("substance");
-    for (int i = 0; i < nList.getLength(); i++) {
-      Node nNode = nList.item(i);
-      if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-        Element eElement = (Element) nNode;
-        NodeList cList = eElement.getElementsByTagName("substanceCode");
-        for (int j = 0; j < cList.getLength(); j++) {
-          Node cNode = cList.item(j);
-          if (cNode.getNodeType() == Node.ELEMENT_NODE) {
-            Element cElement = (Element) cNode;
-            return cElement.getAttribute("code");
-          }
-        }
-      }
+  private static String attribute(XMLStreamReader xml, String name) {
+    String value = xml.getAttributeValue(null, name);
+    return value == null ? "" : value;
+  }
+
+  private static Date parseDate(String dateString) {
+    if (dateString == null) {
+      return null;
+    }
+    try {
+      return DateCodec.parseDate(dateString);
+    } catch (ParseException pe) {
+      return null;
     }
-    return "";
   }
 
-  private static Date readProposedTimeHigh(Element pElement) {
-    SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
-    NodeList nList = pElement.getElementsByTagName("proposedAdministrationTimeInterval");
-    for (int i = 0; i < nList.getLength(); i++) {
-      Node nNode = nList.item(i);
-      if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-        Element eElement = (Element) nNode;
-        String dateStringHigh = eElement.getAttribute("high");
-        if (dateStringHigh != null) {
-          if (dateStringHigh.length() > 8) {
-            dateStringHigh = dateStringHigh.substring(0, 8);
-          }
-          try {
-            return sdf.parse(dateStringHigh);
-          } catch (ParseException pe) {
-            return null;
-          }
-        }
+  /**
+   * Writes the elements read from a proposal back out as XML, leaving out the templateIds, so it
+   * can be shown as the explanation for the forecast.
+   */
+  private static class XmlLogWriter
+  {
+    private StringBuilder sb = new StringBuilder();
+    private boolean startOpen = false;
+    private int skipDepth = 0;
+
+    private void startElement(XMLStreamReader xml) {
+      if (skipDepth > 0 || xml.getLocalName().equals("templateId")) {
+        skipDepth++;
+        return;
+      }
+      if (startOpen) {
+        sb.append(">\n");
+      }
+      sb.append("<");
+      appendName(xml.getPrefix(), xml.getLocalName());
+      for (int i = 0; i < xml.getAttributeCount(); i++) {
+        sb.append(" ");
+        appendName(xml.getAttributePrefix(i), xml.getAttributeLocalName(i));
+        sb.append("=\"");
+        sb.append(fix(xml.getAttributeValue(i)));
+        sb.append("\"");
       }
+      startOpen = true;
     }
-    return null;
-  }
 
-  private static Date readProposedTimeLow(Element pElement) {
-    SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
-    NodeList nList = pElement.getElementsByTagName("proposedAdministrationTimeInterval");
-    for (int i = 0; i < nList.getLength(); i++) {
-      Node nNode = nList.item(i);
-      if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-        Element eElement = (Element) nNode;
-        String dateStringLow = eElement.getAttribute("low");
-        if (dateStringLow != null) {
-          if (dateStringLow.length() > 8) {
-            dateStringLow = dateStringLow.substring(0, 8);
-          }
-          try {
-            return sdf.parse(dateStringLow);
-          } catch (ParseException pe) {
-            return null;
-          }
-        }
+    private void endElement(XMLStreamReader xml) {
+      if (skipDepth > 0) {
+        skipDepth--;
+        return;
+      }
+      if (startOpen) {
+        sb.append("/>\n");
+        startOpen = false;
+      } else {
+        sb.append("</");
+        appendName(xml.getPrefix(), xml.getLocalName());
+        sb.append(">\n");
       }
     }
-    return null;
-  }
 
-  private static Date readValidTimeLow(Element pElement) {
-    SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
-    NodeList nList = pElement.getElementsByTagName("validAdministrationTimeInterval");
-    for (int i = 0; i < nList.getLength(); i++) {
-      Node nNode = nList.item(i);
-      if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-        Element eElement = (Element) nNode;
-        String dateStringLow = eElement.getAttribute("low");
-        if (dateStringLow != null) {
-          if (dateStringLow.length() > 8) {
-            dateStringLow = dateStringLow.substring(0, 8);
-          }
-          try {
-            return sdf.parse(dateStringLow);
-          } catch (ParseException pe) {
-            return null;
-          }
+    private void characters(XMLStreamReader xml) {
+      if (skipDepth > 0 || xml.isWhiteSpace()) {
+        return;
+      }
+      String text = xml.getText().trim();
+      if (text.length() > 0) {
+        if (startOpen) {
+          sb.append(">");
+          startOpen = false;
         }
+        sb.append(fix(text));
       }
     }
-    return null;
-  }
 
-  private static String readId(Element pElement) {
-    NodeList nList = pElement.getElementsByTagName("id");
-    for (int i = 0; i < nList.getLength(); i++) {
-      Node nNode = nList.item(i);
-      if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-        Element eElement = (Element) nNode;
-        return eElement.getAttribute("root");
+    private void appendName(String prefix, String localName) {
+      if (prefix != null && prefix.length() > 0) {
+        sb.append(prefix);
+        sb.append(":");
       }
+      sb.append(localName);
+    }
+
+    @Override
+    public String toString() {
+      return sb.toString();
     }
-    return null;
   }
 
   protected static final boolean SUPPORT_HISTORY_OF_DISEASE = false;
 
+  /**
+   * The SOAP envelope with an empty payload, the VMR is encoded into it as it is written.
+   */
   private String makeRequest(TestCase testCase) {
     StringBuilder sb = new StringBuilder();
 
-    String content = makeVMR(testCase);
-    String contentEncoded = Base64.encode(content.getBytes());
-
     sb.append("<?xml version='1.0' encoding='UTF-8'?>\n");
     sb.append("<S:Envelope xmlns:S=\"http://www.w3.org/2003/05/soap-envelope\">\n");
     sb.append("    <S:Body>\n");
     sb.append("        <ns2:evaluateAtSpecifiedTime xmlns:ns2=\"http://www.omg.org/spec/CDSS/201105/dss\">\n");
     sb.append("            <interactionId scopingEntityId=\"gov.nyc.health\" interactionId=\"123456\"/>\n");
-    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
     Date evalDate = testCase.getEvalDate();
     if (evalDate == null) {
       evalDate = new Date();
     }
     // TODO get the timezone right
-    sb.append("            <specifiedTime>" + sdf.format(evalDate) + "T00:00:00.000-05:00</specifiedTime>\n");
+    sb.append("            <specifiedTime>" + DateCodec.formatIsoDate(evalDate) + "T00:00:00.000-05:00</specifiedTime>\n");
     sb.append("            <evaluationRequest clientLanguage=\"\" clientTimeZoneOffset=\"\">\n");
     sb.append("                <kmEvaluationRequest>\n");
     sb.append("                    <kmId scopingEntityId=\"org.nyc.cir\" businessId=\"ICE\" version=\"1.0.0\"/>\n");
@@ -653,7 +813,7 @@ public class ICEConnector implements ConnectorInterface
     sb.append("                    <data>\n");
     sb.append(
         "                        <informationModelSSId scopingEntityId=\"org.opencds.vmr\" businessId=\"VMR\" version=\"1.0\"/>\n");
-    sb.append("                        <base64EncodedPayload>" + contentEncoded + "</base64EncodedPayload>\n");
+    sb.append("                        " + BASE64_ENCODED_PAYLOAD_TAG_START + BASE64_ENCODED_PAYLOAD_TAG_END + "\n");
     sb.append("                    </data>\n");
     sb.append("                </dataRequirementItemData>\n");
     sb.append("            </evaluationRequest>\n");
@@ -665,28 +825,34 @@ public class ICEConnector implements ConnectorInterface
   }
 
   protected String makeVMR(TestCase testCase) {
-    StringBuilder sb = new StringBuilder();
-    SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
+    StringWriter stringWriter = new StringWriter();
+    PrintWriter out = new PrintWriter(stringWriter);
+    writeVMR(testCase, out);
+    out.close();
+    return stringWriter.toString();
+  }
+
+  protected void writeVMR(TestCase testCase, PrintWriter out) {
     // Message Begins
-    sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+    out.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
     // CDSInput Section Begins (mandatory)
     {
-      sb.append(
+      out.append(
           "<ns4:cdsInput xmlns:ns2=\"org.opencds\" xmlns:ns3=\"org.opencds.vmr.v1_0.schema.vmr\" xmlns:ns4=\"org.opencds.vmr.v1_0.schema.cdsinput\" xmlns:ns5=\"org.opencds.vmr.v1_0.schema.cdsoutput\">\n");
-      sb.append("    <templateId root=\"2.16.840.1.113883.3.795.11.1.1\"/>\n");
+      out.append("    <templateId root=\"2.16.840.1.113883.3.795.11.1.1\"/>\n");
       // CDSContext Section Begins (mandatory)
       {
-        sb.append("    <cdsContext>\n");
+        out.append("    <cdsContext>\n");
         // Specify user Preferred Language
-        sb.append(
+        out.append(
             "        <cdsSystemUserPreferredLanguage code=\"en\" codeSystem=\"2.16.840.1.113883.6.99\" displayName=\"English\"/>\n");
-        sb.append("    </cdsContext>\n");
+        out.append("    </cdsContext>\n");
         // CDSContext Section Ends
       }
       // VMR Input Section Begins (mandatory)
       {
-        sb.append("    <vmrInput>\n");
-        sb.append("        <templateId root=\"2.16.840.1.113883.3.795.11.1.1\"/>\n");
+        out.append("    <vmrInput>\n");
+        out.append("        <templateId root=\"2.16.840.1.113883.3.795.11.1.1\"/>\n");
         // Patient Input Section Begins (mandatory)
         {
           String uniqueRoot = "2.16.840.1.113883.3.795.12.100.11";
@@ -694,76 +860,76 @@ public class ICEConnector implements ConnectorInterface
           // TODO set unique Root
           // TODO set unique Extension
 
-          sb.append("        <patient>\n");
-          sb.append("            <templateId root=\"2.16.840.1.113883.3.795.11.2.1.1\"/>\n");
+          out.append("        <patient>\n");
+          out.append("            <templateId root=\"2.16.840.1.113883.3.795.11.2.1.1\"/>\n");
           // root & extension attributes appended together must be unique across
           // all root & root/extension values for the entire message. The unique
           // identifier cannot be repeated anywhere in the message. Suggestion:
           // use the Globally Unique Identifer (GUID) algorithm to generate the
           // root attribute value only and do not bother specifying the
           // extension. Example GUID value: 0368a1b4-0f93-402e-841d-e0b02943300d
-          sb.append("            <id root=\"" + uniqueRoot + "\" extension=\"" + uniqueExtension + "\"/>\n");
+          out.append("            <id root=\"" + uniqueRoot + "\" extension=\"" + uniqueExtension + "\"/>\n");
           // Patient Birthdate and Gender Section Begins (mandatory)
           {
-            sb.append("            <demographics>\n");
+            out.append("            <demographics>\n");
             // February 29, 2012 would be specified by 20120229
-            sb.append("                <birthTime value=\"" + sdf.format(testCase.getPatientDob()) + "\"/>\n");
-            sb.append("                <gender code=\"" + testCase.getPatientSex()
+            out.append("                <birthTime value=\"" + DateCodec.formatDate(testCase.getPatientDob()) + "\"/>\n");
+            out.append("                <gender code=\"" + testCase.getPatientSex()
                 + "\" codeSystem=\"2.16.840.1.113883.5.1\" displayName=\""
                 + (testCase.getPatientSex().equals("M") ? "Male" : "Female") + "\" originalText=\""
                 + testCase.getPatientSex() + "\"/>\n");
-            sb.append("            </demographics>\n");
+            out.append("            </demographics>\n");
             // Patient Birthdate and Gender Section Ends
           }
-          sb.append("            <clinicalStatements>\n");
+          out.append("            <clinicalStatements>\n");
           // Patient Disease Immunity Section Begins (optional)
           if (SUPPORT_HISTORY_OF_DISEASE) {
-            sb.append("                <observationResults>\n");
-            sb.append("                    <observationResult>\n");
-            sb.append("                        <templateId root=\"2.16.840.1.113883.3.795.11.6.3.1\"/>\n");
+            out.append("                <observationResults>\n");
+            out.append("                    <observationResult>\n");
+            out.append("                        <templateId root=\"2.16.840.1.113883.3.795.11.6.3.1\"/>\n");
             // Suggestion: Use Globally Unique Identifier algorithm (GUID)
             String observationResultUniqueId = "617478b8-b6eb-4988-853a-b5f5c2441eb8";
-            sb.append("                        <id root=\"" + observationResultUniqueId + "\"/>\n");
-            sb.append(
+            out.append("                        <id root=\"" + observationResultUniqueId + "\"/>\n");
+            out.append(
                 "                        <observationFocus code=\"{DISEASE_IMMUNITY_FOCUS_CODE}\" codeSystem=\"2.16.840.1.113883.3.795.12.100.7\" displayName=\"..\" originalText=\"..\"/>\n");
-            sb.append("                 \n");
-            sb.append(
+            out.append("                 \n");
+            out.append(
                 "                        <!-- ObservationEventTime low and high attributes are dates in YYYYMMDD format, and they must be the same value -->\n");
-            sb.append("                        <observationEventTime low=\"{YYYYMMDD}\" high=\"{YYYYMMDD}\"/>\n");
-            sb.append("                        <observationValue>                             \n");
-            sb.append(
+            out.append("                        <observationEventTime low=\"{YYYYMMDD}\" high=\"{YYYYMMDD}\"/>\n");
+            out.append("                        <observationValue>                             \n");
+            out.append(
                 "                            <concept code=\"{DISEASE_DOCUMENTATION_CODE}\" codeSystem=\"2.16.840.1.113883.3.795.12.100.8\" displayName=\"..\" originalText=\"..\"/>\n");
-            sb.append("                        </observationValue>\n");
-            sb.append(
+            out.append("                        </observationValue>\n");
+            out.append(
                 "                        <interpretation code=\"{DISEASE_IMMUNITY_INTERPRETATION_CODE}\" codeSystem=\"2.16.840.1.113883.3.795.12.100.9\" displayName=\"..\" originalText=\"..\"/>\n");
-            sb.append("                    </observationResult>\n");
-            sb.append("                    <observationResult>\n");
-            sb.append("                        [Record another disease immunity information here if necessary ]\n");
-            sb.append("                    </observationResult>\n");
-            sb.append("                    <observationResult>\n");
-            sb.append("                        [Record another disease immunity information here if necessary ]\n");
-            sb.append("                    </observationResult>\n");
-            sb.append("                </observationResults>\n");
+            out.append("                    </observationResult>\n");
+            out.append("                    <observationResult>\n");
+            out.append("                        [Record another disease immunity information here if necessary ]\n");
+            out.append("                    </observationResult>\n");
+            out.append("                    <observationResult>\n");
+            out.append("                        [Record another disease immunity information here if necessary ]\n");
+            out.append("                    </observationResult>\n");
+            out.append("                </observationResults>\n");
             // Patient Disease Immunity Section Ends
           }
           // List of Vaccines Administered Begins (optional)
           String[] guids = { "6095733e-a576-44a2-b314-26a23e1ff6b6", "c4361cf7-4387-4072-a55e-5bac066813ad",
               "84e18c21-1a07-4347-b7fd-96f052a39ef6", "fca8d517-9541-4f80-adbd-1528b3963360" };
           {
-            sb.append("                <substanceAdministrationEvents>\n");
-            String substanceAdministrationUniqueId = "2.16.840.1.113883.3.795.12.100.10";
-            int id = 231;
+            out.append("                <substanceAdministrationEvents>\n");
+            String substanceAdministrationUniqueId = SUBSTANCE_ADMINISTRATION_ID_ROOT;
+            int id = FIRST_SUBSTANCE_ADMINISTRATION_ID + 1;
             int pos = -1;
             for (TestEvent testEvent : testCase.getTestEventList()) {
               id--;
               pos++;
-              sb.append("                    <substanceAdministrationEvent>\n");
-              sb.append("                        <templateId root=\"2.16.840.1.113883.3.795.11.9.1.1\"/>\n");
-              sb.append("                        <id root=\"" + substanceAdministrationUniqueId + "\" extension=\"" + id
+              out.append("                    <substanceAdministrationEvent>\n");
+              out.append("                        <templateId root=\"2.16.840.1.113883.3.795.11.9.1.1\"/>\n");
+              out.append("                        <id root=\"" + substanceAdministrationUniqueId + "\" extension=\"" + id
                   + "\"/>\n");
-              sb.append(
+              out.append(
                   "                        <substanceAdministrationGeneralPurpose code=\"384810002\" codeSystem=\"2.16.840.1.113883.6.5\"/>\n");
-              sb.append("                        <substance>\n");
+              out.append("                        <substance>\n");
               String guid;
               if (pos < guids.length) {
                 guid = guids[pos];
@@ -771,32 +937,31 @@ public class ICEConnector implements ConnectorInterface
                 guid = guids[0] + "-" + id;
               }
 
-              sb.append("                            <id root=\"" + guid + "\"/>\n");
-              sb.append("                            <substanceCode code=\"" + testEvent.getEvent().getVaccineCvx()
+              out.append("                            <id root=\"" + guid + "\"/>\n");
+              out.append("                            <substanceCode code=\"" + testEvent.getEvent().getVaccineCvx()
                   + "\" codeSystem=\"2.16.840.1.113883.12.292\" displayName=\"" + fix(testEvent.getEvent().getLabel())
                   + "\" originalText=\"" + testEvent.getEvent().getVaccineCvx() + "\"/>\n");
-              sb.append("                        </substance>\n");
-              sb.append(
-                  "                        <administrationTimeInterval low=\"" + sdf.format(testEvent.getEventDate())
-                      + "\" high=\"" + sdf.format(testEvent.getEventDate()) + "\"/>\n");
-              sb.append("                    </substanceAdministrationEvent>\n");
+              out.append("                        </substance>\n");
+              String eventDate = DateCodec.formatDate(testEvent.getEventDate());
+              out.append("                        <administrationTimeInterval low=\"" + eventDate
+                  + "\" high=\"" + eventDate + "\"/>\n");
+              out.append("                    </substanceAdministrationEvent>\n");
             }
-            sb.append("                </substanceAdministrationEvents>\n");
+            out.append("                </substanceAdministrationEvents>\n");
             // List of Vaccines Administered Ends
           }
-          sb.append("            </clinicalStatements>\n");
-          sb.append("        </patient>\n");
+          out.append("            </clinicalStatements>\n");
+          out.append("        </patient>\n");
           // Patient Input Section Ends -->
         }
-        sb.append("    </vmrInput>\n");
+        out.append("    </vmrInput>\n");
         // VMR Input Section Ends
       }
-      sb.append("</ns4:cdsInput>\n");
+      out.append("</ns4:cdsInput>\n");
       // CDSInput Section Ends
     }
     // Message Ends
 
-    return sb.toString();
   }
 
   protected static String fix(String s) {
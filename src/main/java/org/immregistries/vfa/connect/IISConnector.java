@@ -3,17 +3,13 @@ package org.immregistries.vfa.connect;
 import static org.immregistries.vfa.connect.model.ForecastEngineIssueLevel.ERROR;
 import static org.immregistries.vfa.connect.model.ForecastEngineIssueLevel.WARNING;
 import static org.immregistries.vfa.connect.model.ForecastEngineIssueType.UNEXPECTED_FORMAT;
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
-import java.io.StringReader;
-import java.io.StringWriter;
-import java.net.URL;
-import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -23,144 +19,61 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.immregistries.vfa.connect.ConnectorMetricsListener.Phase;
+import org.immregistries.vfa.connect.jfr.ConnectorEvents;
+import org.immregistries.vfa.connect.jfr.HL7ParseEvent;
+import org.immregistries.vfa.connect.jfr.IisRetryWaitEvent;
 import org.immregistries.vfa.connect.model.Admin;
 import org.immregistries.vfa.connect.model.EvaluationActual;
 import org.immregistries.vfa.connect.model.Event;
 import org.immregistries.vfa.connect.model.ForecastActual;
 import org.immregistries.vfa.connect.model.ForecastEngineIssue;
+import org.immregistries.vfa.connect.model.Service;
 import org.immregistries.vfa.connect.model.Software;
 import org.immregistries.vfa.connect.model.SoftwareResult;
 import org.immregistries.vfa.connect.model.SoftwareResultStatus;
 import org.immregistries.vfa.connect.model.TestCase;
 import org.immregistries.vfa.connect.model.TestEvent;
 import org.immregistries.vfa.connect.model.VaccineGroup;
+import org.immregistries.vfa.connect.util.DateCodec;
 import org.immregistries.vfa.connect.util.FakePatient;
+import org.immregistries.vfa.connect.util.HL7Tokenizer;
 
 public class IISConnector implements ConnectorInterface {
   private Software software = null;
   private boolean logText = false;
-  private String uniqueId;
 
   public IISConnector(Software software, List<VaccineGroup> forecastItemList) {
     this.software = software;
-    this.forecastItemList = forecastItemList;
-    map("3", VaccineGroup.ID_MMR, INVALID_CVX_CODE);
-    map("9", VaccineGroup.ID_DTAP_TDAP_TD, INVALID_CVX_CODE);
-    map("9", VaccineGroup.ID_TDAP_ONLY, INVALID_CVX_CODE);
-    map("9", VaccineGroup.ID_TDAP_TD, INVALID_CVX_CODE);
-    map("09", VaccineGroup.ID_DTAP_TDAP_TD);
-    map("09", VaccineGroup.ID_TDAP_ONLY);
-    map("09", VaccineGroup.ID_TDAP_TD);
-    map("10", VaccineGroup.ID_POLIO);
-    map("010", VaccineGroup.ID_POLIO, INVALID_CVX_CODE);
-    map("017", VaccineGroup.ID_HIB, INVALID_CVX_CODE);
-    map("16", VaccineGroup.ID_INFLUENZA);
-    map("020", VaccineGroup.ID_DTAP, INVALID_CVX_CODE);
-    map("22", VaccineGroup.ID_HIB);
-    map("28", VaccineGroup.ID_DTAP);
-    map("28", VaccineGroup.ID_DTAP_TDAP_TD);
-    map("028", VaccineGroup.ID_DTAP, INVALID_CVX_CODE);
-    map("028", VaccineGroup.ID_DTAP_TDAP_TD, INVALID_CVX_CODE);
-    map("31", VaccineGroup.ID_HEPA);
-    map("033", VaccineGroup.ID_PPSV, INVALID_CVX_CODE);
-    map("42", VaccineGroup.ID_HEPB);
-    map("045", VaccineGroup.ID_HEPB, INVALID_CVX_CODE);
-    map("48", VaccineGroup.ID_HIB);
-    map("49", VaccineGroup.ID_HIB);
-    map("52", VaccineGroup.ID_HEPA);
-    map("062", VaccineGroup.ID_HPV, INVALID_CVX_CODE);
-    map("62", VaccineGroup.ID_HPV);
-    map("83", VaccineGroup.ID_HEPA);
-    map("085", VaccineGroup.ID_HEPA, INVALID_CVX_CODE);
-    map("088", VaccineGroup.ID_INFLUENZA, INVALID_CVX_CODE);
-    map("100", VaccineGroup.ID_PNEUMO);
-    map("106", VaccineGroup.ID_DTAP);
-    map("106", VaccineGroup.ID_DTAP_TDAP_TD);
-    map("107", VaccineGroup.ID_DTAP);
-    map("107", VaccineGroup.ID_DTAP_TDAP_TD);
-    map("108", VaccineGroup.ID_MENING);
-    map("109", VaccineGroup.ID_PNEUMO);
-    map("114", VaccineGroup.ID_MENING);
-    map("116", VaccineGroup.ID_ROTA);
-    map("119", VaccineGroup.ID_ROTA);
-    map("133", VaccineGroup.ID_PCV);
-    map("133", VaccineGroup.ID_PNEUMO);
-    map("141", VaccineGroup.ID_INFLUENZA);
-    map("147", VaccineGroup.ID_MENING);
-    map("150", VaccineGroup.ID_INFLUENZA);
-    map("150", VaccineGroup.ID_INFLUENZA_IIV);
-    map("162", VaccineGroup.ID_MENINGB);
-    map("163", VaccineGroup.ID_MENINGB);
-    map("164", VaccineGroup.ID_MENINGB);
-    map("165", VaccineGroup.ID_HPV);
-    map("188", VaccineGroup.ID_ZOSTER);
-    map("189", VaccineGroup.ID_HEPB);
-    map("HEP B", VaccineGroup.ID_HEPB, INVALID_CVX_CODE); // FL SHOTS - HEP B^HEPATITIS B
-    map("HIB", VaccineGroup.ID_HIB, INVALID_CVX_CODE); // FL SHOTS - HIB^H INFLUENZA TYPE B
-    map("POLIO", VaccineGroup.ID_POLIO, INVALID_CVX_CODE); // FL SHOTS - POLIO^POLIO
-    map("VZV", VaccineGroup.ID_VAR, INVALID_CVX_CODE); // FL SHOTS - VZV^CHICKEN POX
-    map("PNEUCON", VaccineGroup.ID_PNEUMO, INVALID_CVX_CODE); // FL SHOTS - PNEUCON^PNEUMOCOCCAL CONJUGATE
-    map("MEASLES", VaccineGroup.ID_MEASLES_ONLY, INVALID_CVX_CODE); // FL SHOTS - MEASLES^MEASLES
-    map("MEASLES", VaccineGroup.ID_MMR, INVALID_CVX_CODE); // FL SHOTS - MEASLES^MEASLES
-    map("MUMPS", VaccineGroup.ID_MUMPS_ONLY, INVALID_CVX_CODE); // FL SHOTS - MUMPS^MUMPS
-    map("RUBELLA", VaccineGroup.ID_RUBELLA_ONLY, INVALID_CVX_CODE); // FL SHOTS - RUBELLA^RUBELLA
-    map("ROTAVIRUS", VaccineGroup.ID_ROTA, INVALID_CVX_CODE); // FL SHOTS - ROTAVIRUS^ROTAVIRUS
-    map("HPV", VaccineGroup.ID_HPV, INVALID_CVX_CODE); // FL SHOTS - HPV^HPV
-    map("DIPHTHERIA", VaccineGroup.ID_DTAP, INVALID_CVX_CODE); // FL SHOTS - DIPHTHERIA^DIPHTHERIA
-    map("DIPHTHERIA", VaccineGroup.ID_DTAP_TDAP_TD, INVALID_CVX_CODE); // FL SHOTS - DIPHTHERIA^DIPHTHERIA
-    map("203", VaccineGroup.ID_MENING);
-    map("207", VaccineGroup.ID_COVID);
-    map("208", VaccineGroup.ID_COVID);
-    map("210", VaccineGroup.ID_COVID);
-    map("212", VaccineGroup.ID_COVID);
-    map("213", VaccineGroup.ID_COVID);
-    for (VaccineGroup forecastItem : forecastItemList) {
-      map(forecastItem.getVaccineCvx(), forecastItem.getVaccineGroupId());
-    }
+    this.vaccineGroupMapping = VaccineGroupMapping.getMapping(forecastItemList);
+    this.soapEnvelope = new IISSoapEnvelope(software.getServiceUserid(),
+        software.getServicePassword(), software.getServiceFacilityid());
   }
 
-  private List<VaccineGroup> forecastItemList = null;
-  private Map<String, List<VaccineGroup>> familyMapping = new HashMap<String, List<VaccineGroup>>();
-  private Set<String> invalidCvxCodes = new HashSet<>();
+  private final IISSoapEnvelope soapEnvelope;
 
-  private static final boolean INVALID_CVX_CODE = true;
+  private final VaccineGroupMapping vaccineGroupMapping;
 
   public Map<String, List<VaccineGroup>> getFamilyMapping() {
-    return familyMapping;
-  }
-
-  private void map(String familyName, int forecastItemId) {
-    map(familyName, forecastItemId, false);
-  }
-
-  private void map(String familyName, int forecastItemId, boolean incorrectCvxCode) {
-    if (incorrectCvxCode) {
-      invalidCvxCodes.add(familyName);
-    }
-
-    for (VaccineGroup forecastItem : forecastItemList) {
-      if (forecastItem.getVaccineGroupId() == forecastItemId) {
-        List<VaccineGroup> forecastItemListFromMap = familyMapping.get(familyName);
-        if (forecastItemListFromMap == null) {
-          forecastItemListFromMap = new ArrayList<VaccineGroup>();
-          familyMapping.put(familyName, forecastItemListFromMap);
-        }
-        if (!forecastItemListFromMap.contains(forecastItem)) {
-          forecastItemListFromMap.add(forecastItem);
-        }
-        return;
-      }
-    }
+    return vaccineGroupMapping.getCodeMap(Service.IIS);
   }
 
   public List<ForecastActual> queryForForecast(TestCase testCase, SoftwareResult softwareResult)
       throws Exception {
-    List<ForecastActual> forecastActualList = new ArrayList<ForecastActual>();
-    StringWriter sw = new StringWriter();
-    PrintWriter logOut = logText ? new PrintWriter(sw) : null;
+    return ConnectorExecutor.await(queryForForecastAsync(testCase, softwareResult));
+  }
+
+  public CompletableFuture<List<ForecastActual>> queryForForecastAsync(final TestCase testCase,
+      final SoftwareResult softwareResult) {
+    final ConnectorLog log = ConnectorLog.create(logText);
+    final PrintWriter logOut = log.getWriter();
 
     logMessage(logOut, "Starting HL7 connection",
         "This service will attempt to send a fake VXU with the vaccination history and then request the forecast back using a QBP. ");
+    Query query = new Query(testCase, softwareResult, logOut);
     try {
       if (testCase.getTestEventList().size() == 0) {
         logMessage(logOut, "No vaccinations found, so adding a Typhoid to list, "
@@ -176,89 +89,218 @@ public class IISConnector implements ConnectorInterface {
         testEvent.setEventDate(evalDate);
         testEvent.setTestCase(testCase);
         testCase.getTestEventList().add(testEvent);
-        logMessage(logOut, "Typhoid added for " + evalDate, "");
+        if (logOut != null) {
+          logMessage(logOut, "Typhoid added for " + evalDate, "");
+        }
       }
-      createUniqueId(testCase.getTestCaseNumber());
+      query.fakePatient = new FakePatient(testCase, createUniqueId(testCase.getTestCaseNumber()));
+      query.vxu = query.metrics.time(Phase.BUILD_REQUEST, () -> buildVXU(testCase, query.fakePatient));
+      query.schedule(0);
+    } catch (Exception e) {
+      query.finish(e);
+    }
+    final CompletableFuture<List<ForecastActual>> result = query.future.handle((list, failure) -> {
+      query.metrics.finish(failure == null);
+      try {
+        if (failure == null) {
+          return list;
+        }
+        Throwable e = ConnectorExecutor.unwrap(failure);
+        if (e instanceof CancellationException) {
+          logMessage(logOut, "Cancelled", "Query was cancelled before the IIS returned forecasts");
+          softwareResult.setSoftwareResultStatus(SoftwareResultStatus.PROBLEM);
+          throw (CancellationException) e;
+        }
+        if (e instanceof NotAuthenticated) {
+          logMessage(logOut, "Unable to Authenticate",
+              "Unable to authenticate with IIS, please check credentials and URL");
+          softwareResult.setSoftwareResultStatus(SoftwareResultStatus.NOT_AUTHENTICATED);
+          return query.forecastActualList;
+        }
+        softwareResult.setSoftwareResultStatus(SoftwareResultStatus.PROBLEM);
+        logMessage(logOut, "Exception ocurred", "Unable to get forecast results from IIS");
+        if (logOut != null) {
+          e.printStackTrace(logOut);
+        } else {
+          e.printStackTrace();
+        }
+        throw ConnectorExecutor.fail(new Exception("Unable to get forecast results", e));
+      } finally {
+        logMessage(logOut, "Finished process",
+            "The HL7 connector for IIS is finished, results are being returned to FITS");
+        log.finish(softwareResult);
+      }
+    });
+    // a caller that gives up, for example at a fan-out deadline, stops any further messages
+    result.whenComplete((list, failure) -> {
+      if (result.isCancelled()) {
+        query.cancel();
+      }
+    });
+    return result;
+  }
 
-      FakePatient fakePatient = new FakePatient(testCase, uniqueId);
-      String vxu = buildVXU(testCase, fakePatient);
+  private enum QueryState {
+                           SEND_VXU,
+                           SEND_QBP,
+                           FINISHED
+  }
+
+  /**
+   * Steps through VXU, ACK, QBP and RSP for one test case. Each step runs as a blocking task for
+   * the service and schedules the next one, so a query waiting for the IIS to process the VXU
+   * holds no thread. The QBP is repeated following the retry policy until the patient is found
+   * with forecasts or the attempts run out. Everything belonging to one call, including the id
+   * used for the fake patient and message control ids, is kept here and not on the connector.
+   */
+  private class Query implements Runnable {
+    private final TestCase testCase;
+    private final SoftwareResult softwareResult;
+    private final PrintWriter logOut;
+    private final RetryPolicy retryPolicy = RetryPolicy.getRetryPolicy(software);
+    private final QueryMetrics metrics;
+    private final List<ForecastActual> forecastActualList = new ArrayList<ForecastActual>();
+    private final CompletableFuture<List<ForecastActual>> future =
+        new CompletableFuture<List<ForecastActual>>();
+    private QueryState state = QueryState.SEND_VXU;
+    private FakePatient fakePatient;
+    private String vxu;
+    private String qbp;
+    private int attempts = 0;
+    private long scheduledNanos = 0;
+    private long retryDelay = 0;
+    private IisRetryWaitEvent retryWaitEvent = null;
+    private volatile boolean cancelled = false;
+
+    private Query(TestCase testCase, SoftwareResult softwareResult, PrintWriter logOut) {
+      this.testCase = testCase;
+      this.softwareResult = softwareResult;
+      this.logOut = logOut;
+      this.metrics = QueryMetrics.start(software, testCase);
+    }
+
+    public void run() {
+      if (cancelled) {
+        return;
+      }
+      try {
+        switch (state) {
+          case SEND_VXU:
+            sendVXU();
+            break;
+          case SEND_QBP:
+            metrics.end(Phase.RETRY_WAIT, scheduledNanos);
+            if (retryWaitEvent != null) {
+              retryWaitEvent.finish(software, testCase, attempts + 1, retryDelay);
+              retryWaitEvent = null;
+            }
+            sendQBP();
+            break;
+          case FINISHED:
+            break;
+        }
+      } catch (Throwable t) {
+        finish(t);
+      }
+    }
+
+    private void sendVXU() throws Exception {
       logMessage(logOut, "Sending VXU",
           "Sending update to IIS to create a fake record with test case vaccination history");
-      if (logText) {
+      if (logOut != null) {
         logOut.println(vxu);
       }
-      String ack = sendRequest(vxu);
+      String ack = metrics.send(() -> sendRequest(vxu, getRequestKey("VXU")));
       logMessage(logOut, "Reading ACK", "IIS returned a response that should contain an HL7 ACK");
-      if (logText) {
+      if (logOut != null) {
         logOut.println(ack);
       }
 
-      String qbp = buildQBP(fakePatient);
+      qbp = metrics.time(Phase.BUILD_REQUEST, () -> buildQBP(fakePatient));
       logMessage(logOut, "QBP prepped", "Will try to send this query to the IIS");
-      if (logText) {
+      if (logOut != null) {
         logOut.println(qbp);
       }
-      boolean lookingForMatch = true;
-      int delay = 0;
-      while (lookingForMatch) {
-        logMessage(logOut, "Sending QBP", "Sending query to IIS");
-        String rsp = sendRequest(qbp);
-        logMessage(logOut, "RSP Received", "IIS returned a response that needs to be inspected");
-        if (logText) {
-          logOut.println(rsp);
-        }
-        readRSP(forecastActualList, testCase, softwareResult, rsp);
-        if (softwareResult.getSoftwareResultStatus() == SoftwareResultStatus.NOT_FOUND
-            || forecastActualList.size() == 0) {
-          logMessage(logOut, "Match or forecasts not found",
-              "Unable to find matching patient or forecasts in response");
-          if (delay == 0) {
-            delay = 10;
-          } else if (delay == 10) {
-            delay = 20;
-          } else if (delay == 20) {
-            delay = 40;
-          } else if (delay == 40) {
-            lookingForMatch = false;
-          }
-        } else {
-          lookingForMatch = false;
-        }
-        if (lookingForMatch) {
-          logMessage(logOut, "Waiting", "Will wait for " + delay + "s and query again");
-          synchronized (this) {
-            this.wait(delay * 1000);
+      state = QueryState.SEND_QBP;
+      sendQBP();
+    }
+
+    private void sendQBP() throws Exception {
+      attempts++;
+      logMessage(logOut, "Sending QBP", "Sending query to IIS");
+      String rsp = metrics.send(() -> sendRequest(qbp, getRequestKey("QBP")));
+      logMessage(logOut, "RSP Received", "IIS returned a response that needs to be inspected");
+      if (logOut != null) {
+        logOut.println(rsp);
+      }
+      long parseStart = metrics.begin();
+      readRSP(forecastActualList, testCase, softwareResult, rsp);
+      metrics.end(Phase.PARSE, parseStart);
+      if (softwareResult.getSoftwareResultStatus() == SoftwareResultStatus.NOT_FOUND
+          || forecastActualList.size() == 0) {
+        logMessage(logOut, "Match or forecasts not found",
+            "Unable to find matching patient or forecasts in response");
+        if (retryPolicy.canRetry(attempts)) {
+          long delay = retryPolicy.getDelayMillis(attempts);
+          if (logOut != null) {
+            logMessage(logOut, "Waiting", "Will wait for " + (delay / 1000.0) + "s and query again");
           }
+          schedule(delay);
+          return;
         }
       }
-    } catch (NotAuthenticated na) {
-      logMessage(logOut, "Unable to Authenticate",
-          "Unable to authenticate with IIS, please check credentials and URL");
-      softwareResult.setSoftwareResultStatus(SoftwareResultStatus.NOT_AUTHENTICATED);
-    } catch (Exception e) {
-      softwareResult.setSoftwareResultStatus(SoftwareResultStatus.PROBLEM);
-      logMessage(logOut, "Exception ocurred", "Unable to get forecast results from IIS");
-      if (logOut != null) {
-        e.printStackTrace(logOut);
-      } else {
-        e.printStackTrace();
+      finish(null);
+    }
+
+    /**
+     * The fake patient, message ids and timestamps are new for every query, so a response store
+     * finds responses by the test case fingerprint instead of by the message. Only the last QBP
+     * response is kept, so a replay is answered on the first attempt.
+     */
+    private String getRequestKey(String messageType) {
+      if (HttpTransport.getResponseStore() == null) {
+        return null;
       }
-      throw new Exception("Unable to get forecast results", e);
-    } finally {
-      logMessage(logOut, "Finished process",
-          "The HL7 connector for IIS is finished, results are being returned to FITS");
-      if (logOut != null) {
-        logOut.close();
-        softwareResult.setLogText(sw.toString());
+      return createRequestKey(software, testCase, messageType);
+    }
+
+    private void schedule(long delay) {
+      if (cancelled) {
+        return;
+      }
+      scheduledNanos = metrics.begin();
+      retryDelay = delay;
+      if (delay > 0 && ConnectorEvents.isAvailable()) {
+        retryWaitEvent = IisRetryWaitEvent.beginIfEnabled();
+      }
+      try {
+        ConnectorExecutor.execute(software.getService(), this, delay);
+      } catch (RuntimeException re) {
+        finish(re);
+      }
+    }
+
+    private void cancel() {
+      cancelled = true;
+      future.cancel(false);
+    }
+
+    private void finish(Throwable failure) {
+      state = QueryState.FINISHED;
+      if (failure == null) {
+        future.complete(forecastActualList);
+      } else {
+        future.completeExceptionally(failure);
       }
     }
-    return forecastActualList;
   }
 
+  private static final DateTimeFormatter LOG_TIME_FORMAT =
+      DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm:ss.SSS Z");
+
   public void logMessage(PrintWriter logOut, String message, String details) {
-    SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss.SSS Z");
-    if (logText) {
-      logOut.println("[" + sdf.format(System.currentTimeMillis()) + "] " + message);
+    if (logOut != null) {
+      logOut.println("[" + LOG_TIME_FORMAT.format(ZonedDateTime.now()) + "] " + message);
       logOut.println(details);
     }
   }
@@ -268,7 +310,7 @@ public class IISConnector implements ConnectorInterface {
       'T', 'U', 'V', 'W', 'X', 'Y', 'Z', 'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l',
       'm', 'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z',};
 
-  private void createUniqueId(String testId) {
+  private static String createUniqueId(String testId) {
     String num = "" + System.currentTimeMillis();
     num = nextIncrement() + num.substring(num.length() - 10);
     long i = Long.parseLong(num);
@@ -285,7 +327,7 @@ public class IISConnector implements ConnectorInterface {
     if (num.length() > 6) {
       num = num.substring(num.length() - 6);
     }
-    uniqueId = testId + num;
+    return testId + num;
   }
 
   public static enum ParseDebugStatus {
@@ -426,10 +468,10 @@ public class IISConnector implements ConnectorInterface {
   public void readRSP(List<ForecastActual> forecastActualList, TestCase testCase,
       SoftwareResult softwareResult, String rsp, List<ParseDebugLine> parseDebugLineList)
       throws IOException, ParseException {
+    HL7ParseEvent parseEvent = ConnectorEvents.isAvailable() ? HL7ParseEvent.beginIfEnabled() : null;
     SoftwareResultStatus softwareResultStatus = SoftwareResultStatus.OK;
     List<ForecastEngineIssue> issuesList = softwareResult.getIssueList();
-    BufferedReader in = new BufferedReader(new StringReader(rsp));
-    String line;
+    HL7Tokenizer segment = new HL7Tokenizer(rsp);
     List<ForecastActual> fal = null;
     TestEvent testEvent = null;
     EvaluationActual evaluationActual = null;
@@ -439,20 +481,20 @@ public class IISConnector implements ConnectorInterface {
     boolean firstOBX = true;
     boolean okayToRead597807inEvaluation = true;
     boolean okayToRead597807inForecast = true;
-    Set<String> cvxForecastSet = new HashSet<>();
-    Set<VaccineGroup> vaccineGroupSet = new HashSet<>();
-    Map<String, Integer> segmentCountMap = new HashMap<>();
-    while ((line = in.readLine()) != null) {
-      if (line.length() == 0) {
+    ForecastsRead forecastsRead = new ForecastsRead();
+    int obxCount = 0;
+    int segmentCount = 0;
+    while (segment.nextSegment()) {
+      if (segment.getSegmentLength() == 0) {
         continue;
       }
+      segmentCount++;
       if (parseDebugLineList != null) {
-        parseDebugLine = new ParseDebugLine(line);
+        parseDebugLine = new ParseDebugLine(segment.getSegment());
         parseDebugLineList.add(parseDebugLine);
       }
-      String[] f = line.split("\\|");
 
-      if (f == null || f.length <= 1 || f[0] == null || f[0].length() != 3) {
+      if (segment.getFieldCount() <= 1 || segment.getFieldLength(0) != 3) {
         if (parseDebugLine != null) {
           parseDebugLine.setLineStatus(ParseDebugStatus.NOT_READ);
           parseDebugLine
@@ -463,47 +505,34 @@ public class IISConnector implements ConnectorInterface {
         continue;
       }
       {
-        String segmentName = f[0];
-        String path = segmentName;
-        {
-          Integer count = segmentCountMap.get(segmentName);
-          if (count == null) {
-            count = 1;
-          } else {
-            count = count + 1;
-            path += "[" + count + "]";
-          }
-          segmentCountMap.put(segmentName, count);
-        }
         if (parseDebugLine != null) {
-          parseDebugLine.setSegmentName(segmentName);
+          parseDebugLine.setSegmentName(segment.getSegmentName());
         }
-        if (segmentName.equals("BHS") || segmentName.equals("FHS") || segmentName.equals("FTS")
-            || segmentName.equals("BTS") || segmentName.equals("MSH") || segmentName.equals("MSA")
-            || segmentName.equals("ERR") || segmentName.equals("QPD") || segmentName.equals("PID")
-            || segmentName.equals("ORC") || segmentName.equals("RXR") || segmentName.equals("NK1")
-            || segmentName.equals("PD1")) {
+        if (segment.isSegment("BHS") || segment.isSegment("FHS") || segment.isSegment("FTS")
+            || segment.isSegment("BTS") || segment.isSegment("MSH") || segment.isSegment("MSA")
+            || segment.isSegment("ERR") || segment.isSegment("QPD") || segment.isSegment("PID")
+            || segment.isSegment("ORC") || segment.isSegment("RXR") || segment.isSegment("NK1")
+            || segment.isSegment("PD1")) {
           if (parseDebugLine != null) {
             parseDebugLine.setLineStatus(ParseDebugStatus.EXPECTED_BUT_NOT_READ);
           }
-        } else if (segmentName.equals("QAK")) {
-          String queryResponseStatus = readFieldValue(f, 2);
+        } else if (segment.isSegment("QAK")) {
+          String queryResponseStatus = readFieldValue(segment, 2);
           if (queryResponseStatus.equals("NF")) {
             softwareResultStatus = SoftwareResultStatus.NOT_FOUND;
           }
           if (parseDebugLine != null) {
             parseDebugLine.setLineStatus(ParseDebugStatus.OK);
           }
-        } else if (segmentName.equals("RXA")) {
-          adminDateInRxa = readFieldValue(f, 3);
-          cvxCodeInRxa = readFieldValue(f, 5);
+        } else if (segment.isSegment("RXA")) {
+          adminDateInRxa = readFieldValue(segment, 3);
+          cvxCodeInRxa = readFieldValue(segment, 5);
           testEvent = null;
           evaluationActual = null;
-          SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
           if (testCase.getTestEventList() != null) {
             for (TestEvent te : testCase.getTestEventList()) {
               if (te.getEvent().getVaccineCvx().equals(cvxCodeInRxa) && te.getEventDate() != null
-                  && sdf.format(te.getEventDate()).equals(adminDateInRxa)) {
+                  && DateCodec.formatDate(te.getEventDate()).equals(adminDateInRxa)) {
                 testEvent = te;
                 break;
               }
@@ -511,7 +540,7 @@ public class IISConnector implements ConnectorInterface {
           }
           if (parseDebugLine != null) {
             try {
-              parseDebugLine.setAdminDate(sdf.parse(adminDateInRxa));
+              parseDebugLine.setAdminDate(DateCodec.parseDate(adminDateInRxa));
             } catch (ParseException pe) {
               // ignore
             }
@@ -520,10 +549,12 @@ public class IISConnector implements ConnectorInterface {
             parseDebugLine.setLineStatus(ParseDebugStatus.OK);
           }
           firstOBX = true;
-        } else if (segmentName.equals("OBX")) {
-          String obsCode = readValue(f, 3);
-          String obsValue = readValue(f, 5);
-          String obsLabel = readValue(f, 5, 2);
+        } else if (segment.isSegment("OBX")) {
+          obxCount++;
+          String path = obxCount == 1 ? "OBX" : "OBX[" + obxCount + "]";
+          String obsCode = segment.getComponent(3, 1);
+          String obsValue = segment.getComponent(5, 1);
+          String obsLabel = segment.getComponent(5, 2);
           if (cvxCodeInRxa == null) {
             if (parseDebugLine != null) {
               parseDebugLine.setLineStatus(ParseDebugStatus.NOT_READ);
@@ -533,8 +564,7 @@ public class IISConnector implements ConnectorInterface {
             continue;
           } else if (cvxCodeInRxa.equals("998")) {
             fal = handleForecast(forecastActualList, fal, parseDebugLine, obsCode, obsValue,
-                obsLabel, softwareResult, okayToRead597807inForecast, cvxForecastSet,
-                vaccineGroupSet, path);
+                obsLabel, softwareResult, okayToRead597807inForecast, forecastsRead, path);
             if (firstOBX) {
               firstOBX = false;
               okayToRead597807inForecast = obsCode.equals("59780-7");
@@ -575,6 +605,10 @@ public class IISConnector implements ConnectorInterface {
         return 0;
       }
     });
+    if (parseEvent != null) {
+      parseEvent.finish(software, testCase, rsp.length(), segmentCount, obxCount,
+          forecastActualList.size());
+    }
 
   }
 
@@ -605,11 +639,10 @@ public class IISConnector implements ConnectorInterface {
         }
         testEvent.getEvaluationActualList().add(evaluationActual);
         if (parseDebugLine != null) {
-          SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
           parseDebugLine.setLineStatus(ParseDebugStatus.OK_EVALUATION);
           if (testEvent.getEvent() != null && testEvent.getEventDate() != null) {
             parseDebugLine.setLineStatusReason("CVX " + testEvent.getEvent().getVaccineCvx() + " - "
-                + sdf.format(testEvent.getEventDate()));
+                + DateCodec.formatUsDate(testEvent.getEventDate()));
           }
         }
       }
@@ -661,10 +694,19 @@ public class IISConnector implements ConnectorInterface {
     return evaluationActual;
   }
 
+  /**
+   * The CVX codes and vaccine groups already forecast in the message being read.
+   */
+  private static class ForecastsRead {
+    private final Set<String> cvxSet = new HashSet<String>();
+    // nothing adds to this yet, so the close match warning is not given
+    private final VaccineGroupSet vaccineGroupSet = VaccineGroupSet.EMPTY;
+  }
+
   private List<ForecastActual> handleForecast(List<ForecastActual> forecastActualList,
       List<ForecastActual> fal, ParseDebugLine parseDebugLine, String obsCode, String obsValue,
       String obsLabel, SoftwareResult softwareResult, boolean okayToRead597807,
-      Set<String> cvxForecastSet, Set<VaccineGroup> vaccineGroupSet, String path) {
+      ForecastsRead forecastsRead, String path) {
     List<ForecastEngineIssue> issueList = softwareResult.getIssueList();
     if (obsCode.equals("30956-7") || obsCode.equals("30979-9")
         || (okayToRead597807 && obsCode.equals("59780-7"))) {
@@ -677,24 +719,26 @@ public class IISConnector implements ConnectorInterface {
       if (obsValue.equals("")) {
         issueList.add(new ForecastEngineIssue(UNEXPECTED_FORMAT, ERROR,
             "No vaccine CVX was sent in OBX-5", path + "-5"));
-      } else {
-        if (cvxForecastSet.contains(obsValue)) {
-          issueList.add(new ForecastEngineIssue(UNEXPECTED_FORMAT, WARNING,
-              "CVX " + obsValue
-                  + " has already been forecasted in this message, duplicate forecasts might confuse the reader",
-              path + "-5"));
-        }
       }
-      cvxForecastSet.add(obsValue);
-      if (invalidCvxCodes.contains(obsValue)) {
+      boolean duplicateCvx = !forecastsRead.cvxSet.add(obsValue);
+      if (duplicateCvx && !obsValue.equals("")) {
+        issueList.add(new ForecastEngineIssue(UNEXPECTED_FORMAT, WARNING,
+            "CVX " + obsValue
+                + " has already been forecasted in this message, duplicate forecasts might confuse the reader",
+            path + "-5"));
+      }
+      if (vaccineGroupMapping.isInvalidCode(Service.IIS, obsValue)) {
         issueList.add(new ForecastEngineIssue(UNEXPECTED_FORMAT, ERROR,
             "Value '" + obsValue + "' is not a valid CVX code", path + "-5"));
       }
-      List<VaccineGroup> forecastItemListFromMap = familyMapping.get(obsValue);
+      List<VaccineGroup> forecastItemListFromMap =
+          vaccineGroupMapping.getVaccineGroups(Service.IIS, obsValue);
       fal = new ArrayList<ForecastActual>();
       if (forecastItemListFromMap != null) {
+        boolean closeMatch = forecastsRead.vaccineGroupSet.containsAny(
+            vaccineGroupMapping.getVaccineGroupSet(Service.IIS, obsValue));
         for (VaccineGroup vaccineGroup : forecastItemListFromMap) {
-          if (vaccineGroupSet.contains(vaccineGroup)) {
+          if (closeMatch && forecastsRead.vaccineGroupSet.contains(vaccineGroup)) {
             issueList.add(new ForecastEngineIssue(UNEXPECTED_FORMAT, WARNING,
                 "CVX " + obsCode + " is a close match to another " + vaccineGroup.getLabel()
                     + " forecast in this message, this may be a potential duplicate that may confuse the reader",
@@ -904,18 +948,8 @@ public class IISConnector implements ConnectorInterface {
     }
   }
 
-  private static String readFieldValue(String[] f, int p) {
-    String s;
-    if (f.length > p && f[p] != null) {
-      s = f[p];
-    } else {
-      s = "";
-    }
-    int pos = s.indexOf("^");
-    if (pos > 0) {
-      s = s.substring(0, pos).trim();
-    }
-    return s;
+  private static String readFieldValue(HL7Tokenizer segment, int p) {
+    return segment.getComponent(p, 1).trim();
   }
 
   private static final Map<String, Admin> adminStatusMap = new HashMap<String, Admin>();
@@ -965,76 +999,31 @@ public class IISConnector implements ConnectorInterface {
   }
 
   private Date parseDate(String value) {
-    if (value.length() > 8) {
-      value = value.substring(0, 8);
-    }
-    if (value.length() == 8) {
-      SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
-      try {
-        return sdf.parse(value);
-      } catch (ParseException e) {
-        return null;
-      }
-    }
-    return null;
-  }
-
-  private String readValue(String[] f, int pos) {
-    String s = f[pos];
-    int i = s.indexOf("^");
-    if (i > 0) {
-      s = s.substring(0, i);
-    }
-    return s;
-  }
-
-  private String readValue(String[] f, int pos, int subpos) {
-    String s = f[pos];
-    while (subpos > 1) {
-      int i = s.indexOf("^");
-      if (i == -1) {
-        return "";
-      }
-      s = s.substring(i + 1);
-      subpos--;
-    }
-    int i = s.indexOf("^");
-    if (i > 0) {
-      s = s.substring(0, i);
+    try {
+      return DateCodec.parseDate(value);
+    } catch (ParseException e) {
+      return null;
     }
-    return s;
   }
 
-  private static Integer increment = new Integer(1);
+  private static final AtomicInteger increment = new AtomicInteger(1);
 
   private static int nextIncrement() {
-    synchronized (increment) {
-      if (increment < Integer.MAX_VALUE) {
-        increment = increment + 1;
-      } else {
-        increment = 1;
-      }
-      return increment;
-    }
+    return increment.updateAndGet(i -> i < Integer.MAX_VALUE ? i + 1 : 1);
   }
 
-  private void createMSHforVXU(StringBuilder sb) {
+  private void createMSHforVXU(StringBuilder sb, String uniqueId) {
     String sendingApp = software.getServiceFacilityid();
     String sendingFac = software.getServiceFacilityid();
     String receivingApp = "";
     String receivingFac = "";
-    String sendingDateString;
-    {
-      SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyyMMddhhmmssZ");
-      sendingDateString = simpleDateFormat.format(new Date());
-    }
     // build MSH
     sb.append("MSH|^~\\&|");
     sb.append(receivingApp + "|");
     sb.append(receivingFac + "|");
     sb.append(sendingApp + "|");
     sb.append(sendingFac + "|");
-    sb.append(sendingDateString + "|");
+    DateCodec.appendDtm(sb, new Date()).append("|");
     sb.append("|");
     sb.append("VXU^V04^VXU_V04|");
     sb.append(uniqueId + "|");
@@ -1051,23 +1040,18 @@ public class IISConnector implements ConnectorInterface {
     sb.append("Z22^CDCPHINVS\r");
   }
 
-  private void createMSHforQBP(StringBuilder sb) {
+  private void createMSHforQBP(StringBuilder sb, String uniqueId) {
     String sendingApp = software.getServiceFacilityid();
     String sendingFac = software.getServiceFacilityid();
     String receivingApp = "";
     String receivingFac = "";
-    String sendingDateString;
-    {
-      SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyyMMddhhmmssZ");
-      sendingDateString = simpleDateFormat.format(new Date());
-    }
     // build MSH
     sb.append("MSH|^~\\&|");
     sb.append(receivingApp + "|");
     sb.append(receivingFac + "|");
     sb.append(sendingApp + "|");
     sb.append(sendingFac + "|");
-    sb.append(sendingDateString + "|");
+    DateCodec.appendDtm(sb, new Date()).append("|");
     sb.append("|");
     sb.append("QBP^Q11^QBP_Q11|");
     sb.append(uniqueId + "|");
@@ -1084,7 +1068,7 @@ public class IISConnector implements ConnectorInterface {
     sb.append("Z44^CDCPHINVS\r");
   }
 
-  public void printORC(StringBuilder sb, int count) {
+  public void printORC(StringBuilder sb, String uniqueId, int count) {
     sb.append("ORC");
     // ORC-1
     sb.append("|RE");
@@ -1099,9 +1083,8 @@ public class IISConnector implements ConnectorInterface {
   public String buildVXU(TestCase testCase, FakePatient fakePatient) {
 
     StringBuilder sb = new StringBuilder();
-    createMSHforVXU(sb);
+    createMSHforVXU(sb, fakePatient.getMrn());
     {
-      SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
       // PID
       sb.append("PID");
       // PID-1
@@ -1118,7 +1101,7 @@ public class IISConnector implements ConnectorInterface {
       // PID-6
       sb.append("|" + fakePatient.getMaidenLast() + "^" + fakePatient.getMaidenFirst() + "^^^^^M");
       // PID-7
-      sb.append("|" + sdf.format(fakePatient.getPatientDob()));
+      DateCodec.appendDate(sb.append("|"), fakePatient.getPatientDob());
       {
         // PID-8
         sb.append("|" + (fakePatient.getPatientSex().toUpperCase().equals("M") ? "M" : "F"));
@@ -1148,14 +1131,14 @@ public class IISConnector implements ConnectorInterface {
       int count = 0;
       for (TestEvent testEvent : testCase.getTestEventList()) {
         count++;
-        printORC(sb, count);
+        printORC(sb, fakePatient.getMrn(), count);
         sb.append("RXA");
         // RXA-1
         sb.append("|0");
         // RXA-2
         sb.append("|1");
         // RXA-3
-        sb.append("|" + sdf.format(testEvent.getEventDate()));
+        DateCodec.appendDate(sb.append("|"), testEvent.getEventDate());
         // RXA-4
         sb.append("|");
         // RXA-5
@@ -1216,15 +1199,14 @@ public class IISConnector implements ConnectorInterface {
   public String buildQBP(FakePatient fakePatient) {
 
     StringBuilder sb = new StringBuilder();
-    createMSHforQBP(sb);
+    createMSHforQBP(sb, fakePatient.getMrn());
     {
-      SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
       // QPD
       sb.append("QPD");
       // QPD-1
       sb.append("|Z44^Request Evaluated History and Forecast^CDCPHINVS");
       // QPD-2
-      sb.append("|" + uniqueId);
+      sb.append("|" + fakePatient.getMrn());
       // QPD-3
       sb.append("|" + fakePatient.getMrn() + "^^^FITS^MR");
       // QPD-4
@@ -1233,7 +1215,7 @@ public class IISConnector implements ConnectorInterface {
       // QPD-5
       sb.append("|" + fakePatient.getMaidenLast() + "^" + fakePatient.getMaidenFirst() + "^^^^^M");
       // QPD-6
-      sb.append("|" + sdf.format(fakePatient.getPatientDob()));
+      DateCodec.appendDate(sb.append("|"), fakePatient.getPatientDob());
       // QPD-7
       sb.append("|" + fakePatient.getPatientSex());
       // PID-8
@@ -1259,96 +1241,42 @@ public class IISConnector implements ConnectorInterface {
 
   }
 
-  private String sendRequest(String request) throws IOException, NotAuthenticated {
-    URLConnection urlConn;
-    DataOutputStream printout;
-    InputStreamReader input = null;
-    URL url = new URL(software.getServiceUrl());
-    urlConn = url.openConnection();
-    urlConn.setDoInput(true);
-    urlConn.setDoOutput(true);
-    urlConn.setUseCaches(false);
-    urlConn.setRequestProperty("Content-Type", "text/xml; charset=utf-8");
-    urlConn.setRequestProperty("SOAPAction", "\"http://tempuri.org/ExecuteHL7Message\"");
-    printout = new DataOutputStream(urlConn.getOutputStream());
-    StringWriter stringWriter = new StringWriter();
-    PrintWriter out = new PrintWriter(stringWriter);
-    request = request.replaceAll("\\&", "&amp;");
-    out.println("<?xml version='1.0' encoding='UTF-8'?>");
-    out.println("<Envelope xmlns=\"http://www.w3.org/2003/05/soap-envelope\">");
-    out.println("   <Header />");
-    out.println("   <Body>");
-    out.println("      <submitSingleMessage xmlns=\"urn:cdc:iisb:2011\">");
-    out.println("         <username>" + software.getServiceUserid() + "</username>");
-    out.println("         <password>" + software.getServicePassword() + "</password>");
-    out.println("         <facilityID>" + software.getServiceFacilityid() + "</facilityID>");
-    out.println("         <hl7Message>" + request + "</hl7Message>");
-    out.println("      </submitSingleMessage>");
-    out.println("   </Body>");
-    out.println("</Envelope>");
-
-    printout.writeBytes(stringWriter.toString());
-    printout.flush();
-    printout.close();
-    input = new InputStreamReader(urlConn.getInputStream());
-    StringBuilder response = new StringBuilder();
-    BufferedReader in = new BufferedReader(input);
-    String line;
-    while ((line = in.readLine()) != null) {
-      response.append(line);
-      response.append('\r');
-    }
-    input.close();
-    String s = response.toString();
+  static String createRequestKey(Software software, TestCase testCase, String messageType) {
+    return "IIS " + messageType + " " + CachingConnector.createFingerprint(software, testCase);
+  }
 
-    int start = s.indexOf("MSH|");
-    if (s.indexOf("SecurityFault") > 0 && start < 0) {
+  private String sendRequest(String request, String requestKey) throws Exception {
+    String response = HttpTransport.getTransport(software.getServiceUrl()).post(
+        software.getServiceUrl(),
+        HttpTransport.headers(HttpTransport.CONTENT_TYPE, "text/xml; charset=utf-8", "SOAPAction",
+            "\"http://tempuri.org/ExecuteHL7Message\""),
+        out -> soapEnvelope.write(request, out),
+        in -> IISSoapEnvelope.readMessage(new InputStreamReader(in, StandardCharsets.UTF_8)),
+        requestKey);
+    if (response == null) {
       throw new NotAuthenticated();
     }
-
-    if (start > 0) {
-      s = s.substring(start);
-      int e = s.indexOf("</");
-      if (e > 0) {
-        s = s.substring(0, e);
-      }
-      s = s.replace("&amp;", "\\&");
-      if (s.endsWith("]]>")) {
-        s = s.substring(0, s.length() - 3);
-      }
-    } else {
-      BufferedReader stringIn = new BufferedReader(new StringReader(s));
-      s = "";
-      String l;
-      while ((l = stringIn.readLine()) != null) {
-        s += l.trim() + "\r";
-      }
-    }
-    return s;
+    return response;
   }
 
   public static TestCase recreateTestCase(String rsp) throws IOException, ParseException {
     TestCase testCase = new TestCase();
     testCase.setTestEventList(new ArrayList<TestEvent>());
-    BufferedReader in = new BufferedReader(new StringReader(rsp));
-    String line;
-    while ((line = in.readLine()) != null) {
-      String[] f = line.split("\\|");
-      if (f == null || f.length <= 1 || f[0] == null || f[0].length() != 3) {
+    HL7Tokenizer segment = new HL7Tokenizer(rsp);
+    while (segment.nextSegment()) {
+      if (segment.getFieldCount() <= 1 || segment.getFieldLength(0) != 3) {
         continue;
       }
       {
-        String segmentName = f[0];
-        if (segmentName.equals("RXA")) {
-          String adminDate = readFieldValue(f, 3);
-          String cvxCode = readFieldValue(f, 5);
+        if (segment.isSegment("RXA")) {
+          String adminDate = readFieldValue(segment, 3);
+          String cvxCode = readFieldValue(segment, 5);
           if (!cvxCode.equals("998")) {
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
             try {
               TestEvent testEvent = new TestEvent();
               Event event = new Event();
               event.setVaccineCvx(cvxCode);
-              testEvent.setEventDate(sdf.parse(adminDate));
+              testEvent.setEventDate(DateCodec.parseDate(adminDate));
               testEvent.setEvent(event);
               testCase.getTestEventList().add(testEvent);
             } catch (ParseException pe) {
@@ -0,0 +1,182 @@
+package org.immregistries.vfa.connect;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The CDC submitSingleMessage SOAP envelope for one IIS. The parts before and after the HL7
+ * message, with the credentials and facility id, are escaped and encoded once when it is created,
+ * and each message is escaped straight into the request body as it is written.
+ */
+public class IISSoapEnvelope {
+
+  private final byte[] head;
+  private final byte[] tail;
+
+  public IISSoapEnvelope(String userid, String password, String facilityId) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<?xml version='1.0' encoding='UTF-8'?>\n");
+    sb.append("<Envelope xmlns=\"http://www.w3.org/2003/05/soap-envelope\">\n");
+    sb.append("   <Header />\n");
+    sb.append("   <Body>\n");
+    sb.append("      <submitSingleMessage xmlns=\"urn:cdc:iisb:2011\">\n");
+    sb.append("         <username>").append(escape(userid)).append("</username>\n");
+    sb.append("         <password>").append(escape(password)).append("</password>\n");
+    sb.append("         <facilityID>").append(escape(facilityId)).append("</facilityID>\n");
+    sb.append("         <hl7Message>");
+    head = sb.toString().getBytes(StandardCharsets.UTF_8);
+    sb.setLength(0);
+    sb.append("</hl7Message>\n");
+    sb.append("      </submitSingleMessage>\n");
+    sb.append("   </Body>\n");
+    sb.append("</Envelope>\n");
+    tail = sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Writes the envelope with the message in it.
+   */
+  public void write(String hl7Message, OutputStream out) throws IOException {
+    out.write(head);
+    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    escape(hl7Message, writer);
+    writer.flush();
+    out.write(tail);
+  }
+
+  private static String escape(String s) {
+    StringBuilder sb = new StringBuilder();
+    try {
+      escape(String.valueOf(s), sb);
+    } catch (IOException ioe) {
+      // not thrown by a StringBuilder
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Escapes the characters XML doesn't allow in text in one pass, copying the runs between them
+   * unchanged.
+   */
+  static void escape(String s, Appendable out) throws IOException {
+    int runStart = 0;
+    for (int i = 0; i < s.length(); i++) {
+      String entity;
+      switch (s.charAt(i)) {
+        case '&':
+          entity = "&amp;";
+          break;
+        case '<':
+          entity = "&lt;";
+          break;
+        case '>':
+          entity = "&gt;";
+          break;
+        default:
+          continue;
+      }
+      out.append(s, runStart, i);
+      out.append(entity);
+      runStart = i + 1;
+    }
+    out.append(s, runStart, s.length());
+  }
+
+  /**
+   * Reads the HL7 message out of the response in one pass. Lines are ended with a carriage
+   * return whatever they were ended with. When the text holds an envelope the message runs from
+   * MSH to the next end tag, unescaping &amp;amp; to \&amp; as the IIS interface always has and
+   * leaving out a CDATA end. Without an envelope each line of the text is trimmed and returned.
+   * Returns null when there is no message and the IIS returned a SecurityFault.
+   */
+  public static String readMessage(Reader in) throws IOException {
+    StringBuilder text = new StringBuilder();
+    StringBuilder message = null;
+    boolean messageAtStart = false;
+    int unescapeFrom = 0;
+    boolean lastWasReturn = false;
+    boolean lineOpen = false;
+    char[] buffer = new char[8192];
+    int count;
+    while ((count = in.read(buffer)) != -1) {
+      for (int i = 0; i < count; i++) {
+        char c = buffer[i];
+        if (c == '\n' && lastWasReturn) {
+          lastWasReturn = false;
+          continue;
+        }
+        lastWasReturn = c == '\r';
+        if (c == '\n') {
+          c = '\r';
+        }
+        lineOpen = c != '\r';
+        if (message == null) {
+          text.append(c);
+          if (c == '|' && !messageAtStart && endsWith(text, "MSH|")) {
+            if (text.length() == 4) {
+              messageAtStart = true;
+            } else {
+              text.setLength(text.length() - 4);
+              message = new StringBuilder("MSH|");
+            }
+          }
+        } else if (c == '/' && message.charAt(message.length() - 1) == '<') {
+          message.setLength(message.length() - 1);
+          return endMessage(message);
+        } else {
+          message.append(c);
+          if (c == ';' && message.length() - 5 >= unescapeFrom && endsWith(message, "&amp;")) {
+            message.setLength(message.length() - 5);
+            message.append("\\&");
+            unescapeFrom = message.length();
+          }
+        }
+      }
+    }
+    if (message != null) {
+      if (lineOpen) {
+        message.append('\r');
+      }
+      return endMessage(message);
+    }
+    if (lineOpen) {
+      text.append('\r');
+    }
+    if (!messageAtStart && text.indexOf("SecurityFault") > 0) {
+      return null;
+    }
+    StringBuilder trimmed = new StringBuilder(text.length());
+    int lineStart = 0;
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == '\r') {
+        trimmed.append(text.substring(lineStart, i).trim()).append('\r');
+        lineStart = i + 1;
+      }
+    }
+    return trimmed.toString();
+  }
+
+  private static String endMessage(StringBuilder message) {
+    if (endsWith(message, "]]>")) {
+      message.setLength(message.length() - 3);
+    }
+    return message.toString();
+  }
+
+  private static boolean endsWith(StringBuilder sb, String suffix) {
+    int offset = sb.length() - suffix.length();
+    if (offset < 0) {
+      return false;
+    }
+    for (int i = 0; i < suffix.length(); i++) {
+      if (sb.charAt(offset + i) != suffix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
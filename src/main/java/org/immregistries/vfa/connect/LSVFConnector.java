@@ -1,24 +1,24 @@
 package org.immregistries.vfa.connect;
 
 import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
-import java.net.URL;
-import java.net.URLConnection;
 import java.net.URLEncoder;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.immregistries.vfa.connect.ConnectorMetricsListener.Phase;
 import org.immregistries.vfa.connect.model.Admin;
 import org.immregistries.vfa.connect.model.EvaluationActual;
 import org.immregistries.vfa.connect.model.EventType;
 import org.immregistries.vfa.connect.model.ForecastActual;
+import org.immregistries.vfa.connect.model.Service;
 import org.immregistries.vfa.connect.model.Software;
 import org.immregistries.vfa.connect.model.SoftwareResult;
 import org.immregistries.vfa.connect.model.SoftwareResultStatus;
@@ -27,6 +27,7 @@ import org.immregistries.vfa.connect.model.TestCase;
 import org.immregistries.vfa.connect.model.TestCaseSetting;
 import org.immregistries.vfa.connect.model.TestEvent;
 import org.immregistries.vfa.connect.model.VaccineGroup;
+import org.immregistries.vfa.connect.util.DateCodec;
 
 public class LSVFConnector implements ConnectorInterface
 {
@@ -52,11 +53,11 @@ public class LSVFConnector implements ConnectorInterface
   private static final String STATUS_DESCRIPTION_ASSUMED_COMPLETE_OR_IMMUNIE = "assumed complete or immune";
   private static final String STATUS_DESCRIPTION_AGED_OUT = "aged out";
 
-  private Map<String, List<VaccineGroup>> familyMapping = new HashMap<String, List<VaccineGroup>>();
+  private final VaccineGroupMapping vaccineGroupMapping;
 
-  private Map<String, String> evaluationToCvxMapping = new HashMap<String, String>();
+  private final Map<String, String> evaluationToCvxMapping = new HashMap<String, String>();
 
-  private Map<String, Admin> adminStatusMapping = new HashMap<String, Admin>();
+  private final Map<String, Admin> adminStatusMapping = new HashMap<String, Admin>();
 
   private Software software = null;
   private boolean logText = false;
@@ -71,52 +72,7 @@ public class LSVFConnector implements ConnectorInterface
 
   public LSVFConnector(Software software, List<VaccineGroup> forecastItemList) {
     this.software = software;
-    addForcastItem(forecastItemList, "Hib", VaccineGroup.ID_HIB);
-    addForcastItem(forecastItemList, "HepB", VaccineGroup.ID_HEPB);
-    addForcastItem(forecastItemList, "DTaP", VaccineGroup.ID_DTAP);
-    addForcastItem(forecastItemList, "DTaP", VaccineGroup.ID_DTAP_TDAP_TD);
-    addForcastItem(forecastItemList, "DTaP/Tdap/Td", VaccineGroup.ID_DTAP_TDAP_TD);
-    addForcastItem(forecastItemList, "Td", VaccineGroup.ID_TD_ONLY);
-    addForcastItem(forecastItemList, "Td", VaccineGroup.ID_TDAP_TD);
-    addForcastItem(forecastItemList, "Td", VaccineGroup.ID_DTAP_TDAP_TD);
-    addForcastItem(forecastItemList, "Tdap", VaccineGroup.ID_TDAP_ONLY);
-    addForcastItem(forecastItemList, "Tdap", VaccineGroup.ID_TDAP_TD);
-    addForcastItem(forecastItemList, "Tdap", VaccineGroup.ID_DTAP_TDAP_TD);
-    addForcastItem(forecastItemList, "IPV", VaccineGroup.ID_POLIO);
-    addForcastItem(forecastItemList, "Polio", VaccineGroup.ID_POLIO);
-    addForcastItem(forecastItemList, "HepA", VaccineGroup.ID_HEPA);
-    addForcastItem(forecastItemList, "MMR", VaccineGroup.ID_MMR);
-    addForcastItem(forecastItemList, "Measles", VaccineGroup.ID_MEASLES_ONLY);
-    addForcastItem(forecastItemList, "Mumps", VaccineGroup.ID_MUMPS_ONLY);
-    addForcastItem(forecastItemList, "Rubella", VaccineGroup.ID_RUBELLA_ONLY);
-    addForcastItem(forecastItemList, "Var", VaccineGroup.ID_VAR);
-    addForcastItem(forecastItemList, "Varicella", VaccineGroup.ID_VAR);
-    addForcastItem(forecastItemList, "Influenza", VaccineGroup.ID_INFLUENZA);
-    addForcastItem(forecastItemList, "Influenza", VaccineGroup.ID_INFLUENZA_IIV);
-    addForcastItem(forecastItemList, "Influenza", VaccineGroup.ID_INFLUENZA_LAIV);
-    addForcastItem(forecastItemList, "Influenza IIV", VaccineGroup.ID_INFLUENZA_IIV);
-    addForcastItem(forecastItemList, "Influenza IIV", VaccineGroup.ID_INFLUENZA);
-    addForcastItem(forecastItemList, "Influenza LAIV", VaccineGroup.ID_INFLUENZA_LAIV);
-    addForcastItem(forecastItemList, "MCV4", VaccineGroup.ID_MENING);
-    addForcastItem(forecastItemList, "MCV", VaccineGroup.ID_MENING);
-    addForcastItem(forecastItemList, "MeningBexsero", VaccineGroup.ID_MENING_BEXSERO);
-    addForcastItem(forecastItemList, "MeningTrumenba", VaccineGroup.ID_MENING_TRUMENBA);
-    addForcastItem(forecastItemList, "Bexsero", VaccineGroup.ID_MENING_BEXSERO);
-    addForcastItem(forecastItemList, "Trumenba", VaccineGroup.ID_MENING_TRUMENBA);
-    addForcastItem(forecastItemList, "MeningococcalB", VaccineGroup.ID_MENINGB);
-    addForcastItem(forecastItemList, "HPV", VaccineGroup.ID_HPV);
-    addForcastItem(forecastItemList, "Rota", VaccineGroup.ID_ROTA);
-    addForcastItem(forecastItemList, "Rotavirus", VaccineGroup.ID_ROTA);
-    addForcastItem(forecastItemList, "Pneumococcal ", VaccineGroup.ID_PNEUMO);
-    addForcastItem(forecastItemList, "PCV", VaccineGroup.ID_PNEUMO);
-    addForcastItem(forecastItemList, "PCV", VaccineGroup.ID_PCV);
-    addForcastItem(forecastItemList, "PCV13", VaccineGroup.ID_PNEUMO);
-    addForcastItem(forecastItemList, "PCV13", VaccineGroup.ID_PCV);
-    addForcastItem(forecastItemList, "Zoster", VaccineGroup.ID_ZOSTER);
-    addForcastItem(forecastItemList, "RZV (Shingrix)", VaccineGroup.ID_ZOSTER);
-    addForcastItem(forecastItemList, "RZV (Shingrix)", VaccineGroup.ID_SHINGRIX_ZOSTER);
-    addForcastItem(forecastItemList, "PPSV", VaccineGroup.ID_PPSV);
-    addForcastItem(forecastItemList, "Covid", VaccineGroup.ID_COVID);
+    this.vaccineGroupMapping = VaccineGroupMapping.getMapping(forecastItemList);
 
     evaluationToCvxMapping.put("Varicella", "21");
     evaluationToCvxMapping.put("Rubella", "06");
@@ -149,33 +105,18 @@ public class LSVFConnector implements ConnectorInterface
     adminStatusMapping.put(STATUS_DESCRIPTION_NOT_COMPLETE, Admin.NOT_COMPLETE);
   }
 
-  private void addForcastItem(List<VaccineGroup> forecastItemList, String familyName, int forecastItemId) {
-    for (VaccineGroup forecastItem : forecastItemList) {
-      if (forecastItem != null) {
-        if (forecastItem.getVaccineGroupId() == forecastItemId) {
-          List<VaccineGroup> forecastItemListFromMap = familyMapping.get(familyName);
-          if (forecastItemListFromMap == null) {
-            forecastItemListFromMap = new ArrayList<VaccineGroup>();
-            familyMapping.put(familyName, forecastItemListFromMap);
-          }
-          forecastItemListFromMap.add(forecastItem);
-          return;
-        }
-      }
-    }
+  public List<ForecastActual> queryForForecast(TestCase testCase, SoftwareResult softwareResult) throws Exception {
+    return ConnectorExecutor.await(queryForForecastAsync(testCase, softwareResult));
   }
 
-  public List<ForecastActual> queryForForecast(TestCase testCase, SoftwareResult softwareResult) throws Exception {
+  public CompletableFuture<List<ForecastActual>> queryForForecastAsync(final TestCase testCase,
+      final SoftwareResult softwareResult) {
 
-    Map<String, ForecastActual> forecastActualMap = new HashMap<String, ForecastActual>();
-    List<ForecastActual> list = new ArrayList<ForecastActual>();
+    final ConnectorLog log = ConnectorLog.create(logText);
+    final PrintWriter logOut = log.getWriter();
+    final QueryMetrics metrics = QueryMetrics.start(software, testCase);
 
-    StringWriter sw = new StringWriter();
-    PrintWriter logOut = null;
-    if (logText) {
-      logOut = new PrintWriter(sw);
-    }
-    try {
+    return ConnectorExecutor.call(() -> metrics.time(Phase.BUILD_REQUEST, () -> {
       String queryString = createQueryString(testCase, software, "text");
       if (logOut != null) {
         logOut.println("TCH Forecaster");
@@ -185,225 +126,233 @@ public class LSVFConnector implements ConnectorInterface
         logOut.println("Query " + software.getServiceUrl() + queryString);
         logOut.println();
       }
-      URLConnection urlConn;
-      URL url = new URL(software.getServiceUrl() + queryString);
-      urlConn = url.openConnection();
-      urlConn.setDoInput(true);
-      urlConn.setDoOutput(true);
-      urlConn.setUseCaches(true);
-      urlConn.setRequestProperty("Content-Type", "text/xml; charset=\"utf-8\"");
-      urlConn.connect();
-
-      InputStreamReader input = null;
-      input = new InputStreamReader(urlConn.getInputStream());
-      BufferedReader in = new BufferedReader(input);
-      String line;
+      return queryString;
+    })).thenCompose(queryString -> ConnectorExecutor.supply(software.getService(),
+        () -> metrics.send(() -> sendRequest(queryString))))
+        .thenCompose(response -> ConnectorExecutor.call(() -> metrics.time(Phase.PARSE,
+            () -> readResponse(response, testCase, softwareResult, logOut))))
+        .handle((list, failure) -> {
+          metrics.finish(failure == null);
+          try {
+            if (failure == null) {
+              return list;
+            }
+            Throwable e = ConnectorExecutor.unwrap(failure);
+            softwareResult.setSoftwareResultStatus(SoftwareResultStatus.PROBLEM);
+            if (logOut != null) {
+              logOut.println("Unable to get forecast results");
+              e.printStackTrace(logOut);
+            } else {
+              e.printStackTrace();
+            }
+            throw ConnectorExecutor.fail(new Exception("Unable to get forecast results", e));
+          } finally {
+            log.finish(softwareResult);
+          }
+        });
+  }
+
+  private String sendRequest(String queryString) throws IOException {
+    HttpTransport.Response response = HttpTransport.getTransport(software.getServiceUrl()).get(
+        software.getServiceUrl() + queryString,
+        HttpTransport.headers(HttpTransport.CONTENT_TYPE, "text/xml; charset=\"utf-8\""));
+    return response.checkStatus().getBody();
+  }
+
+  protected List<ForecastActual> readResponse(String response, TestCase testCase, SoftwareResult softwareResult,
+      PrintWriter logOut) throws IOException {
+    Map<String, ForecastActual> forecastActualMap = new HashMap<String, ForecastActual>();
+    List<ForecastActual> list = new ArrayList<ForecastActual>();
+
+    BufferedReader in = new BufferedReader(new StringReader(response));
+    String line;
+    if (logOut != null) {
+      logOut.println("Results:");
+    }
+    while ((line = in.readLine()) != null) {
       if (logOut != null) {
-        logOut.println("Results:");
+        logOut.println(line);
       }
-      while ((line = in.readLine()) != null) {
-        if (logOut != null) {
-          logOut.println(line);
-        }
-        line = line.trim();
-        if (line.startsWith(FORECASTING)) {
-          line = line.substring(FORECASTING.length());
-          // Example line
-          // Forecasting Influenza IIV status overdue dose 1 due 08/01/2013 valid 08/01/2013 overdue 12/01/2013 finished 01/14/2159
-          int statusPos = line.indexOf(STATUS);
-          if (statusPos > 0) {
-            String vaccineType = line.substring(0, statusPos);
-
-            List<VaccineGroup> forecastItemListFromMap = familyMapping.get(vaccineType);
-
-            int dosePos = line.indexOf(DOSE);
-            if (dosePos == -1) {
-              dosePos = line.length();
-            }
-            String status = line.substring(statusPos + STATUS.length(), dosePos);
-            String dose = "";
-            String due = "";
-            String valid = "";
-            String overdue = "";
-            String finished = "";
-            if (dosePos < line.length()) {
-              line = line.substring(dosePos + DOSE.length());
-              int duePos = line.indexOf(DUE);
-              int validPos = line.indexOf(VALID);
-              int overduePos = line.indexOf(OVERDUE);
-              int finishedPos = line.indexOf(FINISHED);
-              if (duePos > 0) {
-                dose = line.substring(0, duePos);
-                if (validPos > duePos) {
-                  due = line.substring(duePos + DUE.length(), validPos);
-                  if (overduePos > validPos) {
-                    valid = line.substring(validPos + VALID.length(), overduePos);
-                    if (finishedPos > overduePos) {
-                      overdue = line.substring(overduePos + OVERDUE.length(), finishedPos);
-                      finished = line.substring(finishedPos + FINISHED.length());
-                    }
+      line = line.trim();
+      if (line.startsWith(FORECASTING)) {
+        line = line.substring(FORECASTING.length());
+        // Example line
+        // Forecasting Influenza IIV status overdue dose 1 due 08/01/2013 valid 08/01/2013 overdue 12/01/2013 finished 01/14/2159
+        int statusPos = line.indexOf(STATUS);
+        if (statusPos > 0) {
+          String vaccineType = line.substring(0, statusPos);
+
+          List<VaccineGroup> forecastItemListFromMap = vaccineGroupMapping.getVaccineGroups(Service.LSVF, vaccineType);
+
+          int dosePos = line.indexOf(DOSE);
+          if (dosePos == -1) {
+            dosePos = line.length();
+          }
+          String status = line.substring(statusPos + STATUS.length(), dosePos);
+          String dose = "";
+          String due = "";
+          String valid = "";
+          String overdue = "";
+          String finished = "";
+          if (dosePos < line.length()) {
+            line = line.substring(dosePos + DOSE.length());
+            int duePos = line.indexOf(DUE);
+            int validPos = line.indexOf(VALID);
+            int overduePos = line.indexOf(OVERDUE);
+            int finishedPos = line.indexOf(FINISHED);
+            if (duePos > 0) {
+              dose = line.substring(0, duePos);
+              if (validPos > duePos) {
+                due = line.substring(duePos + DUE.length(), validPos);
+                if (overduePos > validPos) {
+                  valid = line.substring(validPos + VALID.length(), overduePos);
+                  if (finishedPos > overduePos) {
+                    overdue = line.substring(overduePos + OVERDUE.length(), finishedPos);
+                    finished = line.substring(finishedPos + FINISHED.length());
                   }
                 }
               }
             }
+          }
 
-            Admin adminStatus = adminStatusMapping.get(status);
-            if (adminStatus == null) {
-              adminStatus = Admin.UNKNOWN;
-            }
-            Date dueDate = null;
-            Date validDate = null;
-            Date overdueDate = null;
-            Date finishedDate = null;
-            if (due.length() == 10) {
-              dueDate = parseDate(due);
-            }
-            if (valid.length() == 10) {
-              validDate = parseDate(valid);
-            }
-            if (overdue.length() == 10) {
-              overdueDate = parseDate(overdue);
-            }
-            if (finished.length() == 10) {
-              finishedDate = parseDate(finished);
-            }
+          Admin adminStatus = adminStatusMapping.get(status);
+          if (adminStatus == null) {
+            adminStatus = Admin.UNKNOWN;
+          }
+          Date dueDate = null;
+          Date validDate = null;
+          Date overdueDate = null;
+          Date finishedDate = null;
+          if (due.length() == 10) {
+            dueDate = parseDate(due);
+          }
+          if (valid.length() == 10) {
+            validDate = parseDate(valid);
+          }
+          if (overdue.length() == 10) {
+            overdueDate = parseDate(overdue);
+          }
+          if (finished.length() == 10) {
+            finishedDate = parseDate(finished);
+          }
 
-            if (forecastItemListFromMap != null) {
-              for (VaccineGroup forecastItem : forecastItemListFromMap) {
-                if (forecastItem != null) {
-                  ForecastActual forecastActual = new ForecastActual();
-                  forecastActual.setSoftwareResult(softwareResult);
-                  forecastActual.setVaccineGroup(forecastItem);
-                  forecastActual.setAdmin(adminStatus);
-                  if (adminStatus != Admin.COMPLETE && adminStatus != Admin.COMPLETE_FOR_SEASON
-                      && adminStatus != Admin.FINISHED) {
-                    forecastActual.setDoseNumber(dose);
-                    forecastActual.setDueDate(dueDate);
-                    forecastActual.setValidDate(validDate);
-                    forecastActual.setOverdueDate(overdueDate);
-                    forecastActual.setFinishedDate(finishedDate);
-                  }
-                  list.add(forecastActual);
-                  forecastActualMap.put(vaccineType, forecastActual);
+          if (forecastItemListFromMap != null) {
+            for (VaccineGroup forecastItem : forecastItemListFromMap) {
+              if (forecastItem != null) {
+                ForecastActual forecastActual = new ForecastActual();
+                forecastActual.setSoftwareResult(softwareResult);
+                forecastActual.setVaccineGroup(forecastItem);
+                forecastActual.setAdmin(adminStatus);
+                if (adminStatus != Admin.COMPLETE && adminStatus != Admin.COMPLETE_FOR_SEASON
+                    && adminStatus != Admin.FINISHED) {
+                  forecastActual.setDoseNumber(dose);
+                  forecastActual.setDueDate(dueDate);
+                  forecastActual.setValidDate(validDate);
+                  forecastActual.setOverdueDate(overdueDate);
+                  forecastActual.setFinishedDate(finishedDate);
                 }
+                list.add(forecastActual);
+                forecastActualMap.put(vaccineType, forecastActual);
               }
             }
           }
+        }
 
-        } else if (line.startsWith(VACCINATION_LINE_PREFIX)) {
-          line = line.substring(VACCINATION_LINE_PREFIX.length());
-          int pos = line.indexOf(':');
-          if (pos > 0) {
-            try {
-              int i = Integer.parseInt(line.substring(0, pos).trim());
-              int count = 0;
-              for (TestEvent testEvent : testCase.getTestEventList()) {
-                if (testEvent.getEvent().getEventType() == EventType.VACCINATION) {
-                  count++;
-                  if (count == i) {
-                    line = line.substring(pos + 1).trim();
-                    int isValidPos = line.indexOf(" is a valid ");
-                    int isInvalidPos = line.indexOf(" is an invalid ");
-                    if (isValidPos > 0 || isInvalidPos > 0) {
-                      boolean isValid = isInvalidPos == -1 && isValidPos > -1;
-                      pos = isInvalidPos + 15;
-                      if (isInvalidPos == -1) {
-                        pos = isValidPos + 12;
+      } else if (line.startsWith(VACCINATION_LINE_PREFIX)) {
+        line = line.substring(VACCINATION_LINE_PREFIX.length());
+        int pos = line.indexOf(':');
+        if (pos > 0) {
+          try {
+            int i = Integer.parseInt(line.substring(0, pos).trim());
+            int count = 0;
+            for (TestEvent testEvent : testCase.getTestEventList()) {
+              if (testEvent.getEvent().getEventType() == EventType.VACCINATION) {
+                count++;
+                if (count == i) {
+                  line = line.substring(pos + 1).trim();
+                  int isValidPos = line.indexOf(" is a valid ");
+                  int isInvalidPos = line.indexOf(" is an invalid ");
+                  if (isValidPos > 0 || isInvalidPos > 0) {
+                    boolean isValid = isInvalidPos == -1 && isValidPos > -1;
+                    pos = isInvalidPos + 15;
+                    if (isInvalidPos == -1) {
+                      pos = isValidPos + 12;
+                    }
+                    int startPos = line.indexOf(DOSE, pos);
+                    String doseName = "";
+                    String vaccineCvx = "";
+                    String doseNumber = "";
+                    String evaluationReason = "";
+                    if (startPos > 0) {
+                      doseName = line.substring(pos, startPos).trim();
+                      vaccineCvx = evaluationToCvxMapping.get(doseName);
+                      if (vaccineCvx == null) {
+                        vaccineCvx = "";
                       }
-                      int startPos = line.indexOf(DOSE, pos);
-                      String doseName = "";
-                      String vaccineCvx = "";
-                      String doseNumber = "";
-                      String evaluationReason = "";
-                      if (startPos > 0) {
-                        doseName = line.substring(pos, startPos).trim();
-                        vaccineCvx = evaluationToCvxMapping.get(doseName);
-                        if (vaccineCvx == null) {
-                          vaccineCvx = "";
+                      startPos += 6;
+                      int endPos = line.indexOf(".", startPos);
+                      if (endPos > 0) {
+                        doseNumber = line.substring(startPos, endPos).trim();
+                        int firstSpace = doseNumber.indexOf(" ");
+                        if (firstSpace > 0) {
+                          evaluationReason = doseNumber.substring(firstSpace).trim();
+                          doseNumber = doseNumber.substring(0, firstSpace).trim();
                         }
-                        startPos += 6;
-                        int endPos = line.indexOf(".", startPos);
-                        if (endPos > 0) {
-                          doseNumber = line.substring(startPos, endPos).trim();
-                          int firstSpace = doseNumber.indexOf(" ");
-                          if (firstSpace > 0) {
-                            evaluationReason = doseNumber.substring(firstSpace).trim();
-                            doseNumber = doseNumber.substring(0, firstSpace).trim();
-                          }
-                        }
-                      }
-                      EvaluationActual evaluationActual = new EvaluationActual();
-                      evaluationActual.setSoftwareResult(softwareResult);
-                      evaluationActual.getSoftwareResult().setSoftware(software);
-                      evaluationActual.setTestEvent(testEvent);
-                      evaluationActual.setDoseNumber(doseNumber);
-                      evaluationActual.setDoseValid(isValid ? "Y" : "N");
-                      evaluationActual.setEvaluationReason(evaluationReason);
-                      //evaluationActual.setReasonCode(reasonCode);
-                      evaluationActual.setReasonText(line);
-                      evaluationActual.setSeriesUsedCode(vaccineCvx);
-                      evaluationActual.setSeriesUsedText(doseName);
-                      evaluationActual.setVaccineCvx(vaccineCvx);
-
-                      if (testEvent.getEvaluationActualList() == null) {
-                        testEvent.setEvaluationActualList(new ArrayList<EvaluationActual>());
                       }
-                      testEvent.getEvaluationActualList().add(evaluationActual);
-
                     }
-                    break;
+                    EvaluationActual evaluationActual = new EvaluationActual();
+                    evaluationActual.setSoftwareResult(softwareResult);
+                    evaluationActual.getSoftwareResult().setSoftware(software);
+                    evaluationActual.setTestEvent(testEvent);
+                    evaluationActual.setDoseNumber(doseNumber);
+                    evaluationActual.setDoseValid(isValid ? "Y" : "N");
+                    evaluationActual.setEvaluationReason(evaluationReason);
+                    //evaluationActual.setReasonCode(reasonCode);
+                    evaluationActual.setReasonText(line);
+                    evaluationActual.setSeriesUsedCode(vaccineCvx);
+                    evaluationActual.setSeriesUsedText(doseName);
+                    evaluationActual.setVaccineCvx(vaccineCvx);
+
+                    if (testEvent.getEvaluationActualList() == null) {
+                      testEvent.setEvaluationActualList(new ArrayList<EvaluationActual>());
+                    }
+                    testEvent.getEvaluationActualList().add(evaluationActual);
+
                   }
+                  break;
                 }
               }
-            } catch (NumberFormatException nfe) {
-              // ignore
             }
-          }
-        } else if (line.startsWith(DETAILS_FOR_PREFIX)) {
-          String vaccineType = line.substring(DETAILS_FOR_PREFIX.length());
-          ForecastActual forecastActual = forecastActualMap.get(vaccineType);
-          String html = in.readLine();
-          if (forecastActual != null && html != null) {
-            forecastActual.setExplanationHtml(html);
+          } catch (NumberFormatException nfe) {
+            // ignore
           }
         }
-      }
-      input.close();
-    } catch (Exception e) {
-      softwareResult.setSoftwareResultStatus(SoftwareResultStatus.PROBLEM);
-      if (logOut != null) {
-        logOut.println("Unable to get forecast results");
-        e.printStackTrace(logOut);
-      } else {
-        e.printStackTrace();
-      }
-      throw new Exception("Unable to get forecast results", e);
-    } finally {
-      if (logOut != null) {
-        logOut.close();
-        softwareResult.setLogText(sw.toString());
+      } else if (line.startsWith(DETAILS_FOR_PREFIX)) {
+        String vaccineType = line.substring(DETAILS_FOR_PREFIX.length());
+        ForecastActual forecastActual = forecastActualMap.get(vaccineType);
+        String html = in.readLine();
+        if (forecastActual != null && html != null) {
+          forecastActual.setExplanationHtml(html);
+        }
       }
     }
-
     return list;
   }
 
   public static String createQueryString(TestCase testCase, Software software, String format) {
     StringBuilder sb = new StringBuilder();
 
-    SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
-
-    sb.append("?evalDate=" + sdf.format(testCase.getEvalDate()));
+    DateCodec.appendDate(sb.append("?evalDate="), testCase.getEvalDate());
     sb.append("&scheduleName=" + software.getScheduleName());
     sb.append("&resultFormat=" + format);
-    sb.append("&patientDob=" + sdf.format(testCase.getPatientDob()) + "");
+    DateCodec.appendDate(sb.append("&patientDob="), testCase.getPatientDob());
     sb.append("&patientSex=" + testCase.getPatientSex() + "");
     int count = 0;
     for (TestEvent testEvent : testCase.getTestEventList()) {
       if (testEvent.getEvent() != null && testEvent.getEvent().getEventType() == EventType.VACCINATION
           && testEvent.getEventDate() != null) {
         count++;
-        sb.append("&vaccineDate" + count + "=" + sdf.format(testEvent.getEventDate()));
+        DateCodec.appendDate(sb.append("&vaccineDate" + count + "="), testEvent.getEventDate());
         sb.append("&vaccineCvx" + count + "=" + testEvent.getEvent().getVaccineCvx());
         sb.append("&vaccineMvx" + count + "=" + testEvent.getEvent().getVaccineMvx());
         if (testEvent.getCondition() != null) {
@@ -442,9 +391,8 @@ public class LSVFConnector implements ConnectorInterface
     }
 
     if (s.length() > 0) {
-      SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
       try {
-        date = sdf.parse(s);
+        date = DateCodec.parseUsDate(s);
       } catch (ParseException pe) {
         // ignore
       }
@@ -1,15 +1,16 @@
 package org.immregistries.vfa.connect;
 
 import java.io.StringWriter;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import javax.xml.datatype.XMLGregorianCalendar;
+import org.immregistries.vfa.connect.ConnectorMetricsListener.Phase;
 import org.immregistries.vfa.connect.model.Evaluation;
 import org.immregistries.vfa.connect.model.EvaluationActual;
 import org.immregistries.vfa.connect.model.ForecastActual;
@@ -33,7 +34,6 @@ import swp.mds.wsdl.domain.SeriesDose;
 public class MDSConnector implements ConnectorInterface {
 
     private Software software = null;
-    static SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
     boolean logText = false;
     private ObjectMapper mapper = new ObjectMapper();
 
@@ -47,13 +47,17 @@ public class MDSConnector implements ConnectorInterface {
     }
 
     public List<ForecastActual> queryForForecast(TestCase testCase, SoftwareResult softwareResult) throws Exception {
+        return ConnectorExecutor.await(queryForForecastAsync(testCase, softwareResult));
+    }
+
+    public CompletableFuture<List<ForecastActual>> queryForForecastAsync(final TestCase testCase, final SoftwareResult softwareResult) {
     	softwareResult.setSoftware(this.software);
         String gender = testCase.getPatientSex();
         Date dob = testCase.getPatientDob();
-        Date evalDate = testCase.getEvalDate();
-        Map<Integer, Map<Long, TestEvent>> eventsMap = new HashMap<Integer, Map<Long, TestEvent>>();
-        Patient patient = new Patient(gender, dob);
-        List<Dose> doses = new ArrayList<Dose>();
+        final Date evalDate = testCase.getEvalDate();
+        final Map<Integer, Map<Long, TestEvent>> eventsMap = new HashMap<Integer, Map<Long, TestEvent>>();
+        final Patient patient = new Patient(gender, dob);
+        final List<Dose> doses = new ArrayList<Dose>();
         for (TestEvent event : testCase.getTestEventList()) {
             String cvx = event.getEvent().getVaccineCvx();
             Date date = event.getEventDate();
@@ -67,30 +71,33 @@ public class MDSConnector implements ConnectorInterface {
             }
         }
         
-        MDSClientImpl client = new MDSClientImpl();
-        StringWriter writer = new StringWriter();
+        final MDSClientImpl client = new MDSClientImpl();
+        final StringWriter writer = new StringWriter();
+        final QueryMetrics metrics = QueryMetrics.start(software, testCase);
         
-        try {
-        	
-            Careplan careplan = client.getForecast(this.software.getServiceUrl(), patient, evalDate, doses, writer);
-            this.setLogText(true);
-            writer.write("\n[Reading Evaluations]\n");
-            readEvalution(careplan, eventsMap, softwareResult);
-            writer.write("\n[Reading Forecasts]\n");
-            List<ForecastActual> forecast = readForecast(careplan, writer);
-            
-            softwareResult.setLogText(writer.toString());
-            return forecast;
-            
-        } catch(Exception exp) {
-        	writer.write("\nProblem Encountred [StackTrace] : \n");
-        	writer.write(exp.getMessage());
-        	exp.printStackTrace();
-        	this.setLogText(true);
-        	softwareResult.setSoftwareResultStatus(SoftwareResultStatus.PROBLEM);
-            softwareResult.setLogText(writer.toString());
-            return null;
-        }
+        return ConnectorExecutor.supply(software.getService(), () -> metrics.time(Phase.EXCHANGE,
+                () -> client.getForecast(this.software.getServiceUrl(), patient, evalDate, doses, writer)))
+            .thenCompose(careplan -> ConnectorExecutor.call(() -> metrics.time(Phase.PARSE, () -> {
+                this.setLogText(true);
+                writer.write("\n[Reading Evaluations]\n");
+                readEvalution(careplan, eventsMap, softwareResult);
+                writer.write("\n[Reading Forecasts]\n");
+                List<ForecastActual> forecast = readForecast(careplan, writer);
+                
+                softwareResult.setLogText(writer.toString());
+                return forecast;
+            })))
+            .whenComplete((forecast, failure) -> metrics.finish(failure == null))
+            .exceptionally(failure -> {
+                Throwable exp = ConnectorExecutor.unwrap(failure);
+            	writer.write("\nProblem Encountred [StackTrace] : \n");
+            	writer.write(exp.getMessage());
+            	exp.printStackTrace();
+            	this.setLogText(true);
+            	softwareResult.setSoftwareResultStatus(SoftwareResultStatus.PROBLEM);
+                softwareResult.setLogText(writer.toString());
+                return null;
+            });
     }
 
     private List<ForecastActual> readForecast(Careplan careplan, StringWriter log) throws JsonProcessingException {
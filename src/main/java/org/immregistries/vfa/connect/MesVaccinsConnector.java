@@ -1,15 +1,12 @@
 package org.immregistries.vfa.connect;
 
 import java.io.BufferedReader;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.StringReader;
 import java.io.StringWriter;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
@@ -18,6 +15,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import org.immregistries.vfa.connect.ConnectorMetricsListener.Phase;
 import org.immregistries.vfa.connect.mesvaccins.MesVaccinsDisease;
 import org.immregistries.vfa.connect.mesvaccins.MesVaccinsVaccine;
 import org.immregistries.vfa.connect.model.Admin;
@@ -27,6 +26,7 @@ import org.immregistries.vfa.connect.model.SoftwareResult;
 import org.immregistries.vfa.connect.model.TestCase;
 import org.immregistries.vfa.connect.model.TestEvent;
 import org.immregistries.vfa.connect.model.VaccineGroup;
+import org.immregistries.vfa.connect.util.DateCodec;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 
@@ -134,32 +134,19 @@ public class MesVaccinsConnector implements ConnectorInterface {
 
   public List<MesVaccinsVaccine> getVaccines() throws IOException {
     List<MesVaccinsVaccine> vaccineList = new ArrayList<>();
-    HttpURLConnection urlConn;
-    InputStreamReader input = null;
     String query = software.getServiceUrl() + "/vaccines.json?include_foreigns=1";
-    URL url = new URL(query);
-
-    urlConn = (HttpURLConnection) url.openConnection();
-    urlConn.setRequestMethod("GET");
     String authorization = software.getServiceUserid() + ":" + software.getServicePassword();
     authorization = Base64.getEncoder().encodeToString((authorization).getBytes());
-    urlConn.setRequestProperty("Authorization", "Basic " + authorization);
-    urlConn.setDoInput(true);
-    urlConn.setDoOutput(false);
-    urlConn.setUseCaches(false);
     System.out.println("--> sending request");
 
-    try {
-      input = new InputStreamReader(urlConn.getInputStream(), "UTF-8");
-      JsonReader reader = new JsonReader(input);
+    HttpTransport.Response response = HttpTransport.getTransport(query).get(query,
+        HttpTransport.headers("Authorization", "Basic " + authorization));
+    if (response.isOk()) {
+      JsonReader reader = new JsonReader(new StringReader(response.getBody()));
       handleArray(reader, vaccineList, null);
-      input.close();
-    } catch (IOException ioe) {
-      ioe.printStackTrace();
-      input = new InputStreamReader(urlConn.getErrorStream(), "UTF-8");
-      StringBuilder response = getResponse(input);
-      input.close();
-      System.out.println(response);
+    } else {
+      System.out.println("--> service returned HTTP status " + response.getStatus());
+      System.out.println(response.getBody());
     }
     return vaccineList;
   }
@@ -284,31 +271,24 @@ public class MesVaccinsConnector implements ConnectorInterface {
   @Override
   public List<ForecastActual> queryForForecast(TestCase testCase, SoftwareResult softwareResult)
       throws Exception {
+    return ConnectorExecutor.await(queryForForecastAsync(testCase, softwareResult));
+  }
 
-    List<ForecastActual> forecastActualList = new ArrayList<>();
-    HttpURLConnection urlConn;
-    InputStreamReader input = null;
-    String query = software.getServiceUrl() + "/decision_support/immunisation_assessment.json";
-    URL url = new URL(query);
-
-    urlConn = (HttpURLConnection) url.openConnection();
-    urlConn.setRequestMethod("POST");
-    String authorization = software.getServiceUserid() + ":" + software.getServicePassword();
-    authorization = Base64.getEncoder().encodeToString((authorization).getBytes());
-    urlConn.setRequestProperty("Authorization", "Basic " + authorization);
-    urlConn.setDoInput(true);
-    urlConn.setDoOutput(true);
-    urlConn.setUseCaches(false);
-
+  public CompletableFuture<List<ForecastActual>> queryForForecastAsync(final TestCase testCase,
+      final SoftwareResult softwareResult) {
+    final QueryMetrics metrics = QueryMetrics.start(software, testCase);
+    return ConnectorExecutor.call(() -> metrics.time(Phase.BUILD_REQUEST, () -> makeRequest(testCase)))
+        .thenCompose(messageBeingSent -> ConnectorExecutor.supply(software.getService(),
+            () -> metrics.send(() -> sendRequest(messageBeingSent))))
+        .thenCompose(response -> ConnectorExecutor.call(() -> metrics.time(Phase.PARSE, () -> readResponse(response))))
+        .whenComplete((list, failure) -> metrics.finish(failure == null));
+  }
 
-    DataOutputStream printout = new DataOutputStream(urlConn.getOutputStream());
+  private String makeRequest(TestCase testCase) {
     StringWriter stringWriter = new StringWriter();
     PrintWriter out = new PrintWriter(stringWriter);
     out.println("{");
-    {
-      SimpleDateFormat sdfDateOnly = new SimpleDateFormat("yyyy-MM-dd");
-      out.println("    \"birth_date\": \"" + sdfDateOnly.format(testCase.getPatientDob()) + "\",");
-    }
+    out.println("    \"birth_date\": \"" + DateCodec.formatIsoDate(testCase.getPatientDob()) + "\",");
     out.println("    \"gender\": \""
         + (testCase.getPatientSex().equalsIgnoreCase("M") ? "male" : "female") + "\",");
     out.println("    \"condition_ids\": [],");
@@ -317,14 +297,13 @@ public class MesVaccinsConnector implements ConnectorInterface {
     for (TestEvent testEvent : testCase.getTestEventList()) {
       String mesVaccinsVaccineId = mesVaccinsVaccineIdMap.get(testEvent.getEvent().getEventId());
       if (mesVaccinsVaccineId != null) {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
         if (first) {
           first = false;
         } else {
           out.println("      ,");
         }
         out.println("      {");
-        out.println("        \"date\": \"" + sdf.format(testEvent.getEventDate()) + "\",");
+        out.println("        \"date\": \"" + DateCodec.formatIsoDateTime(testEvent.getEventDate()) + "\",");
         out.println("        \"vaccine_id\": " + mesVaccinsVaccineId + ",");
         out.println("        \"booster\": false");
         out.println("      }");
@@ -333,24 +312,34 @@ public class MesVaccinsConnector implements ConnectorInterface {
     out.println("    ],");
     out.println("    \"user_type\": \"professional\"");
     out.println("}");
-    String messageBeingSent = stringWriter.toString();
-    printout.writeBytes(messageBeingSent);
-    printout.flush();
-    printout.close();
+    return stringWriter.toString();
+  }
+
+  /**
+   * Returns the response body, or null if the service returned an error.
+   */
+  private String sendRequest(String messageBeingSent) throws IOException {
+    String query = software.getServiceUrl() + "/decision_support/immunisation_assessment.json";
+    String authorization = software.getServiceUserid() + ":" + software.getServicePassword();
+    authorization = Base64.getEncoder().encodeToString((authorization).getBytes());
 
     System.out.println("--> sending request");
 
-    try {
-      input = new InputStreamReader(urlConn.getInputStream(), "UTF-8");
-      JsonReader reader = new JsonReader(input);
+    HttpTransport.Response response = HttpTransport.getTransport(query).post(query,
+        HttpTransport.headers("Authorization", "Basic " + authorization), messageBeingSent);
+    if (!response.isOk()) {
+      System.out.println("--> service returned HTTP status " + response.getStatus());
+      System.out.println(response.getBody());
+      return null;
+    }
+    return response.getBody();
+  }
+
+  private List<ForecastActual> readResponse(String response) throws IOException {
+    List<ForecastActual> forecastActualList = new ArrayList<>();
+    if (response != null) {
+      JsonReader reader = new JsonReader(new StringReader(response));
       responseObject(reader, forecastActualList, null);
-      input.close();
-    } catch (IOException ioe) {
-      ioe.printStackTrace();
-      input = new InputStreamReader(urlConn.getErrorStream(), "UTF-8");
-      StringBuilder response = getResponse(input);
-      input.close();
-      System.out.println(response);
     }
 
     for (Iterator<ForecastActual> it = forecastActualList.iterator(); it.hasNext();) {
@@ -472,8 +461,7 @@ public class MesVaccinsConnector implements ConnectorInterface {
         ForecastActual forecastActual = forecastActualList.get(forecastActualList.size() - 1);
         if (MES_VACCINS_NEXT_VACCINATION_DATE.equals(name)) {
           try {
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-            forecastActual.setDueDate(sdf.parse(s));
+            forecastActual.setDueDate(DateCodec.parseIsoDate(s));
           } catch (ParseException pe) {
             // ignore 
           }
@@ -0,0 +1,163 @@
+package org.immregistries.vfa.connect;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import org.immregistries.vfa.connect.ConnectorMetricsListener.Phase;
+import org.immregistries.vfa.connect.jfr.ConnectorEvents;
+import org.immregistries.vfa.connect.jfr.ForecastQueryEvent;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.TestCase;
+
+/**
+ * Times the phases of one query and passes them to the listeners registered on
+ * {@link ConnectFactory}. When no listener is registered the query gets a shared instance that
+ * does nothing, so the timing costs nothing.
+ * <p>
+ * While a request is sent through {@link #send} the metrics are current for that thread, which
+ * is how {@link HttpTransport} reports the connect, send, first byte and receive phases without
+ * knowing which query it is working for.
+ * <p>
+ * While a Flight Recorder recording is running each query is also recorded as a
+ * {@link ForecastQueryEvent}, with the bytes the transport sent and received for it.
+ */
+public class QueryMetrics {
+
+  private static final QueryMetrics NONE = new QueryMetrics(null, null, null, null);
+  private static final ThreadLocal<QueryMetrics> current = new ThreadLocal<QueryMetrics>();
+
+  private final Software software;
+  private final TestCase testCase;
+  private final List<ConnectorMetricsListener> listenerList;
+  private final ForecastQueryEvent queryEvent;
+  private final long startNanos;
+  private long bytesSent = 0;
+  private long bytesReceived = 0;
+
+  private QueryMetrics(Software software, TestCase testCase,
+      List<ConnectorMetricsListener> listenerList, ForecastQueryEvent queryEvent) {
+    this.software = software;
+    this.testCase = testCase;
+    this.listenerList = listenerList;
+    this.queryEvent = queryEvent;
+    this.startNanos = listenerList == null ? 0 : System.nanoTime();
+  }
+
+  /**
+   * Start timing a query to the software. The test case may be null when one request carries
+   * several.
+   */
+  public static QueryMetrics start(Software software, TestCase testCase) {
+    List<ConnectorMetricsListener> listenerList = ConnectFactory.getMetricsListenerList();
+    ForecastQueryEvent queryEvent =
+        ConnectorEvents.isAvailable() ? ForecastQueryEvent.beginIfEnabled() : null;
+    if (listenerList.isEmpty() && queryEvent == null) {
+      return NONE;
+    }
+    return new QueryMetrics(software, testCase, listenerList, queryEvent);
+  }
+
+  /**
+   * The metrics of the query sending a request on this thread, or ones that do nothing.
+   */
+  public static QueryMetrics current() {
+    QueryMetrics metrics = current.get();
+    return metrics == null ? NONE : metrics;
+  }
+
+  public boolean isEnabled() {
+    return listenerList != null;
+  }
+
+  public long begin() {
+    return listenerList == null ? 0 : System.nanoTime();
+  }
+
+  /**
+   * Report the phase as having run since begin, returning the time now so the next phase can
+   * start from it.
+   */
+  public long end(Phase phase, long beginNanos) {
+    if (listenerList == null) {
+      return 0;
+    }
+    long now = System.nanoTime();
+    record(phase, now - beginNanos);
+    return now;
+  }
+
+  public void record(Phase phase, long nanos) {
+    if (listenerList == null) {
+      return;
+    }
+    Service service = software == null ? null : software.getService();
+    for (ConnectorMetricsListener listener : listenerList) {
+      try {
+        listener.phaseTimed(service, software, phase, nanos);
+      } catch (RuntimeException re) {
+        // a broken listener must not break the query
+      }
+    }
+  }
+
+  /**
+   * Count the bytes of a request and its response.
+   */
+  public void addBytes(long sent, long received) {
+    if (listenerList == null) {
+      return;
+    }
+    bytesSent += sent;
+    bytesReceived += received;
+  }
+
+  public <T> T time(Phase phase, Callable<T> callable) throws Exception {
+    long beginNanos = begin();
+    try {
+      return callable.call();
+    } finally {
+      end(phase, beginNanos);
+    }
+  }
+
+  /**
+   * Run the callable with these as the current metrics, so the transport can time the request.
+   */
+  public <T> T send(Callable<T> callable) throws Exception {
+    if (listenerList == null) {
+      return callable.call();
+    }
+    QueryMetrics previous = current.get();
+    current.set(this);
+    try {
+      return callable.call();
+    } finally {
+      if (previous == null) {
+        current.remove();
+      } else {
+        current.set(previous);
+      }
+    }
+  }
+
+  /**
+   * Report the end of the query, timed from when it was started.
+   */
+  public void finish(boolean success) {
+    if (listenerList == null) {
+      return;
+    }
+    if (queryEvent != null) {
+      queryEvent.finish(software, testCase, bytesSent, bytesReceived, success);
+    }
+    long nanos = System.nanoTime() - startNanos;
+    Service service = software == null ? null : software.getService();
+    for (ConnectorMetricsListener listener : listenerList) {
+      try {
+        listener.queryFinished(service, software, nanos, success);
+      } catch (RuntimeException re) {
+        // a broken listener must not break the query
+      }
+    }
+  }
+}
@@ -0,0 +1,249 @@
+package org.immregistries.vfa.connect;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import org.immregistries.vfa.connect.model.DateSet;
+import org.immregistries.vfa.connect.model.RelativeRule;
+import org.immregistries.vfa.connect.model.RelativeTo;
+import org.immregistries.vfa.connect.model.TestCase;
+import org.immregistries.vfa.connect.model.TestEvent;
+
+/**
+ * Moves relative test cases to a new evaluation date, the same as calling
+ * TestCase.calculateFixedDates and then TestEvent.calculateFixedDates on each event, for a whole
+ * suite at once. The cases are split up and rebased in parallel on a fork/join pool.
+ * <p>
+ * Within a case an event whose rule is relative to another event is worked out after that event,
+ * whatever order the events are listed in, and each rule's date is worked out only once. A case
+ * whose rules depend on each other in a circle is reported and left as it was instead of being
+ * followed round forever.
+ */
+public class RelativeDateRebaser {
+
+  private static final int DEFAULT_BATCH_SIZE = 256;
+
+  /**
+   * Thrown when the rules of a case depend on each other in a circle.
+   */
+  public static class CyclicRuleException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    public CyclicRuleException(String message) {
+      super(message);
+    }
+  }
+
+  private final ForkJoinPool pool;
+  private int batchSize = DEFAULT_BATCH_SIZE;
+
+  public RelativeDateRebaser() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  public RelativeDateRebaser(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * How many cases one task rebases before the rest are split off to other threads.
+   */
+  public void setBatchSize(int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be at least 1, not " + batchSize);
+    }
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Rebases every relative case in the list to the evaluation date. Fixed cases are left alone.
+   * Returns the cases that could not be rebased because their rules form a circle, in list order.
+   */
+  public List<TestCase> rebase(List<TestCase> testCaseList, Date targetEvalDate) {
+    List<TestCase> cyclicList =
+        pool.invoke(new RebaseTask(new ArrayList<TestCase>(testCaseList), 0, testCaseList.size(),
+            targetEvalDate));
+    return Collections.unmodifiableList(cyclicList);
+  }
+
+  private class RebaseTask extends RecursiveTask<List<TestCase>> {
+    private static final long serialVersionUID = 1L;
+
+    private final List<TestCase> testCaseList;
+    private final int from;
+    private final int to;
+    private final Date targetEvalDate;
+
+    RebaseTask(List<TestCase> testCaseList, int from, int to, Date targetEvalDate) {
+      this.testCaseList = testCaseList;
+      this.from = from;
+      this.to = to;
+      this.targetEvalDate = targetEvalDate;
+    }
+
+    @Override
+    protected List<TestCase> compute() {
+      if (to - from > batchSize) {
+        int middle = (from + to) >>> 1;
+        RebaseTask right = new RebaseTask(testCaseList, middle, to, targetEvalDate);
+        right.fork();
+        List<TestCase> cyclicList =
+            new RebaseTask(testCaseList, from, middle, targetEvalDate).compute();
+        cyclicList.addAll(right.join());
+        return cyclicList;
+      }
+      List<TestCase> cyclicList = new ArrayList<TestCase>();
+      for (int i = from; i < to; i++) {
+        TestCase testCase = testCaseList.get(i);
+        try {
+          RelativeDateRebaser.rebase(testCase, targetEvalDate);
+        } catch (CyclicRuleException cre) {
+          cyclicList.add(testCase);
+        }
+      }
+      return cyclicList;
+    }
+  }
+
+  /**
+   * Rebases one relative case to the evaluation date. Nothing is changed if the case's rules form
+   * a circle, a CyclicRuleException is thrown instead.
+   */
+  public static void rebase(TestCase testCase, Date targetEvalDate) {
+    if (testCase.getDateSet() != DateSet.RELATIVE) {
+      return;
+    }
+    Date evalDate = testCase.getEvalDate();
+    Date patientDob = testCase.getPatientDob();
+    if (testCase.getEvalRule() != null) {
+      evalDate = targetEvalDate;
+      patientDob = testCase.getEvalRule().getTimePeriod().getDateBefore(targetEvalDate);
+    }
+    Map<TestEvent, Date> eventDateMap = new IdentityHashMap<TestEvent, Date>();
+    if (testCase.getTestEventList() != null) {
+      Map<TestEvent, List<RelativeRule>> chainMap =
+          new IdentityHashMap<TestEvent, List<RelativeRule>>();
+      for (TestEvent testEvent : testCase.getTestEventList()) {
+        if (testEvent.getEventRule() != null) {
+          chainMap.put(testEvent, ruleChain(testEvent.getEventRule()));
+        }
+      }
+      Map<RelativeRule, Date> ruleDateMap = new IdentityHashMap<RelativeRule, Date>();
+      for (TestEvent testEvent : sortByDependency(testCase, chainMap)) {
+        Date eventDate = null;
+        // the first rule that can't be worked out ends the chain, the same as calculateDate
+        for (RelativeRule rule : chainMap.get(testEvent)) {
+          Date ruleDate = ruleDateMap.get(rule);
+          if (ruleDate == null && !ruleDateMap.containsKey(rule)) {
+            Date refDate = referenceDate(rule, evalDate, patientDob, eventDateMap);
+            ruleDate = refDate == null ? null : rule.getTimePeriod().getDateFrom(refDate);
+            ruleDateMap.put(rule, ruleDate);
+          }
+          if (ruleDate == null) {
+            break;
+          }
+          if (eventDate == null || ruleDate.after(eventDate)) {
+            eventDate = ruleDate;
+          }
+        }
+        eventDateMap.put(testEvent, eventDate);
+      }
+    }
+    testCase.setEvalDate(evalDate);
+    testCase.setPatientDob(patientDob);
+    for (Map.Entry<TestEvent, Date> entry : eventDateMap.entrySet()) {
+      entry.getKey().setEventDate(entry.getValue());
+    }
+  }
+
+  private static Date referenceDate(RelativeRule rule, Date evalDate, Date patientDob,
+      Map<TestEvent, Date> eventDateMap) {
+    if (rule.getRelativeTo() == RelativeTo.BIRTH) {
+      return patientDob;
+    } else if (rule.getRelativeTo() == RelativeTo.EVALUATION) {
+      return evalDate;
+    } else if (rule.getTestEvent() != null) {
+      TestEvent testEvent = rule.getTestEvent();
+      return eventDateMap.containsKey(testEvent) ? eventDateMap.get(testEvent)
+          : testEvent.getEventDate();
+    }
+    return null;
+  }
+
+  /**
+   * The rule followed by the rules joined to it with andRule.
+   */
+  private static List<RelativeRule> ruleChain(RelativeRule rule) {
+    List<RelativeRule> chain = new ArrayList<RelativeRule>();
+    Map<RelativeRule, Boolean> seen = new IdentityHashMap<RelativeRule, Boolean>();
+    while (rule != null) {
+      if (seen.put(rule, Boolean.TRUE) != null) {
+        throw new CyclicRuleException("Rule " + rule.getRuleId() + " is joined to itself");
+      }
+      chain.add(rule);
+      rule = rule.getAndRule();
+    }
+    return chain;
+  }
+
+  /**
+   * The events with rules, each after the events its rules are relative to, in list order where
+   * that doesn't matter.
+   */
+  private static List<TestEvent> sortByDependency(TestCase testCase,
+      Map<TestEvent, List<RelativeRule>> chainMap) {
+    Map<TestEvent, List<TestEvent>> dependentMap = new IdentityHashMap<TestEvent, List<TestEvent>>();
+    Map<TestEvent, Integer> waitingMap = new IdentityHashMap<TestEvent, Integer>();
+    for (TestEvent testEvent : chainMap.keySet()) {
+      dependentMap.put(testEvent, new ArrayList<TestEvent>());
+      waitingMap.put(testEvent, 0);
+    }
+    for (TestEvent testEvent : chainMap.keySet()) {
+      for (RelativeRule rule : chainMap.get(testEvent)) {
+        TestEvent reference = rule.getTestEvent();
+        if (rule.getRelativeTo() != RelativeTo.BIRTH
+            && rule.getRelativeTo() != RelativeTo.EVALUATION && reference != null
+            && dependentMap.containsKey(reference)) {
+          dependentMap.get(reference).add(testEvent);
+          waitingMap.put(testEvent, waitingMap.get(testEvent) + 1);
+        }
+      }
+    }
+    Deque<TestEvent> ready = new ArrayDeque<TestEvent>();
+    for (TestEvent testEvent : testCase.getTestEventList()) {
+      if (waitingMap.containsKey(testEvent) && waitingMap.get(testEvent) == 0) {
+        ready.add(testEvent);
+        // only once, even if the event is listed twice
+        waitingMap.put(testEvent, -1);
+      }
+    }
+    List<TestEvent> sorted = new ArrayList<TestEvent>(waitingMap.size());
+    while (!ready.isEmpty()) {
+      TestEvent testEvent = ready.poll();
+      sorted.add(testEvent);
+      for (TestEvent dependent : dependentMap.get(testEvent)) {
+        int waiting = waitingMap.get(dependent) - 1;
+        waitingMap.put(dependent, waiting);
+        if (waiting == 0) {
+          ready.add(dependent);
+        }
+      }
+    }
+    if (sorted.size() < waitingMap.size()) {
+      throw new CyclicRuleException("Events in test case " + testCase.getTestCaseNumber()
+          + " are relative to each other in a circle");
+    }
+    return sorted;
+  }
+}
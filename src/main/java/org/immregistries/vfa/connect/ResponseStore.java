@@ -0,0 +1,243 @@
+package org.immregistries.vfa.connect;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Responses from forecast engines kept on disk so test cases can be run again without going back
+ * to the engine. Set on {@link HttpTransport} a store in RECORD mode saves every response received
+ * and a store in REPLAY mode answers every request from the file without opening a connection,
+ * failing for any request that was never recorded.
+ * <p>
+ * Requests are found by the SHA-256 of a request key, normally the method, url and body. The file
+ * is memory mapped and only ever appended to. Each record is written in full before its length,
+ * so a record cut short by a crash reads as the end of the file. When the same request is recorded
+ * more than once the last response wins.
+ */
+public class ResponseStore implements Closeable {
+
+  public enum Mode {
+                    RECORD,
+                    REPLAY
+  }
+
+  private static final int MAGIC = 0x56464152;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+  private static final int KEY_SIZE = 32;
+  private static final int DEFAULT_INITIAL_CAPACITY = 1024 * 1024;
+
+  private final File file;
+  private final Mode mode;
+  private final RandomAccessFile randomAccessFile;
+  private final FileChannel channel;
+  private volatile MappedByteBuffer buffer;
+  private int writePosition;
+  // a lock rather than synchronized so a virtual thread mapping the file doesn't pin its carrier
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private final Map<ByteBuffer, Integer> index = new ConcurrentHashMap<ByteBuffer, Integer>();
+
+  public ResponseStore(File file, Mode mode) throws IOException {
+    this(file, mode, DEFAULT_INITIAL_CAPACITY);
+  }
+
+  ResponseStore(File file, Mode mode, int initialCapacity) throws IOException {
+    this.file = file;
+    this.mode = mode;
+    if (mode == Mode.REPLAY && !file.exists()) {
+      throw new FileNotFoundException("No recorded responses found at " + file);
+    }
+    randomAccessFile = new RandomAccessFile(file, mode == Mode.REPLAY ? "r" : "rw");
+    channel = randomAccessFile.getChannel();
+    try {
+      long size = channel.size();
+      if (size == 0 && mode == Mode.RECORD) {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+            Math.max(initialCapacity, HEADER_SIZE + 4));
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        writePosition = HEADER_SIZE;
+      } else {
+        if (size > Integer.MAX_VALUE) {
+          throw new IOException(file + " is too large to be a response store");
+        }
+        buffer = channel.map(
+            mode == Mode.REPLAY ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE,
+            0, size);
+        if (size < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+          throw new IOException(file + " is not a response store");
+        }
+        writePosition = readIndex();
+      }
+    } catch (IOException ioe) {
+      randomAccessFile.close();
+      throw ioe;
+    }
+  }
+
+  /**
+   * Reads the key of every complete record and returns where the next record goes.
+   */
+  private int readIndex() {
+    int position = HEADER_SIZE;
+    int capacity = buffer.capacity();
+    while (position + 4 <= capacity) {
+      int length = buffer.getInt(position);
+      if (length <= 0 || position + 4 + length > capacity) {
+        break;
+      }
+      byte[] key = new byte[KEY_SIZE];
+      ByteBuffer b = buffer.duplicate();
+      b.position(position + 4);
+      b.get(key);
+      index.put(ByteBuffer.wrap(key), position);
+      position += 4 + length;
+    }
+    return position;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Number of different requests with a recorded response.
+   */
+  public int size() {
+    return index.size();
+  }
+
+  public boolean contains(String requestKey) {
+    return index.containsKey(ByteBuffer.wrap(digest(requestKey)));
+  }
+
+  /**
+   * The response recorded for the request, or null if there is none.
+   */
+  public HttpTransport.Response get(String requestKey) {
+    Integer position = index.get(ByteBuffer.wrap(digest(requestKey)));
+    if (position == null) {
+      return null;
+    }
+    ByteBuffer b = buffer.duplicate();
+    b.position(position + 4 + KEY_SIZE);
+    int status = b.getInt();
+    String url = readString(b);
+    String contentType = readString(b);
+    byte[] body = new byte[b.getInt()];
+    b.get(body);
+    return new HttpTransport.Response(url, status, contentType, body);
+  }
+
+  public void put(String requestKey, HttpTransport.Response response) throws IOException {
+    if (mode != Mode.RECORD) {
+      throw new IllegalStateException("Responses can only be added in RECORD mode");
+    }
+    writeLock.lock();
+    try {
+      append(requestKey, response);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private void append(String requestKey, HttpTransport.Response response) throws IOException {
+    byte[] url = toBytes(response.getUrl());
+    byte[] contentType = toBytes(response.getContentType());
+    byte[] body = response.getBodyBytes();
+    long length = (long) KEY_SIZE + 4 + 4 + length(url) + 4 + length(contentType) + 4 + body.length;
+    if (writePosition + 4 + length > Integer.MAX_VALUE) {
+      throw new IOException(file + " is full");
+    }
+    ensureCapacity(writePosition + 4 + (int) length);
+    byte[] key = digest(requestKey);
+    ByteBuffer b = buffer.duplicate();
+    b.position(writePosition + 4);
+    b.put(key);
+    b.putInt(response.getStatus());
+    writeBytes(b, url);
+    writeBytes(b, contentType);
+    b.putInt(body.length);
+    b.put(body);
+    buffer.putInt(writePosition, (int) length);
+    index.put(ByteBuffer.wrap(key), writePosition);
+    writePosition += 4 + (int) length;
+  }
+
+  /**
+   * Maps a larger part of the file. Readers holding the old mapping still see the records that
+   * were in it.
+   */
+  private void ensureCapacity(int required) throws IOException {
+    int capacity = buffer.capacity();
+    if (required <= capacity) {
+      return;
+    }
+    long newCapacity = Math.min(Integer.MAX_VALUE, Math.max((long) capacity * 2, required));
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newCapacity);
+  }
+
+  public void close() throws IOException {
+    writeLock.lock();
+    try {
+      if (mode == Mode.RECORD) {
+        buffer.force();
+      }
+      randomAccessFile.close();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private static byte[] toBytes(String s) {
+    return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static int length(byte[] bytes) {
+    return bytes == null ? 0 : bytes.length;
+  }
+
+  private static void writeBytes(ByteBuffer b, byte[] bytes) {
+    if (bytes == null) {
+      b.putInt(-1);
+    } else {
+      b.putInt(bytes.length);
+      b.put(bytes);
+    }
+  }
+
+  private static String readString(ByteBuffer b) {
+    int length = b.getInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    b.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static byte[] digest(String requestKey) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(requestKey.getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException nsae) {
+      // every Java platform has SHA-256
+      throw new IllegalStateException(nsae);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package org.immregistries.vfa.connect;
+
+import java.util.concurrent.ThreadLocalRandom;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.SoftwareSetting;
+
+/**
+ * Exponential backoff used when a query has to be repeated, for example when an IIS has not yet
+ * processed the VXU by the time the QBP arrives. The delay before attempt n + 1 is base *
+ * multiplier^(n - 1), moved up or down at random by the jitter fraction. The defaults wait 10, 20
+ * and then 40 seconds for a total of 4 attempts.
+ */
+public class RetryPolicy {
+
+  public static final String OPTION_BASE_DELAY = "retryBaseDelay";
+  public static final String OPTION_MULTIPLIER = "retryMultiplier";
+  public static final String OPTION_JITTER = "retryJitter";
+  public static final String OPTION_MAX_ATTEMPTS = "retryMaxAttempts";
+
+  private double baseDelaySeconds = 10;
+  private double multiplier = 2;
+  private double jitter = 0;
+  private int maxAttempts = 4;
+
+  public RetryPolicy() {
+    // default
+  }
+
+  public RetryPolicy(double baseDelaySeconds, double multiplier, double jitter, int maxAttempts) {
+    this.baseDelaySeconds = baseDelaySeconds;
+    this.multiplier = multiplier;
+    this.jitter = jitter;
+    this.maxAttempts = maxAttempts;
+  }
+
+  /**
+   * Reads the policy from the software settings, using the default for any that are not set or
+   * can't be read.
+   */
+  public static RetryPolicy getRetryPolicy(Software software) {
+    RetryPolicy retryPolicy = new RetryPolicy();
+    if (software.getSoftwareSettingList() != null) {
+      for (SoftwareSetting softwareSetting : software.getSoftwareSettingList()) {
+        if (softwareSetting.getServiceOption() == null || softwareSetting.getOptionValue() == null) {
+          continue;
+        }
+        String optionName = softwareSetting.getServiceOption().getOptionName();
+        String value = softwareSetting.getOptionValue().trim();
+        try {
+          if (OPTION_BASE_DELAY.equals(optionName)) {
+            retryPolicy.setBaseDelaySeconds(Double.parseDouble(value));
+          } else if (OPTION_MULTIPLIER.equals(optionName)) {
+            retryPolicy.setMultiplier(Double.parseDouble(value));
+          } else if (OPTION_JITTER.equals(optionName)) {
+            retryPolicy.setJitter(Double.parseDouble(value));
+          } else if (OPTION_MAX_ATTEMPTS.equals(optionName)) {
+            retryPolicy.setMaxAttempts(Integer.parseInt(value));
+          }
+        } catch (NumberFormatException nfe) {
+          // keep default
+        }
+      }
+    }
+    return retryPolicy;
+  }
+
+  /**
+   * Returns true if another attempt may be made after the given number of attempts.
+   */
+  public boolean canRetry(int attempts) {
+    return attempts < maxAttempts;
+  }
+
+  /**
+   * Milliseconds to wait after the given attempt (counting from 1) before trying again.
+   */
+  public long getDelayMillis(int attempt) {
+    double delay = baseDelaySeconds * Math.pow(multiplier, attempt - 1);
+    if (jitter > 0) {
+      double r = ThreadLocalRandom.current().nextDouble();
+      delay = delay * (1 + jitter * (2 * r - 1));
+    }
+    return Math.max(0, Math.round(delay * 1000));
+  }
+
+  public double getBaseDelaySeconds() {
+    return baseDelaySeconds;
+  }
+
+  public void setBaseDelaySeconds(double baseDelaySeconds) {
+    this.baseDelaySeconds = baseDelaySeconds;
+  }
+
+  public double getMultiplier() {
+    return multiplier;
+  }
+
+  public void setMultiplier(double multiplier) {
+    this.multiplier = multiplier;
+  }
+
+  public double getJitter() {
+    return jitter;
+  }
+
+  public void setJitter(double jitter) {
+    this.jitter = jitter;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public void setMaxAttempts(int maxAttempts) {
+    this.maxAttempts = maxAttempts;
+  }
+}
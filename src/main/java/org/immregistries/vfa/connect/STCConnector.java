@@ -1,35 +1,11 @@
 package org.immregistries.vfa.connect;
 
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_ANTHRAX;
 import static org.immregistries.vfa.connect.model.VaccineGroup.ID_DTAP;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_DTAP_TDAP_TD;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_HEPA;
 import static org.immregistries.vfa.connect.model.VaccineGroup.ID_HEPB;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_HEPB_2_ONLY;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_HEPB_3_ONLY;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_HIB;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_HPV;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_INFLUENZA;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_MEASLES_ONLY;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_MENING;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_MMR;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_MUMPS_ONLY;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_NOVEL_H1N1;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_PCV;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_PNEUMO;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_POLIO;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_PPSV;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_ROTA;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_RUBELLA_ONLY;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_SMALLPOX_SHOT_OR_READING;
 import static org.immregistries.vfa.connect.model.VaccineGroup.ID_TDAP_TD;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_VAR;
-import static org.immregistries.vfa.connect.model.VaccineGroup.ID_ZOSTER;
 import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
@@ -38,15 +14,21 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.apache.axis2.client.Options;
+import org.apache.axis2.transport.http.HTTPConstants;
+import org.immregistries.vfa.connect.ConnectorMetricsListener.Phase;
 import org.immregistries.vfa.connect.model.Admin;
 import org.immregistries.vfa.connect.model.EventType;
 import org.immregistries.vfa.connect.model.ForecastActual;
+import org.immregistries.vfa.connect.model.Service;
 import org.immregistries.vfa.connect.model.Software;
 import org.immregistries.vfa.connect.model.SoftwareResult;
 import org.immregistries.vfa.connect.model.SoftwareResultStatus;
 import org.immregistries.vfa.connect.model.TestCase;
 import org.immregistries.vfa.connect.model.TestEvent;
 import org.immregistries.vfa.connect.model.VaccineGroup;
+import org.immregistries.vfa.connect.util.DateCodec;
 import com.stchome.saf.common.DateYYYYMMDDType;
 import com.stchome.saf.common.GenderType;
 import com.stchome.saf.common.Len20StringType;
@@ -54,6 +36,7 @@ import com.stchome.saf.common.ScheduleType;
 import com.stchome.saf.common.VaccCodeStringType;
 import com.stchome.saf.common.VaccMessageType;
 import com.stchome.saf.common.VaccineCodeType;
+import com.stchome.saf.messages.get._1_2.GetForecastRequestServiceCallbackHandler;
 import com.stchome.saf.messages.get._1_2.GetForecastRequestServiceStub;
 import com.stchome.saf.messages.get._1_3.ForecastDetailsType;
 import com.stchome.saf.messages.get._1_3.ForecastRequestType;
@@ -66,11 +49,10 @@ import com.stchome.saf.messages.get._1_3.VaccinationType;
 public class STCConnector extends GetForecastRequestServiceStub implements ConnectorInterface
 {
 
-  private Map<String, List<VaccineGroup>> familyMapping = new HashMap<String, List<VaccineGroup>>();
-  private Map<String, String> notSupported = new HashMap<String, String>();
+  private final VaccineGroupMapping vaccineGroupMapping;
+  private final Map<String, String> notSupported = new HashMap<String, String>();
 
   private Software software = null;
-  private List<VaccineGroup> forecastItemList = null;
 
   private boolean logText = false;
 
@@ -82,41 +64,33 @@ public class STCConnector extends GetForecastRequestServiceStub implements Conne
     this.logText = logText;
   }
 
+  private int batchSize = 25;
+
+  /**
+   * Maximum number of test cases sent in one GetForecast request by queryForForecastBatch.
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
   private static String STC_HEP_3_DOSE = "4";
   private static String STC_HEP_2_DOSE = "12";
 
   public STCConnector(Software software, List<VaccineGroup> forecastItemList) throws Exception {
     super(software.getServiceUrl());
     this.software = software;
-    this.forecastItemList = forecastItemList;
-    map("1", ID_DTAP_TDAP_TD); // DTaP
-    map("1", ID_DTAP); // DTaP
-    map("1", ID_TDAP_TD); // DTaP
-    map("2", ID_HIB); // Hib
-    map("3", ID_POLIO); // IPV
-    map("4", ID_HEPB); // HepB
-    map("4", ID_HEPB_3_ONLY); // HepB
-    map("5", ID_MMR); // MMR
-    map("6", ID_VAR); // Var
-    map("7", ID_MENING); // MCV4
-    map("9", ID_HEPA); // HepA
-    map("10", ID_INFLUENZA); // Influenza
-    map("11", ID_PCV); // PCV13
-    map("11", ID_PNEUMO); // PCV13
-    map("12", ID_HEPB); // HepB 3 Dose
-    map("12", ID_HEPB_2_ONLY); // Hep-B 2 Dose
-    map("13", ID_ANTHRAX); // Anthrax
-    map("14", ID_SMALLPOX_SHOT_OR_READING); // Smallpox shot/reading
-    map("15", ID_MEASLES_ONLY); // Measles
-    map("16", ID_MUMPS_ONLY); // Mumps
-    map("17", ID_RUBELLA_ONLY); // Rubella
-    map("18", ID_PPSV); // Pneumo PPSV
-    map("20", ID_ROTA); // Rota
-    map("21", ID_HPV); // HPV
-    map("22", ID_ZOSTER); // Herpes Zoster
-    map("23", ID_NOVEL_H1N1); // Novel Influenza
-    map("24", ID_TDAP_TD); // Tdap
-    map("24", ID_DTAP_TDAP_TD); // Tdap
+    // Axis2 uses its own HTTP client, give it the same timeouts as HttpTransport and keep its
+    // connections open between requests
+    Options options = _getServiceClient().getOptions();
+    options.setTimeOutInMilliSeconds(HttpTransport.getDefaultReadTimeout());
+    options.setProperty(HTTPConstants.SO_TIMEOUT, HttpTransport.getDefaultReadTimeout());
+    options.setProperty(HTTPConstants.CONNECTION_TIMEOUT, HttpTransport.getDefaultConnectTimeout());
+    options.setProperty(HTTPConstants.REUSE_HTTP_CLIENT, Boolean.TRUE);
+    this.vaccineGroupMapping = VaccineGroupMapping.getMapping(forecastItemList);
   }
 
   private static final Map<String, String> stcFamilyCodeNameMap = new HashMap<String, String>();
@@ -153,250 +127,351 @@ public class STCConnector extends GetForecastRequestServiceStub implements Conne
     return label;
   }
 
-  private void map(String familyName, int forecastItemId) {
-    for (VaccineGroup forecastItem : forecastItemList) {
-      if (forecastItem.getVaccineGroupId() == forecastItemId) {
-        List<VaccineGroup> forecastItemListFromMap = familyMapping.get(familyName);
-        if (forecastItemListFromMap == null) {
-          forecastItemListFromMap = new ArrayList<VaccineGroup>();
-          familyMapping.put(familyName, forecastItemListFromMap);
-        }
-        forecastItemListFromMap.add(forecastItem);
-        return;
-      }
-    }
+  public List<ForecastActual> queryForForecast(TestCase testCase, SoftwareResult softwareResult) throws Exception {
+    return ConnectorExecutor.await(queryForForecastAsync(testCase, softwareResult));
   }
 
-  public List<ForecastActual> queryForForecast(TestCase testCase, SoftwareResult softwareResult) throws Exception {
+  /**
+   * Uses the non-blocking invocation of the generated Axis2 stub, so the calling thread returns at
+   * once. Axis2 still runs the exchange on one of its own worker threads, which waits on the
+   * response.
+   */
+  public CompletableFuture<List<ForecastActual>> queryForForecastAsync(final TestCase testCase,
+      final SoftwareResult softwareResult) {
+    return queryForForecastRequest(Collections.singletonList(testCase), Collections.singletonList(softwareResult))
+        .thenApply(resultList -> resultList.get(0));
+  }
 
-    SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
+  /**
+   * Sends up to batchSize test cases in each GetForecast request. The persons in the response are
+   * matched back to their test cases by person id, which is P followed by the position in the
+   * request since STC only takes 20 characters.
+   */
+  @Override
+  public List<List<ForecastActual>> queryForForecastBatch(List<TestCase> testCaseList,
+      List<SoftwareResult> softwareResultList) throws Exception {
+    List<CompletableFuture<List<List<ForecastActual>>>> futureList = new ArrayList<CompletableFuture<List<List<ForecastActual>>>>();
+    for (int start = 0; start < testCaseList.size(); start += batchSize) {
+      int end = Math.min(start + batchSize, testCaseList.size());
+      futureList.add(queryForForecastRequest(testCaseList.subList(start, end), softwareResultList.subList(start, end)));
+    }
+    List<List<ForecastActual>> resultList = new ArrayList<List<ForecastActual>>();
+    for (List<List<ForecastActual>> requestResultList : ConnectorExecutor.awaitAll(futureList)) {
+      resultList.addAll(requestResultList);
+    }
+    return resultList;
+  }
 
-    StringWriter sw = new StringWriter();
-    PrintWriter logOut = logText ? new PrintWriter(sw) : null;
-    List<ForecastActual> list = new ArrayList<ForecastActual>();
+  private CompletableFuture<List<List<ForecastActual>>> queryForForecastRequest(final List<TestCase> testCaseList,
+      final List<SoftwareResult> softwareResultList) {
 
-    try {
+    final int size = testCaseList.size();
+    final ConnectorLog[] logArray = new ConnectorLog[size];
+    final PrintWriter[] logOutArray = new PrintWriter[size];
+    for (int i = 0; i < size; i++) {
+      logArray[i] = ConnectorLog.create(logText);
+      PrintWriter logOut = logArray[i].getWriter();
+      logOutArray[i] = logOut;
       if (logOut != null) {
 
         logOut.println("STC Forecaster");
         logOut.println();
         logOut.println("Current time " + new Date());
         logOut.println("Connecting to " + software.getServiceUrl());
+        if (size > 1) {
+          logOut.println("Sending as person " + (i + 1) + " of " + size + " in one request");
+        }
       }
-      PersonDetailsType personDetailsType = new PersonDetailsType();
-      {
-        personDetailsType.setScheduleType(ScheduleType.CDSI);
-      }
-      {
-        DateYYYYMMDDType dateOfBirth = new DateYYYYMMDDType();
-        dateOfBirth.setDateYYYYMMDDType(sdf.format(testCase.getPatientDob()));
-        personDetailsType.setDateOfBirth(dateOfBirth);
-      }
-      personDetailsType.setGender("M".equals(testCase.getPatientSex()) ? GenderType.M : GenderType.F);
-      {
-        Len20StringType personId = new Len20StringType();
-        personId.setLen20StringType(testCase.getTestCaseNumber());
-        personDetailsType.setPersonId(personId);
-      }
-      {
-        DateYYYYMMDDType evaluationDate = new DateYYYYMMDDType();
-        evaluationDate.setDateYYYYMMDDType(sdf.format(testCase.getEvalDate()));
-        personDetailsType.setEvaluationDate(evaluationDate);
+    }
+    final Map<String, Integer> personIdMap = new HashMap<String, Integer>();
+    final QueryMetrics metrics = QueryMetrics.start(software, size == 1 ? testCaseList.get(0) : null);
+    return ConnectorExecutor.call(() -> metrics.time(Phase.BUILD_REQUEST, () -> {
+      PersonDetailsType[] personDetailsTypes = new PersonDetailsType[size];
+      for (int i = 0; i < size; i++) {
+        String personId = "P" + (i + 1);
+        personIdMap.put(personId, i);
+        personDetailsTypes[i] = createPersonDetails(testCaseList.get(i), personId);
       }
-      List<VaccinationType> vaccinationTypeList = new ArrayList<VaccinationType>();
-      for (TestEvent testEvent : testCase.getTestEventList()) {
-        if (testEvent.getEvent().getEventType() == EventType.VACCINATION) {
-          VaccinationType vaccinationType = new VaccinationType();
-          vaccinationType.setCompromisedCode("");
-          String cvxCode = testEvent.getEvent().getVaccineCvx();
-          if (cvxCode.startsWith("0")) {
-            cvxCode = cvxCode.substring(1);
+      GetForecastRequest getForecastRequest = new GetForecastRequest();
+      ForecastRequestType forecastRequestType = new ForecastRequestType();
+      forecastRequestType.setPersonDetails(personDetailsTypes);
+      getForecastRequest.setGetForecastRequest(forecastRequestType);
+      return getForecastRequest;
+    })).thenCompose(getForecastRequest -> {
+      long exchangeStart = metrics.begin();
+      return sendRequest(getForecastRequest)
+          .whenComplete((getForecastResponse, failure) -> metrics.end(Phase.EXCHANGE, exchangeStart));
+    }).thenCompose(getForecastResponse -> ConnectorExecutor.call(() -> metrics.time(Phase.PARSE, () -> {
+          List<List<ForecastActual>> resultList = new ArrayList<List<ForecastActual>>();
+          for (int i = 0; i < size; i++) {
+            resultList.add(new ArrayList<ForecastActual>());
           }
-          {
-            VaccCodeStringType vaccCodeStringType = new VaccCodeStringType();
-            vaccCodeStringType.setVaccCodeStringType(cvxCode);
-            vaccinationType.setVaccCode(vaccCodeStringType);
+          boolean[] answered = new boolean[size];
+          ResponseDetailType[] responseDetailTypes = getForecastResponse.getGetForecastResponse().getResponses();
+          if (responseDetailTypes == null) {
+            responseDetailTypes = new ResponseDetailType[0];
           }
-          {
-            DateYYYYMMDDType vaccDate = new DateYYYYMMDDType();
-            vaccDate.setDateYYYYMMDDType(sdf.format(testEvent.getEventDate()));
-            vaccinationType.setVaccDate(vaccDate);
+          for (int r = 0; r < responseDetailTypes.length; r++) {
+            ResponseDetailType responseDetailType = responseDetailTypes[r];
+            Integer i = null;
+            PersonDetailsType personDetailsType = responseDetailType.getPersonDetails();
+            if (personDetailsType != null && personDetailsType.getPersonId() != null) {
+              i = personIdMap.get(personDetailsType.getPersonId().getLen20StringType());
+            }
+            if (i == null && r < size) {
+              // person id not echoed back, fall back on the order sent
+              i = r;
+            }
+            if (i == null || answered[i]) {
+              continue;
+            }
+            answered[i] = true;
+            readResponseDetail(responseDetailType, testCaseList.get(i), softwareResultList.get(i), logOutArray[i],
+                resultList.get(i));
+          }
+          for (int i = 0; i < size; i++) {
+            if (!answered[i] && logOutArray[i] != null) {
+              logOutArray[i].println("No results returned!");
+            }
+          }
+          return resultList;
+        })))
+        .handle((resultList, failure) -> {
+          metrics.finish(failure == null);
+          try {
+            if (failure == null) {
+              return resultList;
+            }
+            Throwable e = ConnectorExecutor.unwrap(failure);
+            for (int i = 0; i < size; i++) {
+              softwareResultList.get(i).setSoftwareResultStatus(SoftwareResultStatus.PROBLEM);
+              if (logOutArray[i] != null) {
+                logOutArray[i].println("Unable to get forecast results");
+                e.printStackTrace(logOutArray[i]);
+              }
+            }
+            if (!logText) {
+              e.printStackTrace();
+            }
+            throw ConnectorExecutor.fail(new Exception("Unable to get forecast results", e));
+          } finally {
+            for (int i = 0; i < size; i++) {
+              logArray[i].finish(softwareResultList.get(i));
+            }
           }
-          vaccinationType.setDoseSize(new BigDecimal(1.0));
-          vaccinationType.setCodeType(VaccineCodeType.CVX);
-          vaccinationTypeList.add(vaccinationType);
+        });
+  }
+
+  private CompletableFuture<GetForecastResponse> sendRequest(GetForecastRequest getForecastRequest) {
+    final CompletableFuture<GetForecastResponse> future = new CompletableFuture<GetForecastResponse>();
+    try {
+      startgetForecast(getForecastRequest, new GetForecastRequestServiceCallbackHandler() {
+        @Override
+        public void receiveResultgetForecast(GetForecastResponse result) {
+          future.complete(result);
         }
-      }
-      personDetailsType.setVaccination(vaccinationTypeList.toArray(new VaccinationType[] {}));
 
-      GetForecastRequest getForecastRequest = new GetForecastRequest();
-      ForecastRequestType forecastRequestType = new ForecastRequestType();
-      forecastRequestType.setPersonDetails(new PersonDetailsType[] { personDetailsType });
-      getForecastRequest.setGetForecastRequest(forecastRequestType);
+        @Override
+        public void receiveErrorgetForecast(Exception e) {
+          future.completeExceptionally(e);
+        }
+      });
+    } catch (Exception e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
 
-      GetForecastResponse getForecastResponse = getForecast(getForecastRequest);
-      ResponseDetailType[] responseDetailTypes = getForecastResponse.getGetForecastResponse().getResponses();
-      if (responseDetailTypes.length == 0) {
-        if (logOut != null) {
-          logOut.println("No results returned!");
+  private PersonDetailsType createPersonDetails(TestCase testCase, String personIdString) {
+    PersonDetailsType personDetailsType = new PersonDetailsType();
+    {
+      personDetailsType.setScheduleType(ScheduleType.CDSI);
+    }
+    {
+      DateYYYYMMDDType dateOfBirth = new DateYYYYMMDDType();
+      dateOfBirth.setDateYYYYMMDDType(DateCodec.formatDate(testCase.getPatientDob()));
+      personDetailsType.setDateOfBirth(dateOfBirth);
+    }
+    personDetailsType.setGender("M".equals(testCase.getPatientSex()) ? GenderType.M : GenderType.F);
+    {
+      Len20StringType personId = new Len20StringType();
+      personId.setLen20StringType(personIdString);
+      personDetailsType.setPersonId(personId);
+    }
+    {
+      DateYYYYMMDDType evaluationDate = new DateYYYYMMDDType();
+      evaluationDate.setDateYYYYMMDDType(DateCodec.formatDate(testCase.getEvalDate()));
+      personDetailsType.setEvaluationDate(evaluationDate);
+    }
+    List<VaccinationType> vaccinationTypeList = new ArrayList<VaccinationType>();
+    for (TestEvent testEvent : testCase.getTestEventList()) {
+      if (testEvent.getEvent().getEventType() == EventType.VACCINATION) {
+        VaccinationType vaccinationType = new VaccinationType();
+        vaccinationType.setCompromisedCode("");
+        String cvxCode = testEvent.getEvent().getVaccineCvx();
+        if (cvxCode.startsWith("0")) {
+          cvxCode = cvxCode.substring(1);
         }
-      } else {
-        ResponseDetailType responseDetailType = responseDetailTypes[0];
-        personDetailsType = responseDetailType.getPersonDetails();
-        if (logOut != null) {
-          logOut.println("Results returned");
-          logOut.println("Information: " + responseDetailType.getInformation());
+        {
+          VaccCodeStringType vaccCodeStringType = new VaccCodeStringType();
+          vaccCodeStringType.setVaccCodeStringType(cvxCode);
+          vaccinationType.setVaccCode(vaccCodeStringType);
         }
+        {
+          DateYYYYMMDDType vaccDate = new DateYYYYMMDDType();
+          vaccDate.setDateYYYYMMDDType(DateCodec.formatDate(testEvent.getEventDate()));
+          vaccinationType.setVaccDate(vaccDate);
+        }
+        vaccinationType.setDoseSize(new BigDecimal(1.0));
+        vaccinationType.setCodeType(VaccineCodeType.CVX);
+        vaccinationTypeList.add(vaccinationType);
+      }
+    }
+    personDetailsType.setVaccination(vaccinationTypeList.toArray(new VaccinationType[] {}));
 
-        if (personDetailsType.getVaccination() == null) {
-          if (logOut != null) {
-            logOut.println("No vaccinations");
-          }
-        } else {
-          for (VaccinationType vaccinationType : personDetailsType.getVaccination()) {
-            if (logOut != null) {
-              logOut.println("Vacc: " + vaccinationType.getVaccCode() + " given " + vaccinationType.getVaccDate());
-              if (vaccinationType.getMessage() != null) {
-                for (VaccMessageType message : vaccinationType.getMessage()) {
-                  logOut.println("  + " + message.getMessage() + " (" + message.getMessageType() + ")");
-                }
-              }
+    return personDetailsType;
+  }
+
+  private void readResponseDetail(ResponseDetailType responseDetailType, TestCase testCase,
+      SoftwareResult softwareResult, PrintWriter logOut, List<ForecastActual> list) {
+    PersonDetailsType personDetailsType = responseDetailType.getPersonDetails();
+    if (logOut != null) {
+      logOut.println("Results returned");
+      logOut.println("Information: " + responseDetailType.getInformation());
+    }
+
+    if (personDetailsType.getVaccination() == null) {
+      if (logOut != null) {
+        logOut.println("No vaccinations");
+      }
+    } else {
+      for (VaccinationType vaccinationType : personDetailsType.getVaccination()) {
+        if (logOut != null) {
+          logOut.println("Vacc: " + vaccinationType.getVaccCode() + " given " + vaccinationType.getVaccDate());
+          if (vaccinationType.getMessage() != null) {
+            for (VaccMessageType message : vaccinationType.getMessage()) {
+              logOut.println("  + " + message.getMessage() + " (" + message.getMessageType() + ")");
             }
           }
         }
+      }
+    }
 
-        for (ForecastDetailsType forecastDetailsType : responseDetailType.getForecastDetails()) {
-          if (logOut != null) {
-            logOut.println("----------------------------------------------------------------");
-            logOut.println("Reading " + getStcLabel(forecastDetailsType.getFamilyCode()));
-            logOut.println(" + Dose:     " + forecastDetailsType.getDoseNumber());
-            logOut.println(" + Due:      " + forecastDetailsType.getRecommendedDate());
-            logOut.println(" + Valid:    " + forecastDetailsType.getMinAllowableDate());
-            logOut.println(" + Overdue:  " + forecastDetailsType.getPastDueDate());
-            logOut.println(" + Finished: " + forecastDetailsType.getMaxAllowableDate());
-          }
-          List<VaccineGroup> forecastItemListFromMap = familyMapping.get(forecastDetailsType.getFamilyCode());
-          if (forecastItemListFromMap != null) {
-            for (VaccineGroup forecastItem : forecastItemListFromMap) {
-              if (forecastItem == null) {
-                String label = notSupported.get(forecastDetailsType.getFamilyCode());
-                if (logOut != null) {
-                  if (label != null) {
-                    logOut.println("Unsupported family code " + forecastDetailsType.getFamilyCode() + " (" + label
-                        + ")");
-                  } else {
-                    logOut.println("Unrecognized family code " + forecastDetailsType.getFamilyCode() + " ");
+    for (ForecastDetailsType forecastDetailsType : responseDetailType.getForecastDetails()) {
+      if (logOut != null) {
+        logOut.println("----------------------------------------------------------------");
+        logOut.println("Reading " + getStcLabel(forecastDetailsType.getFamilyCode()));
+        logOut.println(" + Dose:     " + forecastDetailsType.getDoseNumber());
+        logOut.println(" + Due:      " + forecastDetailsType.getRecommendedDate());
+        logOut.println(" + Valid:    " + forecastDetailsType.getMinAllowableDate());
+        logOut.println(" + Overdue:  " + forecastDetailsType.getPastDueDate());
+        logOut.println(" + Finished: " + forecastDetailsType.getMaxAllowableDate());
+      }
+      List<VaccineGroup> forecastItemListFromMap =
+          vaccineGroupMapping.getVaccineGroups(Service.STC, forecastDetailsType.getFamilyCode());
+      if (forecastItemListFromMap != null) {
+        for (VaccineGroup forecastItem : forecastItemListFromMap) {
+          if (forecastItem == null) {
+            String label = notSupported.get(forecastDetailsType.getFamilyCode());
+            if (logOut != null) {
+              if (label != null) {
+                logOut.println("Unsupported family code " + forecastDetailsType.getFamilyCode() + " (" + label
+                    + ")");
+              } else {
+                logOut.println("Unrecognized family code " + forecastDetailsType.getFamilyCode() + " ");
+              }
+            }
+          } else {
+            if (forecastItem.getVaccineGroupId() == ID_DTAP || forecastItem.getVaccineGroupId() == ID_TDAP_TD) {
+              // screen out the DTaP and Td recommendations for the age of the
+              // patient
+              Calendar sevenYearsOld = Calendar.getInstance();
+              sevenYearsOld.setTime(testCase.getPatientDob());
+              sevenYearsOld.add(Calendar.YEAR, 7);
+              boolean isSevenYearsOldOrOlder = sevenYearsOld.after(testCase.getEvalDate());
+              if (isSevenYearsOldOrOlder) {
+                if (forecastItem.getVaccineGroupId() == ID_DTAP) {
+                  // Don't add DTaP recommendation because test case is now 7
+                  // years or older at time of recommendation
+                  if (logOut != null) {
+                    logOut
+                        .println("Patient is 7 years old or older so not saving DTaP/Td/Tdap recommendation as DTaP");
                   }
+                  continue;
                 }
               } else {
-                if (forecastItem.getVaccineGroupId() == ID_DTAP || forecastItem.getVaccineGroupId() == ID_TDAP_TD) {
-                  // screen out the DTaP and Td recommendations for the age of the
-                  // patient
-                  Calendar sevenYearsOld = Calendar.getInstance();
-                  sevenYearsOld.setTime(testCase.getPatientDob());
-                  sevenYearsOld.add(Calendar.YEAR, 7);
-                  boolean isSevenYearsOldOrOlder = sevenYearsOld.after(testCase.getEvalDate());
-                  if (isSevenYearsOldOrOlder) {
-                    if (forecastItem.getVaccineGroupId() == ID_DTAP) {
-                      // Don't add DTaP recommendation because test case is now 7
-                      // years or older at time of recommendation
-                      if (logOut != null) {
-                        logOut
-                            .println("Patient is 7 years old or older so not saving DTaP/Td/Tdap recommendation as DTaP");
-                      }
-                      continue;
-                    }
-                  } else {
-                    if (forecastItem.getVaccineGroupId() == ID_TDAP_TD) {
-                      // Don't add Tdap recommendation because test case is not
-                      // yet at 7 years of age
-                      if (logOut != null) {
-                        logOut.println("Patient is younger than 7 years so not saving "
-                            + "DTaP/Td/Tdap recommendation as Tdap/Td");
-                      }
-                      continue;
-                    }
+                if (forecastItem.getVaccineGroupId() == ID_TDAP_TD) {
+                  // Don't add Tdap recommendation because test case is not
+                  // yet at 7 years of age
+                  if (logOut != null) {
+                    logOut.println("Patient is younger than 7 years so not saving "
+                        + "DTaP/Td/Tdap recommendation as Tdap/Td");
                   }
-                } else if (forecastItem.getVaccineGroupId() == ID_HEPB) {
-                  // need to decide on which hep b recommendation is going to
-                  // survive
-                  // by default we assume that a 3 dose HepB series is used, the
-                  // two dose is
-                  // not as likely.
-                  // A 2 dose series can be given if the patient starts the series
-                  boolean use3Dose = true;
-                  final String HEPB_CVX = "08";
-                  final String HEPB_ADULT_CVX = "43";
-                  Collections.sort(testCase.getTestEventList(), new Comparator<TestEvent>() {
-                    public int compare(TestEvent testEvent1, TestEvent testEvent2) {
-                      return testEvent1.getEventDate().compareTo(testEvent2.getEventDate());
-                    }
-                  });
-                  for (TestEvent testEvent : testCase.getTestEventList()) {
-                    if (testEvent.getEvent().getEventType() == EventType.VACCINATION) {
-                      String cvxCode = testEvent.getEvent().getVaccineCvx();
-                      if (cvxCode.equals(HEPB_CVX)) {
-                        break;
-                      } else if (cvxCode.equals(HEPB_ADULT_CVX)) {
-                        use3Dose = false;
-                        break;
-                      }
-                    }
+                  continue;
+                }
+              }
+            } else if (forecastItem.getVaccineGroupId() == ID_HEPB) {
+              // need to decide on which hep b recommendation is going to
+              // survive
+              // by default we assume that a 3 dose HepB series is used, the
+              // two dose is
+              // not as likely.
+              // A 2 dose series can be given if the patient starts the series
+              boolean use3Dose = true;
+              final String HEPB_CVX = "08";
+              final String HEPB_ADULT_CVX = "43";
+              Collections.sort(testCase.getTestEventList(), new Comparator<TestEvent>() {
+                public int compare(TestEvent testEvent1, TestEvent testEvent2) {
+                  return testEvent1.getEventDate().compareTo(testEvent2.getEventDate());
+                }
+              });
+              for (TestEvent testEvent : testCase.getTestEventList()) {
+                if (testEvent.getEvent().getEventType() == EventType.VACCINATION) {
+                  String cvxCode = testEvent.getEvent().getVaccineCvx();
+                  if (cvxCode.equals(HEPB_CVX)) {
+                    break;
+                  } else if (cvxCode.equals(HEPB_ADULT_CVX)) {
+                    use3Dose = false;
+                    break;
                   }
-                  if (use3Dose) {
-                    if (forecastDetailsType.getFamilyCode().equals(STC_HEP_2_DOSE)) {
-                      if (logOut != null) {
-                        logOut.println("The first dose was for 3-dose series, "
-                            + "not saving 2 dose series under Hep B forecast item.");
-                      }
-                      continue;
-                    }
-                  } else {
-                    if (forecastDetailsType.getFamilyCode().equals(STC_HEP_3_DOSE)) {
-                      if (logOut != null)
-                      {
-                        logOut.println("The first dose was for 2-dose series, "
-                            + "not saving 3 dose series under Hep B forecast item.");
-                      }
-                      continue;
-                    }
+                }
+              }
+              if (use3Dose) {
+                if (forecastDetailsType.getFamilyCode().equals(STC_HEP_2_DOSE)) {
+                  if (logOut != null) {
+                    logOut.println("The first dose was for 3-dose series, "
+                        + "not saving 2 dose series under Hep B forecast item.");
                   }
+                  continue;
                 }
-                if (logOut != null) {
-                  logOut.println("Saving as results for forecast item " + forecastItem.getLabel());
+              } else {
+                if (forecastDetailsType.getFamilyCode().equals(STC_HEP_3_DOSE)) {
+                  if (logOut != null)
+                  {
+                    logOut.println("The first dose was for 2-dose series, "
+                        + "not saving 3 dose series under Hep B forecast item.");
+                  }
+                  continue;
                 }
-                ForecastActual forecastActual = new ForecastActual();
-                forecastActual.setSoftwareResult(softwareResult);
-                forecastActual.setAdmin(Admin.UNKNOWN);
-                forecastActual.setVaccineGroup(forecastItem);
-                forecastActual.setDoseNumber("" + forecastDetailsType.getDoseNumber());
-                forecastActual.setDueDate(parseDate(forecastDetailsType.getRecommendedDate().getDateYYYYMMDDType()));
-                forecastActual.setValidDate(parseDate(forecastDetailsType.getMinAllowableDate().getDateYYYYMMDDType()));
-                forecastActual.setOverdueDate(parseDate(forecastDetailsType.getPastDueDate().getDateYYYYMMDDType()));
-                forecastActual.setFinishedDate(parseDate(forecastDetailsType.getMaxAllowableDate().getDateYYYYMMDDType()));
-                list.add(forecastActual);
               }
             }
+            if (logOut != null) {
+              logOut.println("Saving as results for forecast item " + forecastItem.getLabel());
+            }
+            ForecastActual forecastActual = new ForecastActual();
+            forecastActual.setSoftwareResult(softwareResult);
+            forecastActual.setAdmin(Admin.UNKNOWN);
+            forecastActual.setVaccineGroup(forecastItem);
+            forecastActual.setDoseNumber("" + forecastDetailsType.getDoseNumber());
+            forecastActual.setDueDate(parseDate(forecastDetailsType.getRecommendedDate().getDateYYYYMMDDType()));
+            forecastActual.setValidDate(parseDate(forecastDetailsType.getMinAllowableDate().getDateYYYYMMDDType()));
+            forecastActual.setOverdueDate(parseDate(forecastDetailsType.getPastDueDate().getDateYYYYMMDDType()));
+            forecastActual.setFinishedDate(parseDate(forecastDetailsType.getMaxAllowableDate().getDateYYYYMMDDType()));
+            list.add(forecastActual);
           }
         }
       }
-
-    } catch (Exception e) {
-      softwareResult.setSoftwareResultStatus(SoftwareResultStatus.PROBLEM);
-      if (logOut != null) {
-        logOut.println("Unable to get forecast results");
-        e.printStackTrace(logOut);
-      } else {
-        e.printStackTrace();
-      }
-      throw new Exception("Unable to get forecast results", e);
-    } finally {
-      if (logOut != null) {
-        logOut.close();
-        softwareResult.setLogText(sw.toString());
-      }
     }
-    return list;
   }
 
   private Date parseDate(String s) {
@@ -406,9 +481,8 @@ public class STCConnector extends GetForecastRequestServiceStub implements Conne
     }
 
     if (s.length() > 0) {
-      SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
       try {
-        date = sdf.parse(s);
+        date = DateCodec.parseDate(s);
       } catch (ParseException pe) {
         // ignore
       }
@@ -1,31 +1,31 @@
 package org.immregistries.vfa.connect;
 
-import java.io.DataOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.PrintWriter;
-import java.io.StringWriter;
-import java.net.URL;
-import java.net.URLConnection;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import org.immregistries.vfa.connect.ConnectorMetricsListener.Phase;
 import org.immregistries.vfa.connect.model.Admin;
 import org.immregistries.vfa.connect.model.Event;
 import org.immregistries.vfa.connect.model.EventType;
 import org.immregistries.vfa.connect.model.ForecastActual;
+import org.immregistries.vfa.connect.model.Service;
 import org.immregistries.vfa.connect.model.Software;
 import org.immregistries.vfa.connect.model.SoftwareResult;
 import org.immregistries.vfa.connect.model.SoftwareResultStatus;
 import org.immregistries.vfa.connect.model.TestCase;
 import org.immregistries.vfa.connect.model.TestEvent;
 import org.immregistries.vfa.connect.model.VaccineGroup;
+import org.immregistries.vfa.connect.util.DateCodec;
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
@@ -34,7 +34,7 @@ import org.w3c.dom.NodeList;
 public class SWPConnector implements ConnectorInterface
 {
 
-  private Map<String, List<VaccineGroup>> familyMapping = new HashMap<String, List<VaccineGroup>>();
+  private final VaccineGroupMapping vaccineGroupMapping;
   private Software software = null;
 
   private boolean logText = false;
@@ -164,29 +164,13 @@ public class SWPConnector implements ConnectorInterface
 
   public SWPConnector(Software software, List<VaccineGroup> vaccineGroupList) {
     this.software = software;
-    addForcastItem(vaccineGroupList, "Hib", VaccineGroup.ID_HIB);
-    addForcastItem(vaccineGroupList, "HepB", VaccineGroup.ID_HEPB);
-    addForcastItem(vaccineGroupList, "DTP", VaccineGroup.ID_DTAP);
-    addForcastItem(vaccineGroupList, "Td/Tdap", VaccineGroup.ID_TDAP_TD);
-    addForcastItem(vaccineGroupList, "Polio", VaccineGroup.ID_POLIO);
-    addForcastItem(vaccineGroupList, "HepA", VaccineGroup.ID_HEPA);
-    addForcastItem(vaccineGroupList, "MMR", VaccineGroup.ID_MMR);
-    addForcastItem(vaccineGroupList, "Rotavirus", VaccineGroup.ID_ROTA);
-    addForcastItem(vaccineGroupList, "Varicella", VaccineGroup.ID_VAR);
-    addForcastItem(vaccineGroupList, "Influenza", VaccineGroup.ID_INFLUENZA);
-    addForcastItem(vaccineGroupList, "MCV4", VaccineGroup.ID_MENING);
-    addForcastItem(vaccineGroupList, "HPV", VaccineGroup.ID_HPV);
-    addForcastItem(vaccineGroupList, "HerpesZoster", VaccineGroup.ID_ZOSTER);
-    addForcastItem(vaccineGroupList, "Pneumo-Poly", VaccineGroup.ID_PPSV);
-    addForcastItem(vaccineGroupList, "Pneumonia", VaccineGroup.ID_PCV);
-    addForcastItem(vaccineGroupList, "Pneumonia", VaccineGroup.ID_PNEUMO);
-
+    this.vaccineGroupMapping = VaccineGroupMapping.getMapping(vaccineGroupList);
     for (VaccineGroup vaccineGroup : vaccineGroupList) {
       vaccineGroupIdMap.put(vaccineGroup.getVaccineGroupId(), vaccineGroup);
     }
   }
 
-  private Map<Integer, VaccineGroup> vaccineGroupIdMap = new HashMap<Integer, VaccineGroup>();
+  private final Map<Integer, VaccineGroup> vaccineGroupIdMap = new HashMap<Integer, VaccineGroup>();
 
   private static int[] VACCINE_GROUPS_EXPECTED_FOR_CHILD = new int[] { VaccineGroup.ID_HIB, VaccineGroup.ID_HEPB,
       VaccineGroup.ID_DTAP, VaccineGroup.ID_POLIO, VaccineGroup.ID_HEPA, VaccineGroup.ID_MMR, VaccineGroup.ID_ROTA,
@@ -199,175 +183,203 @@ public class SWPConnector implements ConnectorInterface
   private static int[] VACCINE_GROUPS_EXPECTED_FOR_OLDER_ADULT = new int[] { VaccineGroup.ID_ZOSTER,
       VaccineGroup.ID_PPSV };
 
-  private void addForcastItem(List<VaccineGroup> forecastItemList, String familyName, int vaccineGroupId) {
-    for (VaccineGroup vaccineGroup : forecastItemList) {
-      if (vaccineGroup.getVaccineGroupId() == vaccineGroupId) {
-        List<VaccineGroup> vaccineGroupList = familyMapping.get(familyName);
-        if (vaccineGroupList == null) {
-          vaccineGroupList = new ArrayList<VaccineGroup>();
-          familyMapping.put(familyName, vaccineGroupList);
-        }
-        vaccineGroupList.add(vaccineGroup);
-        return;
-      }
-    }
-  }
-
   public List<ForecastActual> queryForForecast(TestCase testCase, SoftwareResult softwareResult) throws Exception {
+    return ConnectorExecutor.await(queryForForecastAsync(testCase, softwareResult));
+  }
 
-    StringWriter sw = new StringWriter();
-    PrintWriter logOut = null;
-    if (logText) {
-      logOut = new PrintWriter(sw);
-    }
-    List<ForecastActual> list = null;
+  public CompletableFuture<List<ForecastActual>> queryForForecastAsync(final TestCase testCase,
+      final SoftwareResult softwareResult) {
+
+    final ConnectorLog log = ConnectorLog.create(logText);
+    final PrintWriter logOut = log.getWriter();
+    final QueryMetrics metrics = QueryMetrics.start(software, testCase);
+
+    return ConnectorExecutor.call(() -> metrics.time(Phase.BUILD_REQUEST, () -> makeRequest(testCase, logOut)))
+        .thenCompose(request -> ConnectorExecutor.supply(software.getService(),
+            () -> metrics.send(() -> sendRequest(request, getRequestKey(testCase)))))
+        .thenCompose(responseBytes -> ConnectorExecutor.call(() -> metrics.time(Phase.PARSE,
+            () -> readResponse(parseResponse(responseBytes), testCase, softwareResult, logOut))))
+        .handle((list, failure) -> {
+          metrics.finish(failure == null);
+          try {
+            if (failure == null) {
+              return list;
+            }
+            Throwable e = ConnectorExecutor.unwrap(failure);
+            softwareResult.setSoftwareResultStatus(SoftwareResultStatus.PROBLEM);
+            if (logOut != null) {
+              logOut.println("Unable to get forecast results");
+              e.printStackTrace(logOut);
+            } else {
+              e.printStackTrace();
+            }
+            throw ConnectorExecutor.fail(new Exception("Unable to get forecast results", e));
+          } finally {
+            log.finish(softwareResult);
+          }
+        });
+  }
 
-    try {
-      URLConnection urlConn;
-      DataOutputStream printOut;
-      URL url = new URL(software.getServiceUrl());
-      urlConn = url.openConnection();
-      urlConn.setDoInput(true);
-      urlConn.setDoOutput(true);
-      urlConn.setUseCaches(true);
-      urlConn.setRequestProperty("Content-Type", "text/xml; charset=\"utf-8\"");
-      printOut = new DataOutputStream(urlConn.getOutputStream());
-      StringBuilder sb = new StringBuilder();
-
-      SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-
-      sb.append("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:swp=\"http://swpartners.com\"> \n");
-      sb.append("  <soapenv:Header/>  \n");
-      sb.append("  <soapenv:Body>  \n");
-      sb.append("    <swp:executeVFM>  \n");
-      sb.append("      <swp:vfm>  \n");
-      sb.append("         <swp:patient dob=\"" + sdf.format(testCase.getPatientDob()) + "\" gender=\""
-          + testCase.getPatientSex() + "\">  \n");
-      for (TestEvent testEvent : testCase.getTestEventList()) {
-        if (testEvent.getEvent().getEventType() == EventType.VACCINATION) {
-          String cvx = testEvent.getEvent().getVaccineCvx();
-          String[] groupArray = groupMapping.get(cvx);
-          if (cvxOut.get(cvx) != null) {
-            cvx = cvxOut.get(cvx);
+  private String makeRequest(TestCase testCase, PrintWriter logOut) {
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:swp=\"http://swpartners.com\"> \n");
+    sb.append("  <soapenv:Header/>  \n");
+    sb.append("  <soapenv:Body>  \n");
+    sb.append("    <swp:executeVFM>  \n");
+    sb.append("      <swp:vfm>  \n");
+    sb.append("         <swp:patient dob=\"" + DateCodec.formatIsoDate(testCase.getPatientDob()) + "\" gender=\""
+        + testCase.getPatientSex() + "\">  \n");
+    for (TestEvent testEvent : testCase.getTestEventList()) {
+      if (testEvent.getEvent().getEventType() == EventType.VACCINATION) {
+        String cvx = testEvent.getEvent().getVaccineCvx();
+        String[] groupArray = groupMapping.get(cvx);
+        if (cvxOut.get(cvx) != null) {
+          cvx = cvxOut.get(cvx);
+        }
+        if (groupArray != null) {
+          if (logOut != null) {
+            logOut.println(" sending vaccine " + cvx + " given " + DateCodec.formatIsoDate(testEvent.getEventDate()));
           }
-          if (groupArray != null) {
+          for (String groupId : groupArray) {
             if (logOut != null) {
-              logOut.println(" sending vaccine " + cvx + " given " + sdf.format(testEvent.getEventDate()));
-            }
-            for (String groupId : groupArray) {
-              if (logOut != null) {
-                logOut.println(" sending vaccine " + cvx + " given " + sdf.format(testEvent.getEventDate())
-                    + " with group id = " + groupId);
-              }
-              sb.append("            <swp:dose cvx=\"" + cvx + "\" ");
-              sb.append("date=\"" + sdf.format(testEvent.getEventDate()) + "\" ");
-              sb.append("groupid=\"" + groupId + "\"/> \n");
+              logOut.println(" sending vaccine " + cvx + " given " + DateCodec.formatIsoDate(testEvent.getEventDate())
+                  + " with group id = " + groupId);
             }
+            sb.append("            <swp:dose cvx=\"" + cvx + "\" ");
+            sb.append("date=\"" + DateCodec.formatIsoDate(testEvent.getEventDate()) + "\" ");
+            sb.append("groupid=\"" + groupId + "\"/> \n");
           }
         }
       }
+    }
 
-      for (TestEvent testEvent : testCase.getTestEventList()) {
-        Event event = testEvent.getEvent();
-        if (event.getEventType() != EventType.VACCINATION && event.getEventId() >= Event.EVENT_ID_RANGE_1_MIIS
-            && event.getEventId() < Event.EVENT_ID_RANGE_2_RESERVED) {
-          int code = event.getEventId() - Event.EVENT_ID_RANGE_1_MIIS;
-          if (logOut != null) {
-            logOut.println(" sending vaccine client condition " + event.getLabel() + " with code " + (code));
-          }
-          sb.append("            <swp:condition code=\"" + (code) + "\"/> \n");
+    for (TestEvent testEvent : testCase.getTestEventList()) {
+      Event event = testEvent.getEvent();
+      if (event.getEventType() != EventType.VACCINATION && event.getEventId() >= Event.EVENT_ID_RANGE_1_MIIS
+          && event.getEventId() < Event.EVENT_ID_RANGE_2_RESERVED) {
+        int code = event.getEventId() - Event.EVENT_ID_RANGE_1_MIIS;
+        if (logOut != null) {
+          logOut.println(" sending vaccine client condition " + event.getLabel() + " with code " + (code));
         }
+        sb.append("            <swp:condition code=\"" + (code) + "\"/> \n");
       }
-      sb.append("         </swp:patient>  \n");
-      sb.append("       </swp:vfm>  \n");
-      sb.append("     </swp:executeVFM>  \n");
-      sb.append("   </soapenv:Body>  \n");
-      sb.append("</soapenv:Envelope> \n");
-      printOut.writeBytes(sb.toString());
-      if (logOut != null) {
-        logOut.println("Querying SWP software for forecast");
-        logOut.println(sb);
-      }
-      printOut.flush();
-      printOut.close();
+    }
+    sb.append("         </swp:patient>  \n");
+    sb.append("       </swp:vfm>  \n");
+    sb.append("     </swp:executeVFM>  \n");
+    sb.append("   </soapenv:Body>  \n");
+    sb.append("</soapenv:Envelope> \n");
+    if (logOut != null) {
+      logOut.println("Querying SWP software for forecast");
+      logOut.println(sb);
+    }
+    return sb.toString();
+  }
+
+  private byte[] sendRequest(String request, String requestKey) throws Exception {
+    HttpTransport.Response response = HttpTransport.getTransport(software.getServiceUrl()).post(
+        software.getServiceUrl(), HttpTransport.headers(HttpTransport.CONTENT_TYPE, "text/xml; charset=\"utf-8\""),
+        request, requestKey);
+    return response.checkStatus().getBodyBytes();
+  }
 
-      DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
-      DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
-      Document doc = docBuilder.parse(urlConn.getInputStream());
+  private String getRequestKey(TestCase testCase) {
+    if (HttpTransport.getResponseStore() == null) {
+      return null;
+    }
+    return createRequestKey(software, testCase);
+  }
 
-      doc.getDocumentElement().normalize();
-      NodeList nodes = doc.getChildNodes();
-      if (nodes.getLength() == 1) {
-        list = parseEnvelope(nodes.item(0).getChildNodes(), logOut);
+  /**
+   * Key a response store finds SWP responses by. It is made only from what the request sends, the
+   * patient, doses and conditions, so it doesn't change with the evaluation date or from one day
+   * to the next while the test case stays the same.
+   */
+  static String createRequestKey(Software software, TestCase testCase) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("SWP ").append(software.getServiceUrl()).append('\n');
+    sb.append("patient|").append(DateCodec.formatIsoDate(testCase.getPatientDob()));
+    sb.append('|').append(testCase.getPatientSex()).append('\n');
+    for (TestEvent testEvent : testCase.getTestEventList()) {
+      Event event = testEvent.getEvent();
+      if (event.getEventType() == EventType.VACCINATION) {
+        sb.append("dose|").append(event.getVaccineCvx());
+        sb.append('|').append(DateCodec.formatIsoDate(testEvent.getEventDate())).append('\n');
+      } else {
+        sb.append("condition|").append(event.getEventId()).append('\n');
       }
+    }
+    return sb.toString();
+  }
 
-      for (ForecastActual forecastActual : list) {
-        forecastActual.setSoftwareResult(softwareResult);
-        Date dueDate = forecastActual.getDueDate();
-        Date overdueDate = forecastActual.getOverdueDate();
-        forecastActual.setAdmin(Admin.UNKNOWN);
-        if (dueDate == null) {
-          forecastActual.setAdmin(Admin.COMPLETE);
+  private static Document parseResponse(byte[] responseBytes) throws Exception {
+    DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
+    DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
+    return docBuilder.parse(new ByteArrayInputStream(responseBytes));
+  }
+
+  private List<ForecastActual> readResponse(Document doc, TestCase testCase, SoftwareResult softwareResult,
+      PrintWriter logOut) {
+    List<ForecastActual> list = null;
+    doc.getDocumentElement().normalize();
+    NodeList nodes = doc.getChildNodes();
+    if (nodes.getLength() == 1) {
+      list = parseEnvelope(nodes.item(0).getChildNodes(), logOut);
+    }
+
+    for (ForecastActual forecastActual : list) {
+      forecastActual.setSoftwareResult(softwareResult);
+      Date dueDate = forecastActual.getDueDate();
+      Date overdueDate = forecastActual.getOverdueDate();
+      forecastActual.setAdmin(Admin.UNKNOWN);
+      if (dueDate == null) {
+        forecastActual.setAdmin(Admin.COMPLETE);
+      } else {
+        if (testCase.getEvalDate().before(dueDate)) {
+          forecastActual.setAdmin(Admin.DUE_LATER);
         } else {
-          if (testCase.getEvalDate().before(dueDate)) {
-            forecastActual.setAdmin(Admin.DUE_LATER);
+          if (overdueDate != null && !testCase.getEvalDate().before(overdueDate)) {
+            forecastActual.setAdmin(Admin.OVERDUE);
           } else {
-            if (overdueDate != null && !testCase.getEvalDate().before(overdueDate)) {
-              forecastActual.setAdmin(Admin.OVERDUE);
-            } else {
-              forecastActual.setAdmin(Admin.DUE);
-            }
+            forecastActual.setAdmin(Admin.DUE);
           }
         }
       }
+    }
 
-      Date evalDate = new Date(); // Currently this forecaster does not look at eval date but gives back results for today
-      int[] expectedVaccineGroups = VACCINE_GROUPS_EXPECTED_FOR_CHILD;
-      Calendar calendar = Calendar.getInstance();
-      calendar.setTime(testCase.getPatientDob());
-      calendar.add(Calendar.YEAR, 7);
-      // age when patient is 7
+    Date evalDate = new Date(); // Currently this forecaster does not look at eval date but gives back results for today
+    int[] expectedVaccineGroups = VACCINE_GROUPS_EXPECTED_FOR_CHILD;
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTime(testCase.getPatientDob());
+    calendar.add(Calendar.YEAR, 7);
+    // age when patient is 7
+    if (calendar.getTime().before(evalDate)) {
+      expectedVaccineGroups = VACCINE_GROUPS_EXPECTED_FOR_TEEN;
+      calendar.add(Calendar.YEAR, 60 - 7);
+      // age when patient is 60
       if (calendar.getTime().before(evalDate)) {
-        expectedVaccineGroups = VACCINE_GROUPS_EXPECTED_FOR_TEEN;
-        calendar.add(Calendar.YEAR, 60 - 7);
-        // age when patient is 60
-        if (calendar.getTime().before(evalDate)) {
-          expectedVaccineGroups = VACCINE_GROUPS_EXPECTED_FOR_OLDER_ADULT;
-        }
+        expectedVaccineGroups = VACCINE_GROUPS_EXPECTED_FOR_OLDER_ADULT;
       }
+    }
 
-      for (int vaccineGroupId : expectedVaccineGroups) {
-        boolean matchFound = false;
-        for (ForecastActual forecastActual : list) {
-          if (forecastActual.getVaccineGroup().getVaccineGroupId() == vaccineGroupId) {
-            matchFound = true;
-            break;
-          }
-        }
-        if (!matchFound) {
-          ForecastActual forecastActual = new ForecastActual();
-          forecastActual.setSoftwareResult(softwareResult);
-          forecastActual.setVaccineGroup(vaccineGroupIdMap.get(vaccineGroupId));
-          forecastActual.setAdmin(Admin.COMPLETE);
-          list.add(forecastActual);
+    for (int vaccineGroupId : expectedVaccineGroups) {
+      boolean matchFound = false;
+      for (ForecastActual forecastActual : list) {
+        if (forecastActual.getVaccineGroup().getVaccineGroupId() == vaccineGroupId) {
+          matchFound = true;
+          break;
         }
       }
-
-    } catch (Exception e) {
-      softwareResult.setSoftwareResultStatus(SoftwareResultStatus.PROBLEM);
-      if (logOut != null) {
-        logOut.println("Unable to get forecast results");
-        e.printStackTrace(logOut);
-      } else {
-        e.printStackTrace();
-      }
-      throw new Exception("Unable to get forecast results", e);
-    } finally {
-      if (logOut != null) {
-        logOut.close();
-        softwareResult.setLogText(sw.toString());
+      if (!matchFound) {
+        ForecastActual forecastActual = new ForecastActual();
+        forecastActual.setSoftwareResult(softwareResult);
+        forecastActual.setVaccineGroup(vaccineGroupIdMap.get(vaccineGroupId));
+        forecastActual.setAdmin(Admin.COMPLETE);
+        list.add(forecastActual);
       }
     }
+
     return list;
   }
 
@@ -459,7 +471,7 @@ public class SWPConnector implements ConnectorInterface
           String cvx = safe(map.getNamedItem("cvx"));
           String family = safe(map.getNamedItem("family"));
           // String groupid = safe(map.getNamedItem("groupid"));
-          List<VaccineGroup> vaccineGroupList = familyMapping.get(family);
+          List<VaccineGroup> vaccineGroupList = vaccineGroupMapping.getVaccineGroups(Service.SWP, family);
           if (vaccineGroupList != null) {
             for (VaccineGroup vaccineGroup : vaccineGroupList) {
               ForecastActual forecastActual = new ForecastActual();
@@ -483,9 +495,8 @@ public class SWPConnector implements ConnectorInterface
     Date date = null;
 
     if (s.length() > 0) {
-      SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
       try {
-        date = sdf.parse(s);
+        date = DateCodec.parseIsoDate(s);
       } catch (ParseException pe) {
         // ignore
       }
@@ -0,0 +1,274 @@
+package org.immregistries.vfa.connect;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.immregistries.vfa.connect.model.Admin;
+import org.immregistries.vfa.connect.model.EvaluationActual;
+import org.immregistries.vfa.connect.model.EventType;
+import org.immregistries.vfa.connect.model.ForecastActual;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.SoftwareResult;
+import org.immregistries.vfa.connect.model.SoftwareResultStatus;
+import org.immregistries.vfa.connect.model.SoftwareSetting;
+import org.immregistries.vfa.connect.model.TestCase;
+import org.immregistries.vfa.connect.model.TestEvent;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+import org.immregistries.vfa.connect.util.DateCodec;
+import org.immregistries.vfa.connect.util.TimePeriod;
+
+/**
+ * A forecaster that runs in process, for measuring the cost of everything around the engine
+ * without any network time. The answers are plausible, not clinically correct: for each vaccine
+ * group the doses in the history are found by the CVX codes listed for SYNTHETIC in
+ * vaccine-group-mapping.txt, each dose at least 4 weeks after the last valid one and at or after
+ * the minimum age counts as valid, and the next dose is due 2 months after the last valid dose, or
+ * at the start of the age the group is typically given. Groups are complete after 3 valid doses, 2
+ * for groups started after infancy, and finished once the patient is past the typical age. The
+ * same test case always gets the same answer.
+ * <p>
+ * The work done for each forecast can be raised with the software settings syntheticWorkIterations,
+ * rounds of hashing, and syntheticAllocationBytes, bytes allocated and touched.
+ */
+public class SyntheticConnector implements ConnectorInterface {
+
+  public static final String OPTION_WORK_ITERATIONS = "syntheticWorkIterations";
+  public static final String OPTION_ALLOCATION_BYTES = "syntheticAllocationBytes";
+
+  private static final TimePeriod MINIMUM_AGE = TimePeriod.valueOf("6 weeks");
+  private static final TimePeriod MINIMUM_INTERVAL = TimePeriod.valueOf("4 weeks");
+  private static final TimePeriod RECOMMENDED_INTERVAL = TimePeriod.valueOf("2 months");
+  private static final TimePeriod OVERDUE_AFTER = TimePeriod.valueOf("1 month");
+
+  // keeps the busy work from being optimized away
+  private static volatile long sink;
+
+  private final Software software;
+  private final List<VaccineGroup> forecastItemList;
+  private final VaccineGroupMapping vaccineGroupMapping;
+  private final TimePeriod[] startAgeList;
+  private final TimePeriod[] finishedAgeList;
+  private int workIterations = 0;
+  private int allocationBytes = 0;
+  private boolean logText = false;
+
+  public SyntheticConnector(Software software, List<VaccineGroup> forecastItemList) {
+    this.software = software;
+    this.forecastItemList = forecastItemList;
+    this.vaccineGroupMapping = VaccineGroupMapping.getMapping(forecastItemList);
+    startAgeList = new TimePeriod[forecastItemList.size()];
+    finishedAgeList = new TimePeriod[forecastItemList.size()];
+    for (int i = 0; i < forecastItemList.size(); i++) {
+      VaccineGroup vaccineGroup = forecastItemList.get(i);
+      startAgeList[i] = TimePeriod.valueOf(vaccineGroup.getTypicallyGivenYearStart() + " years");
+      finishedAgeList[i] = TimePeriod.valueOf(vaccineGroup.getTypicallyGivenYearEnd() + " years");
+    }
+    if (software.getSoftwareSettingList() != null) {
+      for (SoftwareSetting softwareSetting : software.getSoftwareSettingList()) {
+        if (softwareSetting.getServiceOption() == null || softwareSetting.getOptionValue() == null) {
+          continue;
+        }
+        String optionName = softwareSetting.getServiceOption().getOptionName();
+        try {
+          if (OPTION_WORK_ITERATIONS.equals(optionName)) {
+            workIterations = Integer.parseInt(softwareSetting.getOptionValue().trim());
+          } else if (OPTION_ALLOCATION_BYTES.equals(optionName)) {
+            allocationBytes = Integer.parseInt(softwareSetting.getOptionValue().trim());
+          }
+        } catch (NumberFormatException nfe) {
+          // keep default
+        }
+      }
+    }
+  }
+
+  public boolean isLogText() {
+    return logText;
+  }
+
+  public void setLogText(boolean logText) {
+    this.logText = logText;
+  }
+
+  public int getWorkIterations() {
+    return workIterations;
+  }
+
+  public void setWorkIterations(int workIterations) {
+    this.workIterations = workIterations;
+  }
+
+  public int getAllocationBytes() {
+    return allocationBytes;
+  }
+
+  public void setAllocationBytes(int allocationBytes) {
+    this.allocationBytes = allocationBytes;
+  }
+
+  public List<ForecastActual> queryForForecast(TestCase testCase, SoftwareResult softwareResult)
+      throws Exception {
+    return ConnectorExecutor.await(queryForForecastAsync(testCase, softwareResult));
+  }
+
+  public CompletableFuture<List<ForecastActual>> queryForForecastAsync(final TestCase testCase,
+      final SoftwareResult softwareResult) {
+    final ConnectorLog log = ConnectorLog.create(logText);
+    final PrintWriter logOut = log.getWriter();
+    final int workIterations = this.workIterations;
+    final int allocationBytes = this.allocationBytes;
+    final QueryMetrics metrics = QueryMetrics.start(software, testCase);
+
+    return ConnectorExecutor.supply(() -> forecast(testCase, softwareResult, workIterations,
+        allocationBytes, logOut)).handle((list, failure) -> {
+          metrics.finish(failure == null);
+          try {
+            if (failure == null) {
+              return list;
+            }
+            Throwable e = ConnectorExecutor.unwrap(failure);
+            softwareResult.setSoftwareResultStatus(SoftwareResultStatus.PROBLEM);
+            if (logOut != null) {
+              logOut.println("Unable to get forecast results");
+              e.printStackTrace(logOut);
+            } else {
+              e.printStackTrace();
+            }
+            throw ConnectorExecutor.fail(new Exception("Unable to get forecast results", e));
+          } finally {
+            log.finish(softwareResult);
+          }
+        });
+  }
+
+  protected List<ForecastActual> forecast(TestCase testCase, SoftwareResult softwareResult,
+      int workIterations, int allocationBytes, PrintWriter logOut) throws Exception {
+    if (testCase.getPatientDob() == null || testCase.getEvalDate() == null) {
+      throw new Exception("Test case needs a date of birth and an evaluation date");
+    }
+    Date dob = testCase.getPatientDob();
+    Date evalDate = testCase.getEvalDate();
+    if (logOut != null) {
+      logOut.println("Synthetic forecaster");
+      logOut.println();
+      logOut.println("Patient born " + DateCodec.formatUsDate(dob) + " evaluated "
+          + DateCodec.formatUsDate(evalDate));
+    }
+    softwareResult.setSoftware(software);
+    List<ForecastActual> forecastActualList = new ArrayList<ForecastActual>();
+    Date minimumDate = MINIMUM_AGE.getDateFrom(dob);
+    for (int i = 0; i < forecastItemList.size(); i++) {
+      VaccineGroup vaccineGroup = forecastItemList.get(i);
+      if (vaccineGroup.getTypicallyGivenYearEnd() == 0) {
+        // only forecast as part of another group
+        continue;
+      }
+      int seriesLength = vaccineGroup.getTypicallyGivenYearStart() == 0 ? 3 : 2;
+      Date startDate = startAgeList[i].getDateFrom(dob);
+      Date finishedDate = finishedAgeList[i].getDateFrom(dob);
+
+      int validCount = 0;
+      Date lastValidDate = null;
+      if (testCase.getTestEventList() != null) {
+        for (TestEvent testEvent : testCase.getTestEventList()) {
+          if (testEvent.getEvent() == null || testEvent.getEventDate() == null
+              || testEvent.getEvent().getEventType() != EventType.VACCINATION
+              || testEvent.getEventDate().after(evalDate)) {
+            continue;
+          }
+          if (!vaccineGroupMapping
+              .getVaccineGroupSet(Service.SYNTHETIC, testEvent.getEvent().getVaccineCvx())
+              .contains(vaccineGroup)) {
+            continue;
+          }
+          Date eventDate = testEvent.getEventDate();
+          boolean valid = !eventDate.before(minimumDate) && (lastValidDate == null
+              || !eventDate.before(MINIMUM_INTERVAL.getDateFrom(lastValidDate)));
+          if (valid) {
+            validCount++;
+            lastValidDate = eventDate;
+          }
+          EvaluationActual evaluationActual = new EvaluationActual();
+          evaluationActual.setSoftwareResult(softwareResult);
+          evaluationActual.setTestEvent(testEvent);
+          evaluationActual.setVaccineCvx(vaccineGroup.getVaccineCvx());
+          evaluationActual.setSeriesUsedCode(vaccineGroup.getVaccineCvx());
+          evaluationActual.setSeriesUsedText(vaccineGroup.getLabel());
+          evaluationActual.setDoseNumber(valid ? String.valueOf(validCount) : "");
+          evaluationActual.setDoseValid(valid ? "Y" : "N");
+          evaluationActual.setReasonText(valid ? "" : "Too soon");
+          if (testEvent.getEvaluationActualList() == null) {
+            testEvent.setEvaluationActualList(new ArrayList<EvaluationActual>());
+          }
+          testEvent.getEvaluationActualList().add(evaluationActual);
+        }
+      }
+
+      ForecastActual forecastActual = new ForecastActual();
+      forecastActual.setSoftwareResult(softwareResult);
+      forecastActual.setVaccineGroup(vaccineGroup);
+      forecastActual.setVaccineCvx(vaccineGroup.getVaccineCvx());
+      if (validCount >= seriesLength) {
+        forecastActual.setAdmin(Admin.COMPLETE);
+      } else if (!evalDate.before(finishedDate)) {
+        forecastActual.setAdmin(Admin.FINISHED);
+        forecastActual.setFinishedDate(finishedDate);
+      } else {
+        Date validDate = lastValidDate == null ? minimumDate
+            : MINIMUM_INTERVAL.getDateFrom(lastValidDate);
+        if (validDate.before(startDate)) {
+          validDate = startDate;
+        }
+        Date dueDate = lastValidDate == null ? validDate
+            : RECOMMENDED_INTERVAL.getDateFrom(lastValidDate);
+        if (dueDate.before(validDate)) {
+          dueDate = validDate;
+        }
+        Date overdueDate = OVERDUE_AFTER.getDateFrom(dueDate);
+        forecastActual.setDoseNumber(String.valueOf(validCount + 1));
+        forecastActual.setValidDate(validDate);
+        forecastActual.setDueDate(dueDate);
+        forecastActual.setOverdueDate(overdueDate);
+        forecastActual.setFinishedDate(finishedDate);
+        if (!evalDate.before(overdueDate)) {
+          forecastActual.setAdmin(Admin.OVERDUE);
+        } else if (!evalDate.before(dueDate)) {
+          forecastActual.setAdmin(Admin.DUE);
+        } else {
+          forecastActual.setAdmin(Admin.DUE_LATER);
+        }
+      }
+      work(vaccineGroup.getVaccineGroupId(), workIterations, allocationBytes);
+      if (logOut != null) {
+        logOut.println("Forecasting " + vaccineGroup.getLabel() + " " + forecastActual.getAdmin()
+            + " dose " + forecastActual.getDoseNumber() + " due "
+            + (forecastActual.getDueDate() == null ? "" : DateCodec.formatUsDate(forecastActual.getDueDate())));
+      }
+      forecastActualList.add(forecastActual);
+    }
+    return forecastActualList;
+  }
+
+  /**
+   * Busy work standing in for the cost of a real engine.
+   */
+  private static void work(int seed, int iterations, int allocationBytes) {
+    long h = seed;
+    for (int i = 0; i < iterations; i++) {
+      h ^= h << 13;
+      h ^= h >>> 7;
+      h ^= h << 17;
+    }
+    if (allocationBytes > 0) {
+      byte[] bytes = new byte[allocationBytes];
+      for (int i = 0; i < bytes.length; i += 64) {
+        bytes[i] = (byte) h;
+        h += bytes[i];
+      }
+    }
+    sink = h;
+  }
+}
@@ -0,0 +1,257 @@
+package org.immregistries.vfa.connect;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+
+/**
+ * The codes each forecast engine uses for vaccine groups, read from vaccine-group-mapping.txt. The
+ * file is read once and the mapping is resolved once for each forecast item list, after that it
+ * can't be changed so connectors on any thread share it without locking. New codes only need a
+ * line in the file.
+ */
+public class VaccineGroupMapping {
+
+  public static final String RESOURCE_NAME = "vaccine-group-mapping.txt";
+
+  private static final String ALL_CODES = "*";
+  private static final String INVALID = "invalid";
+
+  private static List<Entry> entryList = null;
+  private static volatile VaccineGroupMapping lastMapping = null;
+
+  private final List<VaccineGroup> forecastItemList;
+  private final Map<Service, Map<String, List<VaccineGroup>>> codeMap =
+      new EnumMap<Service, Map<String, List<VaccineGroup>>>(Service.class);
+  private final Map<Service, Map<String, VaccineGroupSet>> setMap =
+      new EnumMap<Service, Map<String, VaccineGroupSet>>(Service.class);
+  private final Map<Service, Set<String>> invalidCodeMap =
+      new EnumMap<Service, Set<String>>(Service.class);
+
+  private static class Entry {
+    private Service service;
+    private String code;
+    private int[] vaccineGroupIds;
+    private boolean invalid;
+  }
+
+  /**
+   * The mapping for this forecast item list. Connectors are normally all created with the same list
+   * so the last mapping built is kept and handed back while the list stays the same.
+   */
+  public static VaccineGroupMapping getMapping(List<VaccineGroup> forecastItemList) {
+    VaccineGroupMapping mapping = lastMapping;
+    if (mapping == null || mapping.forecastItemList != forecastItemList) {
+      mapping = new VaccineGroupMapping(forecastItemList, getEntryList());
+      lastMapping = mapping;
+    }
+    return mapping;
+  }
+
+  private VaccineGroupMapping(List<VaccineGroup> forecastItemList, List<Entry> entryList) {
+    this.forecastItemList = forecastItemList;
+    Map<Service, Map<String, List<VaccineGroup>>> building =
+        new EnumMap<Service, Map<String, List<VaccineGroup>>>(Service.class);
+    for (Entry entry : entryList) {
+      if (entry.code.equals(ALL_CODES)) {
+        for (VaccineGroup forecastItem : forecastItemList) {
+          add(building, entry.service, forecastItem.getVaccineCvx(), forecastItem);
+        }
+        continue;
+      }
+      if (entry.invalid) {
+        Set<String> invalidCodes = invalidCodeMap.get(entry.service);
+        if (invalidCodes == null) {
+          invalidCodes = new HashSet<String>();
+          invalidCodeMap.put(entry.service, invalidCodes);
+        }
+        invalidCodes.add(entry.code);
+      }
+      for (int vaccineGroupId : entry.vaccineGroupIds) {
+        VaccineGroup forecastItem = findForecastItem(vaccineGroupId);
+        if (forecastItem != null) {
+          add(building, entry.service, entry.code, forecastItem);
+        }
+      }
+    }
+    VaccineGroup[] byId = VaccineGroupSet.indexById(forecastItemList);
+    for (Map.Entry<Service, Map<String, List<VaccineGroup>>> serviceEntry : building.entrySet()) {
+      Map<String, List<VaccineGroup>> map = new HashMap<String, List<VaccineGroup>>();
+      Map<String, VaccineGroupSet> sets = new HashMap<String, VaccineGroupSet>();
+      for (Map.Entry<String, List<VaccineGroup>> codeEntry : serviceEntry.getValue().entrySet()) {
+        map.put(codeEntry.getKey(),
+            Collections.unmodifiableList(new ArrayList<VaccineGroup>(codeEntry.getValue())));
+        VaccineGroupSet set = VaccineGroupSet.of(codeEntry.getValue(), byId);
+        if (set != null) {
+          sets.put(codeEntry.getKey(), set);
+        }
+      }
+      codeMap.put(serviceEntry.getKey(), Collections.unmodifiableMap(map));
+      setMap.put(serviceEntry.getKey(), sets);
+    }
+    for (Map.Entry<Service, Set<String>> serviceEntry : invalidCodeMap.entrySet()) {
+      serviceEntry.setValue(Collections.unmodifiableSet(serviceEntry.getValue()));
+    }
+  }
+
+  private VaccineGroup findForecastItem(int vaccineGroupId) {
+    for (VaccineGroup forecastItem : forecastItemList) {
+      if (forecastItem != null && forecastItem.getVaccineGroupId() == vaccineGroupId) {
+        return forecastItem;
+      }
+    }
+    return null;
+  }
+
+  private static void add(Map<Service, Map<String, List<VaccineGroup>>> building, Service service,
+      String code, VaccineGroup forecastItem) {
+    Map<String, List<VaccineGroup>> map = building.get(service);
+    if (map == null) {
+      map = new LinkedHashMap<String, List<VaccineGroup>>();
+      building.put(service, map);
+    }
+    List<VaccineGroup> list = map.get(code);
+    if (list == null) {
+      list = new ArrayList<VaccineGroup>(2);
+      map.put(code, list);
+    }
+    if (!list.contains(forecastItem)) {
+      list.add(forecastItem);
+    }
+  }
+
+  /**
+   * The vaccine groups the service means by this code, or null if the code is not known.
+   */
+  public List<VaccineGroup> getVaccineGroups(Service service, String code) {
+    Map<String, List<VaccineGroup>> map = codeMap.get(service);
+    return map == null ? null : map.get(code);
+  }
+
+  /**
+   * The vaccine groups the service means by this code as a set, empty if the code is not known.
+   * This is the quick way to check or collect groups, getVaccineGroups keeps the order they are
+   * listed in the mapping file. Only groups with ids that fit in a VaccineGroupSet can be
+   * returned this way.
+   */
+  public VaccineGroupSet getVaccineGroupSet(Service service, String code) {
+    Map<String, VaccineGroupSet> sets = setMap.get(service);
+    VaccineGroupSet set = sets == null ? null : sets.get(code);
+    if (set == null) {
+      if (getVaccineGroups(service, code) != null) {
+        throw new IllegalArgumentException("Code " + code + " for " + service
+            + " maps to a vaccine group with an id above " + VaccineGroupSet.MAX_ID);
+      }
+      return VaccineGroupSet.EMPTY;
+    }
+    return set;
+  }
+
+  /**
+   * Every code known for the service and what it maps to, this can't be modified.
+   */
+  public Map<String, List<VaccineGroup>> getCodeMap(Service service) {
+    Map<String, List<VaccineGroup>> map = codeMap.get(service);
+    if (map == null) {
+      return Collections.emptyMap();
+    }
+    return map;
+  }
+
+  /**
+   * True for codes that are recognized but are not proper codes, for example a CVX code sent with
+   * a leading zero.
+   */
+  public boolean isInvalidCode(Service service, String code) {
+    Set<String> invalidCodes = invalidCodeMap.get(service);
+    return invalidCodes != null && invalidCodes.contains(code);
+  }
+
+  private static synchronized List<Entry> getEntryList() {
+    if (entryList == null) {
+      InputStream in = VaccineGroupMapping.class.getResourceAsStream(RESOURCE_NAME);
+      if (in == null) {
+        throw new IllegalStateException("Unable to find " + RESOURCE_NAME);
+      }
+      try {
+        try {
+          entryList = readEntryList(new BufferedReader(new InputStreamReader(in, "UTF-8")));
+        } finally {
+          in.close();
+        }
+      } catch (IOException ioe) {
+        throw new IllegalStateException("Unable to read " + RESOURCE_NAME, ioe);
+      }
+    }
+    return entryList;
+  }
+
+  private static List<Entry> readEntryList(BufferedReader in) throws IOException {
+    Map<String, Integer> vaccineGroupIdMap = getVaccineGroupIdMap();
+    List<Entry> list = new ArrayList<Entry>();
+    String line;
+    int lineNumber = 0;
+    while ((line = in.readLine()) != null) {
+      lineNumber++;
+      line = line.trim();
+      if (line.length() == 0 || line.startsWith("#")) {
+        continue;
+      }
+      String[] parts = line.split("\\|");
+      if (parts.length < 3) {
+        throw new IllegalStateException(
+            RESOURCE_NAME + " line " + lineNumber + " is not service|code|vaccine group: " + line);
+      }
+      Entry entry = new Entry();
+      try {
+        entry.service = Service.valueOf(parts[0].trim());
+      } catch (IllegalArgumentException iae) {
+        throw new IllegalStateException(
+            RESOURCE_NAME + " line " + lineNumber + " has unknown service " + parts[0]);
+      }
+      entry.code = parts[1].trim();
+      entry.invalid = parts.length > 3 && parts[3].trim().equalsIgnoreCase(INVALID);
+      if (!entry.code.equals(ALL_CODES)) {
+        String[] names = parts[2].split(",");
+        entry.vaccineGroupIds = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+          Integer vaccineGroupId = vaccineGroupIdMap.get(names[i].trim());
+          if (vaccineGroupId == null) {
+            throw new IllegalStateException(
+                RESOURCE_NAME + " line " + lineNumber + " has unknown vaccine group " + names[i]);
+          }
+          entry.vaccineGroupIds[i] = vaccineGroupId;
+        }
+      }
+      list.add(entry);
+    }
+    return list;
+  }
+
+  private static Map<String, Integer> getVaccineGroupIdMap() {
+    Map<String, Integer> map = new HashMap<String, Integer>();
+    for (Field field : VaccineGroup.class.getFields()) {
+      if (field.getName().startsWith("ID_") && field.getType() == int.class) {
+        try {
+          map.put(field.getName().substring(3), field.getInt(null));
+        } catch (IllegalAccessException iae) {
+          // public constants, can't happen
+        }
+      }
+    }
+    return map;
+  }
+}
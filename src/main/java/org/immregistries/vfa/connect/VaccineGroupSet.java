@@ -0,0 +1,169 @@
+package org.immregistries.vfa.connect;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+
+/**
+ * A set of vaccine groups held as one bit per vaccine group id, so checking, counting and
+ * combining sets is a few bit operations. It can't be changed once made, union returns a new set.
+ * The iterator goes in vaccine group id order and hands back the instances from the forecast item
+ * list the set was made for.
+ * <p>
+ * Only vaccine group ids from 0 to 63 fit, which covers every id in VaccineGroup.
+ */
+public final class VaccineGroupSet extends AbstractSet<VaccineGroup> {
+
+  public static final int MAX_ID = Long.SIZE - 1;
+
+  public static final VaccineGroupSet EMPTY = new VaccineGroupSet(0L, new VaccineGroup[0]);
+
+  private final long bits;
+  private final VaccineGroup[] byId;
+
+  private VaccineGroupSet(long bits, VaccineGroup[] byId) {
+    this.bits = bits;
+    this.byId = byId;
+  }
+
+  /**
+   * The forecast items indexed by vaccine group id, for sharing between all the sets made from
+   * the same list. Items whose id doesn't fit are left out.
+   */
+  static VaccineGroup[] indexById(Iterable<VaccineGroup> forecastItemList) {
+    int length = 0;
+    for (VaccineGroup forecastItem : forecastItemList) {
+      if (forecastItem != null && fits(forecastItem.getVaccineGroupId())) {
+        length = Math.max(length, forecastItem.getVaccineGroupId() + 1);
+      }
+    }
+    VaccineGroup[] byId = new VaccineGroup[length];
+    for (VaccineGroup forecastItem : forecastItemList) {
+      if (forecastItem != null && fits(forecastItem.getVaccineGroupId())) {
+        byId[forecastItem.getVaccineGroupId()] = forecastItem;
+      }
+    }
+    return byId;
+  }
+
+  /**
+   * A set of the vaccine groups, which must all be in the index. Returns null if one of them is
+   * not.
+   */
+  static VaccineGroupSet of(Iterable<VaccineGroup> vaccineGroups, VaccineGroup[] byId) {
+    long bits = 0L;
+    for (VaccineGroup vaccineGroup : vaccineGroups) {
+      int id = vaccineGroup.getVaccineGroupId();
+      if (!fits(id) || id >= byId.length || byId[id] == null) {
+        return null;
+      }
+      bits |= 1L << id;
+    }
+    return bits == 0L ? EMPTY : new VaccineGroupSet(bits, byId);
+  }
+
+  /**
+   * A set of the given vaccine groups, using the groups themselves as the instances handed back.
+   */
+  public static VaccineGroupSet of(VaccineGroup... vaccineGroups) {
+    VaccineGroup[] byId = new VaccineGroup[0];
+    for (VaccineGroup vaccineGroup : vaccineGroups) {
+      int id = vaccineGroup.getVaccineGroupId();
+      if (!fits(id)) {
+        throw new IllegalArgumentException("Vaccine group " + vaccineGroup.getLabel() + " with id "
+            + id + " can't be held in a vaccine group set");
+      }
+      if (id >= byId.length) {
+        VaccineGroup[] grown = new VaccineGroup[id + 1];
+        System.arraycopy(byId, 0, grown, 0, byId.length);
+        byId = grown;
+      }
+      byId[id] = vaccineGroup;
+    }
+    long bits = 0L;
+    for (VaccineGroup vaccineGroup : vaccineGroups) {
+      bits |= 1L << vaccineGroup.getVaccineGroupId();
+    }
+    return bits == 0L ? EMPTY : new VaccineGroupSet(bits, byId);
+  }
+
+  private static boolean fits(int id) {
+    return id >= 0 && id <= MAX_ID;
+  }
+
+  public boolean contains(int vaccineGroupId) {
+    return fits(vaccineGroupId) && (bits & (1L << vaccineGroupId)) != 0L;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    if (!(o instanceof VaccineGroup)) {
+      return false;
+    }
+    int id = ((VaccineGroup) o).getVaccineGroupId();
+    return contains(id) && byId[id].equals(o);
+  }
+
+  /**
+   * True if the two sets have any vaccine group in common.
+   */
+  public boolean containsAny(VaccineGroupSet other) {
+    return (bits & other.bits) != 0L;
+  }
+
+  /**
+   * The vaccine groups in either set. Where both sets have an instance for the same id the one
+   * from this set is kept.
+   */
+  public VaccineGroupSet union(VaccineGroupSet other) {
+    long union = bits | other.bits;
+    if (union == bits) {
+      return this;
+    }
+    if (union == other.bits) {
+      return other;
+    }
+    VaccineGroup[] unionById = byId;
+    if (other.byId != byId) {
+      unionById = new VaccineGroup[Math.max(byId.length, other.byId.length)];
+      for (long rest = union; rest != 0L; rest &= rest - 1) {
+        int id = Long.numberOfTrailingZeros(rest);
+        unionById[id] = (bits & (1L << id)) != 0L ? byId[id] : other.byId[id];
+      }
+    }
+    return new VaccineGroupSet(union, unionById);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return bits == 0L;
+  }
+
+  @Override
+  public int size() {
+    return Long.bitCount(bits);
+  }
+
+  @Override
+  public Iterator<VaccineGroup> iterator() {
+    return new Iterator<VaccineGroup>() {
+      private long rest = bits;
+
+      @Override
+      public boolean hasNext() {
+        return rest != 0L;
+      }
+
+      @Override
+      public VaccineGroup next() {
+        if (rest == 0L) {
+          throw new NoSuchElementException();
+        }
+        int id = Long.numberOfTrailingZeros(rest);
+        rest &= rest - 1;
+        return byId[id];
+      }
+    };
+  }
+}
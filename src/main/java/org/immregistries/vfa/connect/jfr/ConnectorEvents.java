@@ -0,0 +1,43 @@
+package org.immregistries.vfa.connect.jfr;
+
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.TestCase;
+
+/**
+ * Flight Recorder events emitted by the connectors. The events need jdk.jfr, which older Java 8
+ * runtimes don't have, so callers check {@link #isAvailable()} before touching an event class.
+ * When a recording is not running the events are created and dropped without being written, which
+ * the JIT reduces to almost nothing.
+ */
+public class ConnectorEvents {
+
+  public static final String CATEGORY = "Forecast Connector";
+
+  private static final boolean AVAILABLE = checkAvailable();
+
+  private static boolean checkAvailable() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  public static boolean isAvailable() {
+    return AVAILABLE;
+  }
+
+  static String getServiceLabel(Software software) {
+    return software == null || software.getService() == null ? null
+        : software.getService().getLabel();
+  }
+
+  static int getSoftwareId(Software software) {
+    return software == null ? 0 : software.getSoftwareId();
+  }
+
+  static String getTestCaseNumber(TestCase testCase) {
+    return testCase == null ? null : testCase.getTestCaseNumber();
+  }
+}
@@ -0,0 +1,68 @@
+package org.immregistries.vfa.connect.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.TestCase;
+
+/**
+ * One query to a forecast engine, from building the request to reading the last forecast.
+ */
+@Name("org.immregistries.vfa.ForecastQuery")
+@Label("Forecast Query")
+@Category(ConnectorEvents.CATEGORY)
+@Description("A query to a forecast engine from building the request to reading the forecasts")
+@StackTrace(false)
+public class ForecastQueryEvent extends Event {
+
+  @Label("Service")
+  String service;
+
+  @Label("Software Id")
+  int softwareId;
+
+  @Label("Test Case Number")
+  String testCaseNumber;
+
+  @Label("Bytes Sent")
+  @DataAmount
+  long bytesSent;
+
+  @Label("Bytes Received")
+  @DataAmount
+  long bytesReceived;
+
+  @Label("Success")
+  boolean success;
+
+  /**
+   * Returns a started event, or null when no recording wants it.
+   */
+  public static ForecastQueryEvent beginIfEnabled() {
+    ForecastQueryEvent event = new ForecastQueryEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  public void finish(Software software, TestCase testCase, long bytesSent, long bytesReceived,
+      boolean success) {
+    end();
+    if (shouldCommit()) {
+      this.service = ConnectorEvents.getServiceLabel(software);
+      this.softwareId = ConnectorEvents.getSoftwareId(software);
+      this.testCaseNumber = ConnectorEvents.getTestCaseNumber(testCase);
+      this.bytesSent = bytesSent;
+      this.bytesReceived = bytesReceived;
+      this.success = success;
+      commit();
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package org.immregistries.vfa.connect.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.TestCase;
+
+/**
+ * Reading the evaluations and forecasts out of an HL7 RSP.
+ */
+@Name("org.immregistries.vfa.HL7Parse")
+@Label("HL7 Parse")
+@Category(ConnectorEvents.CATEGORY)
+@Description("Reading the evaluations and forecasts out of an HL7 RSP message")
+@StackTrace(false)
+public class HL7ParseEvent extends Event {
+
+  @Label("Service")
+  String service;
+
+  @Label("Software Id")
+  int softwareId;
+
+  @Label("Test Case Number")
+  String testCaseNumber;
+
+  @Label("Message Length")
+  @Description("Characters in the message")
+  int messageLength;
+
+  @Label("Segment Count")
+  int segmentCount;
+
+  @Label("OBX Count")
+  int obxCount;
+
+  @Label("Forecast Count")
+  int forecastCount;
+
+  /**
+   * Returns a started event, or null when no recording wants it.
+   */
+  public static HL7ParseEvent beginIfEnabled() {
+    HL7ParseEvent event = new HL7ParseEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  public void finish(Software software, TestCase testCase, int messageLength, int segmentCount,
+      int obxCount, int forecastCount) {
+    end();
+    if (shouldCommit()) {
+      this.service = ConnectorEvents.getServiceLabel(software);
+      this.softwareId = ConnectorEvents.getSoftwareId(software);
+      this.testCaseNumber = ConnectorEvents.getTestCaseNumber(testCase);
+      this.messageLength = messageLength;
+      this.segmentCount = segmentCount;
+      this.obxCount = obxCount;
+      this.forecastCount = forecastCount;
+      commit();
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package org.immregistries.vfa.connect.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.TestCase;
+
+/**
+ * The wait before the QBP is sent again because the IIS did not find the patient or forecasts yet.
+ * The event lasts from when the retry was scheduled until it started running, so a duration well
+ * above the delay asked for means the executor was busy.
+ */
+@Name("org.immregistries.vfa.IisRetryWait")
+@Label("IIS Retry Wait")
+@Category(ConnectorEvents.CATEGORY)
+@Description("Waiting before querying an IIS again")
+@StackTrace(false)
+public class IisRetryWaitEvent extends Event {
+
+  @Label("Service")
+  String service;
+
+  @Label("Software Id")
+  int softwareId;
+
+  @Label("Test Case Number")
+  String testCaseNumber;
+
+  @Label("Attempt")
+  @Description("The QBP attempt that is waited for, 2 for the first retry")
+  int attempt;
+
+  @Label("Delay")
+  @Description("The delay asked for by the retry policy")
+  @Timespan(Timespan.MILLISECONDS)
+  long delay;
+
+  /**
+   * Returns a started event, or null when no recording wants it.
+   */
+  public static IisRetryWaitEvent beginIfEnabled() {
+    IisRetryWaitEvent event = new IisRetryWaitEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  public void finish(Software software, TestCase testCase, int attempt, long delayMillis) {
+    end();
+    if (shouldCommit()) {
+      this.service = ConnectorEvents.getServiceLabel(software);
+      this.softwareId = ConnectorEvents.getSoftwareId(software);
+      this.testCaseNumber = ConnectorEvents.getTestCaseNumber(testCase);
+      this.attempt = attempt;
+      this.delay = delayMillis;
+      commit();
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package org.immregistries.vfa.connect.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.TestCase;
+
+/**
+ * Reading the evaluations and forecasts out of the VMR returned by ICE.
+ */
+@Name("org.immregistries.vfa.VmrParse")
+@Label("VMR Parse")
+@Category(ConnectorEvents.CATEGORY)
+@Description("Reading the evaluations and forecasts out of a VMR")
+@StackTrace(false)
+public class VmrParseEvent extends Event {
+
+  @Label("Service")
+  String service;
+
+  @Label("Software Id")
+  int softwareId;
+
+  @Label("Test Case Number")
+  String testCaseNumber;
+
+  @Label("VMR Length")
+  @Description("Bytes or characters of the VMR read, depending on what it was read from")
+  long vmrLength;
+
+  @Label("Proposal Count")
+  @Description("substanceAdministrationProposal elements read")
+  int proposalCount;
+
+  @Label("Administration Count")
+  @Description("substanceAdministrationEvent elements read")
+  int administrationCount;
+
+  @Label("Forecast Count")
+  int forecastCount;
+
+  /**
+   * Returns a started event, or null when no recording wants it.
+   */
+  public static VmrParseEvent beginIfEnabled() {
+    VmrParseEvent event = new VmrParseEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  public void finish(Software software, TestCase testCase, long vmrLength, int proposalCount,
+      int administrationCount, int forecastCount) {
+    end();
+    if (shouldCommit()) {
+      this.service = ConnectorEvents.getServiceLabel(software);
+      this.softwareId = ConnectorEvents.getSoftwareId(software);
+      this.testCaseNumber = ConnectorEvents.getTestCaseNumber(testCase);
+      this.vmrLength = vmrLength;
+      this.proposalCount = proposalCount;
+      this.administrationCount = administrationCount;
+      this.forecastCount = forecastCount;
+      commit();
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package org.immregistries.vfa.connect.model;
+
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * A fixed lookup from id to item. Ids from 0 up to the dense limit are read straight out of an
+ * array, any others are found in a small open addressing table keyed on the int itself. Nothing
+ * changes once it is built, so it can be read from any thread without locking.
+ */
+final class IdIndex<T> {
+
+  private final Object[] dense;
+  private final int[] sparseIds;
+  private final Object[] sparseItems;
+  private final int sparseMask;
+
+  /**
+   * Indexes the items, skipping nulls. When two items have the same id the later one is kept.
+   */
+  IdIndex(List<T> items, ToIntFunction<T> idOf, int denseLimit) {
+    int denseLength = 0;
+    int sparseCount = 0;
+    for (T item : items) {
+      if (item != null) {
+        int id = idOf.applyAsInt(item);
+        if (id >= 0 && id < denseLimit) {
+          denseLength = Math.max(denseLength, id + 1);
+        } else {
+          sparseCount++;
+        }
+      }
+    }
+    int tableSize = Integer.highestOneBit(Math.max(1, sparseCount * 2 - 1)) << 1;
+    dense = new Object[denseLength];
+    sparseIds = new int[tableSize];
+    sparseItems = new Object[tableSize];
+    sparseMask = tableSize - 1;
+    for (T item : items) {
+      if (item != null) {
+        int id = idOf.applyAsInt(item);
+        if (id >= 0 && id < denseLimit) {
+          dense[id] = item;
+        } else {
+          int slot = slot(id);
+          while (sparseItems[slot] != null && sparseIds[slot] != id) {
+            slot = (slot + 1) & sparseMask;
+          }
+          sparseIds[slot] = id;
+          sparseItems[slot] = item;
+        }
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  T get(int id) {
+    if (id >= 0 && id < dense.length) {
+      return (T) dense[id];
+    }
+    int slot = slot(id);
+    Object item;
+    while ((item = sparseItems[slot]) != null) {
+      if (sparseIds[slot] == id) {
+        return (T) item;
+      }
+      slot = (slot + 1) & sparseMask;
+    }
+    return null;
+  }
+
+  private int slot(int id) {
+    // ids in the MIIS and reserved ranges are sequential, spread them over the table
+    return (id * 0x9E3779B9 >>> 16) & sparseMask;
+  }
+}
@@ -117,7 +117,7 @@ public class RelativeRule implements Serializable
   }
 
   public RelativeRule(String timePeriodString) {
-    timePeriod = new TimePeriod(timePeriodString);
+    timePeriod = new TimePeriod(TimePeriod.valueOf(timePeriodString));
     relativeTo = RelativeTo.BIRTH;
   }
 
@@ -133,12 +133,19 @@ public class RelativeRule implements Serializable
     return timePeriod;
   }
 
+  /**
+   * A shared time period from TimePeriod.valueOf is copied, so the rule's time period can always
+   * be changed in place.
+   */
   public void setTimePeriod(TimePeriod timePeriod) {
+    if (timePeriod != null && timePeriod.isShared()) {
+      timePeriod = new TimePeriod(timePeriod);
+    }
     this.timePeriod = timePeriod;
   }
 
   public void setTimePeriodString(String timePeriodString) {
-    this.timePeriod = new TimePeriod(timePeriodString);
+    this.timePeriod = new TimePeriod(TimePeriod.valueOf(timePeriodString));
   }
 
   public String getTimePeriodString() {
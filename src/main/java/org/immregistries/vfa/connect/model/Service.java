@@ -14,7 +14,9 @@ public enum Service implements Serializable {
                                              IIS("IIS HL7",
                                                  "IIS HL7 Interface (NEVER use for production)"),
                                              MDS("MDS", "MatchMerge Decision Support Service v11"),
-                                             MES_VACCINE("Mes Vaccins", "Mes Vaccins");
+                                             MES_VACCINE("Mes Vaccins", "Mes Vaccins"),
+                                             SYNTHETIC("Synthetic",
+                                                 "Synthetic in-process forecaster for load tests");
 
   private static final long serialVersionUID = 1L;
 
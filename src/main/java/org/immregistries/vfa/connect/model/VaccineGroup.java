@@ -2,9 +2,8 @@ package org.immregistries.vfa.connect.model;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 public class VaccineGroup implements Serializable, Comparable {
 
@@ -88,51 +87,61 @@ public class VaccineGroup implements Serializable, Comparable {
   public static final int ID_RABIES = 31;
   public static final int ID_YELLOW_FEVER = 32;
   public static final int ID_COVID = 39;
-  private static List<VaccineGroup> forecastItemList = null;
-  private static Map<Integer, VaccineGroup> forecastItemMap = null;
+  // more than any vaccine group id, so the ids index an array
+  private static final int ID_LIMIT = 1000;
+
+  /**
+   * Built the first time a vaccine group is looked up. Class initialization makes sure it is
+   * built once and seen whole by every thread, and after that nothing in it changes.
+   */
+  private static class Registry {
+    static final List<VaccineGroup> FORECAST_ITEM_LIST =
+        Collections.unmodifiableList(createForecastItemList());
+    static final IdIndex<VaccineGroup> FORECAST_ITEM_INDEX = new IdIndex<VaccineGroup>(
+        FORECAST_ITEM_LIST, VaccineGroup::getVaccineGroupId, ID_LIMIT);
+  }
 
   public static final VaccineGroup getForecastItem(int id) {
-    getForecastItemList();
-    return forecastItemMap.get(id);
+    return Registry.FORECAST_ITEM_INDEX.get(id);
   }
 
+  /**
+   * Returns the shared list of vaccine groups. It can't be changed, so copy it first to sort or add
+   * to it. Passing this same list to the connectors lets them share one mapping.
+   */
   public static final List<VaccineGroup> getForecastItemList() {
-    if (forecastItemList == null) {
-      forecastItemList = new ArrayList<VaccineGroup>();
-      forecastItemList.add(new VaccineGroup(ID_DTAP, "DTaP", "20"));
-      forecastItemList.add(new VaccineGroup(ID_INFLUENZA, "Influenza", "88"));
-      forecastItemList.add(new VaccineGroup(ID_HEPA, "HepA", "85"));
-      forecastItemList.add(new VaccineGroup(ID_HEPB, "HepB", "45"));
-      forecastItemList.add(new VaccineGroup(ID_HIB, "Hib", "17"));
-      forecastItemList.add(new VaccineGroup(ID_HPV, "HPV", "137"));
-      forecastItemList.add(new VaccineGroup(ID_MENING, "Meningococcal", "108"));
-      forecastItemList.add(new VaccineGroup(ID_MMR, "MMR", "03"));
-      forecastItemList.add(new VaccineGroup(ID_PNEUMO, "Pneumococcal", "152"));
-      forecastItemList.add(new VaccineGroup(ID_POLIO, "Polio", "89"));
-      forecastItemList.add(new VaccineGroup(ID_ROTA, "Rotavirus", "122"));
-      forecastItemList.add(new VaccineGroup(ID_VAR, "Varicella", "21"));
-      forecastItemList.add(new VaccineGroup(ID_ZOSTER, "HerpesZoster", "121"));
-      forecastItemList.add(new VaccineGroup(ID_SHINGRIX_ZOSTER, "RZV (Shingrix)", "187"));
-      forecastItemList.add(new VaccineGroup(ID_TDAP_TD, "Td or Tdap", "139"));
-      forecastItemList.add(new VaccineGroup(ID_PPSV, "PPSV", "33"));
-      forecastItemList.add(new VaccineGroup(ID_PCV, "PCV", "152"));
-      forecastItemList.add(new VaccineGroup(ID_TD_ONLY, "Td Only", "139"));
-      forecastItemList.add(new VaccineGroup(ID_DTAP_TDAP_TD, "DTaP, Tdap or Td", "20"));
-      forecastItemList.add(new VaccineGroup(ID_HEPB_2_ONLY, "Hep B 2 Dose Only", "43"));
-      forecastItemList.add(new VaccineGroup(ID_HEPB_3_ONLY, "Hep B 3 Dose Only", "08"));
-      forecastItemList.add(new VaccineGroup(ID_MEASLES_ONLY, "Measles Only", "05"));
-      forecastItemList.add(new VaccineGroup(ID_MUMPS_ONLY, "Mumps Only", "07"));
-      forecastItemList.add(new VaccineGroup(ID_RUBELLA_ONLY, "Rubella Only", "06"));
-      forecastItemList.add(new VaccineGroup(ID_TDAP_ONLY, "Tdap Only", "115"));
-      forecastItemList.add(new VaccineGroup(ID_COVID, "Covid", "213"));
-      forecastItemList.add(new VaccineGroup(ID_MENINGB, "MENINGB", "164"));
-      forecastItemMap = new HashMap<Integer, VaccineGroup>();
-      for (VaccineGroup forecastItem : forecastItemList) {
-        if (forecastItem != null) {
-          forecastItemMap.put(forecastItem.getVaccineGroupId(), forecastItem);
-        }
-      }
-    }
+    return Registry.FORECAST_ITEM_LIST;
+  }
+
+  private static List<VaccineGroup> createForecastItemList() {
+    List<VaccineGroup> forecastItemList = new ArrayList<VaccineGroup>();
+    forecastItemList.add(new VaccineGroup(ID_DTAP, "DTaP", "20"));
+    forecastItemList.add(new VaccineGroup(ID_INFLUENZA, "Influenza", "88"));
+    forecastItemList.add(new VaccineGroup(ID_HEPA, "HepA", "85"));
+    forecastItemList.add(new VaccineGroup(ID_HEPB, "HepB", "45"));
+    forecastItemList.add(new VaccineGroup(ID_HIB, "Hib", "17"));
+    forecastItemList.add(new VaccineGroup(ID_HPV, "HPV", "137"));
+    forecastItemList.add(new VaccineGroup(ID_MENING, "Meningococcal", "108"));
+    forecastItemList.add(new VaccineGroup(ID_MMR, "MMR", "03"));
+    forecastItemList.add(new VaccineGroup(ID_PNEUMO, "Pneumococcal", "152"));
+    forecastItemList.add(new VaccineGroup(ID_POLIO, "Polio", "89"));
+    forecastItemList.add(new VaccineGroup(ID_ROTA, "Rotavirus", "122"));
+    forecastItemList.add(new VaccineGroup(ID_VAR, "Varicella", "21"));
+    forecastItemList.add(new VaccineGroup(ID_ZOSTER, "HerpesZoster", "121"));
+    forecastItemList.add(new VaccineGroup(ID_SHINGRIX_ZOSTER, "RZV (Shingrix)", "187"));
+    forecastItemList.add(new VaccineGroup(ID_TDAP_TD, "Td or Tdap", "139"));
+    forecastItemList.add(new VaccineGroup(ID_PPSV, "PPSV", "33"));
+    forecastItemList.add(new VaccineGroup(ID_PCV, "PCV", "152"));
+    forecastItemList.add(new VaccineGroup(ID_TD_ONLY, "Td Only", "139"));
+    forecastItemList.add(new VaccineGroup(ID_DTAP_TDAP_TD, "DTaP, Tdap or Td", "20"));
+    forecastItemList.add(new VaccineGroup(ID_HEPB_2_ONLY, "Hep B 2 Dose Only", "43"));
+    forecastItemList.add(new VaccineGroup(ID_HEPB_3_ONLY, "Hep B 3 Dose Only", "08"));
+    forecastItemList.add(new VaccineGroup(ID_MEASLES_ONLY, "Measles Only", "05"));
+    forecastItemList.add(new VaccineGroup(ID_MUMPS_ONLY, "Mumps Only", "07"));
+    forecastItemList.add(new VaccineGroup(ID_RUBELLA_ONLY, "Rubella Only", "06"));
+    forecastItemList.add(new VaccineGroup(ID_TDAP_ONLY, "Tdap Only", "115"));
+    forecastItemList.add(new VaccineGroup(ID_COVID, "Covid", "213"));
+    forecastItemList.add(new VaccineGroup(ID_MENINGB, "MENINGB", "164"));
     return forecastItemList;
   }
 
@@ -1,37 +1,142 @@
 package org.immregistries.vfa.connect.util;
 
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 public class AgeUtil {
+
+  private static final long MILLIS_PER_DAY = DateCodec.MILLIS_PER_DAY;
+
+  /**
+   * The age on the event date in months up to five years and in years after that. Age is counted
+   * the way adding a month and then a year at a time to a Calendar counts it, but worked out
+   * from the dates instead of stepping through them.
+   */
   public static String getAge(Date dateOfBirth, Date eventDate) {
     if (dateOfBirth.equals(eventDate)) {
       return "birth";
     }
-    Calendar age = Calendar.getInstance();
-    age.setTime(dateOfBirth);
-    SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
-    for (int y = 0; y < 5; y++) {
-      for (int i = 0; i < 12; i++) {
-        age.add(Calendar.MONTH, 1);
-        if (age.getTime().after(eventDate)) {
-          if (y == 0) {
-            return i + " month" + (i == 1 ? "" : "s");
-          } else {
-            if (i == 0) {
-              return y + " year" + (y == 1 ? "" : "s");
-            }
-            return y + " year" + (y == 1 ? " " : "s ") + i + " month" + (i == 1 ? "" : "s");
+    long event = DateCodec.toLocalMillis(eventDate);
+    Steps months = new Steps(dateOfBirth, false, event);
+    int m = Math.max(0, Math.min(months.stepsTo(event), 60));
+    while (m > 0 && months.isAfter(m, eventDate)) {
+      m--;
+    }
+    while (m < 60 && !months.isAfter(m + 1, eventDate)) {
+      m++;
+    }
+    if (m < 60) {
+      int y = m / 12;
+      int i = m % 12;
+      if (y == 0) {
+        return i + " month" + (i == 1 ? "" : "s");
+      }
+      if (i == 0) {
+        return y + " year" + (y == 1 ? "" : "s");
+      }
+      return y + " year" + (y == 1 ? " " : "s ") + i + " month" + (i == 1 ? "" : "s");
+    }
+    Steps years = new Steps(DateCodec.toDate(months.localMillis(60)), true, event);
+    int y = Math.max(1, years.stepsTo(event));
+    while (y > 1 && years.isAfter(y - 1, eventDate)) {
+      y--;
+    }
+    while (!years.isAfter(y, eventDate)) {
+      y++;
+    }
+    return (4 + y) + " years";
+  }
+
+  /**
+   * Where a Calendar is after adding a month, or a year, so many times. A day cut back to the end
+   * of a shorter month stays cut back, and a time of day the clocks skipped stays moved on, so
+   * the steps start again from each place that happens.
+   * <p>
+   * Plain date arithmetic would be enough in most time zones. Where the clocks skip midnight, as
+   * in Sao Paulo, a step that lands on the skipped hour is moved to 1 am and every later step
+   * keeps that time, so an event on a later monthly birthday counts one month less than plain
+   * dates give. Following the skips keeps every age the same as the Calendar loop this replaced.
+   */
+  private static class Steps {
+    private final boolean years;
+    private final List<long[]> starts = new ArrayList<long[]>();
+
+    Steps(Date start, boolean years, long endLocalMillis) {
+      this.years = years;
+      starts.add(new long[] { 0, DateCodec.toLocalMillis(start) });
+      long[] skips = DateCodec.clockSkips(start, endLocalMillis + MILLIS_PER_DAY);
+      for (int i = 0; i < skips.length; i += 2) {
+        long[] last = starts.get(starts.size() - 1);
+        long length = skips[i + 1] - skips[i];
+        if (Math.floorMod(last[1] - skips[i], MILLIS_PER_DAY) >= length && length < MILLIS_PER_DAY) {
+          // the time of day isn't one this skip passes over
+          continue;
+        }
+        for (long skipped : new long[] { skips[i], skips[i + 1] - 1 }) {
+          int step = stepsTo(skipped);
+          long local = localMillis(step);
+          if (step > last[0] && local >= skips[i] && local < skips[i + 1]) {
+            starts.add(new long[] { step, DateCodec.toLocalMillis(DateCodec.toDate(local)) });
+            break;
           }
         }
       }
     }
-    int y = 4;
-    while (!age.getTime().after(eventDate)) {
-      age.add(Calendar.YEAR, 1);
-      y++;
+
+    /**
+     * The step that lands in the same month, or year, as the local time.
+     */
+    int stepsTo(long localMillis) {
+      long[] start = starts.get(starts.size() - 1);
+      LocalDate from = toLocalDate(start[1]);
+      LocalDate to = toLocalDate(localMillis);
+      int steps = to.getYear() - from.getYear();
+      if (!years) {
+        steps = steps * 12 + to.getMonthValue() - from.getMonthValue();
+      }
+      return (int) start[0] + steps;
+    }
+
+    long localMillis(int step) {
+      long[] start = starts.get(0);
+      for (long[] s : starts) {
+        if (s[0] <= step) {
+          start = s;
+        }
+      }
+      LocalDate date = toLocalDate(start[1]);
+      int n = step - (int) start[0];
+      if (years) {
+        // the 29th of February becomes the 28th the first year and stays there
+        date = n == 0 ? date : date.plusYears(1).plusYears(n - 1);
+      } else {
+        date = plusMonths(date, n);
+      }
+      return date.toEpochDay() * MILLIS_PER_DAY + Math.floorMod(start[1], MILLIS_PER_DAY);
+    }
+
+    boolean isAfter(int step, Date eventDate) {
+      return DateCodec.toDate(localMillis(step)).after(eventDate);
+    }
+  }
+
+  private static LocalDate toLocalDate(long localMillis) {
+    return LocalDate.ofEpochDay(Math.floorDiv(localMillis, MILLIS_PER_DAY));
+  }
+
+  /**
+   * The date the months after, the same as adding one month at a time.
+   */
+  private static LocalDate plusMonths(LocalDate date, int months) {
+    int day = date.getDayOfMonth();
+    YearMonth month = YearMonth.from(date);
+    for (int i = 1; i <= months && day > 28; i++) {
+      month = month.plusMonths(1);
+      day = Math.min(day, month.lengthOfMonth());
     }
-    return y + " years";
+    return date.withDayOfMonth(1).plusMonths(months).withDayOfMonth(day);
   }
 }
@@ -0,0 +1,438 @@
+package org.immregistries.vfa.connect.util;
+
+import java.text.ParseException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Reads and writes the date formats the connectors exchange: yyyyMMdd (HL7 DT), yyyy-MM-dd,
+ * MM/dd/yyyy and HL7 DTM. Values are read straight from a CharSequence and written straight into a
+ * StringBuilder, with no Calendar or substrings in between. Nothing is kept between calls, so
+ * unlike SimpleDateFormat it is safe to use from any number of threads.
+ *
+ * Dates are midnight in the time zone set here, which is the default time zone when the class is
+ * loaded. Like a lenient SimpleDateFormat a month or day past the end rolls over, so 20110231 is
+ * the 3rd of March, but the digits have to be where the format puts them.
+ */
+public class DateCodec {
+
+  private static final long MILLIS_PER_MINUTE = 60L * 1000;
+  private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+  static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+  // 1900-01-01 and 2100-01-01
+  private static final long SKIPS_FROM = -25567 * MILLIS_PER_DAY;
+  private static final long SKIPS_TO = 47482 * MILLIS_PER_DAY;
+
+  private static volatile TimeZone timeZone = TimeZone.getDefault();
+  private static volatile ClockSkips clockSkips;
+
+  public static TimeZone getTimeZone() {
+    return timeZone;
+  }
+
+  public static void setTimeZone(TimeZone timeZone) {
+    DateCodec.timeZone = timeZone;
+  }
+
+  /**
+   * Reads yyyyMMdd. Anything after the date, such as the time of an HL7 DTM, is ignored.
+   */
+  public static Date parseDate(CharSequence s) throws ParseException {
+    int year = readNumber(s, 0, digitsEnd(s, 0, 4, 4));
+    int month = readNumber(s, 4, digitsEnd(s, 4, 2, 2));
+    int day = readNumber(s, 6, digitsEnd(s, 6, 2, 2));
+    return new Date(toMillis(year, month, day, 0, timeZone));
+  }
+
+  /**
+   * Reads yyyy-MM-dd, the month and day may be one digit. Anything after the date, such as the
+   * time of an XML dateTime, is ignored.
+   */
+  public static Date parseIsoDate(CharSequence s) throws ParseException {
+    int yearEnd = digitsEnd(s, 0, 1, 4);
+    int monthStart = expect(s, yearEnd, '-');
+    int monthEnd = digitsEnd(s, monthStart, 1, 2);
+    int dayStart = expect(s, monthEnd, '-');
+    int dayEnd = digitsEnd(s, dayStart, 1, 2);
+    return new Date(toMillis(readNumber(s, 0, yearEnd), readNumber(s, monthStart, monthEnd),
+        readNumber(s, dayStart, dayEnd), 0, timeZone));
+  }
+
+  /**
+   * Reads MM/dd/yyyy, the month and day may be one digit. Anything after the date is ignored.
+   */
+  public static Date parseUsDate(CharSequence s) throws ParseException {
+    int monthEnd = digitsEnd(s, 0, 1, 2);
+    int dayStart = expect(s, monthEnd, '/');
+    int dayEnd = digitsEnd(s, dayStart, 1, 2);
+    int yearStart = expect(s, dayEnd, '/');
+    int yearEnd = digitsEnd(s, yearStart, 1, 4);
+    return new Date(toMillis(readNumber(s, yearStart, yearEnd), readNumber(s, 0, monthEnd),
+        readNumber(s, dayStart, dayEnd), 0, timeZone));
+  }
+
+  /**
+   * Reads an HL7 DTM, YYYY[MM[DD[HH[MM[SS[.S[S[S[S]]]]]]]]][+/-ZZZZ]. Parts left off are the
+   * start of the part before them. Without an offset the time is in the time zone set here.
+   */
+  public static Date parseDtm(CharSequence s) throws ParseException {
+    int year = readNumber(s, 0, digitsEnd(s, 0, 4, 4));
+    int month = 1;
+    int day = 1;
+    long millis = 0;
+    int position = 4;
+    for (int part = 1; part <= 5 && isDigit(s, position); part++) {
+      int value = readNumber(s, position, digitsEnd(s, position, 2, 2));
+      position += 2;
+      switch (part) {
+        case 1:
+          month = value;
+          break;
+        case 2:
+          day = value;
+          break;
+        case 3:
+          millis += value * MILLIS_PER_HOUR;
+          break;
+        case 4:
+          millis += value * MILLIS_PER_MINUTE;
+          break;
+        default:
+          millis += value * 1000L;
+      }
+    }
+    if (position == 14 && position < s.length() && s.charAt(position) == '.') {
+      int fractionEnd = digitsEnd(s, position + 1, 1, 4);
+      int digits = fractionEnd - position - 1;
+      int fraction = readNumber(s, position + 1, fractionEnd);
+      for (int i = digits; i < 3; i++) {
+        fraction *= 10;
+      }
+      millis += digits == 4 ? (fraction + 5) / 10 : fraction;
+      position = fractionEnd;
+    }
+    if (position < s.length() && (s.charAt(position) == '+' || s.charAt(position) == '-')) {
+      int sign = s.charAt(position) == '-' ? -1 : 1;
+      int hours = readNumber(s, position + 1, digitsEnd(s, position + 1, 2, 2));
+      int minutes = readNumber(s, position + 3, digitsEnd(s, position + 3, 2, 2));
+      long offset = sign * (hours * MILLIS_PER_HOUR + minutes * MILLIS_PER_MINUTE);
+      return new Date(toMillis(year, month, day, millis, null) - offset);
+    }
+    return new Date(toMillis(year, month, day, millis, timeZone));
+  }
+
+  /**
+   * Writes yyyyMMdd.
+   */
+  public static StringBuilder appendDate(StringBuilder sb, Date date) {
+    return appendDate(sb, localMillis(date.getTime()), "");
+  }
+
+  /**
+   * Writes yyyy-MM-dd.
+   */
+  public static StringBuilder appendIsoDate(StringBuilder sb, Date date) {
+    return appendDate(sb, localMillis(date.getTime()), "-");
+  }
+
+  /**
+   * Writes MM/dd/yyyy.
+   */
+  public static StringBuilder appendUsDate(StringBuilder sb, Date date) {
+    int ymd = toYearMonthDay(localMillis(date.getTime()));
+    appendNumber(sb, ymd / 100 % 100, 2).append('/');
+    appendNumber(sb, ymd % 100, 2).append('/');
+    return appendNumber(sb, ymd / 10000, 4);
+  }
+
+  /**
+   * Writes an HL7 DTM to the second with the offset, yyyyMMddHHmmss+ZZZZ.
+   */
+  public static StringBuilder appendDtm(StringBuilder sb, Date date) {
+    int offset = timeZone.getOffset(date.getTime());
+    long local = date.getTime() + offset;
+    appendDate(sb, local, "");
+    appendTime(sb, local, false);
+    return appendOffset(sb, offset, false);
+  }
+
+  /**
+   * Writes an XML dateTime to the millisecond with the offset, yyyy-MM-dd'T'HH:mm:ss.SSSXXX.
+   */
+  public static StringBuilder appendIsoDateTime(StringBuilder sb, Date date) {
+    int offset = timeZone.getOffset(date.getTime());
+    long local = date.getTime() + offset;
+    appendDate(sb, local, "-").append('T');
+    appendTime(sb, local, true);
+    return appendOffset(sb, offset, true);
+  }
+
+  public static String formatDate(Date date) {
+    return appendDate(new StringBuilder(8), date).toString();
+  }
+
+  public static String formatIsoDate(Date date) {
+    return appendIsoDate(new StringBuilder(10), date).toString();
+  }
+
+  public static String formatUsDate(Date date) {
+    return appendUsDate(new StringBuilder(10), date).toString();
+  }
+
+  public static String formatDtm(Date date) {
+    return appendDtm(new StringBuilder(19), date).toString();
+  }
+
+  public static String formatIsoDateTime(Date date) {
+    return appendIsoDateTime(new StringBuilder(29), date).toString();
+  }
+
+  private static StringBuilder appendDate(StringBuilder sb, long local, String separator) {
+    int ymd = toYearMonthDay(local);
+    appendNumber(sb, ymd / 10000, 4).append(separator);
+    appendNumber(sb, ymd / 100 % 100, 2).append(separator);
+    return appendNumber(sb, ymd % 100, 2);
+  }
+
+  private static void appendTime(StringBuilder sb, long local, boolean iso) {
+    long millisOfDay = Math.floorMod(local, MILLIS_PER_DAY);
+    appendNumber(sb, (int) (millisOfDay / MILLIS_PER_HOUR), 2);
+    if (iso) {
+      sb.append(':');
+    }
+    appendNumber(sb, (int) (millisOfDay / MILLIS_PER_MINUTE % 60), 2);
+    if (iso) {
+      sb.append(':');
+    }
+    appendNumber(sb, (int) (millisOfDay / 1000 % 60), 2);
+    if (iso) {
+      sb.append('.');
+      appendNumber(sb, (int) (millisOfDay % 1000), 3);
+    }
+  }
+
+  private static StringBuilder appendOffset(StringBuilder sb, int offset, boolean iso) {
+    if (iso && offset == 0) {
+      return sb.append('Z');
+    }
+    sb.append(offset < 0 ? '-' : '+');
+    int minutes = Math.abs(offset) / 60000;
+    appendNumber(sb, minutes / 60, 2);
+    if (iso) {
+      sb.append(':');
+    }
+    return appendNumber(sb, minutes % 60, 2);
+  }
+
+  private static StringBuilder appendNumber(StringBuilder sb, int value, int width) {
+    for (int limit = 10; width > 1; width--, limit *= 10) {
+      if (value < limit) {
+        sb.append('0');
+      }
+    }
+    return sb.append(value);
+  }
+
+  private static long localMillis(long millis) {
+    return millis + timeZone.getOffset(millis);
+  }
+
+  /**
+   * The date and time of day of the date in the time zone set here, as milliseconds from
+   * 1970-01-01T00:00 on a clock without time zones.
+   */
+  static long toLocalMillis(Date date) {
+    return localMillis(date.getTime());
+  }
+
+  /**
+   * The date at the local time, the reverse of toLocalMillis.
+   */
+  static Date toDate(long localMillis) {
+    return new Date(fromLocalMillis(localMillis, timeZone));
+  }
+
+  /**
+   * The date the months after, the same as Calendar.add(Calendar.MONTH, months): a day past the
+   * end of the month becomes the last day and the time of day is kept, moving on past a time the
+   * clocks skip.
+   */
+  static Date addMonths(Date date, int months) {
+    long local = toLocalMillis(date);
+    LocalDate day = LocalDate.ofEpochDay(Math.floorDiv(local, MILLIS_PER_DAY)).plusMonths(months);
+    return toDate(day.toEpochDay() * MILLIS_PER_DAY + Math.floorMod(local, MILLIS_PER_DAY));
+  }
+
+  /**
+   * The date the days after, the same as Calendar.add(Calendar.DAY_OF_MONTH, days). The time of
+   * day is kept where it can be, otherwise the clocks changing in between is made up for unless
+   * that would move to another day.
+   */
+  static Date addDays(Date date, int days) {
+    TimeZone zone = timeZone;
+    int offset = zone.getOffset(date.getTime());
+    long local = date.getTime() + offset + days * MILLIS_PER_DAY;
+    long millis = local - offset;
+    int change = offset - zone.getOffset(millis);
+    if (change != 0 && Math.floorDiv(localMillis(millis + change), MILLIS_PER_DAY) == Math
+        .floorDiv(local, MILLIS_PER_DAY)) {
+      millis += change;
+    }
+    return new Date(millis);
+  }
+
+  /**
+   * The times the clocks skip ahead after the instant up to the local time, as the local time each
+   * skip starts at followed by the local time it ends at. Those from 1900 through 2099 are worked
+   * out once for the time zone. None are known for a time zone java.time doesn't have rules for.
+   */
+  static long[] clockSkips(Date from, long toLocalMillis) {
+    ClockSkips cached = clockSkips;
+    if (cached == null || cached.timeZone != timeZone) {
+      cached = new ClockSkips(timeZone);
+      clockSkips = cached;
+    }
+    long fromLocal = localMillis(from.getTime());
+    if (fromLocal < SKIPS_FROM || toLocalMillis >= SKIPS_TO) {
+      return findClockSkips(cached.timeZone, from.getTime(), toLocalMillis);
+    }
+    long[] skips = cached.skips;
+    int start = 0;
+    while (start < skips.length && skips[start + 1] <= fromLocal) {
+      start += 2;
+    }
+    int end = start;
+    while (end < skips.length && skips[end] <= toLocalMillis) {
+      end += 2;
+    }
+    return Arrays.copyOfRange(skips, start, end);
+  }
+
+  private static long[] findClockSkips(TimeZone zone, long fromMillis, long toLocalMillis) {
+    ZoneRules rules;
+    try {
+      rules = zone.toZoneId().getRules();
+    } catch (DateTimeException dte) {
+      return new long[0];
+    }
+    List<Long> skips = new ArrayList<Long>();
+    ZoneOffsetTransition transition = rules.nextTransition(Instant.ofEpochMilli(fromMillis));
+    while (transition != null) {
+      long start = transition.getDateTimeBefore().toEpochSecond(ZoneOffset.UTC) * 1000;
+      if (start > toLocalMillis) {
+        break;
+      }
+      if (transition.isGap()) {
+        skips.add(start);
+        skips.add(transition.getDateTimeAfter().toEpochSecond(ZoneOffset.UTC) * 1000);
+      }
+      transition = rules.nextTransition(transition.getInstant());
+    }
+    long[] array = new long[skips.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = skips.get(i);
+    }
+    return array;
+  }
+
+  private static class ClockSkips {
+    final TimeZone timeZone;
+    final long[] skips;
+
+    ClockSkips(TimeZone timeZone) {
+      this.timeZone = timeZone;
+      skips = findClockSkips(timeZone, SKIPS_FROM - MILLIS_PER_DAY, SKIPS_TO);
+    }
+  }
+
+  /**
+   * The milliseconds since the epoch of the time on the date in the time zone, or in UTC when the
+   * time zone is null. Months and days past the end roll over.
+   */
+  private static long toMillis(int year, int month, int day, long millisOfDay, TimeZone zone) {
+    year += Math.floorDiv(month - 1, 12);
+    month = Math.floorMod(month - 1, 12) + 1;
+    long local = (toEpochDay(year, month) + day - 1) * MILLIS_PER_DAY + millisOfDay;
+    return zone == null ? local : fromLocalMillis(local, zone);
+  }
+
+  private static long fromLocalMillis(long local, TimeZone zone) {
+    // a time skipped when the clocks change takes the offset from before and a time repeated
+    // takes the offset from after, the same as Calendar
+    int before = zone.getOffset(local - MILLIS_PER_DAY);
+    int after = zone.getOffset(local + MILLIS_PER_DAY);
+    return local - (zone.getOffset(local - after) == after ? after : before);
+  }
+
+  /**
+   * Days from 1970-01-01 to the first of the month in the proleptic Gregorian calendar.
+   */
+  private static long toEpochDay(long year, int month) {
+    year -= month <= 2 ? 1 : 0;
+    long era = Math.floorDiv(year, 400);
+    long yearOfEra = year - era * 400;
+    long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+
+  /**
+   * The date of the local time as the number yyyyMMdd.
+   */
+  private static int toYearMonthDay(long local) {
+    long days = Math.floorDiv(local, MILLIS_PER_DAY) + 719468;
+    long era = Math.floorDiv(days, 146097);
+    long dayOfEra = days - era * 146097;
+    long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    long shiftedMonth = (5 * dayOfYear + 2) / 153;
+    int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+    int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+    int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+    return year * 10000 + month * 100 + day;
+  }
+
+  private static boolean isDigit(CharSequence s, int position) {
+    return position < s.length() && s.charAt(position) >= '0' && s.charAt(position) <= '9';
+  }
+
+  /**
+   * The end of the digits starting at the position, of which there must be at least min and are
+   * read up to max.
+   */
+  private static int digitsEnd(CharSequence s, int start, int min, int max) throws ParseException {
+    int end = start;
+    while (end - start < max && isDigit(s, end)) {
+      end++;
+    }
+    if (end - start < min) {
+      throw new ParseException("Unparseable date: \"" + s + "\"", end);
+    }
+    return end;
+  }
+
+  private static int expect(CharSequence s, int position, char c) throws ParseException {
+    if (position >= s.length() || s.charAt(position) != c) {
+      throw new ParseException("Unparseable date: \"" + s + "\"", position);
+    }
+    return position + 1;
+  }
+
+  private static int readNumber(CharSequence s, int start, int end) {
+    int value = 0;
+    for (int i = start; i < end; i++) {
+      value = value * 10 + (s.charAt(i) - '0');
+    }
+    return value;
+  }
+}
@@ -2,7 +2,6 @@ package org.immregistries.vfa.connect.util;
 
 import java.io.PrintStream;
 import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import org.immregistries.vfa.connect.model.EvaluationActual;
@@ -98,8 +97,7 @@ public class ForecastResultPrinter
     if (date == null) {
       return pad("", len);
     }
-    SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
-    return pad(sdf.format(date), len);
+    return pad(DateCodec.formatUsDate(date), len);
   }
 
   private static String pad(String s, int len) {
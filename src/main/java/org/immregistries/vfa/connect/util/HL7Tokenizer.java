@@ -0,0 +1,193 @@
+package org.immregistries.vfa.connect.util;
+
+/**
+ * Walks the segments of an HL7 v2 message and the fields, repetitions and components of the
+ * current segment by index. Nothing is copied out of the message until a value is asked for as a
+ * String, the only state kept is the position of each field separator in the current segment.
+ *
+ * Segments are split on line ends the same way BufferedReader.readLine splits lines. Fields are
+ * numbered the way line.split("\\|") numbers them, with the segment name as field 0. Repetitions
+ * and components count from 1.
+ */
+public class HL7Tokenizer {
+
+  private static final char FIELD_SEPARATOR = '|';
+  private static final char REPETITION_SEPARATOR = '~';
+  private static final char COMPONENT_SEPARATOR = '^';
+
+  private final CharSequence message;
+  private int position = 0;
+  private int segmentStart = 0;
+  private int segmentEnd = 0;
+  private int[] fieldStart = new int[32];
+  private int fieldCount = 0;
+
+  public HL7Tokenizer(CharSequence message) {
+    this.message = message;
+  }
+
+  /**
+   * Move to the next segment, returning false when the end of the message is reached. Empty
+   * segments are returned like any other.
+   */
+  public boolean nextSegment() {
+    int length = message.length();
+    if (position >= length) {
+      return false;
+    }
+    segmentStart = position;
+    fieldStart[0] = position;
+    fieldCount = 1;
+    int i = position;
+    while (i < length) {
+      char c = message.charAt(i);
+      if (c == '\r' || c == '\n') {
+        break;
+      }
+      if (c == FIELD_SEPARATOR) {
+        if (fieldCount == fieldStart.length) {
+          int[] grown = new int[fieldStart.length * 2];
+          System.arraycopy(fieldStart, 0, grown, 0, fieldCount);
+          fieldStart = grown;
+        }
+        fieldStart[fieldCount++] = i + 1;
+      }
+      i++;
+    }
+    segmentEnd = i;
+    if (i < length && message.charAt(i) == '\r' && i + 1 < length
+        && message.charAt(i + 1) == '\n') {
+      i++;
+    }
+    position = i + 1;
+    return true;
+  }
+
+  public int getSegmentLength() {
+    return segmentEnd - segmentStart;
+  }
+
+  /**
+   * The whole text of the current segment.
+   */
+  public String getSegment() {
+    return message.subSequence(segmentStart, segmentEnd).toString();
+  }
+
+  public String getSegmentName() {
+    return getField(0);
+  }
+
+  public boolean isSegment(String segmentName) {
+    return getFieldLength(0) == segmentName.length()
+        && regionMatches(fieldStart[0], segmentName);
+  }
+
+  /**
+   * Number of fields including the segment name, not counting empty fields at the end. This is the
+   * length of the array line.split("\\|") would return.
+   */
+  public int getFieldCount() {
+    if (segmentEnd == segmentStart) {
+      return 1;
+    }
+    int count = fieldCount;
+    while (count > 0 && getFieldLength(count - 1) == 0) {
+      count--;
+    }
+    return count;
+  }
+
+  public int getFieldLength(int field) {
+    if (field >= fieldCount) {
+      return 0;
+    }
+    return fieldEnd(field) - fieldStart[field];
+  }
+
+  /**
+   * The field as sent, including any repetition and component separators, or an empty string if
+   * the segment does not have this field.
+   */
+  public String getField(int field) {
+    if (field >= fieldCount) {
+      return "";
+    }
+    return message.subSequence(fieldStart[field], fieldEnd(field)).toString();
+  }
+
+  public int getRepetitionCount(int field) {
+    if (field >= fieldCount) {
+      return 0;
+    }
+    int count = 1;
+    for (int i = fieldStart[field], end = fieldEnd(field); i < end; i++) {
+      if (message.charAt(i) == REPETITION_SEPARATOR) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Component of the first repetition of the field.
+   */
+  public String getComponent(int field, int component) {
+    return getComponent(field, 1, component);
+  }
+
+  /**
+   * The component of the given repetition of the field, or an empty string if it was not sent.
+   */
+  public String getComponent(int field, int repetition, int component) {
+    if (field >= fieldCount) {
+      return "";
+    }
+    int end = fieldEnd(field);
+    int r = 1;
+    int c = 1;
+    int start = -1;
+    int i = fieldStart[field];
+    if (r == repetition && c == component) {
+      start = i;
+    }
+    while (i < end) {
+      char ch = message.charAt(i);
+      if (ch == REPETITION_SEPARATOR || ch == COMPONENT_SEPARATOR) {
+        if (start != -1) {
+          break;
+        }
+        if (ch == REPETITION_SEPARATOR) {
+          r++;
+          c = 1;
+          if (r > repetition) {
+            break;
+          }
+        } else {
+          c++;
+        }
+        if (r == repetition && c == component) {
+          start = i + 1;
+        }
+      }
+      i++;
+    }
+    if (start == -1) {
+      return "";
+    }
+    return message.subSequence(start, i).toString();
+  }
+
+  private int fieldEnd(int field) {
+    return field + 1 < fieldCount ? fieldStart[field + 1] - 1 : segmentEnd;
+  }
+
+  private boolean regionMatches(int start, String value) {
+    for (int i = 0; i < value.length(); i++) {
+      if (message.charAt(start + i) != value.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -1,13 +1,21 @@
 package org.immregistries.vfa.connect.util;
 
-import java.util.Calendar;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class TimePeriod
 {
+  private static final int INTERN_LIMIT = 1024;
+  private static final ConcurrentMap<String, TimePeriod> internMap =
+      new ConcurrentHashMap<String, TimePeriod>();
+
   private TimePeriod nextTimePeriod = null;
   private int value = 0;
   private boolean isMonth = false;
+  private boolean shared = false;
 
   private static final String PLUS_AND = "and";
   private static final String PLUS_PLUS = "plus";
@@ -47,43 +55,116 @@ public class TimePeriod
     return value == 0;
   }
 
+  /**
+   * Turns the time period around. Not allowed on the shared time periods valueOf returns, use
+   * negated or a copy for those.
+   */
   public void negate() {
+    if (shared) {
+      throw new UnsupportedOperationException("Shared time period " + this + " can't be changed");
+    }
     value = -value;
     if (nextTimePeriod != null) {
       nextTimePeriod.negate();
     }
   }
 
+  /**
+   * A new time period that is this one turned around.
+   */
+  public TimePeriod negated() {
+    TimePeriod timePeriod = new TimePeriod(this);
+    timePeriod.negate();
+    return timePeriod;
+  }
+
+  /**
+   * True for the time periods handed out by valueOf, which can't be changed.
+   */
+  public boolean isShared() {
+    return shared;
+  }
+
+  /**
+   * The date the time period after the starting date, adding each part the way Calendar adds it.
+   */
   public Date getDateFrom(Date startingDate) {
-    Calendar calendar = Calendar.getInstance();
-    calendar.setTime(startingDate);
-    if (isMonth) {
-      calendar.add(Calendar.MONTH, value);
-    } else {
-      calendar.add(Calendar.DAY_OF_MONTH, value);
-    }
-    if (nextTimePeriod != null) {
-      return nextTimePeriod.getDateFrom(calendar.getTime());
+    Date date = startingDate;
+    for (TimePeriod timePeriod = this; timePeriod != null; timePeriod = timePeriod.nextTimePeriod) {
+      date = timePeriod.add(date, timePeriod.value);
     }
-    return calendar.getTime();
+    return date;
   }
 
+  /**
+   * The date the time period before the starting date, taking the parts off from the last one.
+   */
   public Date getDateBefore(Date startingDate) {
     if (nextTimePeriod != null) {
       startingDate = nextTimePeriod.getDateBefore(startingDate);
     }
-    Calendar calendar = Calendar.getInstance();
-    calendar.setTime(startingDate);
-    if (isMonth) {
-      calendar.add(Calendar.MONTH, -value);
-    } else {
-      calendar.add(Calendar.DAY_OF_MONTH, -value);
+    return add(startingDate, -value);
+  }
+
+  private Date add(Date date, int amount) {
+    return isMonth ? DateCodec.addMonths(date, amount) : DateCodec.addDays(date, amount);
+  }
+
+  /**
+   * The time period the string describes, shared with everyone else who asks for the same string
+   * so relative test cases don't parse the same few periods over and over. Shared time periods
+   * can't be negated in place. Up to 1024 different strings are kept, after that new strings are
+   * parsed every time.
+   */
+  public static TimePeriod valueOf(String timePeriodString) {
+    TimePeriod timePeriod = internMap.get(timePeriodString);
+    if (timePeriod == null) {
+      timePeriod = new TimePeriod(timePeriodString);
+      for (TimePeriod part = timePeriod; part != null; part = part.nextTimePeriod) {
+        part.shared = true;
+      }
+      if (internMap.size() < INTERN_LIMIT) {
+        TimePeriod existing = internMap.putIfAbsent(timePeriodString, timePeriod);
+        if (existing != null) {
+          timePeriod = existing;
+        }
+      }
+    }
+    return timePeriod;
+  }
+
+  /**
+   * A copy that belongs to the caller and can be changed, also when copying a shared time period.
+   */
+  public TimePeriod(TimePeriod timePeriod) {
+    value = timePeriod.value;
+    isMonth = timePeriod.isMonth;
+    if (timePeriod.nextTimePeriod != null) {
+      nextTimePeriod = new TimePeriod(timePeriod.nextTimePeriod);
     }
-    return calendar.getTime();
   }
 
   public TimePeriod(String timePeriodString) {
-    this(timePeriodString.trim().toLowerCase().split("\\s+"), 0, true);
+    this(split(timePeriodString.trim().toLowerCase()), 0, true);
+  }
+
+  /**
+   * Splits on whitespace the same as split("\\s+"), without a regular expression.
+   */
+  private static String[] split(String s) {
+    List<String> parts = new ArrayList<String>();
+    int start = -1;
+    for (int i = 0; i <= s.length(); i++) {
+      char c = i < s.length() ? s.charAt(i) : ' ';
+      boolean space = c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+      if (space && start >= 0) {
+        parts.add(s.substring(start, i));
+        start = -1;
+      } else if (!space && start < 0) {
+        start = i;
+      }
+    }
+    return parts.toArray(new String[parts.size()]);
   }
 
   private TimePeriod(String[] parts, int i, boolean positive) {
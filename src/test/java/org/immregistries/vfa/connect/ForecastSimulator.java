@@ -0,0 +1,628 @@
+package org.immregistries.vfa.connect;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+import org.immregistries.vfa.connect.util.HL7Tokenizer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stands in for the forecast engines on localhost so connectors can be load tested without a
+ * remote service. One server answers each protocol under its own path:
+ * <ul>
+ * <li>IIS, the CDC submitSingleMessage SOAP envelope, VXU is answered with an ACK and QBP with an
+ * RSP</li>
+ * <li>ICE, evaluateAtSpecifiedTime with the VMR in base64</li>
+ * <li>SWP, executeVFM</li>
+ * <li>LSVF, the text query string</li>
+ * <li>MesVaccins, decision_support/immunisation_assessment.json</li>
+ * </ul>
+ * Every engine returns the same canned forecasts, written the way that engine writes them. Each
+ * response is held back for a delay drawn from the latency distribution, without holding a
+ * server thread, and a share of requests can be failed with an HTTP 500 or by dropping the
+ * connection.
+ */
+public class ForecastSimulator {
+
+  private static final String PATH_IIS = "/iis";
+  private static final String PATH_ICE = "/ice";
+  private static final String PATH_SWP = "/swp";
+  private static final String PATH_LSVF = "/lsvf";
+  private static final String PATH_MES_VACCINS = "/mesvaccins";
+  private static final String MES_VACCINS_ASSESSMENT = "/decision_support/immunisation_assessment.json";
+
+  // vaccine group id to MesVaccins disease id, the reverse of the map MesVaccinsConnector reads
+  // responses with
+  private static final Map<Integer, Integer> MES_VACCINS_DISEASE_ID_MAP =
+      new HashMap<Integer, Integer>();
+
+  static {
+    MES_VACCINS_DISEASE_ID_MAP.put(VaccineGroup.ID_DTAP_TDAP_TD, 1);
+    MES_VACCINS_DISEASE_ID_MAP.put(VaccineGroup.ID_POLIO, 4);
+    MES_VACCINS_DISEASE_ID_MAP.put(VaccineGroup.ID_HIB, 5);
+    MES_VACCINS_DISEASE_ID_MAP.put(VaccineGroup.ID_HEPB, 6);
+    MES_VACCINS_DISEASE_ID_MAP.put(VaccineGroup.ID_MMR, 8);
+    MES_VACCINS_DISEASE_ID_MAP.put(VaccineGroup.ID_VAR, 11);
+    MES_VACCINS_DISEASE_ID_MAP.put(VaccineGroup.ID_INFLUENZA, 15);
+    MES_VACCINS_DISEASE_ID_MAP.put(VaccineGroup.ID_HEPA, 16);
+    MES_VACCINS_DISEASE_ID_MAP.put(VaccineGroup.ID_PNEUMO, 25);
+    MES_VACCINS_DISEASE_ID_MAP.put(VaccineGroup.ID_ROTA, 32);
+    MES_VACCINS_DISEASE_ID_MAP.put(VaccineGroup.ID_ZOSTER, 33);
+    MES_VACCINS_DISEASE_ID_MAP.put(VaccineGroup.ID_HPV, 38);
+    MES_VACCINS_DISEASE_ID_MAP.put(VaccineGroup.ID_MENING, 39);
+  }
+
+  static {
+    // without this every small response waits on the client's delayed ACK, read once when the
+    // first server is created
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+  }
+
+  /**
+   * A forecast every simulated engine gives back. Dates may be null.
+   */
+  public static class CannedForecast {
+    private final int vaccineGroupId;
+    private final String doseNumber;
+    private final Date validDate;
+    private final Date dueDate;
+    private final Date overdueDate;
+    private final Date finishedDate;
+
+    public CannedForecast(int vaccineGroupId, String doseNumber, Date validDate, Date dueDate,
+        Date overdueDate, Date finishedDate) {
+      this.vaccineGroupId = vaccineGroupId;
+      this.doseNumber = doseNumber;
+      this.validDate = validDate;
+      this.dueDate = dueDate;
+      this.overdueDate = overdueDate;
+      this.finishedDate = finishedDate;
+    }
+
+    public int getVaccineGroupId() {
+      return vaccineGroupId;
+    }
+
+    public String getDoseNumber() {
+      return doseNumber;
+    }
+
+    public Date getValidDate() {
+      return validDate;
+    }
+
+    public Date getDueDate() {
+      return dueDate;
+    }
+
+    public Date getOverdueDate() {
+      return overdueDate;
+    }
+
+    public Date getFinishedDate() {
+      return finishedDate;
+    }
+  }
+
+  /**
+   * How long to hold back each response.
+   */
+  public interface Latency {
+    public long nextMillis(Random random);
+  }
+
+  public static Latency fixedLatency(final long millis) {
+    return new Latency() {
+      public long nextMillis(Random random) {
+        return millis;
+      }
+    };
+  }
+
+  public static Latency uniformLatency(final long minMillis, final long maxMillis) {
+    return new Latency() {
+      public long nextMillis(Random random) {
+        return minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+      }
+    };
+  }
+
+  public static Latency exponentialLatency(final double meanMillis) {
+    return new Latency() {
+      public long nextMillis(Random random) {
+        return (long) (-meanMillis * Math.log(1 - random.nextDouble()));
+      }
+    };
+  }
+
+  /**
+   * Most responses near the median with a long tail, sigma 0.5 puts the 99th percentile at about
+   * three times the median.
+   */
+  public static Latency logNormalLatency(final double medianMillis, final double sigma) {
+    return new Latency() {
+      public long nextMillis(Random random) {
+        return (long) (medianMillis * Math.exp(sigma * random.nextGaussian()));
+      }
+    };
+  }
+
+  private HttpServer server = null;
+  private ExecutorService handlerExecutor = null;
+  private ScheduledExecutorService responseScheduler = null;
+  private final VaccineGroupMapping vaccineGroupMapping =
+      VaccineGroupMapping.getMapping(VaccineGroup.getForecastItemList());
+
+  private volatile Latency latency = fixedLatency(0);
+  private volatile double errorRate = 0;
+  private volatile double dropRate = 0;
+  private volatile List<CannedForecast> cannedForecastList = createDefaultCannedForecastList();
+
+  private final AtomicInteger requestCount = new AtomicInteger();
+  private final AtomicInteger errorCount = new AtomicInteger();
+  private final AtomicInteger dropCount = new AtomicInteger();
+
+  public static List<CannedForecast> createDefaultCannedForecastList() {
+    Date valid = date(2018, Calendar.JULY, 2);
+    Date due = date(2018, Calendar.SEPTEMBER, 2);
+    Date overdue = date(2018, Calendar.NOVEMBER, 2);
+    Date finished = date(2030, Calendar.JANUARY, 1);
+    List<CannedForecast> list = new ArrayList<CannedForecast>();
+    list.add(new CannedForecast(VaccineGroup.ID_HEPB, "2", valid, due, overdue, finished));
+    list.add(new CannedForecast(VaccineGroup.ID_HIB, "1", valid, due, overdue, finished));
+    list.add(new CannedForecast(VaccineGroup.ID_POLIO, "1", valid, due, overdue, finished));
+    list.add(new CannedForecast(VaccineGroup.ID_MMR, "1", date(2019, Calendar.JULY, 2),
+        date(2019, Calendar.JULY, 2), date(2020, Calendar.JANUARY, 2), finished));
+    return list;
+  }
+
+  /**
+   * Starts on a free port on localhost.
+   */
+  public void start() throws IOException {
+    start(0);
+  }
+
+  public synchronized void start(int port) throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+    handlerExecutor = Executors.newCachedThreadPool();
+    responseScheduler = Executors.newScheduledThreadPool(2);
+    server.setExecutor(handlerExecutor);
+    server.createContext(PATH_IIS, new SimulatorHandler() {
+      String respond(HttpExchange exchange, String request) {
+        return respondIIS(request);
+      }
+    });
+    server.createContext(PATH_ICE, new SimulatorHandler() {
+      String respond(HttpExchange exchange, String request) throws IOException {
+        return respondICE();
+      }
+    });
+    server.createContext(PATH_SWP, new SimulatorHandler() {
+      String respond(HttpExchange exchange, String request) {
+        return respondSWP();
+      }
+    });
+    server.createContext(PATH_LSVF, new SimulatorHandler() {
+      String respond(HttpExchange exchange, String request) {
+        return respondLSVF(exchange.getRequestURI().getRawQuery());
+      }
+    });
+    server.createContext(PATH_MES_VACCINS + MES_VACCINS_ASSESSMENT, new SimulatorHandler() {
+      String respond(HttpExchange exchange, String request) {
+        return respondMesVaccins();
+      }
+    });
+    server.start();
+  }
+
+  public synchronized void stop() {
+    if (server != null) {
+      server.stop(0);
+      handlerExecutor.shutdownNow();
+      responseScheduler.shutdownNow();
+      server = null;
+    }
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * The url the connector for the service should be given.
+   */
+  public String getServiceUrl(Service service) {
+    String base = "http://127.0.0.1:" + getPort();
+    switch (service) {
+      case IIS:
+        return base + PATH_IIS;
+      case ICE:
+        return base + PATH_ICE;
+      case SWP:
+        return base + PATH_SWP;
+      case LSVF:
+        return base + PATH_LSVF;
+      case MES_VACCINE:
+        return base + PATH_MES_VACCINS;
+      default:
+        throw new IllegalArgumentException("No simulator for " + service);
+    }
+  }
+
+  /**
+   * Software set up to talk to the simulator.
+   */
+  public Software createSoftware(Service service) {
+    Software software = new Software();
+    software.setService(service);
+    software.setServiceUrl(getServiceUrl(service));
+    software.setServiceUserid("simulator");
+    software.setServicePassword("simulator");
+    software.setServiceFacilityid("Simulator");
+    return software;
+  }
+
+  public Latency getLatency() {
+    return latency;
+  }
+
+  public void setLatency(Latency latency) {
+    this.latency = latency;
+  }
+
+  public double getErrorRate() {
+    return errorRate;
+  }
+
+  /**
+   * Share of requests, from 0 to 1, answered with an HTTP 500.
+   */
+  public void setErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+  }
+
+  public double getDropRate() {
+    return dropRate;
+  }
+
+  /**
+   * Share of requests, from 0 to 1, where the connection is closed without a response.
+   */
+  public void setDropRate(double dropRate) {
+    this.dropRate = dropRate;
+  }
+
+  public List<CannedForecast> getCannedForecastList() {
+    return cannedForecastList;
+  }
+
+  public void setCannedForecastList(List<CannedForecast> cannedForecastList) {
+    this.cannedForecastList = Collections.unmodifiableList(new ArrayList<CannedForecast>(cannedForecastList));
+  }
+
+  public int getRequestCount() {
+    return requestCount.get();
+  }
+
+  public int getErrorCount() {
+    return errorCount.get();
+  }
+
+  public int getDropCount() {
+    return dropCount.get();
+  }
+
+  private abstract class SimulatorHandler implements HttpHandler {
+
+    abstract String respond(HttpExchange exchange, String request) throws IOException;
+
+    public void handle(final HttpExchange exchange) throws IOException {
+      requestCount.incrementAndGet();
+      String request = new String(readAll(exchange.getRequestBody()), "UTF-8");
+      Random random = ThreadLocalRandom.current();
+      double fate = random.nextDouble();
+      if (fate < dropRate) {
+        dropCount.incrementAndGet();
+        exchange.close();
+        return;
+      }
+      final int status;
+      final String body;
+      if (fate < dropRate + errorRate) {
+        errorCount.incrementAndGet();
+        status = 500;
+        body = "Simulated failure";
+      } else {
+        status = 200;
+        body = respond(exchange, request);
+      }
+      long delay = latency.nextMillis(random);
+      if (delay <= 0) {
+        send(exchange, status, body);
+        return;
+      }
+      responseScheduler.schedule(new Runnable() {
+        public void run() {
+          try {
+            send(exchange, status, body);
+          } catch (IOException ioe) {
+            // client went away
+          }
+        }
+      }, delay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private static void send(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes("UTF-8");
+    exchange.getResponseHeaders().set(HttpTransport.CONTENT_TYPE, "text/xml; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    exchange.getResponseBody().write(bytes);
+    exchange.close();
+  }
+
+  private String respondIIS(String request) {
+    int start = request.indexOf("<hl7Message>");
+    int end = request.indexOf("</hl7Message>");
+    String message = start < 0 || end < start ? ""
+        : request.substring(start + "<hl7Message>".length(), end).replace("&amp;", "&");
+    HL7Tokenizer segment = new HL7Tokenizer(message);
+    String messageType = "";
+    String messageId = "";
+    String qpd = "";
+    String patientId = "";
+    while (segment.nextSegment()) {
+      if (segment.isSegment("MSH")) {
+        messageType = segment.getField(8);
+        messageId = segment.getField(9);
+      } else if (segment.isSegment("QPD")) {
+        qpd = segment.getSegment();
+        patientId = segment.getComponent(3, 1);
+      }
+    }
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
+    StringBuilder sb = new StringBuilder();
+    sb.append("MSH|^~\\&|SIMULATOR|SIMULATOR|||").append(sdf.format(new Date())).append("||");
+    if (!messageType.startsWith("QBP")) {
+      sb.append("ACK^V04^ACK|").append(messageId).append("|P|2.5.1\r");
+      sb.append("MSA|AA|").append(messageId).append("\r");
+    } else {
+      sb.append("RSP^K11^RSP_K11|").append(messageId).append("|P|2.5.1\r");
+      sb.append("MSA|AA|").append(messageId).append("\r");
+      sb.append("QAK|").append(messageId).append("|OK|Z44^Request Evaluated History and Forecast^CDCPHINVS\r");
+      sb.append(qpd).append("\r");
+      sb.append("PID|1||").append(patientId).append("^^^SIM^MR\r");
+      sb.append("ORC|RE||").append(messageId).append(".1\r");
+      sb.append("RXA|0|1|").append(sdf.format(new Date())).append("||998^No Vaccination Administered^CVX\r");
+      int obx = 0;
+      int subId = 0;
+      for (CannedForecast cannedForecast : cannedForecastList) {
+        VaccineGroup vaccineGroup = VaccineGroup.getForecastItem(cannedForecast.getVaccineGroupId());
+        if (vaccineGroup == null) {
+          continue;
+        }
+        subId++;
+        String status = isPast(cannedForecast.getOverdueDate()) ? "LA13423-1^Overdue^LN"
+            : "LA13422-3^On Schedule^LN";
+        obx = appendOBX(sb, obx, "CE", "30956-7^Vaccine type^LN", subId,
+            vaccineGroup.getVaccineCvx() + "^" + vaccineGroup.getLabel() + "^CVX");
+        obx = appendOBX(sb, obx, "CE", "59783-1^Status in series^LN", subId, status);
+        obx = appendOBX(sb, obx, "NM", "30973-2^Dose number in series^LN", subId,
+            cannedForecast.getDoseNumber());
+        obx = appendOBX(sb, obx, "DT", "30981-5^Earliest date^LN", subId,
+            format(sdf, cannedForecast.getValidDate()));
+        obx = appendOBX(sb, obx, "DT", "30980-7^Recommended date^LN", subId,
+            format(sdf, cannedForecast.getDueDate()));
+        obx = appendOBX(sb, obx, "DT", "59778-1^Date vaccination overdue^LN", subId,
+            format(sdf, cannedForecast.getOverdueDate()));
+        obx = appendOBX(sb, obx, "DT", "59777-3^Latest date to give^LN", subId,
+            format(sdf, cannedForecast.getFinishedDate()));
+      }
+    }
+    return "<?xml version='1.0' encoding='UTF-8'?><Envelope xmlns=\"http://www.w3.org/2003/05/soap-envelope\">"
+        + "<Body><submitSingleMessageResponse xmlns=\"urn:cdc:iisb:2011\"><return>"
+        + sb.toString().replace("&", "&amp;")
+        + "</return></submitSingleMessageResponse></Body></Envelope>";
+  }
+
+  private static int appendOBX(StringBuilder sb, int obx, String valueType, String code, int subId,
+      String value) {
+    if (value == null || value.length() == 0) {
+      return obx;
+    }
+    obx++;
+    sb.append("OBX|").append(obx).append('|').append(valueType).append('|').append(code).append('|')
+        .append(subId).append('|').append(value).append("||||||F\r");
+    return obx;
+  }
+
+  private String respondICE() throws IOException {
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd'000000.000-0000'");
+    StringBuilder vmr = new StringBuilder();
+    vmr.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+    vmr.append("<ns4:cdsOutput xmlns:ns4=\"org.opencds.vmr.v1_0.schema.cdsoutput\">\n");
+    vmr.append("<vmrOutput><patient><clinicalStatements><substanceAdministrationProposals>\n");
+    for (CannedForecast cannedForecast : cannedForecastList) {
+      String code = getCode(Service.ICE, cannedForecast.getVaccineGroupId());
+      if (code == null) {
+        continue;
+      }
+      vmr.append("<substanceAdministrationProposal>");
+      vmr.append("<substance><substanceCode code=\"").append(code)
+          .append("\" codeSystem=\"2.16.840.1.113883.3.795.12.100.1\"/></substance>");
+      if (cannedForecast.getValidDate() != null) {
+        vmr.append("<validAdministrationTimeInterval low=\"")
+            .append(sdf.format(cannedForecast.getValidDate())).append("\"/>");
+      }
+      vmr.append("<proposedAdministrationTimeInterval");
+      if (cannedForecast.getDueDate() != null) {
+        vmr.append(" low=\"").append(sdf.format(cannedForecast.getDueDate())).append("\"");
+      }
+      if (cannedForecast.getOverdueDate() != null) {
+        vmr.append(" high=\"").append(sdf.format(cannedForecast.getOverdueDate())).append("\"");
+      }
+      vmr.append("/>");
+      vmr.append("<relatedClinicalStatement><observationResult><observationValue>");
+      vmr.append("<concept code=\"RECOMMENDED\" codeSystem=\"2.16.840.1.113883.3.795.12.100.5\"/>");
+      vmr.append("</observationValue><interpretation code=\"")
+          .append(isPast(cannedForecast.getDueDate()) ? "DUE_NOW" : "DUE_IN_FUTURE")
+          .append("\" codeSystem=\"2.16.840.1.113883.3.795.12.100.6\"/>");
+      vmr.append("</observationResult></relatedClinicalStatement>");
+      vmr.append("</substanceAdministrationProposal>\n");
+    }
+    vmr.append("</substanceAdministrationProposals></clinicalStatements></patient></vmrOutput>\n");
+    vmr.append("</ns4:cdsOutput>\n");
+    return "<?xml version='1.0' encoding='UTF-8'?>"
+        + "<S:Envelope xmlns:S=\"http://www.w3.org/2003/05/soap-envelope\"><S:Body>"
+        + "<ns2:evaluateAtSpecifiedTimeResponse xmlns:ns2=\"http://www.omg.org/spec/CDSS/201105/dss\">"
+        + "<response><evaluationResponse><finalKMEvaluationResponse><kmEvaluationResultData><data>"
+        + "<informationModelSSId scopingEntityId=\"org.opencds.vmr\" businessId=\"VMR\" version=\"1.0\"/>"
+        + "<base64EncodedPayload>"
+        + Base64.getEncoder().encodeToString(vmr.toString().getBytes("UTF-8"))
+        + "</base64EncodedPayload></data></kmEvaluationResultData></finalKMEvaluationResponse>"
+        + "</evaluationResponse></response></ns2:evaluateAtSpecifiedTimeResponse></S:Body></S:Envelope>";
+  }
+
+  private String respondSWP() {
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+    StringBuilder sb = new StringBuilder();
+    sb.append("<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\"><S:Body>");
+    sb.append("<executeVFM><vfm><patient>");
+    for (CannedForecast cannedForecast : cannedForecastList) {
+      String family = getCode(Service.SWP, cannedForecast.getVaccineGroupId());
+      VaccineGroup vaccineGroup = VaccineGroup.getForecastItem(cannedForecast.getVaccineGroupId());
+      if (family == null || vaccineGroup == null) {
+        continue;
+      }
+      sb.append("<forecast");
+      sb.append(" recommendeddate=\"").append(format(sdf, cannedForecast.getDueDate())).append("\"");
+      sb.append(" mindate=\"").append(format(sdf, cannedForecast.getValidDate())).append("\"");
+      sb.append(" overduedate=\"").append(format(sdf, cannedForecast.getOverdueDate())).append("\"");
+      sb.append(" maxdate=\"").append(format(sdf, cannedForecast.getFinishedDate())).append("\"");
+      sb.append(" dosenum=\"").append(cannedForecast.getDoseNumber()).append("\"");
+      sb.append(" cvx=\"").append(vaccineGroup.getVaccineCvx()).append("\"");
+      sb.append(" family=\"").append(family).append("\"/>");
+    }
+    sb.append("</patient></vfm></executeVFM></S:Body></S:Envelope>");
+    return sb.toString();
+  }
+
+  private String respondLSVF(String query) {
+    SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
+    StringBuilder sb = new StringBuilder();
+    sb.append("Lone Star Vaccine Forecaster simulator\n");
+    sb.append("Query ").append(query).append("\n\n");
+    for (CannedForecast cannedForecast : cannedForecastList) {
+      String vaccineType = getCode(Service.LSVF, cannedForecast.getVaccineGroupId());
+      if (vaccineType == null) {
+        continue;
+      }
+      String status = isPast(cannedForecast.getOverdueDate()) ? "overdue"
+          : isPast(cannedForecast.getDueDate()) ? "due" : "due later";
+      sb.append("Forecasting ").append(vaccineType).append(" status ").append(status);
+      sb.append(" dose ").append(cannedForecast.getDoseNumber());
+      sb.append(" due ").append(format(sdf, cannedForecast.getDueDate()));
+      sb.append(" valid ").append(format(sdf, cannedForecast.getValidDate()));
+      sb.append(" overdue ").append(format(sdf, cannedForecast.getOverdueDate()));
+      sb.append(" finished ").append(format(sdf, cannedForecast.getFinishedDate()));
+      sb.append("\n");
+    }
+    return sb.toString();
+  }
+
+  private String respondMesVaccins() {
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\"assessments\": [");
+    boolean first = true;
+    for (CannedForecast cannedForecast : cannedForecastList) {
+      Integer diseaseId = MES_VACCINS_DISEASE_ID_MAP.get(cannedForecast.getVaccineGroupId());
+      if (diseaseId == null) {
+        continue;
+      }
+      if (!first) {
+        sb.append(",");
+      }
+      first = false;
+      sb.append("{\"disease\": {\"id\": ").append(diseaseId).append("}");
+      try {
+        sb.append(", \"dose_count\": ").append(Integer.parseInt(cannedForecast.getDoseNumber()) - 1);
+      } catch (NumberFormatException nfe) {
+        // no count
+      }
+      sb.append(", \"schedule_status\": \"")
+          .append(isPast(cannedForecast.getDueDate()) ? "late" : "up-to-date").append("\"");
+      if (cannedForecast.getDueDate() != null) {
+        sb.append(", \"next_vaccination_date\": \"").append(sdf.format(cannedForecast.getDueDate()))
+            .append("\"");
+      }
+      sb.append("}");
+    }
+    sb.append("]}");
+    return sb.toString();
+  }
+
+  /**
+   * The first code the service uses for the vaccine group, or null if it has none.
+   */
+  private String getCode(Service service, int vaccineGroupId) {
+    for (Map.Entry<String, List<VaccineGroup>> entry : vaccineGroupMapping.getCodeMap(service).entrySet()) {
+      for (VaccineGroup vaccineGroup : entry.getValue()) {
+        if (vaccineGroup.getVaccineGroupId() == vaccineGroupId) {
+          return entry.getKey();
+        }
+      }
+    }
+    return null;
+  }
+
+  private static boolean isPast(Date date) {
+    return date != null && date.before(new Date());
+  }
+
+  private static String format(SimpleDateFormat sdf, Date date) {
+    return date == null ? "" : sdf.format(date);
+  }
+
+  private static Date date(int year, int month, int day) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(year, month, day);
+    return calendar.getTime();
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int count;
+    while ((count = in.read(buffer)) != -1) {
+      out.write(buffer, 0, count);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,289 @@
+package org.immregistries.vfa.connect;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.immregistries.vfa.connect.model.Evaluation;
+import org.immregistries.vfa.connect.model.EvaluationActual;
+import org.immregistries.vfa.connect.model.Event;
+import org.immregistries.vfa.connect.model.ForecastActual;
+import org.immregistries.vfa.connect.model.ForecastEngineIssue;
+import org.immregistries.vfa.connect.model.ForecastEngineIssueLevel;
+import org.immregistries.vfa.connect.model.ForecastEngineIssueType;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.ServiceOption;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.SoftwareResult;
+import org.immregistries.vfa.connect.model.SoftwareResultStatus;
+import org.immregistries.vfa.connect.model.TestCase;
+import org.immregistries.vfa.connect.model.TestCaseSetting;
+import org.immregistries.vfa.connect.model.TestEvent;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+
+public class TestCachingConnector extends junit.framework.TestCase {
+
+  /**
+   * Returns one HepB forecast and evaluates every event as valid, counting how often it is asked.
+   */
+  private static class CountingConnector implements ConnectorInterface {
+    private int queryCount = 0;
+    private boolean fail = false;
+    private boolean logText = false;
+
+    public List<ForecastActual> queryForForecast(TestCase testCase, SoftwareResult softwareResult)
+        throws Exception {
+      return ConnectorExecutor.await(queryForForecastAsync(testCase, softwareResult));
+    }
+
+    public CompletableFuture<List<ForecastActual>> queryForForecastAsync(TestCase testCase,
+        SoftwareResult softwareResult) {
+      queryCount++;
+      if (fail) {
+        softwareResult.setSoftwareResultStatus(SoftwareResultStatus.PROBLEM);
+        CompletableFuture<List<ForecastActual>> future = new CompletableFuture<List<ForecastActual>>();
+        future.completeExceptionally(new Exception("Unable to get forecast results"));
+        return future;
+      }
+      softwareResult.setRunDate(new Date());
+      softwareResult.setLogText(logText ? "query " + queryCount : null);
+      softwareResult.getIssueList().add(new ForecastEngineIssue(
+          ForecastEngineIssueType.UNEXPECTED_FORMAT, ForecastEngineIssueLevel.WARNING,
+          "Query " + queryCount, "RSP"));
+      for (TestEvent testEvent : testCase.getTestEventList()) {
+        EvaluationActual evaluationActual = new EvaluationActual();
+        evaluationActual.setTestEvent(testEvent);
+        evaluationActual.setSoftwareResult(softwareResult);
+        evaluationActual.setVaccineCvx(testEvent.getEvent().getVaccineCvx());
+        evaluationActual.setEvaluation(Evaluation.VALID);
+        List<EvaluationActual> evaluationActualList = new ArrayList<EvaluationActual>();
+        evaluationActualList.add(evaluationActual);
+        testEvent.setEvaluationActualList(evaluationActualList);
+      }
+      ForecastActual forecastActual = new ForecastActual();
+      forecastActual.setTestCase(testCase);
+      forecastActual.setSoftwareResult(softwareResult);
+      forecastActual.setVaccineGroup(VaccineGroup.getForecastItem(VaccineGroup.ID_HEPB));
+      forecastActual.setVaccineCvx("45");
+      forecastActual.setDoseNumber("2");
+      forecastActual.setDueDate(date(2018, Calendar.AUGUST, 2));
+      List<ForecastActual> forecastActualList = new ArrayList<ForecastActual>();
+      forecastActualList.add(forecastActual);
+      return CompletableFuture.completedFuture(forecastActualList);
+    }
+
+    public void setLogText(boolean logText) {
+      this.logText = logText;
+    }
+
+    public boolean isLogText() {
+      return logText;
+    }
+  }
+
+  private static class TestClockConnector extends CachingConnector {
+    private long now = 1000000;
+
+    public TestClockConnector(ConnectorInterface connector, Software software, int maxEntries,
+        long timeToLiveMillis) {
+      super(connector, software, maxEntries, timeToLiveMillis);
+    }
+
+    @Override
+    protected long currentTimeMillis() {
+      return now;
+    }
+  }
+
+  private CountingConnector countingConnector;
+  private Software software;
+
+  @Override
+  protected void setUp() throws Exception {
+    countingConnector = new CountingConnector();
+    software = new Software();
+    software.setSoftwareId(7);
+    software.setService(Service.IIS);
+    software.setServiceUrl("http://localhost/iis");
+  }
+
+  public void testHitReturnsCopy() throws Exception {
+    CachingConnector connector = new CachingConnector(countingConnector, software);
+    connector.setLogText(true);
+    TestCase testCase = createTestCase("A");
+    SoftwareResult softwareResult = new SoftwareResult();
+    List<ForecastActual> firstList = connector.queryForForecast(testCase, softwareResult);
+    assertEquals(1, countingConnector.queryCount);
+    assertEquals(0, connector.getHitCount());
+    assertEquals(1, connector.getMissCount());
+
+    // same request with a different name, number and event order
+    TestCase sameTestCase = createTestCase("B");
+    sameTestCase.setPatientFirst("Other");
+    Collections.reverse(sameTestCase.getTestEventList());
+    SoftwareResult sameSoftwareResult = new SoftwareResult();
+    List<ForecastActual> secondList = connector.queryForForecast(sameTestCase, sameSoftwareResult);
+    assertEquals(1, countingConnector.queryCount);
+    assertEquals(1, connector.getHitCount());
+    assertEquals(0.5, connector.getHitRatio(), 0.0001);
+
+    assertEquals(1, secondList.size());
+    ForecastActual forecastActual = secondList.get(0);
+    assertNotSame(firstList.get(0), forecastActual);
+    assertSame(sameTestCase, forecastActual.getTestCase());
+    assertSame(sameSoftwareResult, forecastActual.getSoftwareResult());
+    assertEquals("45", forecastActual.getVaccineCvx());
+    assertEquals("2", forecastActual.getDoseNumber());
+    assertEquals(firstList.get(0).getDueDate(), forecastActual.getDueDate());
+    assertNotSame(firstList.get(0).getDueDate(), forecastActual.getDueDate());
+    assertEquals(SoftwareResultStatus.OK, sameSoftwareResult.getSoftwareResultStatus());
+    assertEquals(1, sameSoftwareResult.getIssueList().size());
+    assertEquals("Query 1", sameSoftwareResult.getIssueList().get(0).getDescription());
+    assertNotSame(softwareResult.getIssueList().get(0), sameSoftwareResult.getIssueList().get(0));
+    assertTrue(sameSoftwareResult.getLogText().endsWith("query 1"));
+
+    for (TestEvent testEvent : sameTestCase.getTestEventList()) {
+      assertEquals(1, testEvent.getEvaluationActualList().size());
+      EvaluationActual evaluationActual = testEvent.getEvaluationActualList().get(0);
+      assertSame(testEvent, evaluationActual.getTestEvent());
+      assertSame(sameSoftwareResult, evaluationActual.getSoftwareResult());
+      assertEquals(testEvent.getEvent().getVaccineCvx(), evaluationActual.getVaccineCvx());
+    }
+
+    // changing what was handed out doesn't change the cache
+    forecastActual.setDoseNumber("9");
+    forecastActual.getDueDate().setTime(0);
+    ForecastActual third = connector.queryForForecast(createTestCase("C"), new SoftwareResult()).get(0);
+    assertEquals("2", third.getDoseNumber());
+    assertEquals(firstList.get(0).getDueDate(), third.getDueDate());
+  }
+
+  public void testHitWithoutCachedLogText() throws Exception {
+    CachingConnector connector = new CachingConnector(countingConnector, software);
+    connector.queryForForecast(createTestCase("A"), new SoftwareResult());
+    connector.setLogText(true);
+    SoftwareResult softwareResult = new SoftwareResult();
+    connector.queryForForecast(createTestCase("A"), softwareResult);
+    assertEquals(1, connector.getHitCount());
+    assertTrue(softwareResult.getLogText().startsWith("Returned from cache"));
+    assertFalse(softwareResult.getLogText().contains("null"));
+  }
+
+  public void testFingerprint() {
+    TestCase testCase = createTestCase("A");
+    String fingerprint = CachingConnector.createFingerprint(software, testCase);
+    assertEquals(fingerprint, CachingConnector.createFingerprint(software, createTestCase("B")));
+
+    TestCase other = createTestCase("A");
+    other.setPatientSex("M");
+    assertFalse(fingerprint.equals(CachingConnector.createFingerprint(software, other)));
+
+    other = createTestCase("A");
+    other.setEvalDate(date(2018, Calendar.SEPTEMBER, 7));
+    assertFalse(fingerprint.equals(CachingConnector.createFingerprint(software, other)));
+
+    other = createTestCase("A");
+    other.getTestEventList().get(1).getEvent().setVaccineCvx("08");
+    assertFalse(fingerprint.equals(CachingConnector.createFingerprint(software, other)));
+
+    other = createTestCase("A");
+    ServiceOption serviceOption = new ServiceOption();
+    serviceOption.setOptionName("schedule");
+    TestCaseSetting testCaseSetting = new TestCaseSetting();
+    testCaseSetting.setServiceOption(serviceOption);
+    testCaseSetting.setOptionValue("accelerated");
+    other.setTestCaseSettingList(new ArrayList<TestCaseSetting>());
+    other.getTestCaseSettingList().add(testCaseSetting);
+    assertFalse(fingerprint.equals(CachingConnector.createFingerprint(software, other)));
+
+    Software otherSoftware = new Software();
+    otherSoftware.setSoftwareId(8);
+    otherSoftware.setService(Service.IIS);
+    otherSoftware.setServiceUrl("http://localhost/iis");
+    assertFalse(fingerprint.equals(CachingConnector.createFingerprint(otherSoftware, testCase)));
+  }
+
+  public void testEvictionAndInvalidation() throws Exception {
+    TestClockConnector connector = new TestClockConnector(countingConnector, software, 2, 1000);
+    TestCase testCaseA = createTestCase("A");
+    TestCase testCaseB = createTestCase("B");
+    testCaseB.setPatientSex("M");
+    TestCase testCaseC = createTestCase("C");
+    testCaseC.setEvalDate(date(2018, Calendar.OCTOBER, 1));
+
+    connector.queryForForecast(testCaseA, new SoftwareResult());
+    connector.queryForForecast(testCaseB, new SoftwareResult());
+    connector.queryForForecast(testCaseA, new SoftwareResult());
+    assertEquals(2, countingConnector.queryCount);
+    // B is now the least recently used and makes room for C
+    connector.queryForForecast(testCaseC, new SoftwareResult());
+    assertEquals(2, connector.size());
+    assertEquals(1, connector.getEvictionCount());
+    connector.queryForForecast(testCaseB, new SoftwareResult());
+    assertEquals(4, countingConnector.queryCount);
+
+    assertTrue(connector.invalidate(testCaseB));
+    assertFalse(connector.invalidate(testCaseB));
+    connector.queryForForecast(testCaseB, new SoftwareResult());
+    assertEquals(5, countingConnector.queryCount);
+
+    // too old
+    connector.now += 1000;
+    connector.queryForForecast(testCaseB, new SoftwareResult());
+    assertEquals(6, countingConnector.queryCount);
+
+    connector.invalidateAll();
+    assertEquals(0, connector.size());
+    connector.queryForForecast(testCaseB, new SoftwareResult());
+    assertEquals(7, countingConnector.queryCount);
+    assertEquals(1, connector.getHitCount());
+    assertEquals(7, connector.getMissCount());
+  }
+
+  public void testProblemNotCached() throws Exception {
+    CachingConnector connector = new CachingConnector(countingConnector, software);
+    countingConnector.fail = true;
+    try {
+      connector.queryForForecast(createTestCase("A"), new SoftwareResult());
+      fail("Expected the failure to be passed on");
+    } catch (Exception e) {
+      assertEquals("Unable to get forecast results", e.getMessage());
+    }
+    assertEquals(0, connector.size());
+    countingConnector.fail = false;
+    connector.queryForForecast(createTestCase("A"), new SoftwareResult());
+    assertEquals(2, countingConnector.queryCount);
+  }
+
+  private static TestCase createTestCase(String testCaseNumber) {
+    TestCase testCase = new TestCase();
+    testCase.setTestCaseNumber(testCaseNumber);
+    testCase.setPatientDob(date(2018, Calendar.JULY, 2));
+    testCase.setPatientSex("F");
+    testCase.setEvalDate(date(2018, Calendar.SEPTEMBER, 6));
+    testCase.setTestEventList(new ArrayList<TestEvent>());
+    testCase.getTestEventList().add(createTestEvent(testCase, 1, "45", date(2018, Calendar.JULY, 2)));
+    testCase.getTestEventList().add(createTestEvent(testCase, 2, "20", date(2018, Calendar.SEPTEMBER, 2)));
+    return testCase;
+  }
+
+  private static TestEvent createTestEvent(TestCase testCase, int eventId, String cvx, Date eventDate) {
+    Event event = new Event();
+    event.setEventId(eventId);
+    event.setVaccineCvx(cvx);
+    TestEvent testEvent = new TestEvent();
+    testEvent.setTestCase(testCase);
+    testEvent.setEvent(event);
+    testEvent.setEventDate(eventDate);
+    return testEvent;
+  }
+
+  private static Date date(int year, int month, int day) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(year, month, day);
+    return calendar.getTime();
+  }
+}
@@ -0,0 +1,193 @@
+package org.immregistries.vfa.connect;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.immregistries.vfa.connect.model.ForecastActual;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.SoftwareResult;
+import org.immregistries.vfa.connect.model.SoftwareResultStatus;
+import org.immregistries.vfa.connect.model.TestCase;
+import org.immregistries.vfa.connect.model.TestEvent;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+import org.immregistries.vfa.connect.util.HL7Tokenizer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs many queries through one connector at the same time against a local fake IIS and checks
+ * that no query sees another query's patient.
+ */
+public class TestConnectorConcurrency extends junit.framework.TestCase {
+
+  private static final int THREADS = 16;
+  private static final int QUERIES_PER_THREAD = 8;
+
+  private static final String RSP_FORECAST = "QAK|1|OK|Z44^Request Evaluated History and Forecast^CDCPHINVS\r"
+      + "ORC|RE||999\r"
+      + "RXA|0|1|20180906||998^No Vaccination Administered^CVX\r"
+      + "OBX|1|CE|30956-7^Vaccine type^LN|1|45^HepB^CVX\r"
+      + "OBX|2|CE|59783-1^Status in series^LN|1|O^O^LSVF\r"
+      + "OBX|3|DT|30981-5^Earliest date^LN|1|20180702\r"
+      + "OBX|4|DT|30980-7^Recommended date^LN|1|20180702\r"
+      + "OBX|5|CE|30956-7^Vaccine type^LN|2|17^Hib^CVX\r"
+      + "OBX|6|CE|59783-1^Status in series^LN|2|D^D^LSVF\r"
+      + "OBX|7|DT|30981-5^Earliest date^LN|2|20180813\r"
+      + "OBX|8|DT|30980-7^Recommended date^LN|2|20180902\r";
+
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private Software software;
+  private final List<String> problemList = Collections.synchronizedList(new ArrayList<String>());
+  private final Set<String> vxuIdSet = Collections.synchronizedSet(new HashSet<String>());
+  private final Set<String> qbpIdSet = Collections.synchronizedSet(new HashSet<String>());
+
+  @Override
+  protected void setUp() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    serverExecutor = Executors.newFixedThreadPool(THREADS);
+    server.setExecutor(serverExecutor);
+    server.createContext("/iis", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        String request = new String(readAll(exchange.getRequestBody()), "UTF-8");
+        int start = request.indexOf("<hl7Message>") + "<hl7Message>".length();
+        String message = request.substring(start, request.indexOf("</hl7Message>")).replace("&amp;", "&");
+        String response = respond(message);
+        byte[] body = ("<Envelope><Body><submitSingleMessageResponse><return>"
+            + response.replace("&", "&amp;") + "</return></submitSingleMessageResponse></Body></Envelope>")
+                .getBytes("UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+      }
+    });
+    server.start();
+    software = new Software();
+    software.setServiceUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/iis");
+    software.setService(Service.IIS);
+    software.setServiceUserid("Mercy");
+    software.setServicePassword("password1234");
+    software.setServiceFacilityid("Mercy Healthcare");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    server.stop(0);
+    serverExecutor.shutdown();
+  }
+
+  /**
+   * The VXU and the QBP for one patient must agree on the id in MSH-10 and the patient id, a
+   * connector that kept the id on the instance would mix up ids between queries.
+   */
+  private String respond(String message) {
+    HL7Tokenizer segment = new HL7Tokenizer(message);
+    String messageId = "";
+    String patientId = "";
+    boolean vxu = false;
+    while (segment.nextSegment()) {
+      if (segment.isSegment("MSH")) {
+        messageId = segment.getField(9);
+        vxu = segment.getField(8).startsWith("VXU");
+      } else if (segment.isSegment("PID")) {
+        patientId = segment.getComponent(3, 1);
+      } else if (segment.isSegment("QPD")) {
+        patientId = segment.getComponent(3, 1);
+        if (!segment.getField(2).equals(messageId)) {
+          problemList.add("QPD-2 " + segment.getField(2) + " does not match MSH-10 " + messageId);
+        }
+      }
+    }
+    if (!messageId.equals(patientId)) {
+      problemList.add("Patient " + patientId + " sent in message " + messageId);
+    }
+    String msh = "MSH|^~\\&|IIS|IIS|||20180906123151-0600||";
+    if (vxu) {
+      vxuIdSet.add(patientId);
+      return msh + "ACK^V04^ACK|" + messageId + "|P|2.5.1\rMSA|AA|" + messageId + "\r";
+    }
+    qbpIdSet.add(patientId);
+    return msh + "RSP^K11^RSP_K11|" + messageId + "|P|2.5.1\rMSA|AA|" + messageId + "\r"
+        + RSP_FORECAST;
+  }
+
+  public void testIISConnectorShared() throws Exception {
+    final IISConnector connector = new IISConnector(software, VaccineGroup.getForecastItemList());
+    connector.setLogText(true);
+    ExecutorService callers = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<String>> futureList = new ArrayList<Future<String>>();
+      for (int t = 0; t < THREADS; t++) {
+        for (int q = 0; q < QUERIES_PER_THREAD; q++) {
+          final String testCaseNumber = "C" + t + "Q" + q;
+          futureList.add(callers.submit(new Callable<String>() {
+            public String call() throws Exception {
+              TestCase testCase = createTestCase(testCaseNumber);
+              SoftwareResult softwareResult = new SoftwareResult();
+              List<ForecastActual> forecastActualList =
+                  connector.queryForForecast(testCase, softwareResult);
+              if (forecastActualList.size() != 2) {
+                return testCaseNumber + " got " + forecastActualList.size() + " forecasts";
+              }
+              if (softwareResult.getSoftwareResultStatus() != SoftwareResultStatus.OK) {
+                return testCaseNumber + " status " + softwareResult.getSoftwareResultStatus();
+              }
+              if (!softwareResult.getLogText().contains("PID|1||" + testCaseNumber)) {
+                return testCaseNumber + " log does not show its own patient";
+              }
+              return null;
+            }
+          }));
+        }
+      }
+      for (Future<String> future : futureList) {
+        String problem = future.get();
+        if (problem != null) {
+          problemList.add(problem);
+        }
+      }
+    } finally {
+      callers.shutdown();
+    }
+    assertEquals(problemList.toString(), 0, problemList.size());
+    assertEquals(THREADS * QUERIES_PER_THREAD, vxuIdSet.size());
+    assertEquals(vxuIdSet, qbpIdSet);
+  }
+
+  private static TestCase createTestCase(String testCaseNumber) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(2018, Calendar.JULY, 2);
+    TestCase testCase = new TestCase();
+    testCase.setTestCaseNumber(testCaseNumber);
+    testCase.setPatientDob(calendar.getTime());
+    testCase.setPatientSex("F");
+    calendar.set(2018, Calendar.SEPTEMBER, 6);
+    testCase.setEvalDate(calendar.getTime());
+    testCase.setTestEventList(new ArrayList<TestEvent>());
+    return testCase;
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int count;
+    while ((count = in.read(buffer)) != -1) {
+      out.write(buffer, 0, count);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,153 @@
+package org.immregistries.vfa.connect;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.immregistries.vfa.connect.jfr.ConnectorEvents;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.ServiceOption;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.SoftwareResult;
+import org.immregistries.vfa.connect.model.SoftwareSetting;
+import org.immregistries.vfa.connect.model.TestCase;
+import org.immregistries.vfa.connect.model.TestEvent;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+
+public class TestConnectorEvents extends junit.framework.TestCase {
+
+  private ForecastSimulator simulator;
+  private Recording recording;
+
+  @Override
+  protected void setUp() throws Exception {
+    assertTrue(ConnectorEvents.isAvailable());
+    simulator = new ForecastSimulator();
+    simulator.start();
+    recording = new Recording();
+    recording.enable("org.immregistries.vfa.ForecastQuery");
+    recording.enable("org.immregistries.vfa.HL7Parse");
+    recording.enable("org.immregistries.vfa.VmrParse");
+    recording.enable("org.immregistries.vfa.IisRetryWait");
+    recording.start();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    recording.close();
+    simulator.stop();
+  }
+
+  public void testQueryAndParseEvents() throws Exception {
+    Software iis = simulator.createSoftware(Service.IIS);
+    iis.setSoftwareId(1);
+    query(iis);
+    Software ice = simulator.createSoftware(Service.ICE);
+    ice.setSoftwareId(2);
+    query(ice);
+    List<RecordedEvent> eventList = stop();
+
+    List<RecordedEvent> queryList = find(eventList, "org.immregistries.vfa.ForecastQuery");
+    assertEquals(2, queryList.size());
+    for (RecordedEvent event : queryList) {
+      assertEquals("E1", event.getString("testCaseNumber"));
+      assertTrue(event.getBoolean("success"));
+      assertTrue(event.getLong("bytesSent") > 0);
+      assertTrue(event.getLong("bytesReceived") > 0);
+    }
+
+    List<RecordedEvent> hl7List = find(eventList, "org.immregistries.vfa.HL7Parse");
+    assertEquals(1, hl7List.size());
+    RecordedEvent hl7 = hl7List.get(0);
+    // the engine is checked by software id, JDK 17 can drop a long string such as the service
+    // label from a recording when an earlier recording in the same JVM already wrote it
+    assertEquals(1, hl7.getInt("softwareId"));
+    assertTrue(hl7.getInt("segmentCount") > hl7.getInt("obxCount"));
+    assertTrue(hl7.getInt("obxCount") > 0);
+    assertTrue(hl7.getInt("forecastCount") > 0);
+
+    List<RecordedEvent> vmrList = find(eventList, "org.immregistries.vfa.VmrParse");
+    assertEquals(1, vmrList.size());
+    RecordedEvent vmr = vmrList.get(0);
+    assertEquals(2, vmr.getInt("softwareId"));
+    assertEquals(simulator.getCannedForecastList().size(), vmr.getInt("proposalCount"));
+    assertTrue(vmr.getLong("vmrLength") > 0);
+  }
+
+  public void testRetryWaitEvent() throws Exception {
+    simulator.setCannedForecastList(new ArrayList<ForecastSimulator.CannedForecast>());
+    Software software = simulator.createSoftware(Service.IIS);
+    List<SoftwareSetting> softwareSettingList = new ArrayList<SoftwareSetting>();
+    softwareSettingList.add(createSetting(RetryPolicy.OPTION_BASE_DELAY, "0.05"));
+    softwareSettingList.add(createSetting(RetryPolicy.OPTION_JITTER, "0"));
+    softwareSettingList.add(createSetting(RetryPolicy.OPTION_MAX_ATTEMPTS, "2"));
+    software.setSoftwareSettingList(softwareSettingList);
+    query(software);
+    List<RecordedEvent> eventList = stop();
+
+    List<RecordedEvent> retryList = find(eventList, "org.immregistries.vfa.IisRetryWait");
+    assertEquals(1, retryList.size());
+    RecordedEvent retry = retryList.get(0);
+    assertEquals(2, retry.getInt("attempt"));
+    assertEquals(50, retry.getLong("delay"));
+    assertTrue(retry.getDuration().toMillis() >= 50);
+    assertEquals(2, find(eventList, "org.immregistries.vfa.HL7Parse").size());
+  }
+
+  private List<RecordedEvent> stop() throws Exception {
+    recording.stop();
+    File file = File.createTempFile("connector-events", ".jfr");
+    try {
+      recording.dump(file.toPath());
+      return RecordingFile.readAllEvents(file.toPath());
+    } finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Events of this test only, queries left running by other tests may be recorded as well.
+   */
+  private static List<RecordedEvent> find(List<RecordedEvent> eventList, String name) {
+    List<RecordedEvent> list = new ArrayList<RecordedEvent>();
+    for (RecordedEvent event : eventList) {
+      if (event.getEventType().getName().equals(name)
+          && "E1".equals(event.getString("testCaseNumber"))) {
+        list.add(event);
+      }
+    }
+    return list;
+  }
+
+  private static void query(Software software) throws Exception {
+    ConnectorInterface connector =
+        ConnectFactory.createConnecter(software, VaccineGroup.getForecastItemList());
+    connector.queryForForecast(createTestCase(), new SoftwareResult());
+  }
+
+  private static SoftwareSetting createSetting(String optionName, String optionValue) {
+    ServiceOption serviceOption = new ServiceOption();
+    serviceOption.setOptionName(optionName);
+    SoftwareSetting softwareSetting = new SoftwareSetting();
+    softwareSetting.setServiceOption(serviceOption);
+    softwareSetting.setOptionValue(optionValue);
+    return softwareSetting;
+  }
+
+  private static TestCase createTestCase() {
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(2018, Calendar.JULY, 2);
+    TestCase testCase = new TestCase();
+    testCase.setTestCaseNumber("E1");
+    testCase.setPatientDob(calendar.getTime());
+    testCase.setPatientSex("F");
+    calendar.set(2018, Calendar.SEPTEMBER, 6);
+    testCase.setEvalDate(calendar.getTime());
+    testCase.setTestEventList(new ArrayList<TestEvent>());
+    return testCase;
+  }
+}
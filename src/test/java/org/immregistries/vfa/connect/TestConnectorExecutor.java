@@ -0,0 +1,207 @@
+package org.immregistries.vfa.connect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.immregistries.vfa.connect.model.ForecastActual;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.SoftwareResult;
+import org.immregistries.vfa.connect.model.TestCase;
+
+public class TestConnectorExecutor extends junit.framework.TestCase {
+
+  @Override
+  protected void tearDown() throws Exception {
+    ConnectorExecutor.setVirtualThreads(false);
+    ConnectorExecutor.setMaxConcurrency(Service.LSVF, 0);
+    ConnectorExecutor.setBlockingThreads(ConnectorExecutor.DEFAULT_BLOCKING_THREADS);
+  }
+
+  public void testQueuedTasksHoldNoThread() throws Exception {
+    ConnectorExecutor.setBlockingThreads(2);
+    ConnectorExecutor.setMaxConcurrency(Service.LSVF, 1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    List<CompletableFuture<Integer>> futureList = new ArrayList<CompletableFuture<Integer>>();
+    for (int i = 0; i < 6; i++) {
+      futureList.add(ConnectorExecutor.supply(Service.LSVF, () -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        release.await(10, TimeUnit.SECONDS);
+        running.decrementAndGet();
+        return 1;
+      }));
+    }
+    // the LSVF tasks waiting for their turn leave the second thread free for other services
+    assertTrue(ConnectorExecutor.supply(Service.SWP, () -> true).get(5, TimeUnit.SECONDS));
+    release.countDown();
+    assertEquals(6, ConnectorExecutor.awaitAll(futureList).size());
+    assertEquals(1, maxRunning.get());
+  }
+
+  public void testBlockingThreads() throws Exception {
+    // many more blocking tasks than processors are waiting at the same time
+    int tasks = Math.max(2, Runtime.getRuntime().availableProcessors()) * 4;
+    final CountDownLatch allStarted = new CountDownLatch(tasks);
+    List<CompletableFuture<String>> futureList = new ArrayList<CompletableFuture<String>>();
+    for (int i = 0; i < tasks; i++) {
+      futureList.add(ConnectorExecutor.supply(Service.SWP, () -> {
+        allStarted.countDown();
+        assertTrue(allStarted.await(10, TimeUnit.SECONDS));
+        return Thread.currentThread().getName();
+      }));
+    }
+    for (String threadName : ConnectorExecutor.awaitAll(futureList)) {
+      assertTrue(threadName, threadName.startsWith("forecast-connector-io-"));
+    }
+
+    ConnectorExecutor.setBlockingThreads(1);
+    assertEquals(1, ConnectorExecutor.getBlockingThreads());
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    futureList.clear();
+    for (int i = 0; i < 4; i++) {
+      futureList.add(ConnectorExecutor.supplyBlocking(() -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        Thread.sleep(20);
+        running.decrementAndGet();
+        return "";
+      }));
+    }
+    ConnectorExecutor.awaitAll(futureList);
+    assertEquals(1, maxRunning.get());
+  }
+
+  public void testDefaultAsync() throws Exception {
+    final List<ForecastActual> forecastActualList = new ArrayList<ForecastActual>();
+    ConnectorInterface connector = new ConnectorInterface() {
+      public List<ForecastActual> queryForForecast(TestCase testCase,
+          SoftwareResult softwareResult) throws Exception {
+        if (testCase == null) {
+          throw new IllegalStateException("No test case");
+        }
+        return forecastActualList;
+      }
+
+      public void setLogText(boolean logText) {
+        // not logged
+      }
+
+      public boolean isLogText() {
+        return false;
+      }
+    };
+    assertSame(forecastActualList,
+        ConnectorExecutor.await(connector.queryForForecastAsync(new TestCase(), new SoftwareResult())));
+    try {
+      ConnectorExecutor.await(connector.queryForForecastAsync(null, new SoftwareResult()));
+      fail("Expected the query to fail");
+    } catch (IllegalStateException ise) {
+      // expected
+    }
+  }
+
+  public void testSyncOnlyWrapper() throws Exception {
+    ConnectorExecutor.setBlockingThreads(2);
+    final ConnectorInterface inner = new ConnectorInterface() {
+      public List<ForecastActual> queryForForecast(TestCase testCase,
+          SoftwareResult softwareResult) throws Exception {
+        return ConnectorExecutor.await(queryForForecastAsync(testCase, softwareResult));
+      }
+
+      public CompletableFuture<List<ForecastActual>> queryForForecastAsync(TestCase testCase,
+          SoftwareResult softwareResult) {
+        return ConnectorExecutor.supply(Service.LSVF, () -> {
+          Thread.sleep(20);
+          return new ArrayList<ForecastActual>();
+        });
+      }
+
+      public void setLogText(boolean logText) {
+        // not logged
+      }
+
+      public boolean isLogText() {
+        return false;
+      }
+    };
+    // only has the blocking query, so the async one waits on a blocking thread for the inner query
+    ConnectorInterface wrapper = new ConnectorInterface() {
+      public List<ForecastActual> queryForForecast(TestCase testCase,
+          SoftwareResult softwareResult) throws Exception {
+        return inner.queryForForecast(testCase, softwareResult);
+      }
+
+      public void setLogText(boolean logText) {
+        // not logged
+      }
+
+      public boolean isLogText() {
+        return false;
+      }
+    };
+    List<CompletableFuture<List<ForecastActual>>> futureList =
+        new ArrayList<CompletableFuture<List<ForecastActual>>>();
+    for (int i = 0; i < 8; i++) {
+      futureList.add(wrapper.queryForForecastAsync(new TestCase(), new SoftwareResult()));
+    }
+    // every blocking thread waits on an inner query, which still has to get a thread
+    CompletableFuture.allOf(futureList.toArray(new CompletableFuture<?>[0])).get(10,
+        TimeUnit.SECONDS);
+  }
+
+  public void testMaxConcurrency() throws Exception {
+    ConnectorExecutor.setMaxConcurrency(Service.LSVF, 2);
+    assertEquals(2, ConnectorExecutor.getMaxConcurrency(Service.LSVF));
+    assertEquals(0, ConnectorExecutor.getMaxConcurrency(Service.SWP));
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    List<CompletableFuture<Integer>> futureList = new ArrayList<CompletableFuture<Integer>>();
+    for (int i = 0; i < 12; i++) {
+      futureList.add(ConnectorExecutor.supply(Service.LSVF, () -> {
+        int now = running.incrementAndGet();
+        maxRunning.accumulateAndGet(now, Math::max);
+        Thread.sleep(20);
+        running.decrementAndGet();
+        return now;
+      }));
+    }
+    assertEquals(12, ConnectorExecutor.awaitAll(futureList).size());
+    assertTrue(maxRunning.get() <= 2);
+  }
+
+  public void testVirtualThreads() throws Exception {
+    if (!ConnectorExecutor.setVirtualThreads(true)) {
+      // before Java 21 the blocking tasks stay on the blocking thread pool
+      assertFalse(ConnectorExecutor.isVirtualThreads());
+      return;
+    }
+    assertTrue(ConnectorExecutor.isVirtualThreads());
+    assertTrue(ConnectorExecutor.await(ConnectorExecutor.supply(Service.SWP,
+        () -> (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()))));
+    // far more blocking tasks than the shared executor has threads wait at the same time
+    long start = System.currentTimeMillis();
+    List<CompletableFuture<Boolean>> futureList = new ArrayList<CompletableFuture<Boolean>>();
+    for (int i = 0; i < 2000; i++) {
+      futureList.add(ConnectorExecutor.supply(Service.SWP, () -> {
+        Thread.sleep(500);
+        return true;
+      }));
+    }
+    assertEquals(2000, ConnectorExecutor.awaitAll(futureList).size());
+    assertTrue(System.currentTimeMillis() - start < 5000);
+
+    // delayed tasks are handed to a virtual thread when they are due
+    assertTrue(ConnectorExecutor.await(ConnectorExecutor.schedule(Service.SWP,
+        () -> (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()), 10,
+        TimeUnit.MILLISECONDS)));
+
+    ConnectorExecutor.setVirtualThreads(false);
+    assertFalse(ConnectorExecutor.isVirtualThreads());
+    assertFalse(ConnectorExecutor.await(ConnectorExecutor.supply(Service.SWP,
+        () -> (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()))));
+  }
+}
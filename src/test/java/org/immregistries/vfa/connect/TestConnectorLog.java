@@ -0,0 +1,64 @@
+package org.immregistries.vfa.connect;
+
+import java.io.PrintWriter;
+import org.immregistries.vfa.connect.model.SoftwareResult;
+
+public class TestConnectorLog extends junit.framework.TestCase {
+
+  public void testDisabled() {
+    ConnectorLog log = ConnectorLog.create(false);
+    assertSame(log, ConnectorLog.create(false));
+    assertFalse(log.isEnabled());
+    assertNull(log.getWriter());
+    assertNull(log.getText());
+    SoftwareResult softwareResult = new SoftwareResult();
+    log.finish(softwareResult);
+    assertNull(softwareResult.getLogText());
+  }
+
+  public void testUnderLimit() {
+    ConnectorLog log = new ConnectorLog(100);
+    assertTrue(log.isEnabled());
+    log.getWriter().println("first");
+    log.getWriter().println("second");
+    log.getWriter().print("third");
+    assertEquals("first" + nl() + "second" + nl() + "third", log.getText());
+    SoftwareResult softwareResult = new SoftwareResult();
+    log.finish(softwareResult);
+    assertEquals(log.getText(), softwareResult.getLogText());
+  }
+
+  public void testKeepsStartAndEnd() {
+    ConnectorLog log = new ConnectorLog(20);
+    PrintWriter out = log.getWriter();
+    out.print("0123456789");
+    for (int i = 0; i < 100; i++) {
+      out.print('x');
+    }
+    out.print("abcdefghij");
+    String text = log.getText();
+    assertTrue(text, text.startsWith("0123456789\n"));
+    assertTrue(text, text.endsWith("\nabcdefghij"));
+    assertTrue(text, text.contains("[... 100 characters left out ...]"));
+
+    // one write larger than the whole limit
+    log = new ConnectorLog(8);
+    log.getWriter().print("abcdefghijklmnopqrstuvwxyz");
+    assertEquals("abcd\n[... 18 characters left out ...]\nwxyz", log.getText());
+  }
+
+  public void testRingWraps() {
+    ConnectorLog log = new ConnectorLog(8);
+    PrintWriter out = log.getWriter();
+    out.print("abcd");
+    out.print("ef");
+    out.print("ghi");
+    assertEquals("abcd\n[... 1 characters left out ...]\nfghi", log.getText());
+    out.print("jk");
+    assertEquals("abcd\n[... 3 characters left out ...]\nhijk", log.getText());
+  }
+
+  private static String nl() {
+    return System.getProperty("line.separator");
+  }
+}
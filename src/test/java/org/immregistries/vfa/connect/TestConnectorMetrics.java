@@ -0,0 +1,124 @@
+package org.immregistries.vfa.connect;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import org.immregistries.vfa.connect.ConnectorMetricsListener.Phase;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.SoftwareResult;
+import org.immregistries.vfa.connect.model.TestCase;
+import org.immregistries.vfa.connect.model.TestEvent;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+
+public class TestConnectorMetrics extends junit.framework.TestCase {
+
+  private ForecastSimulator simulator;
+  private HistogramMetricsListener listener;
+  private ConnectorMetricsListener brokenListener;
+
+  @Override
+  protected void setUp() throws Exception {
+    simulator = new ForecastSimulator();
+    simulator.start();
+    listener = new HistogramMetricsListener();
+    brokenListener = new ConnectorMetricsListener() {
+      public void phaseTimed(Service service, Software software, Phase phase, long nanos) {
+        throw new IllegalStateException("broken listener");
+      }
+
+      public void queryFinished(Service service, Software software, long nanos, boolean success) {
+        throw new IllegalStateException("broken listener");
+      }
+    };
+    ConnectFactory.addMetricsListener(brokenListener);
+    ConnectFactory.addMetricsListener(listener);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    ConnectFactory.removeMetricsListener(listener);
+    ConnectFactory.removeMetricsListener(brokenListener);
+    simulator.stop();
+  }
+
+  public void testPhases() throws Exception {
+    simulator.setLatency(ForecastSimulator.fixedLatency(100));
+    Software software = simulator.createSoftware(Service.SWP);
+    query(software);
+    query(software);
+
+    HistogramMetricsListener.EngineMetrics engineMetrics =
+        listener.getEngineMetrics(Service.SWP, software);
+    assertEquals(2, engineMetrics.getTotal().getCount());
+    assertEquals(0, engineMetrics.getFailureCount());
+    for (Phase phase : new Phase[] {Phase.BUILD_REQUEST, Phase.CONNECT, Phase.SEND,
+        Phase.FIRST_BYTE, Phase.RECEIVE, Phase.PARSE}) {
+      assertEquals(phase.name(), 2, engineMetrics.getHistogram(phase).getCount());
+    }
+    assertEquals(0, engineMetrics.getHistogram(Phase.EXCHANGE).getCount());
+    // the simulated latency is spent waiting for the response
+    assertTrue(engineMetrics.getHistogram(Phase.FIRST_BYTE).getPercentile(50) >= 100 * 1000000L);
+    assertTrue(engineMetrics.getTotal().getPercentile(50) >= 100 * 1000000L);
+
+    String report = listener.getReport();
+    assertTrue(report, report.contains("FIRST_BYTE"));
+    assertFalse(report, report.contains("EXCHANGE"));
+  }
+
+  public void testIIS() throws Exception {
+    Software software = simulator.createSoftware(Service.IIS);
+    query(software);
+
+    HistogramMetricsListener.EngineMetrics engineMetrics =
+        listener.getEngineMetrics(Service.IIS, software);
+    assertEquals(1, engineMetrics.getTotal().getCount());
+    // VXU then QBP
+    assertEquals(2, engineMetrics.getHistogram(Phase.BUILD_REQUEST).getCount());
+    assertEquals(2, engineMetrics.getHistogram(Phase.FIRST_BYTE).getCount());
+    assertEquals(1, engineMetrics.getHistogram(Phase.PARSE).getCount());
+    assertEquals(0, engineMetrics.getHistogram(Phase.RETRY_WAIT).getCount());
+  }
+
+  public void testFailure() throws Exception {
+    simulator.setErrorRate(1);
+    Software software = simulator.createSoftware(Service.LSVF);
+    try {
+      query(software);
+      fail("Expected the simulated error to fail the query");
+    } catch (Exception e) {
+      assertEquals("Unable to get forecast results", e.getMessage());
+    }
+    HistogramMetricsListener.EngineMetrics engineMetrics =
+        listener.getEngineMetrics(Service.LSVF, software);
+    assertEquals(1, engineMetrics.getTotal().getCount());
+    assertEquals(1, engineMetrics.getFailureCount());
+    assertEquals(0, engineMetrics.getHistogram(Phase.PARSE).getCount());
+  }
+
+  public void testNoListener() throws Exception {
+    ConnectFactory.removeMetricsListener(listener);
+    ConnectFactory.removeMetricsListener(brokenListener);
+    assertFalse(QueryMetrics.start(simulator.createSoftware(Service.LSVF), null).isEnabled());
+    assertFalse(QueryMetrics.current().isEnabled());
+  }
+
+  private static void query(Software software) throws Exception {
+    ConnectorInterface connector =
+        ConnectFactory.createConnecter(software, VaccineGroup.getForecastItemList());
+    connector.queryForForecast(createTestCase(), new SoftwareResult());
+  }
+
+  private static TestCase createTestCase() {
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(2018, Calendar.JULY, 2);
+    TestCase testCase = new TestCase();
+    testCase.setTestCaseNumber("M1");
+    testCase.setPatientDob(calendar.getTime());
+    testCase.setPatientSex("F");
+    calendar.set(2018, Calendar.SEPTEMBER, 6);
+    testCase.setEvalDate(calendar.getTime());
+    testCase.setTestEventList(new ArrayList<TestEvent>());
+    return testCase;
+  }
+}
@@ -0,0 +1,122 @@
+package org.immregistries.vfa.connect;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import org.immregistries.vfa.connect.model.Event;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.SoftwareResultStatus;
+import org.immregistries.vfa.connect.model.TestCase;
+import org.immregistries.vfa.connect.model.TestEvent;
+
+public class TestForecastFanOut extends junit.framework.TestCase {
+
+  private ForecastSimulator fastSimulator;
+  private ForecastSimulator slowSimulator;
+
+  @Override
+  protected void setUp() throws Exception {
+    fastSimulator = new ForecastSimulator();
+    fastSimulator.setLatency(ForecastSimulator.fixedLatency(300));
+    fastSimulator.start();
+    slowSimulator = new ForecastSimulator();
+    slowSimulator.setLatency(ForecastSimulator.fixedLatency(5000));
+    slowSimulator.start();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    fastSimulator.stop();
+    slowSimulator.stop();
+  }
+
+  public void testFanOut() throws Exception {
+    Software lsvf = fastSimulator.createSoftware(Service.LSVF);
+    Software swp = fastSimulator.createSoftware(Service.SWP);
+    Software ice = fastSimulator.createSoftware(Service.ICE);
+    Software synthetic = new Software();
+    synthetic.setService(Service.SYNTHETIC);
+    Software slow = slowSimulator.createSoftware(Service.LSVF);
+    Software web1 = new Software();
+    web1.setService(Service.WEB1);
+    List<Software> softwareList = new ArrayList<Software>();
+    softwareList.add(lsvf);
+    softwareList.add(swp);
+    softwareList.add(ice);
+    softwareList.add(synthetic);
+    softwareList.add(slow);
+    softwareList.add(web1);
+
+    ForecastFanOut fanOut = new ForecastFanOut();
+    fanOut.setDeadlineMillis(slow, 1000);
+    TestCase testCase = createTestCase();
+    ForecastFanOut.Result result = fanOut.run(testCase, softwareList);
+
+    // the engines ran side by side, not one after the other
+    assertTrue(result.getElapsedMillis() < 3000);
+    assertFalse(result.isComplete());
+    assertEquals(6, result.getEngineResultList().size());
+    assertSame(lsvf, result.getEngineResultList().get(0).getSoftware());
+    assertEquals(ForecastFanOut.Status.OK, result.getEngineResult(lsvf).getStatus());
+    assertEquals(ForecastFanOut.Status.OK, result.getEngineResult(swp).getStatus());
+    assertEquals(ForecastFanOut.Status.OK, result.getEngineResult(ice).getStatus());
+    assertEquals(ForecastFanOut.Status.OK, result.getEngineResult(synthetic).getStatus());
+    assertFalse(result.getForecastActualList(lsvf).isEmpty());
+    assertFalse(result.getForecastActualList(synthetic).isEmpty());
+
+    ForecastFanOut.EngineResult timedOut = result.getEngineResult(slow);
+    assertEquals(ForecastFanOut.Status.TIMED_OUT, timedOut.getStatus());
+    assertTrue(timedOut.getForecastActualList().isEmpty());
+    assertTrue(timedOut.getElapsedMillis() >= 1000);
+    assertEquals(1, result.getEngineResultList(ForecastFanOut.Status.TIMED_OUT).size());
+    // the engine is left to finish on objects the result doesn't share
+    assertEquals(SoftwareResultStatus.PROBLEM,
+        timedOut.getSoftwareResult().getSoftwareResultStatus());
+    assertSame(timedOut.getTestCase(), timedOut.getSoftwareResult().getTestCase());
+    assertNotSame(testCase, timedOut.getTestCase());
+
+    assertEquals(ForecastFanOut.Status.FAILED, result.getEngineResult(web1).getStatus());
+    assertNotNull(result.getEngineResult(web1).getFailure());
+
+    // each engine evaluated its own copy of the history
+    TestEvent syntheticEvent = result.getEngineResult(synthetic).getTestCase().getTestEventList().get(0);
+    assertEquals(1, syntheticEvent.getEvaluationActualList().size());
+    assertNull(testCase.getTestEventList().get(0).getEvaluationActualList());
+  }
+
+  public void testMoreEnginesThanThreads() throws Exception {
+    // every deadline fires on time even with far more slow engines than processors
+    List<Software> softwareList = new ArrayList<Software>();
+    ForecastFanOut fanOut = new ForecastFanOut();
+    fanOut.setDefaultDeadlineMillis(1000);
+    int engines = Math.max(2, Runtime.getRuntime().availableProcessors()) * 3;
+    for (int i = 0; i < engines; i++) {
+      softwareList.add(slowSimulator.createSoftware(Service.LSVF));
+    }
+    ForecastFanOut.Result result = fanOut.run(createTestCase(), softwareList);
+    assertEquals(engines, result.getEngineResultList(ForecastFanOut.Status.TIMED_OUT).size());
+    assertTrue(result.getElapsedMillis() < 3000);
+  }
+
+  private static TestCase createTestCase() {
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(2018, Calendar.JANUARY, 2);
+    TestCase testCase = new TestCase();
+    testCase.setTestCaseNumber("F1");
+    testCase.setPatientDob(calendar.getTime());
+    testCase.setPatientSex("F");
+    List<TestEvent> testEventList = new ArrayList<TestEvent>();
+    calendar.set(2018, Calendar.MARCH, 2);
+    TestEvent testEvent = new TestEvent();
+    // Hep B, adolescent or pediatric
+    testEvent.setEvent(Event.getEvent(8));
+    testEvent.setEventDate(calendar.getTime());
+    testEventList.add(testEvent);
+    testCase.setTestEventList(testEventList);
+    calendar.set(2018, Calendar.SEPTEMBER, 6);
+    testCase.setEvalDate(calendar.getTime());
+    return testCase;
+  }
+}
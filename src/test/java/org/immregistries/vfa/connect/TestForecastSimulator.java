@@ -0,0 +1,120 @@
+package org.immregistries.vfa.connect;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import org.immregistries.vfa.connect.model.ForecastActual;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.SoftwareResult;
+import org.immregistries.vfa.connect.model.TestCase;
+import org.immregistries.vfa.connect.model.TestEvent;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+
+public class TestForecastSimulator extends junit.framework.TestCase {
+
+  private ForecastSimulator simulator;
+
+  @Override
+  protected void setUp() throws Exception {
+    simulator = new ForecastSimulator();
+    simulator.start();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    simulator.stop();
+  }
+
+  public void testIIS() throws Exception {
+    assertForecasts(Service.IIS);
+    // VXU then QBP
+    assertEquals(2, simulator.getRequestCount());
+  }
+
+  public void testICE() throws Exception {
+    assertForecasts(Service.ICE);
+  }
+
+  public void testSWP() throws Exception {
+    assertForecasts(Service.SWP);
+  }
+
+  public void testLSVF() throws Exception {
+    assertForecasts(Service.LSVF);
+  }
+
+  public void testMesVaccins() throws Exception {
+    List<ForecastActual> forecastActualList = query(Service.MES_VACCINE);
+    assertTrue(forecastActualList.size() > 0);
+    assertNotNull(find(forecastActualList, VaccineGroup.ID_HEPB));
+  }
+
+  public void testErrorAndDrop() throws Exception {
+    simulator.setErrorRate(1);
+    try {
+      query(Service.SWP);
+      fail("Expected the simulated error to fail the query");
+    } catch (Exception e) {
+      assertEquals("Unable to get forecast results", e.getMessage());
+    }
+    assertEquals(1, simulator.getErrorCount());
+
+    simulator.setErrorRate(0);
+    simulator.setDropRate(1);
+    try {
+      query(Service.SWP);
+      fail("Expected the dropped connection to fail the query");
+    } catch (Exception e) {
+      assertEquals("Unable to get forecast results", e.getMessage());
+    }
+    assertTrue(simulator.getDropCount() > 0);
+  }
+
+  public void testLatency() throws Exception {
+    simulator.setLatency(ForecastSimulator.fixedLatency(200));
+    long start = System.currentTimeMillis();
+    query(Service.LSVF);
+    assertTrue(System.currentTimeMillis() - start >= 200);
+  }
+
+  private void assertForecasts(Service service) throws Exception {
+    List<ForecastActual> forecastActualList = query(service);
+    ForecastActual hepB = find(forecastActualList, VaccineGroup.ID_HEPB);
+    assertNotNull(service + " did not return HepB", hepB);
+    ForecastSimulator.CannedForecast canned = simulator.getCannedForecastList().get(0);
+    assertEquals(canned.getDueDate(), hepB.getDueDate());
+    assertEquals(canned.getValidDate(), hepB.getValidDate());
+  }
+
+  private List<ForecastActual> query(Service service) throws Exception {
+    Software software = simulator.createSoftware(service);
+    ConnectorInterface connector =
+        ConnectFactory.createConnecter(software, VaccineGroup.getForecastItemList());
+    return connector.queryForForecast(createTestCase(), new SoftwareResult());
+  }
+
+  private static ForecastActual find(List<ForecastActual> forecastActualList, int vaccineGroupId) {
+    for (ForecastActual forecastActual : forecastActualList) {
+      if (forecastActual.getVaccineGroup() != null
+          && forecastActual.getVaccineGroup().getVaccineGroupId() == vaccineGroupId) {
+        return forecastActual;
+      }
+    }
+    return null;
+  }
+
+  private static TestCase createTestCase() {
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(2018, Calendar.JULY, 2);
+    TestCase testCase = new TestCase();
+    testCase.setTestCaseNumber("S1");
+    testCase.setPatientDob(calendar.getTime());
+    testCase.setPatientSex("F");
+    calendar.set(2018, Calendar.SEPTEMBER, 6);
+    testCase.setEvalDate(calendar.getTime());
+    testCase.setTestEventList(new ArrayList<TestEvent>());
+    return testCase;
+  }
+}
@@ -0,0 +1,176 @@
+package org.immregistries.vfa.connect;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestHttpTransport extends junit.framework.TestCase {
+
+  private HttpServer server;
+  private String baseUrl;
+
+  @Override
+  protected void setUp() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/echo", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        byte[] body = readAll(exchange.getRequestBody());
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+      }
+    });
+    server.createContext("/error", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        byte[] body = "not here".getBytes("UTF-8");
+        exchange.sendResponseHeaders(404, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+      }
+    });
+    server.createContext("/slow", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        try {
+          Thread.sleep(2000);
+        } catch (InterruptedException ie) {
+          // ignore
+        }
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+      }
+    });
+    server.createContext("/port", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        readAll(exchange.getRequestBody());
+        byte[] body =
+            String.valueOf(exchange.getRemoteAddress().getPort()).getBytes("UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+      }
+    });
+    server.start();
+    baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    server.stop(0);
+  }
+
+  public void testPost() throws Exception {
+    HttpTransport transport = HttpTransport.getTransport(baseUrl + "/echo");
+    assertSame(transport, HttpTransport.getTransport(baseUrl + "/other"));
+    for (int i = 0; i < 3; i++) {
+      HttpTransport.Response response = transport.post(baseUrl + "/echo",
+          HttpTransport.headers(HttpTransport.CONTENT_TYPE, "text/plain"), "MSH|^~\\&|caf\u00e9 " + i);
+      assertEquals(200, response.getStatus());
+      assertEquals("MSH|^~\\&|caf\u00e9 " + i, response.getBody());
+    }
+  }
+
+  public void testConnectionReused() throws Exception {
+    HttpTransport transport = HttpTransport.getTransport(baseUrl);
+    String port = transport.get(baseUrl + "/port", null).getBody();
+    for (int i = 0; i < 5; i++) {
+      assertEquals(port, transport.get(baseUrl + "/port", null).getBody());
+      assertEquals(port, transport.post(baseUrl + "/port", null, "request " + i).getBody());
+    }
+  }
+
+  public void testLowerMaxConnectionsWhileBusy() throws Exception {
+    final HttpTransport transport = HttpTransport.getTransport(baseUrl);
+    transport.setMaxConnections(1);
+    Thread busy = new Thread() {
+      public void run() {
+        try {
+          transport.get(baseUrl + "/slow", null);
+        } catch (IOException ioe) {
+          // only here to hold the connection
+        }
+      }
+    };
+    busy.start();
+    Thread.sleep(200);
+    long start = System.currentTimeMillis();
+    transport.setMaxConnections(0);
+    assertTrue(System.currentTimeMillis() - start < 1000);
+    assertTrue(busy.isAlive());
+    transport.setMaxConnections(1);
+    busy.join();
+    // the connection released by the slow request is the one allowed again
+    assertEquals("ok", transport.post(baseUrl + "/echo", null, "ok").getBody());
+  }
+
+  public void testPostStreaming() throws Exception {
+    HttpTransport transport = HttpTransport.getTransport(baseUrl);
+    String echo = transport.post(baseUrl + "/echo", null, new HttpTransport.RequestWriter() {
+      public void write(OutputStream out) throws Exception {
+        for (int i = 0; i < 1000; i++) {
+          out.write(("line " + i + "\n").getBytes("UTF-8"));
+        }
+      }
+    }, new HttpTransport.ResponseReader<String>() {
+      public String read(InputStream in) throws Exception {
+        return new String(readAll(in), "UTF-8");
+      }
+    });
+    assertTrue(echo.startsWith("line 0\nline 1\n"));
+    assertTrue(echo.endsWith("line 999\n"));
+    try {
+      transport.post(baseUrl + "/error", null, new HttpTransport.RequestWriter() {
+        public void write(OutputStream out) throws Exception {
+          out.write('x');
+        }
+      }, new HttpTransport.ResponseReader<String>() {
+        public String read(InputStream in) throws Exception {
+          return "not expected";
+        }
+      });
+      fail("Expected exception for 404");
+    } catch (IOException ioe) {
+      // expected
+    }
+  }
+
+  public void testErrorStatus() throws Exception {
+    HttpTransport.Response response =
+        HttpTransport.getTransport(baseUrl).get(baseUrl + "/error", null);
+    assertFalse(response.isOk());
+    assertEquals("not here", response.getBody());
+    try {
+      response.checkStatus();
+      fail("Expected exception for 404");
+    } catch (IOException ioe) {
+      // expected
+    }
+  }
+
+  public void testReadTimeout() throws Exception {
+    HttpTransport transport = HttpTransport.getTransport(baseUrl);
+    transport.setReadTimeout(200);
+    try {
+      transport.get(baseUrl + "/slow", null);
+      fail("Expected read timeout");
+    } catch (SocketTimeoutException ste) {
+      // expected
+    }
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int count;
+    while ((count = in.read(buffer)) != -1) {
+      out.write(buffer, 0, count);
+    }
+    return out.toByteArray();
+  }
+}
@@ -7,6 +7,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
 import org.immregistries.vfa.connect.ICEConnector;
+import org.immregistries.vfa.connect.model.EvaluationActual;
 import org.immregistries.vfa.connect.model.Event;
 import org.immregistries.vfa.connect.model.ForecastActual;
 import org.immregistries.vfa.connect.model.Software;
@@ -70,6 +71,33 @@ public class TestICEConnector extends junit.framework.TestCase
     SoftwareResult softwareResult = new SoftwareResult();
     List<ForecastActual> forecastActualList = iceConnector.readVMR(exampleReturn, softwareResult);
     assertEquals(9, forecastActualList.size());
+    for (ForecastActual forecastActual : forecastActualList) {
+      assertTrue(forecastActual.getExplanationHtml().startsWith("<pre>"));
+    }
+  }
+
+  public void testReadVMREvaluation() throws Exception {
+    SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
+    TestCase testCase = createTestCase(sdf);
+    Software software = new Software();
+    ICEConnector iceConnector = new ICEConnector(software, VaccineGroup.getForecastItemList());
+    SoftwareResult softwareResult = new SoftwareResult();
+    List<ForecastActual> forecastActualList = iceConnector.readVMR(
+        new InputStreamReader(this.getClass().getResourceAsStream("exampleReturn.xml"), "UTF-8"), testCase,
+        softwareResult);
+    assertEquals(9, forecastActualList.size());
+    String[] doseValid = { "Y", "N", "Y", "N" };
+    for (int i = 0; i < doseValid.length; i++) {
+      TestEvent testEvent = testCase.getTestEventList().get(i);
+      assertNotNull(testEvent.getEvaluationActualList());
+      assertEquals(1, testEvent.getEvaluationActualList().size());
+      assertEquals(doseValid[i], testEvent.getEvaluationActualList().get(0).getDoseValid());
+    }
+    EvaluationActual evaluationActual = testCase.getTestEventList().get(1).getEvaluationActualList().get(0);
+    assertEquals("2", evaluationActual.getDoseNumber());
+    assertEquals("45", evaluationActual.getVaccineCvx());
+    assertEquals("BELOW_MINIMUM_INTERVAL", evaluationActual.getReasonCode());
+    assertEquals(VaccineGroup.ID_HEPB, evaluationActual.getVaccineGroup().getVaccineGroupId());
   }
 
   private static final String EXAMPLE = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
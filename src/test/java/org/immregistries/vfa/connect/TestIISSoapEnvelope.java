@@ -0,0 +1,78 @@
+package org.immregistries.vfa.connect;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+public class TestIISSoapEnvelope extends junit.framework.TestCase {
+
+  private static final String MSH =
+      "MSH|^~\\&|IIS|||||20240101||RSP^K11^RSP_K11|1|P|2.5.1|\rPID|1||123^^^IIS^SR|\r";
+
+  public void testWrite() throws IOException {
+    IISSoapEnvelope envelope = new IISSoapEnvelope("user", "p&ss<word>", null);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    envelope.write("MSH|^~\\&|A<B>|\rPID|1|\r", out);
+    String body = new String(out.toByteArray(), "UTF-8");
+    assertTrue(body.startsWith("<?xml version='1.0' encoding='UTF-8'?>\n"));
+    assertTrue(body.contains("<username>user</username>"));
+    assertTrue(body.contains("<password>p&amp;ss&lt;word&gt;</password>"));
+    assertTrue(body.contains("<facilityID>null</facilityID>"));
+    assertTrue(body.contains("<hl7Message>MSH|^~\\&amp;|A&lt;B&gt;|\rPID|1|\r</hl7Message>\n"));
+    assertTrue(body.endsWith("</Envelope>\n"));
+  }
+
+  public void testWriteNonAscii() throws IOException {
+    IISSoapEnvelope envelope = new IISSoapEnvelope("user", "password", "facility");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    envelope.write("PID|1||||M\u00fcller^Zo\u00eb|", out);
+    assertTrue(new String(out.toByteArray(), "UTF-8").contains("PID|1||||M\u00fcller^Zo\u00eb|"));
+  }
+
+  public void testReadMessage() throws IOException {
+    String response = "<?xml version='1.0' encoding='UTF-8'?>\n<Envelope><Body><return>"
+        + MSH.replace("\\&", "&amp;") + "</return></Body></Envelope>\n";
+    assertEquals(MSH, read(response));
+  }
+
+  public void testReadMessageCData() throws IOException {
+    String response = "<Envelope><Body><return><![CDATA[" + MSH + "]]></return></Body></Envelope>";
+    assertEquals(MSH, read(response));
+  }
+
+  public void testReadMessageLineEnds() throws IOException {
+    String response = "<return>MSH|^~&amp;|IIS|\r\nPID|1|\nRXA|0|\r</return>";
+    assertEquals("MSH|^~\\&|IIS|\rPID|1|\rRXA|0|\r", read(response));
+  }
+
+  public void testReadMessageUnescapesOnce() throws IOException {
+    assertEquals("MSH|\\&amp;|", read("<return>MSH|&amp;amp;|</return>"));
+  }
+
+  public void testReadMessageAcrossBuffers() throws IOException {
+    StringBuilder sb = new StringBuilder("<return>MSH|");
+    StringBuilder expected = new StringBuilder("MSH|");
+    for (int i = 0; i < 3000; i++) {
+      sb.append("a&amp;\r\n");
+      expected.append("a\\&\r");
+    }
+    sb.append("</return>");
+    assertEquals(expected.toString(), read(sb.toString()));
+  }
+
+  public void testReadWithoutEnvelope() throws IOException {
+    assertEquals(MSH, read(MSH));
+    assertEquals("first\rsecond\r", read("  first  \n\tsecond"));
+    assertEquals("", read(""));
+  }
+
+  public void testReadSecurityFault() throws IOException {
+    assertNull(read("<Envelope><Fault><SecurityFault>Bad password</SecurityFault></Fault>"));
+  }
+
+  private static String read(String response) throws IOException {
+    Reader in = new StringReader(response);
+    return IISSoapEnvelope.readMessage(in);
+  }
+}
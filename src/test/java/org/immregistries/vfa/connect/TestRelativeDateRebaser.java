@@ -0,0 +1,171 @@
+package org.immregistries.vfa.connect;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.immregistries.vfa.connect.model.DateSet;
+import org.immregistries.vfa.connect.model.RelativeRule;
+import org.immregistries.vfa.connect.model.RelativeTo;
+import org.immregistries.vfa.connect.model.TestCase;
+import org.immregistries.vfa.connect.model.TestEvent;
+import org.immregistries.vfa.connect.util.DateCodec;
+import org.immregistries.vfa.connect.util.TimePeriod;
+
+public class TestRelativeDateRebaser extends junit.framework.TestCase {
+
+  public void testSameAsCalculateFixedDates() throws Exception {
+    Date evalDate = DateCodec.parseDate("20240315");
+    TestCase expected = createTestCase("4 years", "2 months", "4 months", "6 weeks");
+    expected.calculateFixedDates(evalDate);
+    for (TestEvent testEvent : expected.getTestEventList()) {
+      testEvent.calculateFixedDates();
+    }
+    TestCase testCase = createTestCase("4 years", "2 months", "4 months", "6 weeks");
+    RelativeDateRebaser.rebase(testCase, evalDate);
+    assertEquals(evalDate, testCase.getEvalDate());
+    assertEquals(DateCodec.parseDate("20200315"), testCase.getPatientDob());
+    assertEquals(expected.getPatientDob(), testCase.getPatientDob());
+    for (int i = 0; i < testCase.getTestEventList().size(); i++) {
+      assertEquals(expected.getTestEventList().get(i).getEventDate(),
+          testCase.getTestEventList().get(i).getEventDate());
+    }
+    assertEquals(DateCodec.parseDate("20200515"), testCase.getTestEventList().get(0).getEventDate());
+    assertEquals(DateCodec.parseDate("20200915"), testCase.getTestEventList().get(1).getEventDate());
+    assertEquals(DateCodec.parseDate("20201027"), testCase.getTestEventList().get(2).getEventDate());
+  }
+
+  public void testEventListedBeforeItsReference() throws Exception {
+    TestCase testCase = createTestCase("4 years", "2 months", "4 months", "6 weeks");
+    List<TestEvent> testEventList = testCase.getTestEventList();
+    testEventList.add(0, testEventList.remove(2));
+    testEventList.get(2).setEventDate(DateCodec.parseDate("19990101"));
+    RelativeDateRebaser.rebase(testCase, DateCodec.parseDate("20240315"));
+    assertEquals(DateCodec.parseDate("20201027"), testEventList.get(0).getEventDate());
+  }
+
+  public void testAndRule() throws Exception {
+    TestCase testCase = createTestCase("4 years", "2 months", "4 months", "6 weeks");
+    RelativeRule rule = testCase.getTestEventList().get(2).getEventRule();
+    RelativeRule andRule = new RelativeRule("8 months");
+    rule.setAndRule(andRule);
+    RelativeDateRebaser.rebase(testCase, DateCodec.parseDate("20240315"));
+    // eight months from birth comes after six weeks from the second dose
+    assertEquals(DateCodec.parseDate("20201115"), testCase.getTestEventList().get(2).getEventDate());
+  }
+
+  public void testCycle() throws Exception {
+    TestCase testCase = createTestCase("4 years", "2 months", "4 months", "6 weeks");
+    List<TestEvent> testEventList = testCase.getTestEventList();
+    RelativeRule rule = new RelativeRule("1 week");
+    rule.setRelativeTo(RelativeTo.EVENT);
+    rule.setTestEvent(testEventList.get(2));
+    testEventList.get(1).setEventRule(rule);
+    Date dob = testCase.getPatientDob();
+    try {
+      RelativeDateRebaser.rebase(testCase, DateCodec.parseDate("20240315"));
+      fail("Rebased a cycle");
+    } catch (RelativeDateRebaser.CyclicRuleException cre) {
+      // expected
+    }
+    assertSame(dob, testCase.getPatientDob());
+
+    TestCase selfJoined = createTestCase("4 years", "2 months", "4 months", "6 weeks");
+    RelativeRule selfRule = selfJoined.getTestEventList().get(0).getEventRule();
+    selfRule.setAndRule(selfRule);
+    try {
+      RelativeDateRebaser.rebase(selfJoined, DateCodec.parseDate("20240315"));
+      fail("Rebased a rule joined to itself");
+    } catch (RelativeDateRebaser.CyclicRuleException cre) {
+      // expected
+    }
+  }
+
+  public void testTimePeriodCanBeChanged() throws Exception {
+    RelativeRule rule = new RelativeRule("6 weeks");
+    TimePeriod timePeriod = rule.getTimePeriod();
+    assertFalse(timePeriod.isShared());
+    timePeriod.negate();
+    assertSame(timePeriod, rule.getTimePeriod());
+    assertEquals("-6 weeks", rule.getTimePeriodString());
+    assertEquals(DateCodec.parseDate("20240202"),
+        rule.getTimePeriod().getDateFrom(DateCodec.parseDate("20240315")));
+    rule.setTimePeriod(TimePeriod.valueOf("2 months"));
+    rule.convertNegativeToBeforeOrAfter();
+    rule.setBeforeOrAfter(RelativeRule.BeforeOrAfter.BEFORE);
+    rule.convertBeforeToAfter();
+    assertEquals("-2 months", rule.getTimePeriodString());
+    assertEquals("2 months", TimePeriod.valueOf("2 months").toString());
+    // other rules made from the same string are not changed
+    assertEquals("6 weeks", new RelativeRule("6 weeks").getTimePeriodString());
+  }
+
+  public void testRebaseSuite() throws Exception {
+    List<TestCase> testCaseList = new ArrayList<TestCase>();
+    List<TestCase> expectedList = new ArrayList<TestCase>();
+    for (int i = 0; i < 2000; i++) {
+      String age = (i % 60 + 2) + " months";
+      testCaseList.add(createTestCase(age, "6 weeks", (i % 5 + 2) + " months", "4 weeks"));
+      expectedList.add(createTestCase(age, "6 weeks", (i % 5 + 2) + " months", "4 weeks"));
+    }
+    TestCase cyclic = createTestCase("4 years", "2 months", "4 months", "6 weeks");
+    RelativeRule rule = cyclic.getTestEventList().get(0).getEventRule();
+    rule.setRelativeTo(RelativeTo.EVENT);
+    rule.setTestEvent(cyclic.getTestEventList().get(2));
+    testCaseList.add(1000, cyclic);
+    TestCase fixed = createTestCase("4 years", "2 months", "4 months", "6 weeks");
+    fixed.setDateSet(DateSet.FIXED);
+    testCaseList.add(fixed);
+
+    Date evalDate = DateCodec.parseDate("20240315");
+    ForkJoinPool pool = new ForkJoinPool(4);
+    RelativeDateRebaser rebaser = new RelativeDateRebaser(pool);
+    rebaser.setBatchSize(50);
+    List<TestCase> cyclicList = rebaser.rebase(testCaseList, evalDate);
+    pool.shutdown();
+    assertEquals(1, cyclicList.size());
+    assertSame(cyclic, cyclicList.get(0));
+    assertNull(fixed.getEvalDate());
+
+    testCaseList.remove(cyclic);
+    for (int i = 0; i < expectedList.size(); i++) {
+      TestCase expected = expectedList.get(i);
+      expected.calculateFixedDates(evalDate);
+      for (TestEvent testEvent : expected.getTestEventList()) {
+        testEvent.calculateFixedDates();
+      }
+      TestCase testCase = testCaseList.get(i);
+      assertEquals(expected.getPatientDob(), testCase.getPatientDob());
+      for (int j = 0; j < testCase.getTestEventList().size(); j++) {
+        assertEquals(expected.getTestEventList().get(j).getEventDate(),
+            testCase.getTestEventList().get(j).getEventDate());
+      }
+    }
+  }
+
+  /**
+   * A case with a birth and three doses: the first relative to birth, the second relative to
+   * the first and the third relative to the second.
+   */
+  private static TestCase createTestCase(String age, String first, String second, String third) {
+    TestCase testCase = new TestCase();
+    testCase.setDateSet(DateSet.RELATIVE);
+    testCase.setEvalRule(new RelativeRule(age));
+    List<TestEvent> testEventList = new ArrayList<TestEvent>();
+    TestEvent previous = null;
+    for (String timePeriod : new String[] { first, second, third }) {
+      TestEvent testEvent = new TestEvent();
+      testEvent.setTestCase(testCase);
+      RelativeRule rule = new RelativeRule(timePeriod);
+      if (previous != null) {
+        rule.setRelativeTo(RelativeTo.EVENT);
+        rule.setTestEvent(previous);
+      }
+      testEvent.setEventRule(rule);
+      testEventList.add(testEvent);
+      previous = testEvent;
+    }
+    testCase.setTestEventList(testEventList);
+    return testCase;
+  }
+}
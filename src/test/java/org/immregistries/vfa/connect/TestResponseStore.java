@@ -0,0 +1,190 @@
+package org.immregistries.vfa.connect;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.immregistries.vfa.connect.model.ForecastActual;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.SoftwareResult;
+import org.immregistries.vfa.connect.model.TestCase;
+import org.immregistries.vfa.connect.model.TestEvent;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestResponseStore extends junit.framework.TestCase {
+
+  private static final String RSP_FORECAST = "QAK|1|OK|Z44^Request Evaluated History and Forecast^CDCPHINVS\r"
+      + "ORC|RE||999\r"
+      + "RXA|0|1|20180906||998^No Vaccination Administered^CVX\r"
+      + "OBX|1|CE|30956-7^Vaccine type^LN|1|45^HepB^CVX\r"
+      + "OBX|2|CE|59783-1^Status in series^LN|1|O^O^LSVF\r"
+      + "OBX|3|DT|30981-5^Earliest date^LN|1|20180702\r"
+      + "OBX|4|DT|30980-7^Recommended date^LN|1|20180702\r";
+
+  private File file;
+  private HttpServer server;
+  private final AtomicInteger requestCount = new AtomicInteger();
+
+  @Override
+  protected void setUp() throws Exception {
+    file = File.createTempFile("responses", ".store");
+    file.delete();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    HttpTransport.setResponseStore(null);
+    if (server != null) {
+      server.stop(0);
+    }
+    file.delete();
+  }
+
+  public void testRecordAndReopen() throws Exception {
+    ResponseStore store = new ResponseStore(file, ResponseStore.Mode.RECORD, 64);
+    store.put("a", new HttpTransport.Response("http://localhost/a", 200, "text/plain", bytes("first")));
+    store.put("b", new HttpTransport.Response("http://localhost/b", 500, null, bytes("failed")));
+    // grows past the initial mapping
+    store.put("c", new HttpTransport.Response("http://localhost/c", 200, "text/plain", new byte[1000]));
+    store.put("a", new HttpTransport.Response("http://localhost/a", 200, "text/plain", bytes("second")));
+    assertEquals(3, store.size());
+    assertEquals("second", store.get("a").getBody());
+    assertNull(store.get("d"));
+    store.close();
+
+    store = new ResponseStore(file, ResponseStore.Mode.RECORD);
+    assertEquals(3, store.size());
+    store.put("d", new HttpTransport.Response("http://localhost/d", 200, "text/plain", bytes("fourth")));
+    store.close();
+
+    store = new ResponseStore(file, ResponseStore.Mode.REPLAY);
+    assertEquals(4, store.size());
+    HttpTransport.Response response = store.get("a");
+    assertEquals("second", response.getBody());
+    assertEquals("text/plain", response.getContentType());
+    response = store.get("b");
+    assertEquals(500, response.getStatus());
+    assertNull(response.getContentType());
+    try {
+      response.checkStatus();
+      fail("Expected the recorded error status");
+    } catch (IOException ioe) {
+      assertTrue(ioe.getMessage().contains("http://localhost/b"));
+    }
+    assertEquals(1000, store.get("c").getBodyBytes().length);
+    assertEquals("fourth", store.get("d").getBody());
+    try {
+      store.put("e", response);
+      fail("Expected replay to be read only");
+    } catch (IllegalStateException ise) {
+      // expected
+    }
+    store.close();
+  }
+
+  public void testReplayMissingFile() throws Exception {
+    try {
+      new ResponseStore(file, ResponseStore.Mode.REPLAY);
+      fail("Expected missing file to fail");
+    } catch (IOException ioe) {
+      // expected
+    }
+  }
+
+  public void testIISReplay() throws Exception {
+    startServer();
+    Software software = new Software();
+    software.setServiceUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/iis");
+    software.setService(Service.IIS);
+    IISConnector connector = new IISConnector(software, VaccineGroup.getForecastItemList());
+
+    ResponseStore store = new ResponseStore(file, ResponseStore.Mode.RECORD);
+    HttpTransport.setResponseStore(store);
+    List<ForecastActual> recordedList = connector.queryForForecast(createTestCase(), new SoftwareResult());
+    assertEquals(2, requestCount.get());
+    assertEquals(2, store.size());
+    store.close();
+    server.stop(0);
+    server = null;
+
+    store = new ResponseStore(file, ResponseStore.Mode.REPLAY);
+    HttpTransport.setResponseStore(store);
+    // new fake patient and message ids, same test case
+    List<ForecastActual> replayedList = connector.queryForForecast(createTestCase(), new SoftwareResult());
+    assertEquals(recordedList.size(), replayedList.size());
+    assertEquals(1, replayedList.size());
+    assertEquals(VaccineGroup.ID_HEPB, replayedList.get(0).getVaccineGroup().getVaccineGroupId());
+    assertEquals(recordedList.get(0).getDueDate(), replayedList.get(0).getDueDate());
+
+    TestCase otherTestCase = createTestCase();
+    otherTestCase.setPatientSex("M");
+    try {
+      connector.queryForForecast(otherTestCase, new SoftwareResult());
+      fail("Expected a test case that was never recorded to fail");
+    } catch (Exception e) {
+      assertEquals("Unable to get forecast results", e.getMessage());
+    }
+    store.close();
+  }
+
+  private void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/iis", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        String request = new String(readAll(exchange.getRequestBody()), "UTF-8");
+        String msh = "MSH|^~\\&|IIS|IIS|||20180906123151-0600||";
+        String response;
+        if (request.contains("|VXU^")) {
+          response = msh + "ACK^V04^ACK|1|P|2.5.1\rMSA|AA|1\r";
+        } else {
+          response = msh + "RSP^K11^RSP_K11|2|P|2.5.1\rMSA|AA|2\r" + RSP_FORECAST;
+        }
+        byte[] body = ("<Envelope><Body><submitSingleMessageResponse><return>"
+            + response.replace("&", "&amp;") + "</return></submitSingleMessageResponse></Body></Envelope>")
+                .getBytes("UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+      }
+    });
+    server.start();
+  }
+
+  private static TestCase createTestCase() {
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(2018, Calendar.JULY, 2);
+    TestCase testCase = new TestCase();
+    testCase.setTestCaseNumber("R1");
+    testCase.setPatientDob(calendar.getTime());
+    testCase.setPatientSex("F");
+    calendar.set(2018, Calendar.SEPTEMBER, 6);
+    testCase.setEvalDate(calendar.getTime());
+    testCase.setTestEventList(new ArrayList<TestEvent>());
+    return testCase;
+  }
+
+  private static byte[] bytes(String s) throws IOException {
+    return s.getBytes("UTF-8");
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int count;
+    while ((count = in.read(buffer)) != -1) {
+      out.write(buffer, 0, count);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,44 @@
+package org.immregistries.vfa.connect;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.immregistries.vfa.connect.model.ServiceOption;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.SoftwareSetting;
+
+public class TestRetryPolicy extends junit.framework.TestCase {
+
+  public void testDefault() {
+    RetryPolicy retryPolicy = RetryPolicy.getRetryPolicy(new Software());
+    assertEquals(10000, retryPolicy.getDelayMillis(1));
+    assertEquals(20000, retryPolicy.getDelayMillis(2));
+    assertEquals(40000, retryPolicy.getDelayMillis(3));
+    assertTrue(retryPolicy.canRetry(3));
+    assertFalse(retryPolicy.canRetry(4));
+  }
+
+  public void testFromSoftwareSettings() {
+    Software software = new Software();
+    List<SoftwareSetting> softwareSettingList = new ArrayList<SoftwareSetting>();
+    softwareSettingList.add(createSetting(RetryPolicy.OPTION_BASE_DELAY, "2"));
+    softwareSettingList.add(createSetting(RetryPolicy.OPTION_MULTIPLIER, "3"));
+    softwareSettingList.add(createSetting(RetryPolicy.OPTION_JITTER, "0.5"));
+    softwareSettingList.add(createSetting(RetryPolicy.OPTION_MAX_ATTEMPTS, "not a number"));
+    software.setSoftwareSettingList(softwareSettingList);
+    RetryPolicy retryPolicy = RetryPolicy.getRetryPolicy(software);
+    assertEquals(4, retryPolicy.getMaxAttempts());
+    for (int i = 0; i < 100; i++) {
+      long delay = retryPolicy.getDelayMillis(3);
+      assertTrue("Delay " + delay + " outside of jitter range", delay >= 9000 && delay <= 27000);
+    }
+  }
+
+  private static SoftwareSetting createSetting(String optionName, String optionValue) {
+    ServiceOption serviceOption = new ServiceOption();
+    serviceOption.setOptionName(optionName);
+    SoftwareSetting softwareSetting = new SoftwareSetting();
+    softwareSetting.setServiceOption(serviceOption);
+    softwareSetting.setOptionValue(optionValue);
+    return softwareSetting;
+  }
+}
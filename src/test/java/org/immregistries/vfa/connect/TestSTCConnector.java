@@ -62,4 +62,42 @@ public class TestSTCConnector extends junit.framework.TestCase
 
   }
 
+  public void testConnectSTCBatch() throws Exception {
+    SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
+
+    List<TestCase> testCaseList = new ArrayList<TestCase>();
+    List<SoftwareResult> softwareResultList = new ArrayList<SoftwareResult>();
+    for (int i = 0; i < 3; i++) {
+      TestCase testCase = new TestCase();
+      testCase.setTestCaseNumber("BATCH-" + i);
+      testCase.setEvalDate(sdf.parse("07/12/2011"));
+      testCase.setPatientSex("F");
+      testCase.setPatientDob(sdf.parse("04/01/2006"));
+      List<TestEvent> testEventList = new ArrayList<TestEvent>();
+      testEventList.add(new TestEvent(8, sdf.parse("04/01/2006")));
+      testCase.setTestEventList(testEventList);
+      testCaseList.add(testCase);
+      softwareResultList.add(new SoftwareResult());
+    }
+    Software software = new Software();
+    software.setServiceUrl("http://epicenter.stchome.com/safdemo/soa/forecast/getForecast.wsdl");
+    software.setService(Service.STC);
+
+    ConnectorInterface connector = ConnectFactory.createConnecter(software, VaccineGroup.getForecastItemList());
+    connector.setLogText(true);
+    List<List<ForecastActual>> resultList = connector.queryForForecastBatch(testCaseList, softwareResultList);
+    assertEquals(3, resultList.size());
+    for (int i = 0; i < 3; i++) {
+      boolean foundHepB = false;
+      for (ForecastActual forecastActual : resultList.get(i)) {
+        assertSame(softwareResultList.get(i), forecastActual.getSoftwareResult());
+        if (forecastActual.getVaccineGroup().getVaccineGroupId() == 5) {
+          assertEquals(sdf.parse("05/01/2006"), forecastActual.getDueDate());
+          foundHepB = true;
+        }
+      }
+      assertTrue("HepB forecast not found for test case " + i, foundHepB);
+    }
+  }
+
 }
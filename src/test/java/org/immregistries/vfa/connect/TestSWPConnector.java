@@ -0,0 +1,36 @@
+package org.immregistries.vfa.connect;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.TestCase;
+import org.immregistries.vfa.connect.model.TestEvent;
+
+public class TestSWPConnector extends junit.framework.TestCase {
+
+  public void testRequestKey() throws Exception {
+    Software software = new Software();
+    software.setServiceUrl("http://localhost/swp");
+    software.setService(Service.SWP);
+
+    String key = SWPConnector.createRequestKey(software, createTestCase("07/12/2011", "05/01/2006"));
+    // SWP forecasts for today, so the evaluation date is not part of the request
+    assertEquals(key, SWPConnector.createRequestKey(software, createTestCase("07/12/2012", "05/01/2006")));
+    assertFalse(key.equals(SWPConnector.createRequestKey(software, createTestCase("07/12/2011", "05/02/2006"))));
+  }
+
+  private static TestCase createTestCase(String evalDate, String doseDate) throws Exception {
+    SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
+    TestCase testCase = new TestCase();
+    testCase.setEvalDate(sdf.parse(evalDate));
+    testCase.setPatientSex("F");
+    testCase.setPatientDob(sdf.parse("04/01/2006"));
+    List<TestEvent> testEventList = new ArrayList<TestEvent>();
+    testEventList.add(new TestEvent(8, sdf.parse("04/01/2006")));
+    testEventList.add(new TestEvent(8, sdf.parse(doseDate)));
+    testCase.setTestEventList(testEventList);
+    return testCase;
+  }
+}
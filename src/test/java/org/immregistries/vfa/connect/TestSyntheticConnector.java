@@ -0,0 +1,140 @@
+package org.immregistries.vfa.connect;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import org.immregistries.vfa.connect.model.Admin;
+import org.immregistries.vfa.connect.model.Event;
+import org.immregistries.vfa.connect.model.ForecastActual;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.ServiceOption;
+import org.immregistries.vfa.connect.model.Software;
+import org.immregistries.vfa.connect.model.SoftwareResult;
+import org.immregistries.vfa.connect.model.SoftwareSetting;
+import org.immregistries.vfa.connect.model.TestCase;
+import org.immregistries.vfa.connect.model.TestEvent;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+
+public class TestSyntheticConnector extends junit.framework.TestCase {
+
+  public void testForecast() throws Exception {
+    Software software = new Software();
+    software.setService(Service.SYNTHETIC);
+    ConnectorInterface connector = ConnectFactory.createConnecter(software);
+    assertTrue(connector instanceof SyntheticConnector);
+
+    assertSame(Service.SYNTHETIC, Service.getService("Synthetic"));
+
+    TestCase testCase = createTestCase();
+    SoftwareResult softwareResult = new SoftwareResult();
+    List<ForecastActual> forecastActualList = connector.queryForForecast(testCase, softwareResult);
+    assertSame(software, softwareResult.getSoftware());
+
+    // HepB at birth is too young, at 2 and 4 months counts
+    ForecastActual hepB = find(forecastActualList, VaccineGroup.ID_HEPB);
+    assertEquals("3", hepB.getDoseNumber());
+    assertEquals(date(2018, Calendar.MAY, 30), hepB.getValidDate());
+    assertEquals(date(2018, Calendar.JULY, 2), hepB.getDueDate());
+    assertEquals(Admin.OVERDUE, hepB.getAdmin());
+    TestEvent birthDose = testCase.getTestEventList().get(0);
+    assertEquals("N", birthDose.getEvaluationActualList().get(0).getDoseValid());
+    TestEvent secondDose = testCase.getTestEventList().get(2);
+    assertEquals("Y", secondDose.getEvaluationActualList().get(0).getDoseValid());
+    assertEquals("2", secondDose.getEvaluationActualList().get(0).getDoseNumber());
+    assertSame(softwareResult, secondDose.getEvaluationActualList().get(0).getSoftwareResult());
+
+    // nothing given yet, due at the minimum age
+    ForecastActual hib = find(forecastActualList, VaccineGroup.ID_HIB);
+    assertEquals("1", hib.getDoseNumber());
+    assertEquals(date(2018, Calendar.FEBRUARY, 13), hib.getDueDate());
+
+    // not until 9 years old
+    ForecastActual hpv = find(forecastActualList, VaccineGroup.ID_HPV);
+    assertEquals(Admin.DUE_LATER, hpv.getAdmin());
+    assertEquals(date(2027, Calendar.JANUARY, 2), hpv.getDueDate());
+
+    // same test case, same answer
+    List<ForecastActual> againList = connector.queryForForecast(createTestCase(), new SoftwareResult());
+    assertEquals(forecastActualList.size(), againList.size());
+    for (int i = 0; i < forecastActualList.size(); i++) {
+      assertEquals(forecastActualList.get(i).getVaccineGroup(), againList.get(i).getVaccineGroup());
+      assertEquals(forecastActualList.get(i).getDueDate(), againList.get(i).getDueDate());
+      assertEquals(forecastActualList.get(i).getAdmin(), againList.get(i).getAdmin());
+    }
+  }
+
+  public void testSettings() throws Exception {
+    Software software = new Software();
+    software.setService(Service.SYNTHETIC);
+    List<SoftwareSetting> softwareSettingList = new ArrayList<SoftwareSetting>();
+    softwareSettingList.add(createSetting(SyntheticConnector.OPTION_WORK_ITERATIONS, "1000"));
+    softwareSettingList.add(createSetting(SyntheticConnector.OPTION_ALLOCATION_BYTES, "4096"));
+    software.setSoftwareSettingList(softwareSettingList);
+    SyntheticConnector connector = new SyntheticConnector(software, VaccineGroup.getForecastItemList());
+    assertEquals(1000, connector.getWorkIterations());
+    assertEquals(4096, connector.getAllocationBytes());
+
+    connector.setLogText(true);
+    SoftwareResult softwareResult = new SoftwareResult();
+    assertFalse(connector.queryForForecast(createTestCase(), softwareResult).isEmpty());
+    assertTrue(softwareResult.getLogText().contains("Forecasting HepB"));
+
+    TestCase testCase = createTestCase();
+    testCase.setPatientDob(null);
+    try {
+      connector.queryForForecast(testCase, new SoftwareResult());
+      fail("Expected a test case without a birth date to fail");
+    } catch (Exception e) {
+      assertEquals("Unable to get forecast results", e.getMessage());
+    }
+  }
+
+  private static SoftwareSetting createSetting(String optionName, String value) {
+    ServiceOption serviceOption = new ServiceOption();
+    serviceOption.setOptionName(optionName);
+    SoftwareSetting softwareSetting = new SoftwareSetting();
+    softwareSetting.setServiceOption(serviceOption);
+    softwareSetting.setOptionValue(value);
+    return softwareSetting;
+  }
+
+  private static ForecastActual find(List<ForecastActual> forecastActualList, int vaccineGroupId) {
+    for (ForecastActual forecastActual : forecastActualList) {
+      if (forecastActual.getVaccineGroup().getVaccineGroupId() == vaccineGroupId) {
+        return forecastActual;
+      }
+    }
+    fail("No forecast for vaccine group " + vaccineGroupId);
+    return null;
+  }
+
+  private static TestCase createTestCase() {
+    TestCase testCase = new TestCase();
+    testCase.setTestCaseNumber("S1");
+    testCase.setPatientDob(date(2018, Calendar.JANUARY, 2));
+    testCase.setPatientSex("F");
+    testCase.setEvalDate(date(2018, Calendar.SEPTEMBER, 6));
+    List<TestEvent> testEventList = new ArrayList<TestEvent>();
+    // Hep B, adolescent or pediatric
+    testEventList.add(createTestEvent(8, date(2018, Calendar.JANUARY, 2)));
+    testEventList.add(createTestEvent(8, date(2018, Calendar.MARCH, 2)));
+    testEventList.add(createTestEvent(8, date(2018, Calendar.MAY, 2)));
+    testCase.setTestEventList(testEventList);
+    return testCase;
+  }
+
+  private static TestEvent createTestEvent(int eventId, Date eventDate) {
+    TestEvent testEvent = new TestEvent();
+    testEvent.setEvent(Event.getEvent(eventId));
+    testEvent.setEventDate(eventDate);
+    return testEvent;
+  }
+
+  private static Date date(int year, int month, int day) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(year, month, day);
+    return calendar.getTime();
+  }
+}
@@ -0,0 +1,68 @@
+package org.immregistries.vfa.connect;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+
+public class TestVaccineGroupMapping extends junit.framework.TestCase {
+
+  public void testIISCodes() {
+    VaccineGroupMapping mapping = VaccineGroupMapping.getMapping(VaccineGroup.getForecastItemList());
+    assertSame(mapping, VaccineGroupMapping.getMapping(VaccineGroup.getForecastItemList()));
+
+    List<VaccineGroup> list = mapping.getVaccineGroups(Service.IIS, "09");
+    assertEquals(3, list.size());
+    assertEquals(VaccineGroup.ID_DTAP_TDAP_TD, list.get(0).getVaccineGroupId());
+    assertEquals(VaccineGroup.ID_TDAP_ONLY, list.get(1).getVaccineGroupId());
+    assertEquals(VaccineGroup.ID_TDAP_TD, list.get(2).getVaccineGroupId());
+    assertFalse(mapping.isInvalidCode(Service.IIS, "09"));
+    assertTrue(mapping.isInvalidCode(Service.IIS, "9"));
+    assertTrue(mapping.isInvalidCode(Service.IIS, "HEP B"));
+    assertEquals(VaccineGroup.ID_HEPB,
+        mapping.getVaccineGroups(Service.IIS, "HEP B").get(0).getVaccineGroupId());
+    assertEquals(VaccineGroup.ID_COVID,
+        mapping.getVaccineGroups(Service.IIS, "207").get(0).getVaccineGroupId());
+
+    // every vaccine group under its own CVX code
+    list = mapping.getVaccineGroups(Service.IIS, "152");
+    assertEquals(2, list.size());
+    assertEquals(VaccineGroup.ID_PNEUMO, list.get(0).getVaccineGroupId());
+    assertEquals(VaccineGroup.ID_PCV, list.get(1).getVaccineGroupId());
+
+    assertNull(mapping.getVaccineGroups(Service.IIS, "999"));
+    assertNull(mapping.getVaccineGroups(Service.MDS, "09"));
+    assertTrue(mapping.getCodeMap(Service.MDS).isEmpty());
+    try {
+      mapping.getCodeMap(Service.IIS).get("09").add(VaccineGroup.getForecastItem(VaccineGroup.ID_HIB));
+      fail("Expected the mapping to be read only");
+    } catch (UnsupportedOperationException uoe) {
+      // expected
+    }
+  }
+
+  public void testOtherServices() {
+    VaccineGroupMapping mapping = VaccineGroupMapping.getMapping(VaccineGroup.getForecastItemList());
+    assertEquals(2, mapping.getVaccineGroups(Service.ICE, "700").size());
+    assertEquals(2, mapping.getVaccineGroups(Service.LSVF, "PCV").size());
+    // the influenza subtypes are not in the default forecast item list
+    assertEquals(1, mapping.getVaccineGroups(Service.LSVF, "Influenza").size());
+    assertEquals(VaccineGroup.ID_ZOSTER,
+        mapping.getVaccineGroups(Service.LSVF, "RZV (Shingrix)").get(0).getVaccineGroupId());
+    assertEquals(VaccineGroup.ID_HEPB_2_ONLY,
+        mapping.getVaccineGroups(Service.STC, "12").get(1).getVaccineGroupId());
+    assertEquals(VaccineGroup.ID_PPSV,
+        mapping.getVaccineGroups(Service.SWP, "Pneumo-Poly").get(0).getVaccineGroupId());
+  }
+
+  public void testForecastItemList() {
+    List<VaccineGroup> forecastItemList = new ArrayList<VaccineGroup>();
+    forecastItemList.add(new VaccineGroup(VaccineGroup.ID_HEPB, "HepB", "45"));
+    VaccineGroupMapping mapping = VaccineGroupMapping.getMapping(forecastItemList);
+    assertNotSame(mapping, VaccineGroupMapping.getMapping(VaccineGroup.getForecastItemList()));
+    assertSame(forecastItemList.get(0), mapping.getVaccineGroups(Service.ICE, "100").get(0));
+    // groups not in the list are left out
+    assertNull(mapping.getVaccineGroups(Service.ICE, "810"));
+    assertEquals(1, mapping.getVaccineGroups(Service.IIS, "45").size());
+  }
+}
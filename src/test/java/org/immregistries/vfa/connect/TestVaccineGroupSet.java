@@ -0,0 +1,100 @@
+package org.immregistries.vfa.connect;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import org.immregistries.vfa.connect.model.Service;
+import org.immregistries.vfa.connect.model.VaccineGroup;
+
+public class TestVaccineGroupSet extends junit.framework.TestCase {
+
+  public void testSet() {
+    VaccineGroup hepB = VaccineGroup.getForecastItem(VaccineGroup.ID_HEPB);
+    VaccineGroup covid = VaccineGroup.getForecastItem(VaccineGroup.ID_COVID);
+    VaccineGroup dtap = VaccineGroup.getForecastItem(VaccineGroup.ID_DTAP);
+    VaccineGroupSet set = VaccineGroupSet.of(covid, hepB, dtap, hepB);
+    assertEquals(3, set.size());
+    assertTrue(set.contains(hepB));
+    assertTrue(set.contains(VaccineGroup.ID_COVID));
+    assertFalse(set.contains(VaccineGroup.getForecastItem(VaccineGroup.ID_HIB)));
+    assertFalse(set.contains("HepB"));
+    assertFalse(set.contains(-1));
+    assertFalse(set.contains(64));
+
+    // in id order
+    Iterator<VaccineGroup> it = set.iterator();
+    assertSame(dtap, it.next());
+    assertSame(hepB, it.next());
+    assertSame(covid, it.next());
+    assertFalse(it.hasNext());
+
+    Set<VaccineGroup> hashSet = new HashSet<VaccineGroup>();
+    hashSet.add(hepB);
+    hashSet.add(dtap);
+    hashSet.add(covid);
+    assertEquals(hashSet, set);
+    assertEquals(set, hashSet);
+    assertEquals(hashSet.hashCode(), set.hashCode());
+
+    assertTrue(VaccineGroupSet.EMPTY.isEmpty());
+    assertSame(VaccineGroupSet.EMPTY, VaccineGroupSet.of());
+    try {
+      set.add(VaccineGroup.getForecastItem(VaccineGroup.ID_HIB));
+      fail("Expected the set to be read only");
+    } catch (UnsupportedOperationException uoe) {
+      // expected
+    }
+    try {
+      VaccineGroupSet.of(new VaccineGroup(64, "Too high", "01"));
+      fail("Made a set with an id that doesn't fit");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+  }
+
+  public void testUnion() {
+    VaccineGroup hepB = VaccineGroup.getForecastItem(VaccineGroup.ID_HEPB);
+    VaccineGroup covid = VaccineGroup.getForecastItem(VaccineGroup.ID_COVID);
+    VaccineGroupSet left = VaccineGroupSet.of(hepB);
+    VaccineGroupSet right = VaccineGroupSet.of(covid);
+    assertFalse(left.containsAny(right));
+    VaccineGroupSet union = left.union(right);
+    assertEquals(2, union.size());
+    assertTrue(union.containsAny(right));
+    assertSame(hepB, union.iterator().next());
+    assertSame(union, union.union(left));
+    assertSame(right, VaccineGroupSet.EMPTY.union(right));
+    assertEquals(1, left.size());
+  }
+
+  public void testMapping() {
+    List<VaccineGroup> forecastItemList = new ArrayList<VaccineGroup>();
+    forecastItemList.add(new VaccineGroup(VaccineGroup.ID_TDAP_TD, "Td or Tdap", "139"));
+    forecastItemList.add(new VaccineGroup(VaccineGroup.ID_TD_ONLY, "Td Only", "139"));
+    forecastItemList.add(new VaccineGroup(VaccineGroup.ID_DTAP_TDAP_TD, "DTaP, Tdap or Td", "20"));
+    VaccineGroupMapping mapping = VaccineGroupMapping.getMapping(forecastItemList);
+    VaccineGroupSet set = mapping.getVaccineGroupSet(Service.ICE, "09");
+    assertEquals(3, set.size());
+    // the list keeps the order from the mapping file, the set goes in id order
+    assertEquals(VaccineGroup.ID_TD_ONLY,
+        mapping.getVaccineGroups(Service.ICE, "09").get(0).getVaccineGroupId());
+    Iterator<VaccineGroup> it = set.iterator();
+    assertSame(forecastItemList.get(0), it.next());
+    assertSame(forecastItemList.get(1), it.next());
+    assertSame(forecastItemList.get(2), it.next());
+    assertTrue(mapping.getVaccineGroupSet(Service.ICE, "999").isEmpty());
+    assertTrue(mapping.getVaccineGroupSet(Service.MDS, "09").isEmpty());
+
+    VaccineGroupMapping defaultMapping =
+        VaccineGroupMapping.getMapping(VaccineGroup.getForecastItemList());
+    for (Service service : Service.values()) {
+      for (String code : defaultMapping.getCodeMap(service).keySet()) {
+        assertEquals(service + " " + code,
+            new HashSet<VaccineGroup>(defaultMapping.getVaccineGroups(service, code)),
+            defaultMapping.getVaccineGroupSet(service, code));
+      }
+    }
+  }
+}
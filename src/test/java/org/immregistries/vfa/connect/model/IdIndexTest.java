@@ -0,0 +1,54 @@
+package org.immregistries.vfa.connect.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+public class IdIndexTest extends TestCase {
+
+  public void testEventLookup() {
+    for (Event event : Event.getEventList()) {
+      assertSame(event, Event.getEvent(event.getEventId()));
+    }
+    assertNull(Event.getEvent(0));
+    assertNull(Event.getEvent(199));
+    assertNull(Event.getEvent(5000));
+    assertNull(Event.getEvent(Event.EVENT_ID_RANGE_1_MIIS));
+    assertNull(Event.getEvent(-1));
+    for (VaccineGroup vaccineGroup : VaccineGroup.getForecastItemList()) {
+      assertSame(vaccineGroup, VaccineGroup.getForecastItem(vaccineGroup.getVaccineGroupId()));
+    }
+    assertNull(VaccineGroup.getForecastItem(1));
+  }
+
+  public void testSparseIds() {
+    List<VaccineGroup> list = new ArrayList<VaccineGroup>();
+    for (int i = 0; i < 50; i++) {
+      list.add(new VaccineGroup(Event.EVENT_ID_RANGE_1_MIIS + i, "MIIS " + i, ""));
+      list.add(new VaccineGroup(Event.EVENT_ID_RANGE_2_RESERVED + i * 1024, "Reserved " + i, ""));
+    }
+    list.add(null);
+    list.add(new VaccineGroup(7, "Dense", ""));
+    list.add(new VaccineGroup(-3, "Negative", ""));
+    list.add(new VaccineGroup(Event.EVENT_ID_RANGE_1_MIIS, "MIIS again", ""));
+    IdIndex<VaccineGroup> index =
+        new IdIndex<VaccineGroup>(list, VaccineGroup::getVaccineGroupId, Event.EVENT_ID_RANGE_1_MIIS);
+    assertEquals("MIIS again", index.get(Event.EVENT_ID_RANGE_1_MIIS).getLabel());
+    for (int i = 1; i < 50; i++) {
+      assertEquals("MIIS " + i, index.get(Event.EVENT_ID_RANGE_1_MIIS + i).getLabel());
+      assertEquals("Reserved " + i, index.get(Event.EVENT_ID_RANGE_2_RESERVED + i * 1024).getLabel());
+    }
+    assertEquals("Dense", index.get(7).getLabel());
+    assertEquals("Negative", index.get(-3).getLabel());
+    assertNull(index.get(6));
+    assertNull(index.get(Event.EVENT_ID_RANGE_1_MIIS + 50));
+    assertNull(index.get(Event.EVENT_ID_RANGE_2_RESERVED + 1));
+  }
+
+  public void testEmpty() {
+    IdIndex<VaccineGroup> index = new IdIndex<VaccineGroup>(new ArrayList<VaccineGroup>(),
+        VaccineGroup::getVaccineGroupId, Event.EVENT_ID_RANGE_1_MIIS);
+    assertNull(index.get(0));
+    assertNull(index.get(Event.EVENT_ID_RANGE_1_MIIS));
+  }
+}
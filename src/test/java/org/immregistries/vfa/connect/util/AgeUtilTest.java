@@ -16,6 +16,7 @@
 package org.immregistries.vfa.connect.util;
 
 import java.text.SimpleDateFormat;
+import java.util.TimeZone;
 import org.immregistries.vfa.connect.util.AgeUtil;
 import junit.framework.TestCase;
 
@@ -42,4 +43,30 @@ public class AgeUtilTest extends TestCase {
     assertEquals("20 years", AgeUtil.getAge(sdf.parse("10/01/1992"), sdf.parse("12/01/2012")));
   }
 
+  public void testMonthEndStaysCutBack() throws Exception
+  {
+    // the 31st becomes the 29th in February and stays there
+    assertEquals("2 months", AgeUtil.getAge(DateCodec.parseDate("20120131"), DateCodec.parseDate("20120329")));
+    assertEquals("1 month", AgeUtil.getAge(DateCodec.parseDate("20120131"), DateCodec.parseDate("20120328")));
+    assertEquals("1 year 1 month", AgeUtil.getAge(DateCodec.parseDate("20110131"), DateCodec.parseDate("20120228")));
+    assertEquals("6 years", AgeUtil.getAge(DateCodec.parseDate("20000229"), DateCodec.parseDate("20060228")));
+    assertEquals("5 years", AgeUtil.getAge(DateCodec.parseDate("20000229"), DateCodec.parseDate("20060227")));
+  }
+
+  public void testClocksSkipMidnight() throws Exception
+  {
+    TimeZone timeZone = DateCodec.getTimeZone();
+    try
+    {
+      // midnight on the 16th of October 2005 was skipped, after that the age is an hour later
+      DateCodec.setTimeZone(TimeZone.getTimeZone("America/Sao_Paulo"));
+      assertEquals("4 years 4 months", AgeUtil.getAge(DateCodec.parseDate("20041016"), DateCodec.parseDate("20090316")));
+      assertEquals("1 year 4 months", AgeUtil.getAge(DateCodec.parseDate("20041016"), DateCodec.parseDate("20060316")));
+      assertEquals("1 year 5 months", AgeUtil.getAge(DateCodec.parseDate("20041016"), DateCodec.parseDate("20060317")));
+    } finally
+    {
+      DateCodec.setTimeZone(timeZone);
+    }
+  }
+
 }
@@ -0,0 +1,143 @@
+package org.immregistries.vfa.connect.util;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import junit.framework.TestCase;
+
+public class DateCodecTest extends TestCase {
+
+  private static final String[] PATTERNS =
+      { "yyyyMMdd", "yyyy-MM-dd", "MM/dd/yyyy", "yyyyMMddHHmmssZ", "yyyy-MM-dd'T'HH:mm:ss.SSSXXX" };
+
+  private TimeZone defaultTimeZone;
+
+  @Override
+  protected void setUp() {
+    defaultTimeZone = DateCodec.getTimeZone();
+  }
+
+  @Override
+  protected void tearDown() {
+    DateCodec.setTimeZone(defaultTimeZone);
+  }
+
+  public void testSameAsSimpleDateFormat() throws ParseException {
+    for (String id : new String[] { "America/Denver", "America/Sao_Paulo", "Asia/Kolkata", "UTC" }) {
+      TimeZone timeZone = TimeZone.getTimeZone(id);
+      DateCodec.setTimeZone(timeZone);
+      SimpleDateFormat[] formats = new SimpleDateFormat[PATTERNS.length];
+      for (int i = 0; i < PATTERNS.length; i++) {
+        formats[i] = new SimpleDateFormat(PATTERNS[i]);
+        formats[i].setTimeZone(timeZone);
+      }
+      for (long millis = -600000000000L; millis < 3000000000000L; millis += 987654321L) {
+        Date date = new Date(millis);
+        String[] values = { DateCodec.formatDate(date), DateCodec.formatIsoDate(date),
+            DateCodec.formatUsDate(date), DateCodec.formatDtm(date), DateCodec.formatIsoDateTime(date) };
+        for (int i = 0; i < values.length; i++) {
+          assertEquals(id + " " + PATTERNS[i], formats[i].format(date), values[i]);
+        }
+        assertEquals(id, formats[0].parse(values[0]), DateCodec.parseDate(values[0]));
+        assertEquals(id, formats[1].parse(values[1]), DateCodec.parseIsoDate(values[1]));
+        assertEquals(id, formats[2].parse(values[2]), DateCodec.parseUsDate(values[2]));
+        assertEquals(id, millis - Math.floorMod(millis, 1000), DateCodec.parseDtm(values[3]).getTime());
+      }
+    }
+  }
+
+  public void testMidnightSkipped() throws ParseException {
+    // clocks went from midnight to 1 am on the 4th of November 2018
+    TimeZone timeZone = TimeZone.getTimeZone("America/Sao_Paulo");
+    DateCodec.setTimeZone(timeZone);
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
+    sdf.setTimeZone(timeZone);
+    assertEquals(sdf.parse("20181104"), DateCodec.parseDate("20181104"));
+    assertEquals("20181104", DateCodec.formatDate(DateCodec.parseDate("20181104")));
+  }
+
+  public void testLenient() throws ParseException {
+    assertEquals(DateCodec.parseDate("20110303"), DateCodec.parseDate("20110231"));
+    assertEquals(DateCodec.parseDate("20120112"), DateCodec.parseDate("20111312"));
+    assertEquals(DateCodec.parseDate("20110630"), DateCodec.parseDate("20110700"));
+    assertEquals(DateCodec.parseDate("20110704"), DateCodec.parseUsDate("7/4/2011"));
+    assertEquals(DateCodec.parseDate("20110704"), DateCodec.parseIsoDate("2011-7-4"));
+  }
+
+  public void testTextAfterDate() throws ParseException {
+    Date date = DateCodec.parseDate("20110712");
+    assertEquals(date, DateCodec.parseDate("20110712103000-0500"));
+    assertEquals(date, DateCodec.parseIsoDate("2011-07-12T10:30:00.000-05:00"));
+    assertEquals(date, DateCodec.parseUsDate("07/12/2011 10:30"));
+    assertEquals(date, DateCodec.parseDate(new StringBuilder("|20110712|").subSequence(1, 9)));
+  }
+
+  public void testParseDtm() throws ParseException {
+    DateCodec.setTimeZone(TimeZone.getTimeZone("America/Denver"));
+    assertEquals(DateCodec.parseDate("20110101"), DateCodec.parseDtm("2011"));
+    assertEquals(DateCodec.parseDate("20110701"), DateCodec.parseDtm("201107"));
+    assertEquals(DateCodec.parseDate("20110712"), DateCodec.parseDtm("20110712"));
+    long midnight = DateCodec.parseDate("20110712").getTime();
+    assertEquals(midnight + 10 * 3600000L, DateCodec.parseDtm("2011071210").getTime());
+    assertEquals(midnight + 37800000L, DateCodec.parseDtm("201107121030").getTime());
+    assertEquals(midnight + 37815000L, DateCodec.parseDtm("20110712103015").getTime());
+    assertEquals(midnight + 37815120L, DateCodec.parseDtm("20110712103015.12").getTime());
+    assertEquals(midnight + 37815123L, DateCodec.parseDtm("20110712103015.1234").getTime());
+    assertEquals(1310484615000L, DateCodec.parseDtm("20110712103015-0500").getTime());
+    assertEquals(1310466615000L, DateCodec.parseDtm("20110712103015+0000").getTime());
+    assertEquals(1310466600000L, DateCodec.parseDtm("201107121030+0000").getTime());
+  }
+
+  public void testUnparseable() {
+    String[] dates = { "", "2011071", "2011O712", " 20110712", "-20110712" };
+    for (String date : dates) {
+      try {
+        DateCodec.parseDate(date);
+        fail("Parsed " + date);
+      } catch (ParseException pe) {
+        // expected
+      }
+    }
+    String[] isoDates = { "", "2011", "2011-07", "2011/07/12", "2011-07-" };
+    for (String date : isoDates) {
+      try {
+        DateCodec.parseIsoDate(date);
+        fail("Parsed " + date);
+      } catch (ParseException pe) {
+        // expected
+      }
+    }
+    String[] usDates = { "", "07/12", "07-12-2011", "07/12/" };
+    for (String date : usDates) {
+      try {
+        DateCodec.parseUsDate(date);
+        fail("Parsed " + date);
+      } catch (ParseException pe) {
+        // expected
+      }
+    }
+    String[] dtms = { "201", "2011071", "20110712103015.", "20110712103015-05" };
+    for (String date : dtms) {
+      try {
+        DateCodec.parseDtm(date);
+        fail("Parsed " + date);
+      } catch (ParseException pe) {
+        // expected
+      }
+    }
+  }
+
+  public void testAppend() {
+    DateCodec.setTimeZone(TimeZone.getTimeZone("UTC"));
+    Date date = new Date(1310466615123L);
+    StringBuilder sb = new StringBuilder("PID|");
+    DateCodec.appendDate(sb, date).append('|');
+    DateCodec.appendIsoDate(sb, date).append('|');
+    DateCodec.appendUsDate(sb, date).append('|');
+    DateCodec.appendDtm(sb, date).append('|');
+    DateCodec.appendIsoDateTime(sb, date);
+    assertEquals("PID|20110712|2011-07-12|07/12/2011|20110712103015+0000|2011-07-12T10:30:15.123Z",
+        sb.toString());
+  }
+}
@@ -0,0 +1,67 @@
+package org.immregistries.vfa.connect.util;
+
+import junit.framework.TestCase;
+
+public class HL7TokenizerTest extends TestCase {
+
+  public void testSegments() {
+    HL7Tokenizer segment = new HL7Tokenizer("MSH|^~\\&|IIS\r\nQAK|1|NF\r\rRXA|0|1||||\nOBX");
+    assertTrue(segment.nextSegment());
+    assertTrue(segment.isSegment("MSH"));
+    assertEquals("MSH|^~\\&|IIS", segment.getSegment());
+    assertTrue(segment.nextSegment());
+    assertEquals("QAK", segment.getSegmentName());
+    assertEquals("NF", segment.getField(2));
+    assertTrue(segment.nextSegment());
+    assertEquals(0, segment.getSegmentLength());
+    assertEquals(1, segment.getFieldCount());
+    assertTrue(segment.nextSegment());
+    assertTrue(segment.isSegment("RXA"));
+    assertFalse(segment.isSegment("RX"));
+    assertEquals(3, segment.getFieldCount());
+    assertEquals("", segment.getField(4));
+    assertEquals("", segment.getField(20));
+    assertTrue(segment.nextSegment());
+    assertEquals(1, segment.getFieldCount());
+    assertFalse(segment.nextSegment());
+  }
+
+  public void testFieldCountMatchesSplit() {
+    String[] lines = {"OBX|1|CE", "OBX|1||", "|||", "OBX", "|A", "OBX||||||||||||||||||||||||||||||||||||||5"};
+    for (String line : lines) {
+      HL7Tokenizer segment = new HL7Tokenizer(line);
+      assertTrue(segment.nextSegment());
+      assertEquals(line, line.split("\\|").length, segment.getFieldCount());
+    }
+  }
+
+  public void testComponents() {
+    HL7Tokenizer segment =
+        new HL7Tokenizer("RXA|0|1|20150826||94^MMRV^CVX^90710^MMRV^CPT~54^MMR/Varicella^STC0292|999");
+    assertTrue(segment.nextSegment());
+    assertEquals("94", segment.getComponent(5, 1));
+    assertEquals("MMRV", segment.getComponent(5, 2));
+    assertEquals("CPT", segment.getComponent(5, 6));
+    assertEquals("", segment.getComponent(5, 7));
+    assertEquals(2, segment.getRepetitionCount(5));
+    assertEquals("54", segment.getComponent(5, 2, 1));
+    assertEquals("STC0292", segment.getComponent(5, 2, 3));
+    assertEquals("", segment.getComponent(5, 3, 1));
+    assertEquals("20150826", segment.getComponent(3, 1));
+    assertEquals("", segment.getComponent(3, 2));
+    assertEquals("", segment.getComponent(4, 1));
+    assertEquals(1, segment.getRepetitionCount(4));
+    assertEquals(0, segment.getRepetitionCount(7));
+  }
+
+  public void testEmptyComponents() {
+    HL7Tokenizer segment = new HL7Tokenizer("OBX|1|CE|^^Due^|1|^");
+    assertTrue(segment.nextSegment());
+    assertEquals("", segment.getComponent(3, 1));
+    assertEquals("", segment.getComponent(3, 2));
+    assertEquals("Due", segment.getComponent(3, 3));
+    assertEquals("", segment.getComponent(3, 4));
+    assertEquals("", segment.getComponent(5, 1));
+    assertEquals("", segment.getComponent(5, 2));
+  }
+}
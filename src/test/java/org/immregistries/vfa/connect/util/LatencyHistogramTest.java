@@ -0,0 +1,69 @@
+package org.immregistries.vfa.connect.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+
+  public void testBuckets() {
+    for (long value = 0; value < 16; value++) {
+      assertEquals(value, LatencyHistogram.getBucket(value));
+      assertEquals(value, LatencyHistogram.getBucketTop((int) value));
+    }
+    long[] values = {16, 17, 31, 32, 33, 1000, 123456789L, Long.MAX_VALUE};
+    for (long value : values) {
+      int bucket = LatencyHistogram.getBucket(value);
+      long top = LatencyHistogram.getBucketTop(bucket);
+      assertTrue(value + " above top of its bucket", value <= top);
+      assertTrue(value + " too far below top of its bucket", top - value <= value / 16);
+      if (bucket > 0) {
+        assertTrue(value + " in bucket below", value > LatencyHistogram.getBucketTop(bucket - 1));
+      }
+    }
+  }
+
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getPercentile(99));
+    for (long i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000);
+    }
+    assertEquals(1000, histogram.getCount());
+    assertEquals(1000000, histogram.getMax());
+    assertEquals(500500.0, histogram.getMean(), 0.001);
+    assertWithin(500000, histogram.getPercentile(50));
+    assertWithin(950000, histogram.getPercentile(95));
+    assertWithin(990000, histogram.getPercentile(99));
+    assertEquals(1000000, histogram.getPercentile(100));
+    histogram.record(-5);
+    assertEquals(0, histogram.getPercentile(0));
+  }
+
+  public void testConcurrentRecording() throws Exception {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    List<Thread> threadList = new ArrayList<Thread>();
+    for (int t = 0; t < 8; t++) {
+      Thread thread = new Thread() {
+        public void run() {
+          for (int i = 0; i < 10000; i++) {
+            histogram.record(i);
+          }
+        }
+      };
+      threadList.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threadList) {
+      thread.join();
+    }
+    assertEquals(80000, histogram.getCount());
+    assertEquals(9999, histogram.getMax());
+    assertWithin(5000, histogram.getPercentile(50));
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue("expected about " + expected + " but was " + actual,
+        actual >= expected && actual <= expected + expected / 16);
+  }
+}
@@ -41,4 +41,40 @@ public class TimePeriodTest extends TestCase
     assertEquals("03/03/2015", sdf.format(new TimePeriod("3 months 2 days").getDateFrom(evalDate)));
     assertEquals("02/27/2015", sdf.format(new TimePeriod("3 months -2 days").getDateFrom(evalDate)));
   }
+
+  public void testMonthEnd() throws ParseException
+  {
+    SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
+    assertEquals("02/29/2012", sdf.format(new TimePeriod("1 month").getDateFrom(sdf.parse("01/31/2012"))));
+    assertEquals("03/29/2012", sdf.format(new TimePeriod("1 month 1 month").getDateFrom(sdf.parse("01/31/2012"))));
+    assertEquals("03/31/2012", sdf.format(new TimePeriod("2 months").getDateFrom(sdf.parse("01/31/2012"))));
+    assertEquals("02/28/2013", sdf.format(new TimePeriod("1 year").getDateFrom(sdf.parse("02/29/2012"))));
+    assertEquals("02/28/2012", sdf.format(new TimePeriod("1 year").getDateBefore(sdf.parse("02/28/2013"))));
+  }
+
+  public void testValueOf()
+  {
+    TimePeriod timePeriod = TimePeriod.valueOf("4 months less 5 days");
+    assertSame(timePeriod, TimePeriod.valueOf("4 months less 5 days"));
+    assertEquals("4 months minus 5 days", timePeriod.toString());
+    try
+    {
+      timePeriod.negate();
+      fail("Negated a shared time period");
+    } catch (UnsupportedOperationException uoe)
+    {
+      // expected
+    }
+    assertEquals("-4 months plus 5 days", timePeriod.negated().toString());
+    assertEquals("4 months minus 5 days", timePeriod.toString());
+    TimePeriod copy = new TimePeriod("4 months less 5 days");
+    copy.negate();
+    assertEquals("-4 months plus 5 days", copy.toString());
+    assertTrue(timePeriod.isShared());
+    copy = new TimePeriod(timePeriod);
+    assertFalse(copy.isShared());
+    copy.negate();
+    assertEquals("-4 months plus 5 days", copy.toString());
+    assertEquals("4 months minus 5 days", timePeriod.toString());
+  }
 }